@@ -0,0 +1,84 @@
+package workflow;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import workflow.servicesapiimpl.AsyncOfferService;
+import workflow.servicesapiimpl.DashboardService;
+import workflow.servicesapiimpl.OfferService;
+
+/**
+ * 10k negotiations in flight at once through AsyncOfferService, on virtual threads and on a fixed
+ * pool of platform threads sized to the CPU count. Every action is followed by a simulated blocking
+ * write to storage of persistLatencyMicros, which is where the two executors differ.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class AsyncNegotiationBenchmark {
+
+    private static final int NEGOTIATIONS = 10_000;
+
+    private final OfferDetails offerDetails = OfferDetails.of("Test", 5, 50);
+    private final OfferDetails counterDetails = OfferDetails.of("Test", 5, 55);
+
+    @Param({ "virtual", "platform" })
+    String executor;
+
+    @Param({ "0", "100" })
+    long persistLatencyMicros;
+
+    OfferService offerService;
+    AsyncOfferService asyncService;
+
+    @Setup(Level.Iteration)
+    public void startExecutor() {
+        final ExecutorService executorService = "virtual".equals(this.executor)
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        this.offerService = new OfferService();
+        this.asyncService = new AsyncOfferService(this.offerService, new DashboardService(this.offerService), executorService);
+    }
+
+    @TearDown(Level.Iteration)
+    public void stopExecutor() {
+        this.asyncService.close();
+    }
+
+    @Benchmark
+    public void negotiations() {
+        final CompletableFuture<?>[] negotiations = new CompletableFuture<?>[NEGOTIATIONS];
+        for (int i = 0; i < NEGOTIATIONS; i++) {
+            final String buyerUserId = "buyer-" + i;
+            final String sellerUserId = "seller-" + i;
+            negotiations[i] = this.asyncService.submit(buyerUserId, sellerUserId, this.offerDetails)
+                    .thenCompose(offerId -> act(offerId, () -> this.offerService.proposeUpdate(sellerUserId, offerId, this.counterDetails))
+                            .thenCompose(ignored -> act(offerId, () -> this.offerService.accept(buyerUserId, offerId))));
+        }
+        CompletableFuture.allOf(negotiations).join();
+    }
+
+    private CompletableFuture<Object> act(final String offerId, final Runnable action) {
+        return this.asyncService.executeOnOffer(offerId, () -> {
+            action.run();
+            if (this.persistLatencyMicros > 0) {
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(this.persistLatencyMicros));
+            }
+            return null;
+        });
+    }
+}
@@ -0,0 +1,66 @@
+package workflow;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Cost of publishing to an OfferChangeFeed on the action path: with no subscriber, with a
+ * subscriber that keeps up, and with a subscriber that never returns, whose ring stays full.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ChangeFeedBenchmark {
+
+    private static final Map<String, String> PRIVATE_DATA = Map.of("note", "a");
+
+    @Param({ "none", "consuming", "stalled" })
+    String subscriber;
+
+    OfferChangeFeed feed;
+    CountDownLatch release;
+    Offer offer;
+    long delivered;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        this.feed = new OfferChangeFeed();
+        this.release = new CountDownLatch(1);
+        if (this.subscriber.equals("consuming")) {
+            this.feed.subscribe(change -> this.delivered += change.getVersion());
+        } else if (this.subscriber.equals("stalled")) {
+            this.feed.subscribe(change -> {
+                try {
+                    this.release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        this.offer = Offer.of("buyer", "seller", OfferDetails.of("Test", 5, 50), this.feed);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        this.release.countDown();
+        this.feed.close();
+    }
+
+    @Benchmark
+    public int updatePrivateData() {
+        this.offer.updatePrivateData("buyer", PRIVATE_DATA);
+        return this.offer.getVersion();
+    }
+}
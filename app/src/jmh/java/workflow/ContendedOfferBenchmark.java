@@ -0,0 +1,67 @@
+package workflow;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import workflow.servicesapiimpl.OfferService;
+
+/**
+ * Multi-threaded accept and cancel racing over a pool of open offers. With a single slot every
+ * thread fights over one offer; with many slots threads mostly work on unrelated offers.
+ * An offer that reached a terminal state is replaced with a freshly submitted one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(8)
+public class ContendedOfferBenchmark {
+
+    private final OfferDetails offerDetails = OfferDetails.of("Test", 5, 50);
+
+    @Param({ "1", "64" })
+    int slots;
+
+    OfferService offerService;
+    AtomicReferenceArray<String> openOffers;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        this.offerService = new OfferService();
+        this.openOffers = new AtomicReferenceArray<>(this.slots);
+        for (int i = 0; i < this.slots; i++) {
+            this.openOffers.set(i, this.offerService.submit("buyer", "seller", this.offerDetails));
+        }
+    }
+
+    @Benchmark
+    public boolean acceptOrCancel() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final int slot = random.nextInt(this.slots);
+        final String offerId = this.openOffers.get(slot);
+        try {
+            if (random.nextBoolean()) {
+                this.offerService.accept("seller", offerId);
+            } else {
+                this.offerService.cancel("buyer", offerId);
+            }
+            this.openOffers.compareAndSet(slot, offerId,
+                    this.offerService.submit("buyer", "seller", this.offerDetails));
+            return true;
+        } catch (RuntimeException rejected) {
+            // Another thread won the race for this offer
+            return false;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package workflow;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import workflow.servicesapiimpl.DashboardService;
+import workflow.servicesapiimpl.OfferService;
+
+/**
+ * Dashboard reads at several negotiation lengths: a single version, the full history, the page of
+ * the ten latest versions, the whole history streamed row by row, the difference between the
+ * first and the last version, and the chain of differences over the whole negotiation. A dashboard
+ * that is polled keeps its rows; a page or stream builds the rows it returns from the stored history.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DashboardBenchmark {
+
+    @Param({ "10", "100", "1000" })
+    int historyLength;
+
+    DashboardService dashboardService;
+    int version;
+
+    @Setup
+    public void setUp() {
+        final OfferService offerService = new OfferService();
+        this.dashboardService = new DashboardService(offerService);
+        offerService.submit("buyer", "seller", OfferDetails.of("Test", 5, 50));
+        for (int i = 1; i < this.historyLength; i++) {
+            final boolean sellerTurn = i % 2 == 1;
+            offerService.proposeUpdate(sellerTurn ? "seller" : "buyer", OfferDetails.of("Test", 5, 50 + i));
+        }
+        this.version = this.historyLength / 2;
+    }
+
+    @Benchmark
+    public DashboardRow getHistoryVersion() {
+        return this.dashboardService.getHistory("seller", this.version);
+    }
+
+    @Benchmark
+    public List<DashboardRow> getHistory() {
+        return this.dashboardService.getHistory("seller");
+    }
+
+    @Benchmark
+    public DashboardPage getLatestPage() {
+        return this.dashboardService.getHistoryPage("seller", HistoryOrder.NEWEST_FIRST, 10);
+    }
+
+    @Benchmark
+    public double streamHistory() {
+        return this.dashboardService.streamHistory("seller", HistoryOrder.OLDEST_FIRST)
+                .mapToDouble(DashboardRow::getTotalPrice).sum();
+    }
+
+    @Benchmark
+    public OfferDifference getDifference() {
+        return this.dashboardService.getDifference("seller", 1, this.historyLength);
+    }
+
+    @Benchmark
+    public List<OfferDifference> getDifferenceChain() {
+        return this.dashboardService.getDifferences("seller", 1, this.historyLength);
+    }
+}
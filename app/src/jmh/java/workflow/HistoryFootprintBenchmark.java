@@ -0,0 +1,111 @@
+package workflow;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import workflow.Offer.OfferHistory;
+
+/**
+ * Memory per history row and the cost of reading a dashboard row, with the history kept as one
+ * OfferHistory object graph per version and with the off-heap delta records. One million rows are
+ * built: ten thousand offers haggling over the price for a hundred rounds, sharing their private data.
+ * The footprint per row, measured after a full GC, is printed at the end of each trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HistoryFootprintBenchmark {
+
+    private static final int OFFERS = 10_000;
+    private static final int ROUNDS = 100;
+
+    @Param({ "objects", "columns" })
+    String layout;
+
+    List<AppendOnlyList<OfferHistory>> objectHistories;
+    List<HistoryColumns> columnHistories;
+    String[] buyerUserIds = new String[OFFERS];
+    String[] sellerUserIds = new String[OFFERS];
+    double heapBytesPerRow;
+    double offHeapBytesPerRow;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final long heapBefore = usedHeap();
+        final HistoryArena arena = new HistoryArena();
+        final SymbolTable symbols = new SymbolTable();
+        this.objectHistories = new ArrayList<>(OFFERS);
+        this.columnHistories = new ArrayList<>(OFFERS);
+        for (int offer = 0; offer < OFFERS; offer++) {
+            final String buyerUserId = "buyer-" + offer;
+            final String sellerUserId = "seller-" + offer;
+            final String productName = "Product " + offer % 100;
+            this.buyerUserIds[offer] = buyerUserId;
+            this.sellerUserIds[offer] = sellerUserId;
+            final PersistentHashMap<String, String> privateData = PersistentHashMap.<String, String>empty()
+                    .plus("reference", "order-" + offer);
+            final AppendOnlyList<OfferHistory> objects = new AppendOnlyList<>();
+            final HistoryColumns columns = "columns".equals(this.layout) ? new HistoryColumns(arena, symbols) : null;
+            for (int round = 0; round < ROUNDS; round++) {
+                final boolean buyer = round % 2 == 0;
+                final OfferHistory offerHistory = new OfferHistory(OfferDetails.of(productName, 5, 50 + round),
+                        buyer ? OfferState.AWAITING_SELLER_ACCEPTANCE : OfferState.AWAITING_BUYER_ACCEPTANCE,
+                        round == 0 ? Action.SUBMIT : Action.PROPOSE_UPDATE, buyer ? buyerUserId : sellerUserId, privateData);
+                if (columns != null) {
+                    columns.add(offerHistory);
+                } else {
+                    objects.add(offerHistory);
+                }
+            }
+            if (columns != null) {
+                this.columnHistories.add(columns);
+            } else {
+                this.objectHistories.add(objects);
+            }
+        }
+        this.heapBytesPerRow = (double) (usedHeap() - heapBefore) / (OFFERS * ROUNDS);
+        this.offHeapBytesPerRow = (double) arena.usedBytes() / (OFFERS * ROUNDS);
+    }
+
+    private static long usedHeap() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @TearDown(Level.Trial)
+    public void reportFootprint() {
+        System.out.printf("%n%s: %.1f heap bytes and %.1f off-heap bytes per history row%n",
+                this.layout, this.heapBytesPerRow, this.offHeapBytesPerRow);
+    }
+
+    @Benchmark
+    public DashboardRow readDashboardRow() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final int offer = random.nextInt(OFFERS);
+        final int round = random.nextInt(ROUNDS);
+        if (this.columnHistories.isEmpty()) {
+            final OfferHistory offerHistory = this.objectHistories.get(offer).get(round);
+            return DashboardRow.of(round + 1, offerHistory.getOfferAction(), offerHistory.getOfferUserId(),
+                    offerHistory.getOfferState(), offerHistory.getOfferDetails().getProductName(), this.buyerUserIds[offer],
+                    this.sellerUserIds[offer], offerHistory.getOfferDetails().getProductQuantity(),
+                    offerHistory.getOfferDetails().getProductPrice());
+        }
+        return this.columnHistories.get(offer).toDashboardRow(round, this.buyerUserIds[offer], this.sellerUserIds[offer]);
+    }
+}
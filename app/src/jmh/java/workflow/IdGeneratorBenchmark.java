@@ -0,0 +1,52 @@
+package workflow;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import workflow.servicesapiimpl.OfferService;
+
+/**
+ * ID generation and offer submission from 32 threads, with the random UUIDs of UUID.randomUUID(),
+ * which share one SecureRandom, and with time-ordered IDs built from per-thread state.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(32)
+public class IdGeneratorBenchmark {
+
+    private final OfferDetails offerDetails = OfferDetails.of("Test", 5, 50);
+
+    @Param({ "random", "timeOrdered" })
+    String generator;
+
+    IdGenerator idGenerator;
+    OfferService offerService;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        this.idGenerator = "random".equals(this.generator) ? IdGenerator.RANDOM : IdGenerator.TIME_ORDERED;
+        this.offerService = new OfferService(new InMemoryOfferRepository(), this.idGenerator);
+    }
+
+    @Benchmark
+    public UUID nextId() {
+        return this.idGenerator.nextId();
+    }
+
+    @Benchmark
+    public String submit() {
+        return this.offerService.submit("buyer", "seller", this.offerDetails);
+    }
+}
@@ -0,0 +1,96 @@
+package workflow;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import workflow.servicesapiimpl.OfferService;
+
+/**
+ * Counter-offer throughput of eight threads, each negotiating its own offer, with offers kept
+ * in memory only and with every history entry made durable through the journal. Group commit
+ * lets the threads share fsyncs, so the journaled score should stay well above one fsync per action.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(8)
+public class JournalBenchmark {
+
+    // Offers are recycled after this many transitions so the history does not grow without bound
+    private static final int MAX_HISTORY = 64;
+
+    @Param({ "memory", "journal" })
+    String durability;
+
+    Path directory;
+    OfferJournal journal;
+    OfferService offerService;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        if ("journal".equals(this.durability)) {
+            this.directory = Files.createTempDirectory("offer-journal");
+            this.journal = OfferJournal.open(this.directory);
+            this.offerService = new OfferService(this.journal);
+        } else {
+            this.offerService = new OfferService();
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        if (this.journal != null) {
+            this.journal.close();
+            try (Stream<Path> files = Files.walk(this.directory)) {
+                for (Path path : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.delete(path);
+                }
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Negotiation {
+        private final OfferDetails offerDetails = OfferDetails.of("Test", 5, 50);
+        private final OfferDetails counterDetails = OfferDetails.of("Test", 5, 55);
+
+        String offerId;
+        int version;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            // Every iteration starts a fresh service, so the offer of the previous one is gone
+            this.offerId = null;
+        }
+    }
+
+    @Benchmark
+    public void counterOffer(final Negotiation negotiation) {
+        if (negotiation.offerId == null || negotiation.version >= MAX_HISTORY) {
+            negotiation.offerId = this.offerService.submit("buyer", "seller", negotiation.offerDetails);
+            negotiation.version = 1;
+        }
+        if (negotiation.version % 2 == 1) {
+            this.offerService.proposeUpdate("seller", negotiation.offerId, negotiation.counterDetails);
+        } else {
+            this.offerService.proposeUpdate("buyer", negotiation.offerId, negotiation.offerDetails);
+        }
+        negotiation.version++;
+    }
+}
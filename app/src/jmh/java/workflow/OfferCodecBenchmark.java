@@ -0,0 +1,127 @@
+package workflow;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import workflow.servicesapiimpl.DashboardService;
+import workflow.servicesapiimpl.OfferService;
+
+/**
+ * Encoding and decoding the dashboard rows of a 50-round haggle with OfferCodec, with Java
+ * serialization and with JSON through Gson. Domain classes are not Serializable, so Java
+ * serialization writes records with the same fields. The sizes of the three encodings are printed
+ * once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OfferCodecBenchmark {
+
+    private static final Type ROWS = new TypeToken<List<DashboardRow>>() { }.getType();
+
+    List<DashboardRow> rows;
+    List<SerializableRow> serializableRows;
+    final Gson gson = new Gson();
+    final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+    byte[] codecBytes;
+    byte[] javaBytes;
+    byte[] jsonBytes;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        final OfferService offerService = new OfferService();
+        final String offerId = offerService.submit("buyer-123", "seller-456", OfferDetails.of("Laptop", 5, 1000));
+        for (int round = 0; round < 50; round++) {
+            offerService.proposeUpdate("seller-456", offerId, OfferDetails.of("Laptop", 5, 1100 - round));
+            offerService.proposeUpdate("buyer-123", offerId, OfferDetails.of("Laptop", 5, 1000 + round));
+        }
+        offerService.accept("seller-456", offerId);
+        this.rows = new DashboardService(offerService).getHistory("buyer-123");
+        this.serializableRows = new ArrayList<>();
+        for (DashboardRow row : this.rows) {
+            this.serializableRows.add(new SerializableRow(row.getVersion(), row.getAction(), row.getUserId(),
+                    row.getBuyerUserId(), row.getSellerUserId(), row.getState(), row.getProductName(),
+                    row.getTotalPrice()));
+        }
+        codecEncode();
+        this.codecBytes = new byte[this.buffer.flip().remaining()];
+        this.buffer.get(this.codecBytes);
+        this.javaBytes = javaEncode();
+        this.jsonBytes = jsonEncode();
+        System.out.printf("%n%d rows: codec %d bytes, Java serialization %d bytes, JSON %d bytes%n", this.rows.size(),
+                this.codecBytes.length, this.javaBytes.length, this.jsonBytes.length);
+    }
+
+    @Benchmark
+    public ByteBuffer codecEncode() {
+        final OfferCodec.Encoder encoder = new OfferCodec.Encoder();
+        this.buffer.clear();
+        for (DashboardRow row : this.rows) {
+            encoder.encode(this.buffer, row);
+        }
+        return this.buffer;
+    }
+
+    @Benchmark
+    public List<DashboardRow> codecDecode() {
+        final OfferCodec.Decoder decoder = new OfferCodec.Decoder();
+        final ByteBuffer input = ByteBuffer.wrap(this.codecBytes);
+        final List<DashboardRow> decoded = new ArrayList<>(this.rows.size());
+        while (input.hasRemaining()) {
+            decoded.add(decoder.decodeDashboardRow(input));
+        }
+        return decoded;
+    }
+
+    @Benchmark
+    public byte[] javaEncode() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+            output.writeObject(this.serializableRows);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public Object javaDecode() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(this.javaBytes))) {
+            return input.readObject();
+        }
+    }
+
+    @Benchmark
+    public byte[] jsonEncode() {
+        return this.gson.toJson(this.rows, ROWS).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public List<DashboardRow> jsonDecode() {
+        return this.gson.fromJson(new String(this.jsonBytes, StandardCharsets.UTF_8), ROWS);
+    }
+
+    record SerializableRow(int version, Action action, String userId, String buyerUserId, String sellerUserId,
+            OfferState state, String productName, double totalPrice) implements Serializable {
+    }
+}
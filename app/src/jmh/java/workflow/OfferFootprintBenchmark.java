@@ -0,0 +1,84 @@
+package workflow;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import workflow.servicesapiimpl.OfferService;
+
+/**
+ * Heap held per offer with one million offers between a hundred thousand users, and the cost of
+ * looking an offer up by its ID. Every request carries its own copy of the user IDs and product
+ * name, as strings decoded from a request would, so storing them as received keeps one copy per
+ * offer. The heap per offer, measured after a full GC, is printed at the end of the trial.
+ * Lookups use a new string of the offer ID for the same reason.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class OfferFootprintBenchmark {
+
+    private static final int USERS = 100_000;
+    private static final int PRODUCTS = 1_000;
+
+    @Param({ "1000000" })
+    int offers;
+
+    OfferService offerService;
+    UUID[] offerIds;
+    double heapBytesPerOffer;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final String[] userIds = new String[USERS];
+        for (int i = 0; i < USERS; i++) {
+            userIds[i] = User.of().getUserId();
+        }
+        final long heapBefore = usedHeap();
+        this.offerService = new OfferService();
+        this.offerIds = new UUID[this.offers];
+        for (int i = 0; i < this.offers; i++) {
+            final String buyerUserId = new String(userIds[i % USERS]);
+            final String sellerUserId = new String(userIds[(i * 7 + 1) % USERS]);
+            final String productName = "Product " + i % PRODUCTS;
+            this.offerIds[i] = UUID.fromString(
+                    this.offerService.submit(buyerUserId, sellerUserId, OfferDetails.of(productName, 5, 50)));
+        }
+        // The IDs kept by the benchmark, an array slot and a UUID each, are not part of the footprint
+        final long offerIdBytes = (long) this.offers * (4 + 32);
+        this.heapBytesPerOffer = (double) (usedHeap() - heapBefore - offerIdBytes) / this.offers;
+    }
+
+    private static long usedHeap() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @TearDown(Level.Trial)
+    public void reportFootprint() {
+        System.out.printf("%n%.1f heap bytes per offer%n", this.heapBytesPerOffer);
+    }
+
+    @Benchmark
+    public String findOffer() {
+        // A new string, as decoded from a request, rather than the instance the service handed out
+        final String offerId = this.offerIds[ThreadLocalRandom.current().nextInt(this.offers)].toString();
+        return this.offerService.getOffer(offerId).getBuyerUserId();
+    }
+}
@@ -0,0 +1,58 @@
+package workflow;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import workflow.Offer.OfferHistory;
+
+/**
+ * Compares reading a single history entry through a full copy of the history, which is what
+ * getOfferHistory used to return, against the read-only view and direct indexed access.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class OfferHistoryBenchmark {
+
+    @Param({ "10000" })
+    int historyLength;
+
+    Offer offer;
+    int version;
+
+    @Setup
+    public void setUp() {
+        this.offer = Offer.of("buyer", "seller", OfferDetails.of("Test", 5, 50));
+        for (int i = 1; i < this.historyLength; i++) {
+            this.offer.updatePrivateData("buyer", Map.of("round", String.valueOf(i)));
+        }
+        this.version = this.historyLength / 2;
+    }
+
+    @Benchmark
+    public OfferHistory copyThenReadOne() {
+        final List<OfferHistory> copy = new ArrayList<>(this.offer.getOfferHistory());
+        return copy.get(this.version - 1);
+    }
+
+    @Benchmark
+    public OfferHistory viewThenReadOne() {
+        return this.offer.getOfferHistory().get(this.version - 1);
+    }
+
+    @Benchmark
+    public OfferHistory readOneByVersion() {
+        return this.offer.getOfferHistory(this.version);
+    }
+}
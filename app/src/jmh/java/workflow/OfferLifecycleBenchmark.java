@@ -0,0 +1,88 @@
+package workflow;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import workflow.servicesapiimpl.OfferService;
+
+/**
+ * Single-threaded cost of the offer lifecycle: submitting offers, complete negotiations,
+ * a single Offer.transition and the permitted action check every action goes through.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class OfferLifecycleBenchmark {
+
+    // Offers are recycled after this many transitions so the history does not grow without bound
+    private static final int MAX_HISTORY = 64;
+
+    private final OfferDetails offerDetails = OfferDetails.of("Test", 5, 50);
+    private final OfferDetails counterDetails = OfferDetails.of("Test", 5, 55);
+
+    OfferService offerService;
+    Offer offer;
+    long users;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        // A fresh service per iteration keeps the maps from growing across the whole run
+        this.offerService = new OfferService();
+        this.offer = Offer.of("buyer", "seller", this.offerDetails);
+    }
+
+    @Benchmark
+    public String submit() {
+        final long user = this.users++;
+        return this.offerService.submit("buyer-" + user, "seller-" + user, this.offerDetails);
+    }
+
+    @Benchmark
+    public OfferState negotiationRoundTrip() {
+        final long user = this.users++;
+        final String buyerUserId = "buyer-" + user;
+        final String sellerUserId = "seller-" + user;
+        final String offerId = this.offerService.submit(buyerUserId, sellerUserId, this.offerDetails);
+        this.offerService.proposeUpdate(sellerUserId, offerId, this.counterDetails);
+        this.offerService.proposeUpdate(buyerUserId, offerId, this.offerDetails);
+        this.offerService.accept(sellerUserId, offerId);
+        return this.offerService.getOffer(offerId).getCurrentState();
+    }
+
+    @Benchmark
+    public Offer transition() {
+        Offer current = this.offer;
+        if (current.getVersion() >= MAX_HISTORY) {
+            current = Offer.of("buyer", "seller", this.offerDetails);
+            this.offer = current;
+        }
+        if (current.getCurrentState() == OfferState.AWAITING_SELLER_ACCEPTANCE) {
+            current.transition(OfferState.AWAITING_BUYER_ACCEPTANCE, OfferState.AWAITING_SELLER_ACCEPTANCE,
+                    Action.PROPOSE_UPDATE, "seller", this.counterDetails, false);
+        } else {
+            current.transition(OfferState.AWAITING_SELLER_ACCEPTANCE, OfferState.AWAITING_BUYER_ACCEPTANCE,
+                    Action.PROPOSE_UPDATE, "buyer", this.offerDetails, true);
+        }
+        return current;
+    }
+
+    @Benchmark
+    public void checkAction() {
+        PermittedActionMap.checkAction(OfferState.AWAITING_BUYER_ACCEPTANCE, Action.PROPOSE_UPDATE, true);
+        PermittedActionMap.checkAction(OfferState.AWAITING_SELLER_ACCEPTANCE, Action.ACCEPT, false);
+    }
+
+    @Benchmark
+    public void checkTransition() {
+        StateTransitionMap.checkTransition(OfferState.AWAITING_BUYER_ACCEPTANCE, OfferState.ACCEPTED, true);
+        StateTransitionMap.checkTransition(OfferState.WITHDRAWN_BY_SELLER, OfferState.CANCELLED, true);
+    }
+}
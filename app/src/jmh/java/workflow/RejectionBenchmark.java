@@ -0,0 +1,49 @@
+package workflow;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import workflow.exceptions.InvalidNextActionException;
+import workflow.servicesapiimpl.OfferService;
+
+/**
+ * Cost of turning down an action that is not permitted, through the throwing API and
+ * through the result-returning API that bots hitting invalid actions should use.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RejectionBenchmark {
+
+    OfferService offerService;
+    String offerId;
+
+    @Setup
+    public void setUp() {
+        this.offerService = new OfferService();
+        // The buyer may not accept their own offer, so every attempt below is rejected
+        this.offerId = this.offerService.submit("buyer", "seller", OfferDetails.of("Test", 5, 50));
+    }
+
+    @Benchmark
+    public Object rejectWithException() {
+        try {
+            this.offerService.accept("buyer", this.offerId);
+            return null;
+        } catch (InvalidNextActionException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public ActionResult rejectWithResult() {
+        return this.offerService.tryAccept("buyer", this.offerId, Offer.ANY_VERSION);
+    }
+}
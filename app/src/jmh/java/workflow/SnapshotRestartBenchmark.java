@@ -0,0 +1,114 @@
+package workflow;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import workflow.servicesapiimpl.OfferService;
+
+/**
+ * Time until an OfferService is ready to serve requests after a restart, with one million offers
+ * on disk. With a journal only, every record ever written is decoded and replayed; after a
+ * checkpoint, the snapshot is mapped and only the records written since are replayed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class SnapshotRestartBenchmark {
+
+    // Writers submitting concurrently, so group commit batches their fsyncs while the data is built
+    private static final int WRITERS = 1_000;
+    // Offers that receive a counter offer after the checkpoint
+    private static final int TAIL = 10_000;
+
+    @Param({ "1000000" })
+    int offers;
+
+    @Param({ "journal", "snapshot" })
+    String restart;
+
+    Path directory;
+    OfferJournal journal;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, InterruptedException, ExecutionException {
+        this.directory = Files.createTempDirectory("offer-restart");
+        final List<String> offerIds;
+        try (OfferJournal journal = OfferJournal.open(this.directory)) {
+            offerIds = submitAll(new OfferService(journal));
+        }
+        try (OfferJournal journal = OfferJournal.open(this.directory)) {
+            final OfferService offerService = new OfferService(journal);
+            if ("snapshot".equals(this.restart)) {
+                journal.checkpoint();
+            }
+            for (int i = 0; i < TAIL; i++) {
+                offerService.proposeUpdate("seller-" + (i % WRITERS), offerIds.get(i), OfferDetails.of("Product", 5, 55));
+            }
+        }
+    }
+
+    private List<String> submitAll(final OfferService offerService) throws InterruptedException, ExecutionException {
+        final List<Future<List<String>>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int writer = 0; writer < WRITERS; writer++) {
+                final int buyer = writer;
+                futures.add(executor.submit(() -> {
+                    final List<String> offerIds = new ArrayList<>();
+                    for (int i = buyer; i < this.offers; i += WRITERS) {
+                        offerIds.add(offerService.submit("buyer-" + buyer, "seller-" + buyer, OfferDetails.of("Product", 5, 50)));
+                    }
+                    return offerIds;
+                }));
+            }
+        }
+        // Interleave the writers again, so the tail touches offers of every seller
+        final List<String> offerIds = new ArrayList<>(this.offers);
+        for (int i = 0; i < this.offers; i++) {
+            offerIds.add(futures.get(i % WRITERS).get().get(i / WRITERS));
+        }
+        return offerIds;
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeJournal() throws IOException {
+        this.journal.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(this.directory)) {
+            for (Path path : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public OfferService restart() throws IOException {
+        this.journal = OfferJournal.open(this.directory);
+        return new OfferService(this.journal);
+    }
+}
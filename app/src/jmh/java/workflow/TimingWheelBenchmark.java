@@ -0,0 +1,50 @@
+package workflow;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import workflow.TimingWheel.Timeout;
+
+/**
+ * Cost of replacing a deadline, as OfferExpiry does on every state change, with a growing number
+ * of other deadlines pending in the wheel. The cost should not depend on the pending count.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TimingWheelBenchmark {
+
+    @Param({ "1000", "1000000" })
+    int pending;
+
+    TimingWheel<Integer> wheel;
+    Timeout<Integer> timeout;
+    long deadline;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.wheel = new TimingWheel<>();
+        for (int i = 0; i < this.pending; i++) {
+            // A day of one-second ticks
+            this.wheel.schedule(i, 1 + (i * 7919L) % 86_400);
+        }
+        this.timeout = this.wheel.schedule(-1, 3_600);
+    }
+
+    @Benchmark
+    public Timeout<Integer> reschedule() {
+        this.wheel.cancel(this.timeout);
+        this.deadline = this.deadline == 86_400 ? 1 : this.deadline + 1;
+        this.timeout = this.wheel.schedule(-1, this.deadline);
+        return this.timeout;
+    }
+}
@@ -6,6 +6,27 @@ public enum Action {
     PROPOSE_UPDATE,
     WITHDRAW,
     CANCEL,
-    UPDATE_PRIVATE_DATA
-}
+    UPDATE_PRIVATE_DATA;
 
+    /**
+     * Returns the state an offer moves to when this action is performed by the given role.
+     *
+     * @param isBuyer true if the action is performed by the buyer, false if by the seller
+     * @return the next state of the offer
+     * @throws IllegalArgumentException if the action does not change the offer state
+     */
+    public OfferState nextState(final boolean isBuyer) {
+        switch (this) {
+            case ACCEPT:
+                return OfferState.ACCEPTED;
+            case CANCEL:
+                return OfferState.CANCELLED;
+            case WITHDRAW:
+                return isBuyer ? OfferState.WITHDRAWN_BY_BUYER : OfferState.WITHDRAWN_BY_SELLER;
+            case PROPOSE_UPDATE:
+                return isBuyer ? OfferState.AWAITING_SELLER_ACCEPTANCE : OfferState.AWAITING_BUYER_ACCEPTANCE;
+            default:
+                throw new IllegalArgumentException("Action " + this + " does not change the offer state");
+        }
+    }
+}
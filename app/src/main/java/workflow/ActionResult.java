@@ -0,0 +1,77 @@
+package workflow;
+
+/**
+ * Outcome of an action applied through the non-throwing offer API.
+ * Rejections are shared constants, so turning down an invalid action allocates nothing.
+ */
+public final class ActionResult {
+    private static final ActionResult[] REJECTIONS = new ActionResult[RejectionReason.values().length];
+
+    static {
+        for (RejectionReason reason : RejectionReason.values()) {
+            REJECTIONS[reason.ordinal()] = new ActionResult(null, reason, -1);
+        }
+    }
+
+    private final String offerId;
+    private final RejectionReason rejection;
+    private final int version;
+
+    private ActionResult(final String offerId, final RejectionReason rejection, final int version) {
+        this.offerId = offerId;
+        this.rejection = rejection;
+        this.version = version;
+    }
+
+    /**
+     * Creates the result of an action that was applied.
+     *
+     * @param offerId the unique ID of the offer the action was applied to
+     * @param version the version of the offer after the action
+     * @return an accepted ActionResult
+     */
+    public static ActionResult accepted(final String offerId, final int version) {
+        return new ActionResult(offerId, null, version);
+    }
+
+    /**
+     * Returns the shared result for an action that was turned down.
+     *
+     * @param rejection the reason the action was not applied
+     * @return a rejected ActionResult
+     */
+    public static ActionResult rejected(final RejectionReason rejection) {
+        return REJECTIONS[rejection.ordinal()];
+    }
+
+    public boolean isAccepted() {
+        return this.rejection == null;
+    }
+
+    /**
+     * Returns the offer the action was applied to, which is how a batched SUBMIT reports the new offer ID.
+     *
+     * @return the unique ID of the offer, or null if the action was rejected
+     */
+    public String getOfferId() {
+        return this.offerId;
+    }
+
+    /**
+     * Returns why the action was turned down.
+     *
+     * @return the rejection reason, or null if the action was applied
+     */
+    public RejectionReason getRejection() {
+        return this.rejection;
+    }
+
+    /**
+     * Returns the version of the offer after the action was applied.
+     *
+     * @return the new version, or -1 if the action was rejected
+     */
+    public int getVersion() {
+        return this.version;
+    }
+}
@@ -0,0 +1,122 @@
+package workflow;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Append-only sequence with constant time indexed access and lock-free readers.
+ * Elements live in segments of doubling size (8, 16, 32, ...), so appending never copies
+ * existing elements and a short history stays small. A single writer at a time is expected;
+ * callers serialize appends, for example through the offer lock.
+ *
+ * @param <E> the type of elements
+ */
+final class AppendOnlyList<E> {
+
+    private static final int FIRST_SEGMENT_BITS = 3;
+    private static final int FIRST_SEGMENT_SIZE = 1 << FIRST_SEGMENT_BITS;
+
+    private volatile Object[][] segments = new Object[1][];
+    private volatile int size;
+
+    /**
+     * Appends an element and publishes it to readers.
+     *
+     * @param element the element to append
+     */
+    void add(final E element) {
+        final int index = this.size;
+        final int segment = segmentOf(index);
+        Object[][] current = this.segments;
+        if (segment == current.length) {
+            current = Arrays.copyOf(current, current.length + 1);
+        }
+        if (current[segment] == null) {
+            current[segment] = new Object[FIRST_SEGMENT_SIZE << segment];
+            this.segments = current;
+        }
+        current[segment][offsetOf(index, segment)] = element;
+        // Publishing the size last makes the element visible to readers that observe it
+        this.size = index + 1;
+    }
+
+    /**
+     * Returns the element at the given index.
+     *
+     * @param index the index of the element
+     * @return the element at index
+     * @throws IndexOutOfBoundsException if index is negative or not yet appended
+     */
+    E get(final int index) {
+        return get(index, this.size);
+    }
+
+    @SuppressWarnings("unchecked")
+    private E get(final int index, final int bound) {
+        if (index < 0 || index >= bound) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + bound);
+        }
+        final int segment = segmentOf(index);
+        return (E) this.segments[segment][offsetOf(index, segment)];
+    }
+
+    /**
+     * Returns the number of appended elements.
+     *
+     * @return the size
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the last appended element.
+     *
+     * @return the last element
+     * @throws IndexOutOfBoundsException if nothing has been appended
+     */
+    E last() {
+        final int bound = this.size;
+        return get(bound - 1, bound);
+    }
+
+    /**
+     * Returns a read-only list over the elements appended so far. The view is fixed to the
+     * current size, so it can be iterated safely while a writer keeps appending.
+     *
+     * @return a read-only view of the current elements
+     */
+    List<E> view() {
+        return new View<>(this, this.size);
+    }
+
+    private static int segmentOf(final int index) {
+        return 31 - Integer.numberOfLeadingZeros(index + FIRST_SEGMENT_SIZE) - FIRST_SEGMENT_BITS;
+    }
+
+    private static int offsetOf(final int index, final int segment) {
+        return index + FIRST_SEGMENT_SIZE - (FIRST_SEGMENT_SIZE << segment);
+    }
+
+    private static final class View<E> extends AbstractList<E> implements RandomAccess {
+        private final AppendOnlyList<E> list;
+        private final int size;
+
+        View(final AppendOnlyList<E> list, final int size) {
+            this.list = list;
+            this.size = size;
+        }
+
+        @Override
+        public E get(final int index) {
+            return this.list.get(index, this.size);
+        }
+
+        @Override
+        public int size() {
+            return this.size;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package workflow;
+
+import java.util.List;
+
+/**
+ * One page of dashboard rows together with the cursor of the page after it. The cursor is the
+ * version the next page starts at, so pages stay consistent while new versions are added.
+ */
+public class DashboardPage {
+
+    /**
+     * Cursor returned once no version is left to read.
+     */
+    public static final int NO_MORE_VERSIONS = 0;
+
+    private final List<DashboardRow> rows;
+    private final int nextVersion;
+
+    private DashboardPage(final List<DashboardRow> rows, final int nextVersion) {
+        this.rows = rows;
+        this.nextVersion = nextVersion;
+    }
+
+    public static DashboardPage of(final List<DashboardRow> rows, final int nextVersion) {
+        return new DashboardPage(List.copyOf(rows), nextVersion);
+    }
+
+    public List<DashboardRow> getRows() {
+        return this.rows;
+    }
+
+    /**
+     * Returns the version the next page starts at.
+     *
+     * @return the cursor of the next page, or NO_MORE_VERSIONS after the last page
+     */
+    public int getNextVersion() {
+        return this.nextVersion;
+    }
+
+    public boolean hasNextPage() {
+        return this.nextVersion != NO_MORE_VERSIONS;
+    }
+}
@@ -0,0 +1,64 @@
+package workflow;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Dashboard rows of one offer, materialized incrementally. Each row, with its total price, is
+ * built once from the history columns and kept; a read only builds the rows of versions added
+ * since the previous read. The immutable view of all rows is cached until the offer gets a new
+ * version, so polling an unchanged offer returns the same list without allocating.
+ *
+ * <p>Reads of an up-to-date view are lock-free; bringing the rows up to date is serialized by a
+ * lock of its own, so it never waits for actions on the offer.
+ */
+final class DashboardRows {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final AppendOnlyList<DashboardRow> rows = new AppendOnlyList<>();
+    private volatile List<DashboardRow> view = List.of();
+
+    /**
+     * Returns every row up to at least the given number of versions.
+     *
+     * @param history      the history of the offer
+     * @param versions     the number of versions the rows must cover
+     * @param buyerUserId  the ID of the buyer of the offer
+     * @param sellerUserId the ID of the seller of the offer
+     * @return an immutable list of rows in version order, the same instance while no version is added
+     */
+    List<DashboardRow> upTo(final HistoryColumns history, final int versions, final String buyerUserId,
+            final String sellerUserId) {
+        final List<DashboardRow> current = this.view;
+        if (current.size() >= versions) {
+            return current;
+        }
+        this.lock.lock();
+        try {
+            if (this.rows.size() < versions) {
+                final Iterator<DashboardRow> rows = history.dashboardRows(this.rows.size(), HistoryOrder.OLDEST_FIRST,
+                        buyerUserId, sellerUserId);
+                for (int index = this.rows.size(); index < versions; index++) {
+                    this.rows.add(rows.next());
+                }
+            }
+            if (this.view.size() < versions) {
+                this.view = this.rows.view();
+            }
+            return this.view;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the row of a version if it has been materialized.
+     *
+     * @param index the index of the version, starting at 0
+     * @return the row, or null if it has not been built yet
+     */
+    DashboardRow get(final int index) {
+        return index >= 0 && index < this.rows.size() ? this.rows.get(index) : null;
+    }
+}
@@ -0,0 +1,565 @@
+package workflow;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+import workflow.Offer.OfferHistory;
+
+/**
+ * Offer repository that keeps offer histories in a single data file and only a bounded number
+ * of recently used offers on the heap, so the offers it holds can exceed the heap.
+ *
+ * <p>Every history entry is appended to the file as one record before it is appended to the
+ * offer. Records of one offer are chained through the position of the previous record, and the
+ * heap holds only the position of the last record of each offer and the user index. An offer
+ * that is not in use is rebuilt from its chain when it is next looked up.
+ *
+ * <p>The cache holds the most recently used offers; an offer that drops out of it stays in
+ * memory as long as a caller still references it, and is only reloaded once it has been
+ * collected, so there is never more than one instance of an offer.
+ *
+ * <p>Records are written to the file but not forced to disk, so they survive a process restart
+ * but not necessarily a power loss. Reopening the file rebuilds the index and cuts off a record
+ * that was only partly written.
+ *
+ * <p>Record layout:
+ * <pre>
+ *   int     length of the body
+ *   int     CRC32C of the body
+ *   body:
+ *   long    offer ID, most significant bits
+ *   long    offer ID, least significant bits
+ *   long    position of the previous record of the offer, -1 for the SUBMIT record
+ *   byte    action ordinal
+ *   byte    state ordinal
+ *   string  ID of the acting user
+ *   string  buyer ID, string seller ID                        SUBMIT record only
+ *   string  product name, int quantity, double price
+ *   int     count, then string key and string value pairs     private data set by the entry
+ *   int     count, then string keys                           private data removed by the entry
+ * </pre>
+ * A string is an int of its UTF-8 length, -1 for null, followed by its bytes.
+ */
+public final class DiskOfferRepository implements OfferRepository, OfferHistoryListener, Closeable {
+
+    /**
+     * Default number of recently used offers kept on the heap.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 10_000;
+
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final long NO_RECORD = -1;
+
+    private static final Action[] ACTIONS = Action.values();
+    private static final OfferState[] STATES = OfferState.values();
+
+    private final FileChannel file;
+    private final int cacheSize;
+    // This repository, then the index, then the listener given when it was opened
+    private final OfferHistoryListener historyListener;
+
+    // Position of the last record of every offer
+    private final Map<UUID, Long> lastRecords = new ConcurrentHashMap<>();
+    private final UserOfferIndex userToOfferMap = new UserOfferIndex();
+    private final OfferIndex offerIndex = new OfferIndex();
+
+    // Every offer instance that may still be referenced; the only way an offer is handed out
+    private final Map<UUID, OfferReference> liveOffers = new ConcurrentHashMap<>();
+    private final ReferenceQueue<Offer> collectedOffers = new ReferenceQueue<>();
+
+    // Guards recentlyUsed, which keeps the most recently used offers strongly reachable
+    private final ReentrantLock cacheLock = new ReentrantLock();
+    private final LinkedHashMap<UUID, Offer> recentlyUsed;
+
+    // Guards the end of the file
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private long size;
+
+    private DiskOfferRepository(final FileChannel file, final int cacheSize, final OfferHistoryListener next) {
+        this.file = file;
+        this.cacheSize = cacheSize;
+        this.historyListener = andThen(this.offerIndex).andThen(next);
+        this.recentlyUsed = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<UUID, Offer> eldest) {
+                return size() > DiskOfferRepository.this.cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Opens the repository stored in a file, creating the file if it does not exist, with the
+     * default cache size.
+     *
+     * @param path the data file
+     * @return the opened repository
+     * @throws IOException if the file cannot be read or is corrupt
+     */
+    public static DiskOfferRepository open(final Path path) throws IOException {
+        return open(path, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Opens the repository stored in a file, creating the file if it does not exist.
+     *
+     * @param path      the data file
+     * @param cacheSize the number of recently used offers kept on the heap
+     * @return the opened repository
+     * @throws IOException if the file cannot be read or is corrupt
+     * @throws IllegalArgumentException if cacheSize is negative
+     */
+    public static DiskOfferRepository open(final Path path, final int cacheSize) throws IOException {
+        return open(path, cacheSize, OfferHistoryListener.NONE);
+    }
+
+    /**
+     * Opens the repository stored in a file, creating the file if it does not exist. Every
+     * history entry is reported to a listener, such as an OfferChangeFeed, once it is written to
+     * the file, including entries of offers read back from the file.
+     *
+     * @param path      the data file
+     * @param cacheSize the number of recently used offers kept on the heap
+     * @param next      the listener notified of every written history entry
+     * @return the opened repository
+     * @throws IOException if the file cannot be read or is corrupt
+     * @throws IllegalArgumentException if cacheSize is negative
+     */
+    public static DiskOfferRepository open(final Path path, final int cacheSize, final OfferHistoryListener next)
+            throws IOException {
+        if (cacheSize < 0) {
+            throw new IllegalArgumentException("Cache size cannot be a negative value");
+        }
+        final FileChannel file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        final DiskOfferRepository repository = new DiskOfferRepository(file, cacheSize, next);
+        try {
+            repository.recover();
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+        return repository;
+    }
+
+    /**
+     * Returns this repository, which writes every entry to the data file, followed by the
+     * indexes by state, product and counterparty and the listener given when it was opened.
+     *
+     * @return the listener offers of this repository report to
+     */
+    @Override
+    public OfferHistoryListener getHistoryListener() {
+        return this.historyListener;
+    }
+
+    /**
+     * Appends the entry to the data file.
+     *
+     * @throws UncheckedIOException if the file cannot be written
+     */
+    @Override
+    public void beforeAppend(final Offer offer, final OfferHistory offerHistory) {
+        final UUID offerId = offer.getOfferKey();
+        final OfferHistory previous = offer.getVersion() == 0 ? null : offer.getLastOfferHistory();
+        final long previousRecord = previous == null ? NO_RECORD : this.lastRecords.get(offerId);
+        final ByteBuffer record = encode(offer, offerHistory, previous, previousRecord);
+        final long position;
+        this.writeLock.lock();
+        try {
+            position = this.size;
+            while (record.hasRemaining()) {
+                this.file.write(record, position + record.position());
+            }
+            this.size += record.limit();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            this.writeLock.unlock();
+        }
+        this.lastRecords.put(offerId, position);
+    }
+
+    /**
+     * Makes a newly submitted offer available by its ID and indexes it for both parties.
+     * Its SUBMIT entry is already in the data file.
+     *
+     * @param offer the offer to add
+     */
+    @Override
+    public void add(final Offer offer) {
+        expungeCollectedOffers();
+        this.liveOffers.put(offer.getOfferKey(), new OfferReference(offer, this.collectedOffers));
+        markUsed(offer);
+        this.userToOfferMap.add(offer.getOfferKey(), offer.getBuyerUserId(), offer.getSellerUserId());
+        this.offerIndex.add(offer);
+    }
+
+    /**
+     * Retrieves an offer by its ID, rebuilding it from the data file if it is not in memory.
+     *
+     * @param offerId the unique ID of the offer
+     * @return the offer, or null if there is no offer with that ID
+     * @throws UncheckedIOException if the offer cannot be read
+     */
+    @Override
+    public Offer find(final String offerId) {
+        final UUID offerKey = OfferIds.parse(offerId);
+        return offerKey == null ? null : find(offerKey);
+    }
+
+    private Offer find(final UUID offerKey) {
+        expungeCollectedOffers();
+        final OfferReference reference = this.liveOffers.get(offerKey);
+        Offer offer = reference == null ? null : reference.get();
+        if (offer == null) {
+            offer = loadOffer(offerKey);
+        }
+        if (offer != null) {
+            markUsed(offer);
+        }
+        return offer;
+    }
+
+    @Override
+    public List<String> findOfferIds(final String userId) {
+        return this.userToOfferMap.offerIds(userId);
+    }
+
+    @Override
+    public String findLatestOfferId(final String userId) {
+        return this.userToOfferMap.latestOfferId(userId);
+    }
+
+    @Override
+    public Offer findLatestOffer(final String userId) {
+        final UUID offerKey = this.userToOfferMap.latestOfferKey(userId);
+        return offerKey == null ? null : find(offerKey);
+    }
+
+    @Override
+    public List<String> findOfferIdsByState(final OfferState state) {
+        return this.offerIndex.findByState(state);
+    }
+
+    @Override
+    public List<String> findOfferIdsBySeller(final String sellerUserId, final OfferState state) {
+        return this.offerIndex.findBySeller(sellerUserId, state);
+    }
+
+    @Override
+    public List<String> findOfferIdsByBuyer(final String buyerUserId, final OfferState state) {
+        return this.offerIndex.findByBuyer(buyerUserId, state);
+    }
+
+    @Override
+    public List<String> findOfferIdsByProduct(final String productName, final OfferState state) {
+        return this.offerIndex.findByProduct(productName, state);
+    }
+
+    @Override
+    public List<String> findOfferIdsBetween(final String userId, final String otherUserId) {
+        return this.offerIndex.findBetween(userId, otherUserId);
+    }
+
+    /**
+     * Closes the data file.
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        this.file.close();
+    }
+
+    /**
+     * Rebuilds the offer with the given ID unless another thread did so first.
+     */
+    private Offer loadOffer(final UUID offerId) {
+        final Offer[] loaded = new Offer[1];
+        this.liveOffers.compute(offerId, (key, reference) -> {
+            Offer offer = reference == null ? null : reference.get();
+            if (offer == null) {
+                final Long lastRecord = this.lastRecords.get(offerId);
+                if (lastRecord == null) {
+                    return null;
+                }
+                offer = readOffer(offerId, lastRecord);
+                reference = new OfferReference(offer, this.collectedOffers);
+            }
+            loaded[0] = offer;
+            return reference;
+        });
+        return loaded[0];
+    }
+
+    private void markUsed(final Offer offer) {
+        this.cacheLock.lock();
+        try {
+            this.recentlyUsed.put(offer.getOfferKey(), offer);
+        } finally {
+            this.cacheLock.unlock();
+        }
+    }
+
+    private void expungeCollectedOffers() {
+        OfferReference reference;
+        while ((reference = (OfferReference) this.collectedOffers.poll()) != null) {
+            this.liveOffers.remove(reference.offerId, reference);
+        }
+    }
+
+    private static ByteBuffer encode(final Offer offer, final OfferHistory offerHistory, final OfferHistory previous,
+            final long previousRecord) {
+        final List<byte[]> strings = new ArrayList<>();
+        final List<Map.Entry<String, String>> set = new ArrayList<>();
+        final List<String> removed = new ArrayList<>();
+        OfferJournal.diffPrivateData(previous == null ? Map.of() : previous.getPrivateData(),
+                offerHistory.getPrivateData(), set::add, removed::add);
+
+        int bodySize = 3 * Long.BYTES + 2 + Integer.BYTES + Double.BYTES + 2 * Integer.BYTES;
+        bodySize += stringSize(strings, offerHistory.getOfferUserId());
+        if (previous == null) {
+            bodySize += stringSize(strings, offer.getBuyerUserId()) + stringSize(strings, offer.getSellerUserId());
+        }
+        bodySize += stringSize(strings, offerHistory.getOfferDetails().getProductName());
+        for (Map.Entry<String, String> entry : set) {
+            bodySize += stringSize(strings, entry.getKey()) + stringSize(strings, entry.getValue());
+        }
+        for (String key : removed) {
+            bodySize += stringSize(strings, key);
+        }
+
+        final ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + bodySize);
+        record.position(RECORD_HEADER_SIZE);
+        final UUID offerId = offer.getOfferKey();
+        record.putLong(offerId.getMostSignificantBits());
+        record.putLong(offerId.getLeastSignificantBits());
+        record.putLong(previousRecord);
+        record.put((byte) offerHistory.getOfferAction().ordinal());
+        record.put((byte) offerHistory.getOfferState().ordinal());
+        int string = 0;
+        putString(record, strings.get(string++));
+        if (previous == null) {
+            putString(record, strings.get(string++));
+            putString(record, strings.get(string++));
+        }
+        putString(record, strings.get(string++));
+        record.putInt(offerHistory.getOfferDetails().getProductQuantity());
+        record.putDouble(offerHistory.getOfferDetails().getProductPrice());
+        record.putInt(set.size());
+        for (int i = 0; i < set.size(); i++) {
+            putString(record, strings.get(string++));
+            putString(record, strings.get(string++));
+        }
+        record.putInt(removed.size());
+        for (int i = 0; i < removed.size(); i++) {
+            putString(record, strings.get(string++));
+        }
+
+        final CRC32C crc = new CRC32C();
+        crc.update(record.array(), RECORD_HEADER_SIZE, bodySize);
+        record.putInt(0, bodySize);
+        record.putInt(4, (int) crc.getValue());
+        record.flip();
+        return record;
+    }
+
+    private static int stringSize(final List<byte[]> strings, final String value) {
+        final byte[] bytes = value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+        strings.add(bytes);
+        return Integer.BYTES + (bytes == null ? 0 : bytes.length);
+    }
+
+    private static void putString(final ByteBuffer record, final byte[] bytes) {
+        if (bytes == null) {
+            record.putInt(-1);
+        } else {
+            record.putInt(bytes.length);
+            record.put(bytes);
+        }
+    }
+
+    private static String getString(final ByteBuffer body) {
+        final int length = body.getInt();
+        if (length < 0) {
+            return null;
+        }
+        final String value = new String(body.array(), body.arrayOffset() + body.position(), length, StandardCharsets.UTF_8);
+        body.position(body.position() + length);
+        return value;
+    }
+
+    /**
+     * Reads the body of the record at the given position. Only a record at the end of the file
+     * can be the remainder of an interrupted write; a record followed by others must be intact.
+     *
+     * @return the body, or null if the record extends past the end of the file, or ends at it and
+     *         fails its checksum
+     * @throws IOException if the file cannot be read or a record before the last one is corrupt
+     */
+    private ByteBuffer readRecord(final long position, final long end) throws IOException {
+        if (position + RECORD_HEADER_SIZE > end) {
+            return null;
+        }
+        final ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        readFully(header, position);
+        final int length = header.getInt(0);
+        if (length > 0 && position + RECORD_HEADER_SIZE + length > end) {
+            return null;
+        }
+        if (length <= 0) {
+            throw new IOException("Corrupt record length at position " + position);
+        }
+        final ByteBuffer body = ByteBuffer.allocate(length);
+        readFully(body, position + RECORD_HEADER_SIZE);
+        final CRC32C crc = new CRC32C();
+        crc.update(body.array(), 0, length);
+        if ((int) crc.getValue() != header.getInt(4)) {
+            if (position + RECORD_HEADER_SIZE + length == end) {
+                return null;
+            }
+            throw new IOException("Corrupt record at position " + position);
+        }
+        body.flip();
+        return body;
+    }
+
+    private void readFully(final ByteBuffer buffer, final long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (this.file.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of offer data file");
+            }
+        }
+    }
+
+    /**
+     * Rebuilds an offer by following its chain of records back to the SUBMIT record.
+     */
+    private Offer readOffer(final UUID offerId, final long lastRecord) {
+        final List<ByteBuffer> records = new ArrayList<>();
+        try {
+            for (long position = lastRecord; position != NO_RECORD; ) {
+                // Every record of the chain was written before its position was published
+                final ByteBuffer body = readRecord(position, Long.MAX_VALUE);
+                if (body == null) {
+                    throw new IOException("Corrupt record of offer " + offerId + " at position " + position);
+                }
+                records.add(body);
+                position = body.getLong(2 * Long.BYTES);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Collections.reverse(records);
+
+        Offer offer = null;
+        OfferHistory previous = null;
+        PersistentHashMap<String, String> privateData = PersistentHashMap.empty();
+        for (ByteBuffer body : records) {
+            body.position(3 * Long.BYTES);
+            final Action action = ACTIONS[body.get()];
+            final OfferState state = STATES[body.get()];
+            final String userId = getString(body);
+            final String buyerUserId = previous == null ? getString(body) : null;
+            final String sellerUserId = previous == null ? getString(body) : null;
+            final String productName = getString(body);
+            final int productQuantity = body.getInt();
+            final double productPrice = body.getDouble();
+            for (int i = body.getInt(); i > 0; i--) {
+                privateData = privateData.plus(getString(body), getString(body));
+            }
+            for (int i = body.getInt(); i > 0; i--) {
+                privateData = privateData.minus(getString(body));
+            }
+
+            // Entries that kept the details share one instance, as they did before the offer was evicted
+            OfferDetails offerDetails = previous == null ? null : previous.getOfferDetails();
+            if (offerDetails == null || !Objects.equals(offerDetails.getProductName(), productName)
+                    || offerDetails.getProductQuantity() != productQuantity
+                    || Double.compare(offerDetails.getProductPrice(), productPrice) != 0) {
+                offerDetails = OfferDetails.of(productName, productQuantity, productPrice);
+            }
+            final OfferHistory offerHistory = new OfferHistory(offerDetails, state, action, userId, privateData);
+            if (offer == null) {
+                offer = Offer.restore(offerId, buyerUserId, sellerUserId, offerHistory, this.historyListener);
+            } else {
+                offer.replay(offerHistory);
+            }
+            previous = offerHistory;
+        }
+        return offer;
+    }
+
+    /**
+     * Scans the data file to rebuild the last record positions and the user index, and cuts off
+     * a record at the end that was only partly written.
+     *
+     * @throws IOException if a record before the last one is corrupt
+     */
+    private void recover() throws IOException {
+        final long end = this.file.size();
+        long position = 0;
+        // Parties, latest state and latest product of every offer, indexed once the file is read
+        final Map<UUID, Object[]> latest = new LinkedHashMap<>();
+        while (position < end) {
+            final ByteBuffer body = readRecord(position, end);
+            if (body == null) {
+                break;
+            }
+            final UUID offerId = new UUID(body.getLong(), body.getLong());
+            final long previousRecord = body.getLong();
+            body.get();
+            final OfferState state = STATES[body.get()];
+            getString(body);
+            if (previousRecord == NO_RECORD) {
+                final String buyerUserId = getString(body);
+                final String sellerUserId = getString(body);
+                this.userToOfferMap.add(offerId, buyerUserId, sellerUserId);
+                latest.put(offerId, new Object[] { buyerUserId, sellerUserId, null, null });
+            }
+            final Object[] offer = latest.get(offerId);
+            if (offer != null) {
+                offer[2] = state;
+                offer[3] = getString(body);
+            }
+            this.lastRecords.put(offerId, position);
+            position += RECORD_HEADER_SIZE + body.limit();
+        }
+        if (position < end) {
+            this.file.truncate(position);
+        }
+        this.size = position;
+        latest.forEach((offerId, offer) -> this.offerIndex.add(offerId, (String) offer[0], (String) offer[1],
+                (OfferState) offer[2], (String) offer[3]));
+    }
+
+    /**
+     * Weak reference to an offer that remembers the ID of the offer once it is collected.
+     */
+    private static final class OfferReference extends WeakReference<Offer> {
+        private final UUID offerId;
+
+        OfferReference(final Offer offer, final ReferenceQueue<Offer> queue) {
+            super(offer, queue);
+            this.offerId = offer.getOfferKey();
+        }
+    }
+}
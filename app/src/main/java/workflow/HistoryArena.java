@@ -0,0 +1,160 @@
+package workflow;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Off-heap memory for history columns, carved out of large direct buffers so that a block costs
+ * no heap object of its own. Blocks come in size classes; a freed block is kept on the free list
+ * of its class and handed out again before any new memory is taken.
+ *
+ * <p>A block is addressed by a long holding the index of its chunk in the high half and its
+ * offset within the chunk in the low half. Chunks are never released.
+ */
+final class HistoryArena {
+
+    private static final int CHUNK_SIZE = 4 << 20;
+
+    private static final HistoryArena SHARED = new HistoryArena();
+
+    // Readers resolve addresses without locking; the array is replaced whenever a chunk is added
+    private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+
+    // Guards allocation, the free lists and the counters below
+    private final ReentrantLock lock = new ReentrantLock();
+    private long[][] freeBlocks = new long[0][];
+    private int[] freeCounts = new int[0];
+    private int currentChunk = -1;
+    private int chunkOffset;
+    private long reservedBytes;
+    private long usedBytes;
+
+    /**
+     * Returns the arena shared by every offer.
+     *
+     * @return the shared arena
+     */
+    static HistoryArena shared() {
+        return SHARED;
+    }
+
+    /**
+     * Allocates a block.
+     *
+     * @param sizeClass the size class, which selects the free list to reuse blocks from
+     * @param bytes     the size of every block of the class
+     * @return the address of the block
+     */
+    long allocate(final int sizeClass, final int bytes) {
+        this.lock.lock();
+        try {
+            this.usedBytes += bytes;
+            if (sizeClass < this.freeCounts.length && this.freeCounts[sizeClass] > 0) {
+                return this.freeBlocks[sizeClass][--this.freeCounts[sizeClass]];
+            }
+            if (bytes > CHUNK_SIZE) {
+                // A block this large gets a chunk of its own
+                return address(addChunk(bytes), 0);
+            }
+            if (this.currentChunk < 0 || this.chunkOffset + bytes > CHUNK_SIZE) {
+                this.currentChunk = addChunk(CHUNK_SIZE);
+                this.chunkOffset = 0;
+            }
+            final long address = address(this.currentChunk, this.chunkOffset);
+            this.chunkOffset += bytes;
+            return address;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns a block to the free list of its size class.
+     *
+     * @param sizeClass the size class the block was allocated with
+     * @param bytes     the size of the block
+     * @param address   the address of the block
+     */
+    void free(final int sizeClass, final int bytes, final long address) {
+        this.lock.lock();
+        try {
+            this.usedBytes -= bytes;
+            if (sizeClass >= this.freeCounts.length) {
+                this.freeBlocks = Arrays.copyOf(this.freeBlocks, sizeClass + 1);
+                this.freeCounts = Arrays.copyOf(this.freeCounts, sizeClass + 1);
+            }
+            long[] free = this.freeBlocks[sizeClass];
+            if (free == null) {
+                free = new long[16];
+            } else if (this.freeCounts[sizeClass] == free.length) {
+                free = Arrays.copyOf(free, free.length * 2);
+            }
+            free[this.freeCounts[sizeClass]++] = address;
+            this.freeBlocks[sizeClass] = free;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the chunk a block lives in; read it with absolute gets at offset(address).
+     *
+     * @param address the address of the block
+     * @return the chunk holding the block
+     */
+    ByteBuffer chunk(final long address) {
+        return this.chunks[(int) (address >>> 32)];
+    }
+
+    /**
+     * Returns the offset of a block within its chunk.
+     *
+     * @param address the address of the block
+     * @return the offset of the block
+     */
+    static int offset(final long address) {
+        return (int) address;
+    }
+
+    /**
+     * Returns the number of bytes in blocks that are currently allocated.
+     *
+     * @return the allocated bytes
+     */
+    long usedBytes() {
+        this.lock.lock();
+        try {
+            return this.usedBytes;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of off-heap bytes reserved for chunks.
+     *
+     * @return the reserved bytes
+     */
+    long reservedBytes() {
+        this.lock.lock();
+        try {
+            return this.reservedBytes;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private int addChunk(final int size) {
+        final ByteBuffer[] current = this.chunks;
+        final ByteBuffer[] next = Arrays.copyOf(current, current.length + 1);
+        next[current.length] = ByteBuffer.allocateDirect(size);
+        this.chunks = next;
+        this.reservedBytes += size;
+        return current.length;
+    }
+
+    private static long address(final int chunk, final int offset) {
+        return (long) chunk << 32 | offset;
+    }
+}
@@ -0,0 +1,811 @@
+package workflow;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+import workflow.Offer.OfferHistory;
+
+/**
+ * History of one offer stored off the heap as a stream of records, each holding only what its
+ * version changed from the version before. A record starts with two bytes:
+ * <pre>
+ *   byte    action ordinal (3 bits), state ordinal (3 bits), user (2 bits)
+ *   byte    flags of the fields that follow
+ * </pre>
+ * The user bits say whether the acting user is the one of the previous version, the other user
+ * before that, as when two parties take turns, or a symbol written after the flags. The product
+ * symbol and quantity follow only when they changed, the price as a varint of the change in cents,
+ * or its eight bytes if it is not a whole number of cents, and a flag moves the version to the next
+ * private data snapshot. A counter-proposal that changes the price costs four or five bytes, and
+ * an acceptance or a cancellation two.
+ *
+ * <p>Every KEYFRAME_INTERVAL versions the record is a keyframe that repeats every field, and the
+ * position of each keyframe is kept on the heap, so reading a version decodes at most
+ * KEYFRAME_INTERVAL records. Records are written to blocks of doubling size (64, 128, 256, ...
+ * bytes) and never span two, so appending never moves existing records. Strings are kept once
+ * in the shared SymbolTable, where the columns hold them until they are collected, and private
+ * data snapshots are kept on the heap only when they change, since consecutive versions share
+ * them.
+ *
+ * <p>OfferHistory and DashboardRow objects are built from the records on demand; only the last
+ * entry is kept as an object. A single writer at a time is expected, while readers are lock-free:
+ * every record below the published size is complete. Blocks are returned to the arena once the
+ * history is unreachable.
+ */
+final class HistoryColumns {
+
+    /**
+     * Number of versions from one keyframe to the next.
+     */
+    static final int KEYFRAME_INTERVAL = 16;
+
+    private static final int KEYFRAME_BITS = 4;
+    private static final int FIRST_BLOCK_BITS = 6;
+    // Fills the end of a block the next record did not fit in; its action bits match no action
+    private static final byte PADDING = (byte) 0xFF;
+    // Keyframe positions hold the block in the high and the offset in the low bits
+    private static final int OFFSET_BITS = 26;
+
+    // User bits of the first byte
+    private static final int SAME_USER = 0;
+    private static final int OTHER_USER = 1;
+    private static final int NEW_USER = 2;
+
+    // Flags of the second byte
+    private static final int PRODUCT = 1;
+    private static final int QUANTITY = 2;
+    private static final int PRICE_CENTS = 4;
+    private static final int PRICE_BITS = 8;
+    private static final int PRIVATE_DATA = 16;
+
+    private static final Cleaner CLEANER = Cleaner.create();
+    private static final OfferState[] OFFER_STATES = OfferState.values();
+    private static final Action[] OFFER_ACTIONS = Action.values();
+
+    private final HistoryArena arena;
+    private final SymbolTable symbols;
+    private final Blocks blocks;
+    // Distinct private data snapshots, in the order the versions introduced them
+    private final AppendOnlyList<PersistentHashMap<String, String>> privateData = new AppendOnlyList<>();
+    // Position of the record of every KEYFRAME_INTERVAL-th version
+    private volatile int[] keyframes = new int[4];
+    private volatile OfferHistory last;
+    private volatile int size;
+
+    // Fields of the last version and the write position, used by the writer only
+    private final Writer writer = new Writer();
+    private int block = -1;
+    private int offset;
+    private int bytes;
+
+    /**
+     * Creates empty columns in the shared arena and symbol table.
+     */
+    HistoryColumns() {
+        this(HistoryArena.shared(), SymbolTable.shared());
+    }
+
+    HistoryColumns(final HistoryArena arena, final SymbolTable symbols) {
+        this.arena = arena;
+        this.symbols = symbols;
+        this.blocks = new Blocks(arena, symbols);
+        CLEANER.register(this, this.blocks);
+    }
+
+    /**
+     * Appends a version and publishes it to readers.
+     *
+     * @param offerHistory the entry of the new version
+     */
+    void add(final OfferHistory offerHistory) {
+        final int index = this.size;
+        final PersistentHashMap<String, String> data = offerHistory.getPersistentPrivateData();
+        final int dataSize = this.privateData.size();
+        if (dataSize == 0 || this.privateData.last() != data) {
+            this.privateData.add(data);
+        }
+        final OfferDetails offerDetails = offerHistory.getOfferDetails();
+        final int user = hold(offerHistory.getOfferUserId());
+        final int product = hold(offerDetails.getProductName());
+        final Writer writer = this.writer;
+        reserve(writer.plan(index, user, product, offerDetails.getProductQuantity(), offerDetails.getProductPrice(),
+                this.privateData.size() - 1));
+        final long address = this.blocks.addresses[this.block];
+        final int start = this.offset;
+        if ((index & (KEYFRAME_INTERVAL - 1)) == 0) {
+            int[] current = this.keyframes;
+            final int keyframe = index >>> KEYFRAME_BITS;
+            if (keyframe == current.length) {
+                current = Arrays.copyOf(current, 2 * keyframe);
+            }
+            current[keyframe] = this.block << OFFSET_BITS | start;
+            this.keyframes = current;
+        }
+        this.offset = writer.write(this.arena.chunk(address), HistoryArena.offset(address), start,
+                offerHistory.getOfferAction(), offerHistory.getOfferState());
+        if (this.offset > blockBytes(this.block)) {
+            throw new IllegalStateException("Record of version " + (index + 1) + " overran its block");
+        }
+        this.bytes += this.offset - start;
+
+        this.last = canonical(offerHistory, user, product);
+        // Publishing the size last makes the record visible to readers that observe it
+        this.size = index + 1;
+    }
+
+    /**
+     * Returns the handle of a string in the symbol table and holds the symbol until the columns
+     * are collected, unless they hold it already. Only the writer may call it.
+     *
+     * @param value the string, may be null
+     * @return the handle of the string
+     */
+    int hold(final String value) {
+        if (value == null) {
+            return SymbolTable.NULL;
+        }
+        final int handle = this.symbols.find(value);
+        if (handle != SymbolTable.NULL && this.blocks.holds(handle)) {
+            return handle;
+        }
+        final int held = this.symbols.intern(value);
+        this.blocks.hold(held);
+        return held;
+    }
+
+    /**
+     * Makes sure the current block has room for a record, padding it and moving to a new block
+     * if it has not.
+     *
+     * @param recordBytes the most bytes the record may take
+     */
+    private void reserve(final int recordBytes) {
+        if (this.block >= 0 && this.offset + recordBytes <= blockBytes(this.block)) {
+            return;
+        }
+        if (this.block >= 0 && this.offset < blockBytes(this.block)) {
+            final long address = this.blocks.addresses[this.block];
+            this.arena.chunk(address).put(HistoryArena.offset(address) + this.offset, PADDING);
+        }
+        final int next = this.block + 1;
+        final long[] addresses = Arrays.copyOf(this.blocks.addresses, next + 1);
+        addresses[next] = this.arena.allocate(next, blockBytes(next));
+        this.blocks.addresses = addresses;
+        this.block = next;
+        this.offset = 0;
+    }
+
+    /**
+     * Returns the entry itself if its strings are the ones held by the symbol table, otherwise a
+     * copy that uses them, so the cached last entry keeps no private copy of a user ID or product.
+     */
+    private OfferHistory canonical(final OfferHistory offerHistory, final int user, final int product) {
+        final String userId = this.symbols.resolve(user);
+        final OfferDetails offerDetails = offerHistory.getOfferDetails();
+        final String productName = this.symbols.resolve(product);
+        if (userId == offerHistory.getOfferUserId() && productName == offerDetails.getProductName()) {
+            return offerHistory;
+        }
+        final OfferDetails canonicalDetails = productName == offerDetails.getProductName() ? offerDetails
+                : OfferDetails.of(productName, offerDetails.getProductQuantity(), offerDetails.getProductPrice());
+        return new OfferHistory(canonicalDetails, offerHistory.getOfferState(), offerHistory.getOfferAction(), userId,
+                offerHistory.getPersistentPrivateData());
+    }
+
+    /**
+     * Returns the number of versions.
+     *
+     * @return the size
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the number of bytes the records of all versions take, excluding the unused end of
+     * each block.
+     *
+     * @return the encoded size of the history
+     */
+    int encodedBytes() {
+        return this.bytes;
+    }
+
+    /**
+     * Returns the entry of the latest version without building it from the records.
+     *
+     * @return the last entry
+     * @throws IndexOutOfBoundsException if nothing has been appended
+     */
+    OfferHistory last() {
+        final OfferHistory offerHistory = this.last;
+        if (offerHistory == null) {
+            throw new IndexOutOfBoundsException("Index -1 out of bounds for length 0");
+        }
+        return offerHistory;
+    }
+
+    /**
+     * Builds the entry at the given index from the records.
+     *
+     * @param index the index of the version, starting at 0
+     * @return a new OfferHistory for that version
+     * @throws IndexOutOfBoundsException if the version does not exist
+     */
+    OfferHistory get(final int index) {
+        return get(index, this.size);
+    }
+
+    private OfferHistory get(final int index, final int bound) {
+        checkIndex(index, bound);
+        return new Cursor(index).toOfferHistory();
+    }
+
+    /**
+     * Builds the dashboard row of a version straight from the records.
+     *
+     * @param index        the index of the version, starting at 0
+     * @param buyerUserId  the ID of the buyer of the offer
+     * @param sellerUserId the ID of the seller of the offer
+     * @return the DashboardRow of that version
+     * @throws IndexOutOfBoundsException if the version does not exist
+     */
+    DashboardRow toDashboardRow(final int index, final String buyerUserId, final String sellerUserId) {
+        checkIndex(index, this.size);
+        return new Cursor(index).toDashboardRow(buyerUserId, sellerUserId);
+    }
+
+    /**
+     * Builds the dashboard rows of the versions from one index on in the given order, decoding
+     * every record once: oldest first by moving a cursor forward, newest first by decoding the
+     * versions from a keyframe up to the requested one and returning them in reverse.
+     *
+     * @param fromIndex    the index of the first version returned, starting at 0
+     * @param order        the order of the versions
+     * @param buyerUserId  the ID of the buyer of the offer
+     * @param sellerUserId the ID of the seller of the offer
+     * @return an iterator over the rows of the versions present now
+     * @throws IndexOutOfBoundsException if the version does not exist
+     */
+    Iterator<DashboardRow> dashboardRows(final int fromIndex, final HistoryOrder order, final String buyerUserId,
+            final String sellerUserId) {
+        final int bound = this.size;
+        checkIndex(fromIndex, bound);
+        return new DashboardRowIterator(fromIndex, bound, order, buyerUserId, sellerUserId);
+    }
+
+    /**
+     * Builds the entries of the versions from one index on, oldest first, decoding every record
+     * once.
+     *
+     * @param fromIndex the index of the first version returned, starting at 0
+     * @return an iterator over the entries of the versions present now
+     * @throws IndexOutOfBoundsException if the version does not exist
+     */
+    Iterator<OfferHistory> iterator(final int fromIndex) {
+        final int bound = this.size;
+        checkIndex(fromIndex, bound);
+        return new OfferHistoryIterator(fromIndex, bound);
+    }
+
+    /**
+     * Reports the private data changes made by one user in the versions after fromIndex up to and
+     * including toIndex, one call per changed key and version. The records are decoded in one
+     * pass, and snapshots are compared only where a version introduced a new one, skipping the
+     * trie nodes it shares with the snapshot before it.
+     *
+     * @param fromIndex the index of the version the changes are made after
+     * @param toIndex   the index of the last version whose changes are reported
+     * @param userId    the ID of the user whose changes are reported
+     * @param visitor   receives each changed key with its value before and after the change
+     * @throws IndexOutOfBoundsException if either version does not exist
+     */
+    void diffPrivateData(final int fromIndex, final int toIndex, final String userId,
+            final PersistentHashMap.DiffVisitor<String, String> visitor) {
+        final int bound = this.size;
+        checkIndex(fromIndex, bound);
+        checkIndex(toIndex, bound);
+        final Cursor cursor = new Cursor(fromIndex);
+        int previous = cursor.dataIndex;
+        for (int index = fromIndex + 1; index <= toIndex; index++) {
+            cursor.next();
+            final int current = cursor.dataIndex;
+            if (current != previous && userId.equals(this.symbols.resolve(cursor.user))) {
+                this.privateData.get(current).diff(this.privateData.get(previous), visitor);
+            }
+            previous = current;
+        }
+    }
+
+    /**
+     * Returns a read-only list over the versions appended so far, fixed to the current size.
+     * Entries are built from the records when they are read; iterating decodes each record once.
+     *
+     * @return a read-only view of the current versions
+     */
+    List<OfferHistory> view() {
+        return new View(this, this.size);
+    }
+
+    private static void checkIndex(final int index, final int bound) {
+        if (index < 0 || index >= bound) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + bound);
+        }
+    }
+
+    private static int blockBytes(final int block) {
+        return 1 << (FIRST_BLOCK_BITS + block);
+    }
+
+    /**
+     * Fields of one version as symbols and ordinals, and the price as cents when it is a whole
+     * number of them.
+     */
+    private static class Record {
+        int action;
+        int state;
+        int user = -1;
+        // The last user before the current one, or -1
+        int otherUser = -1;
+        int product;
+        int quantity;
+        double price;
+        long cents;
+        boolean inCents;
+        int dataIndex;
+
+        /**
+         * Reads the record at an offset, applying it to the fields of the version before unless
+         * it is a keyframe.
+         *
+         * @return the offset after the record
+         */
+        int read(final ByteBuffer chunk, final int base, int offset, final boolean keyframe) {
+            final int header = chunk.get(base + offset++) & 0xFF;
+            final int flags = chunk.get(base + offset++);
+            this.action = header >>> 5;
+            this.state = (header >>> 2) & 0x07;
+            switch (header & 0x03) {
+                case SAME_USER -> { }
+                case OTHER_USER -> {
+                    final int user = this.otherUser;
+                    this.otherUser = this.user;
+                    this.user = user;
+                }
+                default -> {
+                    final long user = getVarint(chunk, base, offset);
+                    offset = (int) (user >>> 32);
+                    if (keyframe) {
+                        final long otherUser = getVarint(chunk, base, offset);
+                        offset = (int) (otherUser >>> 32);
+                        this.otherUser = (int) otherUser - 1;
+                    } else {
+                        this.otherUser = this.user;
+                    }
+                    this.user = (int) user - 1;
+                }
+            }
+            if ((flags & PRODUCT) != 0) {
+                final long product = getVarint(chunk, base, offset);
+                offset = (int) (product >>> 32);
+                this.product = (int) product - 1;
+            }
+            if ((flags & QUANTITY) != 0) {
+                final long quantity = getVarint(chunk, base, offset);
+                offset = (int) (quantity >>> 32);
+                this.quantity = ((int) quantity >>> 1) ^ -((int) quantity & 1);
+            }
+            if ((flags & PRICE_CENTS) != 0) {
+                long change = 0;
+                for (int shift = 0; ; shift += 7) {
+                    final byte b = chunk.get(base + offset++);
+                    change |= (long) (b & 0x7F) << shift;
+                    if (b >= 0) {
+                        break;
+                    }
+                }
+                this.cents = (keyframe ? 0 : this.cents) + ((change >>> 1) ^ -(change & 1));
+                this.price = this.cents / 100.0;
+                this.inCents = true;
+            } else if ((flags & PRICE_BITS) != 0) {
+                this.price = Double.longBitsToDouble(chunk.getLong(base + offset));
+                // The writer takes the next change in cents from the rounded price, whole or not
+                this.cents = (long) Math.rint(this.price * 100);
+                this.inCents = false;
+                offset += Long.BYTES;
+            }
+            if (keyframe) {
+                final long dataIndex = getVarint(chunk, base, offset);
+                offset = (int) (dataIndex >>> 32);
+                this.dataIndex = (int) dataIndex;
+            } else if ((flags & PRIVATE_DATA) != 0) {
+                this.dataIndex++;
+            }
+            return offset;
+        }
+
+        /**
+         * Reads a varint of up to 32 bits.
+         *
+         * @return the offset after the varint in the high and the value in the low 32 bits
+         */
+        private static long getVarint(final ByteBuffer chunk, final int base, int offset) {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                final byte b = chunk.get(base + offset++);
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return (long) offset << 32 | (value & 0xFFFFFFFFL);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the records, holding the fields of the last version written and of the version
+     * being written.
+     */
+    private static final class Writer extends Record {
+        private boolean keyframe;
+        private int userBits;
+        private int flags;
+        private int nextUser;
+        private int nextProduct;
+        private int nextQuantity;
+        private double nextPrice;
+        private long nextCents;
+        private boolean nextInCents;
+        private int nextDataIndex;
+
+        /**
+         * Works out which fields the record of a version must hold.
+         *
+         * @return the most bytes the record may take
+         */
+        int plan(final int index, final int user, final int product, final int quantity, final double price,
+                final int dataIndex) {
+            this.keyframe = (index & (KEYFRAME_INTERVAL - 1)) == 0;
+            this.userBits = this.keyframe ? NEW_USER : user == this.user ? SAME_USER
+                    : user == this.otherUser ? OTHER_USER : NEW_USER;
+            final double cents = Math.rint(price * 100);
+            this.nextInCents = Math.abs(cents) < 1L << 52
+                    && Double.doubleToLongBits((long) cents / 100.0) == Double.doubleToLongBits(price);
+            this.nextCents = (long) cents;
+            int flags = 0;
+            int recordBytes = 2;
+            if (this.userBits == NEW_USER) {
+                recordBytes += this.keyframe ? 10 : 5;
+            }
+            if (this.keyframe || product != this.product) {
+                flags |= PRODUCT;
+                recordBytes += 5;
+            }
+            if (this.keyframe || quantity != this.quantity) {
+                flags |= QUANTITY;
+                recordBytes += 5;
+            }
+            if (this.keyframe || Double.doubleToLongBits(price) != Double.doubleToLongBits(this.price)) {
+                // Keyframes give the cents themselves, other records the change since the last version
+                flags |= this.nextInCents && (this.keyframe || this.inCents) ? PRICE_CENTS : PRICE_BITS;
+                recordBytes += 10;
+            }
+            if (this.keyframe || dataIndex != this.dataIndex) {
+                flags |= PRIVATE_DATA;
+                recordBytes += this.keyframe ? 5 : 0;
+            }
+            this.flags = flags;
+            this.nextUser = user;
+            this.nextProduct = product;
+            this.nextQuantity = quantity;
+            this.nextPrice = price;
+            this.nextDataIndex = dataIndex;
+            return recordBytes;
+        }
+
+        /**
+         * Writes the planned record and takes its fields.
+         *
+         * @return the offset after the record
+         */
+        int write(final ByteBuffer chunk, final int base, int offset, final Action action, final OfferState state) {
+            final int flags = this.flags;
+            chunk.put(base + offset++, (byte) (action.ordinal() << 5 | state.ordinal() << 2 | this.userBits));
+            chunk.put(base + offset++, (byte) flags);
+            if (this.userBits == NEW_USER) {
+                offset = putVarint(chunk, base, offset, symbol(this.nextUser));
+                if (this.keyframe) {
+                    final int otherUser = this.nextUser == this.user ? this.otherUser : this.user;
+                    offset = putVarint(chunk, base, offset, symbol(otherUser));
+                }
+            }
+            if ((flags & PRODUCT) != 0) {
+                offset = putVarint(chunk, base, offset, symbol(this.nextProduct));
+            }
+            if ((flags & QUANTITY) != 0) {
+                offset = putVarint(chunk, base, offset, ((this.nextQuantity << 1) ^ (this.nextQuantity >> 31)) & 0xFFFFFFFFL);
+            }
+            if ((flags & PRICE_CENTS) != 0) {
+                final long change = this.nextCents - (this.keyframe ? 0 : this.cents);
+                offset = putVarint(chunk, base, offset, (change << 1) ^ (change >> 63));
+            } else if ((flags & PRICE_BITS) != 0) {
+                chunk.putLong(base + offset, Double.doubleToRawLongBits(this.nextPrice));
+                offset += Long.BYTES;
+            }
+            if (this.keyframe) {
+                offset = putVarint(chunk, base, offset, this.nextDataIndex);
+            }
+
+            this.action = action.ordinal();
+            this.state = state.ordinal();
+            if (this.nextUser != this.user) {
+                this.otherUser = this.user;
+                this.user = this.nextUser;
+            }
+            this.product = this.nextProduct;
+            this.quantity = this.nextQuantity;
+            this.price = this.nextPrice;
+            this.cents = this.nextCents;
+            this.inCents = this.nextInCents;
+            this.dataIndex = this.nextDataIndex;
+            return offset;
+        }
+
+        /**
+         * Returns the varint of a symbol, shifted by one so that NULL takes one byte and no
+         * handle takes more than five.
+         */
+        private static long symbol(final int handle) {
+            return (handle + 1) & 0xFFFFFFFFL;
+        }
+
+        private static int putVarint(final ByteBuffer chunk, final int base, int offset, long value) {
+            while ((value & ~0x7FL) != 0) {
+                chunk.put(base + offset++, (byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            chunk.put(base + offset++, (byte) value);
+            return offset;
+        }
+    }
+
+    /**
+     * Decodes the records from the keyframe at or before a version onwards.
+     */
+    private final class Cursor extends Record {
+        private final long[] addresses = HistoryColumns.this.blocks.addresses;
+        private int index;
+        private int block;
+        private int offset;
+        private ByteBuffer chunk;
+        private int base;
+
+        /**
+         * Positions the cursor on a version that readers may see.
+         */
+        Cursor(final int index) {
+            final int keyframe = index >>> KEYFRAME_BITS;
+            final int position = HistoryColumns.this.keyframes[keyframe];
+            moveTo(position >>> OFFSET_BITS, position & ((1 << OFFSET_BITS) - 1));
+            this.index = keyframe << KEYFRAME_BITS;
+            this.offset = read(this.chunk, this.base, this.offset, true);
+            while (this.index < index) {
+                next();
+            }
+        }
+
+        /**
+         * Moves to the next version, which must exist.
+         */
+        void next() {
+            if (this.offset >= blockBytes(this.block) || this.chunk.get(this.base + this.offset) == PADDING) {
+                moveTo(this.block + 1, 0);
+            }
+            this.index++;
+            this.offset = read(this.chunk, this.base, this.offset, (this.index & (KEYFRAME_INTERVAL - 1)) == 0);
+        }
+
+        private void moveTo(final int block, final int offset) {
+            this.block = block;
+            this.offset = offset;
+            this.chunk = HistoryColumns.this.arena.chunk(this.addresses[block]);
+            this.base = HistoryArena.offset(this.addresses[block]);
+        }
+
+        DashboardRow toDashboardRow(final String buyerUserId, final String sellerUserId) {
+            final SymbolTable symbols = HistoryColumns.this.symbols;
+            return DashboardRow.of(this.index + 1, OFFER_ACTIONS[this.action], symbols.resolve(this.user),
+                    OFFER_STATES[this.state], symbols.resolve(this.product), buyerUserId, sellerUserId, this.quantity,
+                    this.price);
+        }
+
+        OfferHistory toOfferHistory() {
+            return new OfferHistory(OfferDetails.of(HistoryColumns.this.symbols.resolve(this.product), this.quantity,
+                    this.price), OFFER_STATES[this.state], OFFER_ACTIONS[this.action],
+                    HistoryColumns.this.symbols.resolve(this.user), HistoryColumns.this.privateData.get(this.dataIndex));
+        }
+    }
+
+    /**
+     * Addresses of the blocks of one offer and the symbols its records refer to; frees the blocks
+     * and releases the symbols once the columns are collected.
+     */
+    private static final class Blocks implements Runnable {
+        private final HistoryArena arena;
+        private final SymbolTable symbols;
+        private volatile long[] addresses = new long[0];
+        // Held handles plus one in a linear-probing table, where 0 marks an empty slot
+        private int[] held = new int[8];
+        private int heldCount;
+
+        Blocks(final HistoryArena arena, final SymbolTable symbols) {
+            this.arena = arena;
+            this.symbols = symbols;
+        }
+
+        boolean holds(final int handle) {
+            final int[] table = this.held;
+            final int mask = table.length - 1;
+            for (int slot = mix(handle) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+                if (table[slot] == handle + 1) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void hold(final int handle) {
+            if (4 * (this.heldCount + 1) > 3 * this.held.length) {
+                final int[] previous = this.held;
+                this.held = new int[2 * previous.length];
+                for (int entry : previous) {
+                    if (entry != 0) {
+                        insert(this.held, entry);
+                    }
+                }
+            }
+            insert(this.held, handle + 1);
+            this.heldCount++;
+        }
+
+        private static void insert(final int[] table, final int entry) {
+            final int mask = table.length - 1;
+            int slot = mix(entry - 1) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = entry;
+        }
+
+        private static int mix(final int handle) {
+            return handle * 0x9E3779B9;
+        }
+
+        @Override
+        public void run() {
+            final long[] current = this.addresses;
+            for (int block = 0; block < current.length; block++) {
+                this.arena.free(block, blockBytes(block), current[block]);
+            }
+            for (int entry : this.held) {
+                if (entry != 0) {
+                    this.symbols.release(entry - 1);
+                }
+            }
+        }
+    }
+
+    private final class OfferHistoryIterator implements Iterator<OfferHistory> {
+        private final int bound;
+        private Cursor cursor;
+        private int index;
+
+        OfferHistoryIterator(final int fromIndex, final int bound) {
+            this.index = fromIndex;
+            this.bound = bound;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.index < this.bound;
+        }
+
+        @Override
+        public OfferHistory next() {
+            if (this.index >= this.bound) {
+                throw new NoSuchElementException();
+            }
+            if (this.cursor == null) {
+                this.cursor = new Cursor(this.index);
+            } else {
+                this.cursor.next();
+            }
+            this.index++;
+            return this.cursor.toOfferHistory();
+        }
+    }
+
+    private final class DashboardRowIterator implements Iterator<DashboardRow> {
+        private final int bound;
+        private final HistoryOrder order;
+        private final String buyerUserId;
+        private final String sellerUserId;
+        // Rows from the keyframe at groupStart on, decoded when iterating newest first
+        private final DashboardRow[] group;
+        private int groupStart = -1;
+        private Cursor cursor;
+        private int index;
+
+        DashboardRowIterator(final int fromIndex, final int bound, final HistoryOrder order, final String buyerUserId,
+                final String sellerUserId) {
+            this.index = fromIndex;
+            this.bound = bound;
+            this.order = order;
+            this.buyerUserId = buyerUserId;
+            this.sellerUserId = sellerUserId;
+            this.group = order == HistoryOrder.NEWEST_FIRST ? new DashboardRow[KEYFRAME_INTERVAL] : null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.index >= 0 && this.index < this.bound;
+        }
+
+        @Override
+        public DashboardRow next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final int index = this.index;
+            this.index = this.order.nextVersion(index);
+            if (this.group == null) {
+                if (this.cursor == null) {
+                    this.cursor = new Cursor(index);
+                } else {
+                    this.cursor.next();
+                }
+                return this.cursor.toDashboardRow(this.buyerUserId, this.sellerUserId);
+            }
+            if (index < this.groupStart || this.groupStart < 0) {
+                this.groupStart = index & -KEYFRAME_INTERVAL;
+                final Cursor cursor = new Cursor(this.groupStart);
+                this.group[0] = cursor.toDashboardRow(this.buyerUserId, this.sellerUserId);
+                for (int next = this.groupStart + 1; next <= index; next++) {
+                    cursor.next();
+                    this.group[next - this.groupStart] = cursor.toDashboardRow(this.buyerUserId, this.sellerUserId);
+                }
+            }
+            return this.group[index - this.groupStart];
+        }
+    }
+
+    private static final class View extends AbstractList<OfferHistory> implements RandomAccess {
+        private final HistoryColumns columns;
+        private final int size;
+
+        View(final HistoryColumns columns, final int size) {
+            this.columns = columns;
+            this.size = size;
+        }
+
+        @Override
+        public OfferHistory get(final int index) {
+            return this.columns.get(index, this.size);
+        }
+
+        @Override
+        public int size() {
+            return this.size;
+        }
+
+        @Override
+        public Iterator<OfferHistory> iterator() {
+            return this.columns.new OfferHistoryIterator(0, this.size);
+        }
+    }
+}
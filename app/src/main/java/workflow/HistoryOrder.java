@@ -0,0 +1,29 @@
+package workflow;
+
+/**
+ * Order in which the versions of an offer history are returned.
+ */
+public enum HistoryOrder {
+    OLDEST_FIRST,
+    NEWEST_FIRST;
+
+    /**
+     * Returns the version a traversal in this order starts at.
+     *
+     * @param versions the number of versions of the offer
+     * @return 1 for OLDEST_FIRST, otherwise the latest version
+     */
+    public int firstVersion(final int versions) {
+        return this == OLDEST_FIRST ? 1 : versions;
+    }
+
+    /**
+     * Returns the version that follows the given one in this order.
+     *
+     * @param version the current version
+     * @return the next version, which may be out of range once the traversal is complete
+     */
+    public int nextVersion(final int version) {
+        return this == OLDEST_FIRST ? version + 1 : version - 1;
+    }
+}
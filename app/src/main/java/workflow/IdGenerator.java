@@ -0,0 +1,31 @@
+package workflow;
+
+import java.util.UUID;
+
+/**
+ * Source of the unique IDs given to new offers and users. IDs are UUIDs, so IDs of every
+ * generator share one format and can be stored, parsed and compared alike.
+ */
+@FunctionalInterface
+public interface IdGenerator {
+
+    /**
+     * Generator of version 4 UUIDs drawn from SecureRandom, as returned by UUID.randomUUID().
+     */
+    IdGenerator RANDOM = UUID::randomUUID;
+
+    /**
+     * Generator of version 7 UUIDs, which start with the creation time in milliseconds and are
+     * strictly increasing for IDs created by the same thread. IDs created later sort after earlier
+     * ones, both as UUIDs and as text, so data indexed or logged by ID stays in creation order.
+     * Generating an ID takes no lock and draws no entropy from SecureRandom.
+     */
+    IdGenerator TIME_ORDERED = new TimeOrderedIdGenerator();
+
+    /**
+     * Returns a new ID.
+     *
+     * @return a new unique ID
+     */
+    UUID nextId();
+}
@@ -0,0 +1,190 @@
+package workflow;
+
+import java.util.List;
+import java.util.UUID;
+
+import workflow.Offer.OfferHistory;
+import workflow.TimingWheel.Timeout;
+
+/**
+ * Offer repository that keeps every offer and its history on the heap. Offers are looked up by
+ * the 128-bit value of their ID, parsed from the text given in calls.
+ *
+ * <p>A repository created with an OfferArchive moves terminal offers into the archive once its
+ * delay has passed, each time {@link #archive()} is called. Archived offers keep their place in
+ * every index and are still found by ID; they return to the repository when an entry is appended
+ * to them.
+ */
+public class InMemoryOfferRepository implements OfferRepository {
+
+    private final UserOfferIndex userToOfferMap = new UserOfferIndex();
+    private final OfferTable offerMap = new OfferTable();
+    private final OfferIndex offerIndex = new OfferIndex();
+    // Null if offers are never archived
+    private final OfferArchive archive;
+    // The index and the archive, followed by the listener given when the repository was created
+    private final OfferHistoryListener historyListener;
+
+    /**
+     * Creates an empty repository whose offers report their history entries to no one.
+     */
+    public InMemoryOfferRepository() {
+        this(OfferHistoryListener.NONE);
+    }
+
+    /**
+     * Creates an empty repository whose offers report their history entries to a listener, such
+     * as an OfferChangeFeed.
+     *
+     * @param historyListener the listener notified of every history entry
+     */
+    public InMemoryOfferRepository(final OfferHistoryListener historyListener) {
+        this.archive = null;
+        this.historyListener = this.offerIndex.andThen(historyListener);
+    }
+
+    /**
+     * Creates an empty repository that archives terminal offers and whose offers report their
+     * history entries to a listener.
+     *
+     * @param historyListener the listener notified of every history entry
+     * @param archive         the archive terminal offers are moved to
+     */
+    public InMemoryOfferRepository(final OfferHistoryListener historyListener, final OfferArchive archive) {
+        this.archive = archive;
+        final OfferHistoryListener faultIn = this::faultIn;
+        this.historyListener = faultIn.andThen(this.offerIndex).andThen(archive).andThen(historyListener);
+    }
+
+    /**
+     * Moves an archived offer back into the repository before an entry is appended to it.
+     */
+    private void faultIn(final Offer offer, final OfferHistory offerHistory) {
+        final UUID offerKey = offer.getOfferKey();
+        if (offer.getVersion() != 0 && this.offerMap.get(offerKey) != offer) {
+            // Added before it is dropped from the archive, so lookups find it in one or the other
+            this.offerMap.add(offer);
+            this.archive.remove(offerKey);
+        }
+    }
+
+    /**
+     * Returns the listener that keeps the indexes by state, product and counterparty up to date,
+     * followed by the listener given when the repository was created. The offers themselves
+     * hold their history.
+     *
+     * @return the listener for offers of this repository
+     */
+    @Override
+    public OfferHistoryListener getHistoryListener() {
+        return this.historyListener;
+    }
+
+    /**
+     * Makes an offer available by its ID and indexes it for both parties and by its current
+     * state and product.
+     *
+     * @param offer the offer to add
+     */
+    @Override
+    public void add(final Offer offer) {
+        this.offerMap.add(offer);
+        this.userToOfferMap.add(offer.getOfferKey(), offer.getBuyerUserId(), offer.getSellerUserId());
+        this.offerIndex.add(offer);
+        if (this.archive != null) {
+            this.archive.track(offer);
+        }
+    }
+
+    /**
+     * Moves every terminal offer whose archive delay has passed into the archive. Call it
+     * periodically, for example from a ScheduledExecutorService. Offers that received an entry
+     * after their delay passed stay in the repository.
+     *
+     * @return the number of offers archived
+     * @throws IllegalStateException if the repository was created without an archive
+     */
+    public int archive() {
+        if (this.archive == null) {
+            throw new IllegalStateException("No archive configured");
+        }
+        int archived = 0;
+        for (Timeout<UUID> timeout : this.archive.due()) {
+            final Offer offer = this.offerMap.get(timeout.getValue());
+            if (offer == null) {
+                continue;
+            }
+            final boolean[] moved = new boolean[1];
+            offer.whileLocked(() -> {
+                if (this.archive.isDue(timeout) && offer.getCurrentState().isTerminal()
+                        && this.offerMap.get(offer.getOfferKey()) == offer) {
+                    // Stored before it is removed, so lookups find it in one or the other
+                    this.archive.store(offer);
+                    this.offerMap.remove(offer);
+                    moved[0] = true;
+                }
+            });
+            if (moved[0]) {
+                archived++;
+            }
+        }
+        return archived;
+    }
+
+    @Override
+    public Offer find(final String offerId) {
+        final UUID offerKey = OfferIds.parse(offerId);
+        return offerKey == null ? null : get(offerKey);
+    }
+
+    private Offer get(final UUID offerKey) {
+        final Offer offer = this.offerMap.get(offerKey);
+        if (offer != null || this.archive == null) {
+            return offer;
+        }
+        final Offer archived = this.archive.load(offerKey, this.historyListener);
+        // Faulted back in while it was looked up in the archive
+        return archived != null ? archived : this.offerMap.get(offerKey);
+    }
+
+    @Override
+    public List<String> findOfferIds(final String userId) {
+        return this.userToOfferMap.offerIds(userId);
+    }
+
+    @Override
+    public String findLatestOfferId(final String userId) {
+        return this.userToOfferMap.latestOfferId(userId);
+    }
+
+    @Override
+    public Offer findLatestOffer(final String userId) {
+        final UUID offerKey = this.userToOfferMap.latestOfferKey(userId);
+        return offerKey == null ? null : get(offerKey);
+    }
+
+    @Override
+    public List<String> findOfferIdsByState(final OfferState state) {
+        return this.offerIndex.findByState(state);
+    }
+
+    @Override
+    public List<String> findOfferIdsBySeller(final String sellerUserId, final OfferState state) {
+        return this.offerIndex.findBySeller(sellerUserId, state);
+    }
+
+    @Override
+    public List<String> findOfferIdsByBuyer(final String buyerUserId, final OfferState state) {
+        return this.offerIndex.findByBuyer(buyerUserId, state);
+    }
+
+    @Override
+    public List<String> findOfferIdsByProduct(final String productName, final OfferState state) {
+        return this.offerIndex.findByProduct(productName, state);
+    }
+
+    @Override
+    public List<String> findOfferIdsBetween(final String userId, final String otherUserId) {
+        return this.offerIndex.findBetween(userId, otherUserId);
+    }
+}
@@ -1,38 +1,78 @@
 package workflow;
 
-import java.util.List;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.UUID;
 import java.util.Map;
-import java.util.HashMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+import workflow.OfferDifference.Change;
+import workflow.exceptions.InvalidNextActionException;
+import workflow.exceptions.InvalidStateTransitionException;
+import workflow.exceptions.OfferVersionConflictException;
 
 /**
  * Represents an Offer with buyer and seller information, current state, and historical data.
  * Tracks state transitions and actions taken on the offer.
+ *
+ * <p>Each offer guards its own state and history with a dedicated lock, so actions on
+ * unrelated offers never contend while two parties racing on the same offer are serialized
+ * and observe exactly one valid transition.
+ *
+ * <p>The offer ID is held as its 128-bit value and the parties as symbols of the shared
+ * SymbolTable, so neither costs a string per offer; both are turned back into text by the getters.
  */
 public class Offer {
-    private final String offerId;
-    private OfferState currentState;
-    private final String buyerUserId;
-    private final String sellerUserId;
-    private final List<OfferHistory> offerHistory;
+    private static final SymbolTable SYMBOLS = SymbolTable.shared();
+
+    // The 128-bit offer ID, held inline rather than as a UUID or its text
+    private final long offerIdHigh;
+    private final long offerIdLow;
+    private volatile OfferState currentState;
+    // Symbols of the parties in the shared SymbolTable, held by the history and translated back by the getters
+    private final int buyerUserId;
+    private final int sellerUserId;
+    private final HistoryColumns offerHistory;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final OfferHistoryListener listener;
+    // Created by the first dashboard read, so offers nobody polls keep no rows on the heap
+    private volatile DashboardRows dashboardRows;
+
+    /**
+     * Expected version that skips the optimistic version check.
+     */
+    public static final int ANY_VERSION = -1;
+
+    /**
+     * User ID recorded in the history for actions the system performs on behalf of neither
+     * party, such as cancelling an offer that expired.
+     */
+    public static final String SYSTEM_USER_ID = "system";
 
     /**
      * Inner class to store historical actions, state changes, and private data for an offer.
+     * Private data is held as an immutable persistent map, so entries that do not change
+     * between versions are shared instead of copied. The offer stores its history in columns
+     * and builds these entries when they are read.
      */
     public static class OfferHistory {
         private OfferDetails offerDetails;
         private OfferState offerState;
         private Action offerAction;
         private String userId;
-        private Map<String, String> privateData;
+        private PersistentHashMap<String, String> privateData;
 
-        OfferHistory(OfferDetails offerDetails, OfferState offerState, Action offerAction, String userId, Map<String, String> privateData) {
+        OfferHistory(OfferDetails offerDetails, OfferState offerState, Action offerAction, String userId, PersistentHashMap<String, String> privateData) {
             this.offerDetails = offerDetails;
             this.offerState = offerState;
             this.offerAction = offerAction;
             this.userId = userId;
-            this.privateData = new HashMap<>(privateData);
+            this.privateData = privateData;
         }
 
         public OfferDetails getOfferDetails() {
@@ -51,22 +91,34 @@ public class Offer {
             return this.userId;
         }
 
+        /**
+         * Returns the private data exactly as it was at this version.
+         *
+         * @return an immutable snapshot of the private data
+         */
         public Map<String, String> getPrivateData(){
             return this.privateData;
         }
+
+        PersistentHashMap<String, String> getPersistentPrivateData() {
+            return this.privateData;
+        }
     }
 
     /**
-     * Private constructor to initialize an Offer instance.
+     * Private constructor to initialize an Offer instance. The history starts out empty
+     * and receives the SUBMIT entry from the factory methods.
      */
-    private Offer(final String buyerUserId, final String sellerUserId, final OfferDetails offerDetails,
-            final OfferHistory offerHistory) {
-        this.offerId = UUID.randomUUID().toString();
-        this.buyerUserId = buyerUserId;
-        this.sellerUserId = sellerUserId;
+    private Offer(final UUID offerId, final String buyerUserId, final String sellerUserId,
+            final OfferHistoryListener listener) {
+        this.offerIdHigh = offerId.getMostSignificantBits();
+        this.offerIdLow = offerId.getLeastSignificantBits();
+        this.offerHistory = new HistoryColumns();
+        // The history holds the symbols of the parties for as long as the offer lives
+        this.buyerUserId = this.offerHistory.hold(buyerUserId);
+        this.sellerUserId = this.offerHistory.hold(sellerUserId);
         this.currentState = OfferState.AWAITING_SELLER_ACCEPTANCE;
-        this.offerHistory = new ArrayList<>();
-        this.offerHistory.add(offerHistory);
+        this.listener = listener;
     }
 
     /**
@@ -78,50 +130,216 @@ public class Offer {
      * @return a new Offer instance
      */
     public static Offer of(final String buyerUserId, final String sellerUserId, final OfferDetails offerDetails) {
+        return of(buyerUserId, sellerUserId, offerDetails, OfferHistoryListener.NONE);
+    }
+
+    /**
+     * Factory method to create a new Offer with a time-ordered ID, whose history entries,
+     * starting with the SUBMIT entry, are reported to a listener before they are appended.
+     * 
+     * @param buyerUserId  the ID of the buyer
+     * @param sellerUserId the ID of the seller
+     * @param offerDetails the details of the offer
+     * @param listener     the listener notified of every history entry
+     * @return a new Offer instance
+     */
+    public static Offer of(final String buyerUserId, final String sellerUserId, final OfferDetails offerDetails,
+            final OfferHistoryListener listener) {
+        return of(buyerUserId, sellerUserId, offerDetails, listener, IdGenerator.TIME_ORDERED);
+    }
+
+    /**
+     * Factory method to create a new Offer whose ID is taken from the given generator and whose
+     * history entries are reported to a listener before they are appended.
+     * 
+     * @param buyerUserId  the ID of the buyer
+     * @param sellerUserId the ID of the seller
+     * @param offerDetails the details of the offer
+     * @param listener     the listener notified of every history entry
+     * @param idGenerator  the generator of the offer ID
+     * @return a new Offer instance
+     */
+    public static Offer of(final String buyerUserId, final String sellerUserId, final OfferDetails offerDetails,
+            final OfferHistoryListener listener, final IdGenerator idGenerator) {
+        Offer offer = new Offer(idGenerator.nextId(), buyerUserId, sellerUserId, listener);
         OfferHistory offerHistory = new OfferHistory(offerDetails, OfferState.AWAITING_SELLER_ACCEPTANCE, Action.SUBMIT,
-                buyerUserId, new HashMap<>());
-        return new Offer(buyerUserId, sellerUserId, offerDetails, offerHistory);
+                offer.getBuyerUserId(), PersistentHashMap.empty());
+        // Nobody else can reach the offer yet; the lock lets a checkpoint wait for the SUBMIT entry
+        offer.lock.lock();
+        try {
+            offer.record(offerHistory);
+        } finally {
+            offer.lock.unlock();
+        }
+        return offer;
+    }
+
+    /**
+     * Recreates an offer from its SUBMIT entry while recovering persisted offers.
+     * The listener is not notified of the SUBMIT entry, which is already persisted.
+     * 
+     * @param offerId      the unique ID of the offer
+     * @param buyerUserId  the ID of the buyer
+     * @param sellerUserId the ID of the seller
+     * @param offerHistory the SUBMIT entry of the offer
+     * @param listener     the listener notified of future history entries
+     * @return the recovered Offer instance
+     */
+    static Offer restore(final UUID offerId, final String buyerUserId, final String sellerUserId,
+            final OfferHistory offerHistory, final OfferHistoryListener listener) {
+        Offer offer = new Offer(offerId, buyerUserId, sellerUserId, listener);
+        offer.replay(offerHistory);
+        return offer;
+    }
+
+    /**
+     * Returns the version of the offer once every entry already reported to the listener has
+     * been appended, by waiting for the action that is currently applied to finish.
+     * 
+     * @return the current version of the offer
+     */
+    int settledVersion() {
+        this.lock.lock();
+        try {
+            return getVersion();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Runs an action while holding the offer lock, so no history entry is appended meanwhile.
+     * 
+     * @param action the action to run
+     */
+    void whileLocked(final Runnable action) {
+        this.lock.lock();
+        try {
+            action.run();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Appends a persisted history entry while recovering an offer, without validating the
+     * transition or notifying the listener.
+     * 
+     * @param offerHistory the entry to append
+     */
+    void replay(final OfferHistory offerHistory) {
+        this.offerHistory.add(offerHistory);
+        this.currentState = offerHistory.getOfferState();
     }
 
     /**
      * Updates private data for the offer, appending this action to the history.
+     * The new snapshot shares every entry that is unchanged from the previous version.
      *
      * @param userId     the ID of the user making the update
      * @param privateData the private data to update
      */
     public void updatePrivateData(String userId, Map<String, String> privateData){
-        OfferHistory offerHistory = new OfferHistory(this.getLastOfferHistory().getOfferDetails(), this.getLastOfferHistory().getOfferState(), Action.UPDATE_PRIVATE_DATA, userId, privateData);
-        this.offerHistory.add(offerHistory);
+        this.lock.lock();
+        try {
+            OfferHistory lastOfferHistory = this.getLastOfferHistory();
+            OfferHistory offerHistory = new OfferHistory(lastOfferHistory.getOfferDetails(), lastOfferHistory.getOfferState(), Action.UPDATE_PRIVATE_DATA, userId, lastOfferHistory.privateData.withContentsOf(privateData));
+            record(offerHistory);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Updates private data for the offer if it is still at the expected version.
+     *
+     * @param userId          the ID of the user making the update
+     * @param privateData     the private data to update
+     * @param expectedVersion the version the caller last observed
+     * @throws OfferVersionConflictException if the offer has moved past expectedVersion
+     */
+    public void updatePrivateData(String userId, Map<String, String> privateData, int expectedVersion) {
+        this.lock.lock();
+        try {
+            checkVersion(expectedVersion);
+            updatePrivateData(userId, privateData);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Updates private data without throwing when the offer moved past the expected version.
+     *
+     * @param userId          the ID of the user making the update
+     * @param privateData     the private data to update
+     * @param expectedVersion the version the caller last observed, or ANY_VERSION to skip the check
+     * @return the outcome of the update
+     */
+    public ActionResult tryUpdatePrivateData(String userId, Map<String, String> privateData, int expectedVersion) {
+        this.lock.lock();
+        try {
+            if (expectedVersion != ANY_VERSION && expectedVersion != getVersion()) {
+                return ActionResult.rejected(RejectionReason.VERSION_CONFLICT);
+            }
+            updatePrivateData(userId, privateData);
+            return ActionResult.accepted(getOfferId(), getVersion());
+        } finally {
+            this.lock.unlock();
+        }
     }
 
     public String getOfferId() {
-        return this.offerId;
+        return getOfferKey().toString();
+    }
+
+    /**
+     * Returns the offer ID as the 128-bit value it is stored and indexed by.
+     *
+     * @return the offer ID
+     */
+    UUID getOfferKey() {
+        return new UUID(this.offerIdHigh, this.offerIdLow);
+    }
+
+    /**
+     * Determines if the offer has the given ID, without creating a UUID.
+     *
+     * @param mostSigBits  the most significant 64 bits of the ID
+     * @param leastSigBits the least significant 64 bits of the ID
+     * @return true if the offer has that ID, otherwise false
+     */
+    boolean hasOfferKey(final long mostSigBits, final long leastSigBits) {
+        return this.offerIdHigh == mostSigBits && this.offerIdLow == leastSigBits;
     }
 
     public OfferState getCurrentState() {
         return this.currentState;
     }
 
+    /**
+     * Returns the current version of the offer, which is the number of history entries.
+     * Reading the version never blocks on writers.
+     *
+     * @return the current version of the offer
+     */
+    public int getVersion() {
+        return this.offerHistory.size();
+    }
+
     /**
      * Executes a transition to a new state for the offer based on the action and user role.
      * Validates the transition through PermittedActionMap and StateTransitionMap.
      * 
      * @param newState     the new state to transition to
-     * @param currentState the current state of the offer
+     * @param currentState the current state of the offer as observed by the caller
      * @param action       the action being performed
      * @param userId       the ID of the user performing the action
      * @param isBuyer      true if the user is the buyer, false if the seller
+     * @throws InvalidStateTransitionException if the offer left currentState before the lock was acquired
      */
     public void transition(OfferState newState, OfferState currentState, Action action, String userId, boolean isBuyer) {
-        PermittedActionMap.checkAction(currentState, action, isBuyer);
-        StateTransitionMap.checkTransition(currentState, newState, isBuyer);
-
-        OfferHistory lastOfferHistory = getLastOfferHistory();
-        OfferDetails offerDetails = OfferDetails.of(lastOfferHistory.getOfferDetails().getProductName(),
-                lastOfferHistory.getOfferDetails().getProductQuantity(),
-                lastOfferHistory.getOfferDetails().getProductPrice());
-
-        transition(newState, action, userId, offerDetails);
+        transition(newState, currentState, ANY_VERSION, action, userId, null, isBuyer);
     }
 
     /**
@@ -133,30 +351,218 @@ public class Offer {
      * @param userId       the ID of the user performing the action
      * @param offerDetails the new offer details
      * @param isBuyer      true if the user is the buyer, false if the seller
+     * @throws InvalidStateTransitionException if the offer left currentState before the lock was acquired
      */
     public void transition(OfferState newState, OfferState currentState, Action action, String userId,
             OfferDetails offerDetails, boolean isBuyer) {
-        PermittedActionMap.checkAction(currentState, action, isBuyer);
-        StateTransitionMap.checkTransition(currentState, newState, isBuyer);
+        transition(newState, currentState, ANY_VERSION, action, userId, offerDetails, isBuyer);
+    }
 
-        transition(newState, action, userId, offerDetails);
+    /**
+     * Executes a transition only if the offer is still at the version the caller last observed.
+     * The transition is validated against the state the offer has at that version.
+     * 
+     * @param newState        the new state to transition to
+     * @param expectedVersion the version the caller last observed
+     * @param action          the action being performed
+     * @param userId          the ID of the user performing the action
+     * @param isBuyer         true if the user is the buyer, false if the seller
+     * @throws OfferVersionConflictException if the offer has moved past expectedVersion
+     */
+    public void transition(OfferState newState, int expectedVersion, Action action, String userId, boolean isBuyer) {
+        transition(newState, null, expectedVersion, action, userId, null, isBuyer);
     }
 
     /**
-     * Internal transition method that updates the state and logs history.
+     * Executes a transition with updated offer details only if the offer is still at the
+     * version the caller last observed.
      * 
-     * @param newState     the new state to transition to
-     * @param action       the action being performed
-     * @param userId       the ID of the user performing the action
-     * @param offerDetails the offer details for the new state
+     * @param newState        the new state to transition to
+     * @param expectedVersion the version the caller last observed
+     * @param action          the action being performed
+     * @param userId          the ID of the user performing the action
+     * @param offerDetails    the new offer details
+     * @param isBuyer         true if the user is the buyer, false if the seller
+     * @throws OfferVersionConflictException if the offer has moved past expectedVersion
+     */
+    public void transition(OfferState newState, int expectedVersion, Action action, String userId,
+            OfferDetails offerDetails, boolean isBuyer) {
+        transition(newState, null, expectedVersion, action, userId, offerDetails, isBuyer);
+    }
+
+    /**
+     * Executes a transition without throwing when it is not permitted. Invalid attempts are
+     * reported through the returned result, which makes rejecting them as cheap as a table lookup.
+     * 
+     * @param newState        the new state to transition to
+     * @param expectedVersion the version the caller last observed, or ANY_VERSION to skip the check
+     * @param action          the action being performed
+     * @param userId          the ID of the user performing the action
+     * @param offerDetails    the new offer details, or null to keep the current details
+     * @param isBuyer         true if the user is the buyer, false if the seller
+     * @return the outcome of the transition
+     */
+    public ActionResult tryTransition(OfferState newState, int expectedVersion, Action action, String userId,
+            OfferDetails offerDetails, boolean isBuyer) {
+        this.lock.lock();
+        try {
+            RejectionReason rejection = applyTransition(newState, null, expectedVersion, action, userId, offerDetails, isBuyer);
+            return rejection == null ? ActionResult.accepted(getOfferId(), getVersion()) : ActionResult.rejected(rejection);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Applies a sequence of commands that all target this offer, in order, under a single
+     * acquisition of the offer lock. Rejected commands do not stop the ones after them.
+     * 
+     * @param commands the commands to apply, none of which may be a SUBMIT
+     * @return the outcome of each command, in the same order as commands
+     */
+    public List<ActionResult> tryApply(final List<OfferCommand> commands) {
+        final List<ActionResult> results = new ArrayList<>(commands.size());
+        this.lock.lock();
+        try {
+            for (OfferCommand command : commands) {
+                results.add(applyCommand(command));
+            }
+        } finally {
+            this.lock.unlock();
+        }
+        return results;
+    }
+
+    /**
+     * Cancels the offer on behalf of the system because it stayed in a state for too long. The
+     * transition is validated against the system's role in PermittedActionMap and
+     * StateTransitionMap and recorded with SYSTEM_USER_ID as the acting user.
+     * 
+     * @param stillDue checked under the offer lock; false if the offer moved since its deadline was set
+     * @return the outcome of the cancellation
+     */
+    ActionResult tryExpire(final BooleanSupplier stillDue) {
+        this.lock.lock();
+        try {
+            final OfferState currentState = this.currentState;
+            if (!stillDue.getAsBoolean()) {
+                return ActionResult.rejected(RejectionReason.STALE_STATE);
+            }
+            if (!PermittedActionMap.isPermittedForSystem(currentState, Action.CANCEL)) {
+                return ActionResult.rejected(RejectionReason.ACTION_NOT_PERMITTED);
+            }
+            if (!StateTransitionMap.isAllowedForSystem(currentState, OfferState.CANCELLED)) {
+                return ActionResult.rejected(RejectionReason.TRANSITION_NOT_PERMITTED);
+            }
+            addOfferHistory(getLastOfferHistory().getOfferDetails(), OfferState.CANCELLED, Action.CANCEL, SYSTEM_USER_ID);
+            return ActionResult.accepted(getOfferId(), getVersion());
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private ActionResult applyCommand(final OfferCommand command) {
+        final String userId = command.getUserId();
+        if (userId == null || userId.isEmpty()) {
+            return ActionResult.rejected(RejectionReason.INVALID_USER);
+        }
+        if (!isParticipant(userId)) {
+            return ActionResult.rejected(RejectionReason.NOT_A_PARTY);
+        }
+        final Action action = command.getAction();
+        if (action == Action.UPDATE_PRIVATE_DATA) {
+            return tryUpdatePrivateData(userId, command.getPrivateData(), command.getExpectedVersion());
+        }
+        if (action == Action.SUBMIT) {
+            return ActionResult.rejected(RejectionReason.ACTION_NOT_PERMITTED);
+        }
+        final boolean isBuyer = isBuyer(userId);
+        final RejectionReason rejection = applyTransition(action.nextState(isBuyer), null, command.getExpectedVersion(),
+                action, userId, command.getOfferDetails(), isBuyer);
+        return rejection == null ? ActionResult.accepted(getOfferId(), getVersion()) : ActionResult.rejected(rejection);
+    }
+
+    /**
+     * Applies a transition under the offer lock and converts a rejection into the matching exception.
      */
-    private void transition(OfferState newState, Action action, String userId, OfferDetails offerDetails) {
-        this.currentState = newState;
-        addOfferHistory(offerDetails, newState, action, userId);
+    private void transition(OfferState newState, OfferState observedState, int expectedVersion, Action action,
+            String userId, OfferDetails offerDetails, boolean isBuyer) {
+        this.lock.lock();
+        try {
+            RejectionReason rejection = applyTransition(newState, observedState, expectedVersion, action, userId, offerDetails, isBuyer);
+            if (rejection != null) {
+                throw rejectionException(rejection, observedState, expectedVersion, action, newState);
+            }
+        } finally {
+            this.lock.unlock();
+        }
     }
 
     /**
-     * Adds a new entry to the offer history.
+     * Validates a transition while holding the offer lock and applies it if it is permitted.
+     * The version and the state observed by the caller must still be current, otherwise a
+     * concurrent action has already moved the offer.
+     * 
+     * @param newState        the new state to transition to
+     * @param observedState   the state observed by the caller, or null to skip the check
+     * @param expectedVersion the version observed by the caller, or ANY_VERSION to skip the check
+     * @param action          the action being performed
+     * @param userId          the ID of the user performing the action
+     * @param offerDetails    the offer details for the new state, or null to keep the current details
+     * @param isBuyer         true if the user is the buyer, false if the seller
+     * @return null if the transition was applied, otherwise the reason it was rejected
+     */
+    private RejectionReason applyTransition(OfferState newState, OfferState observedState, int expectedVersion,
+            Action action, String userId, OfferDetails offerDetails, boolean isBuyer) {
+        if (expectedVersion != ANY_VERSION && expectedVersion != getVersion()) {
+            return RejectionReason.VERSION_CONFLICT;
+        }
+        OfferState currentState = this.currentState;
+        if (observedState != null && observedState != currentState) {
+            return RejectionReason.STALE_STATE;
+        }
+        if (!PermittedActionMap.isPermitted(currentState, action, isBuyer)) {
+            return RejectionReason.ACTION_NOT_PERMITTED;
+        }
+        if (!StateTransitionMap.isAllowed(currentState, newState, isBuyer)) {
+            return RejectionReason.TRANSITION_NOT_PERMITTED;
+        }
+
+        // OfferDetails is immutable, so an action that keeps the details shares the previous instance
+        OfferDetails newOfferDetails = offerDetails != null ? offerDetails : getLastOfferHistory().getOfferDetails();
+        addOfferHistory(newOfferDetails, newState, action, userId);
+        return null;
+    }
+
+    private RuntimeException rejectionException(RejectionReason rejection, OfferState observedState,
+            int expectedVersion, Action action, OfferState newState) {
+        switch (rejection) {
+            case VERSION_CONFLICT:
+                return new OfferVersionConflictException(getVersion(), expectedVersion);
+            case STALE_STATE:
+                return new InvalidStateTransitionException(
+                        "Offer moved from " + observedState + " state to " + this.currentState + " concurrently");
+            case ACTION_NOT_PERMITTED:
+                return new InvalidNextActionException(this.currentState, action);
+            default:
+                return new InvalidStateTransitionException(this.currentState, newState);
+        }
+    }
+
+    /**
+     * Verifies, while holding the offer lock, that no other action has been applied since the
+     * caller read the offer at expectedVersion.
+     * 
+     * @param expectedVersion the version the caller last observed
+     */
+    private void checkVersion(int expectedVersion) {
+        if (expectedVersion != getVersion()) {
+            throw new OfferVersionConflictException(getVersion(), expectedVersion);
+        }
+    }
+
+    /**
+     * Adds a new entry to the offer history and moves the offer to the entry's state.
      * 
      * @param offerDetails the details of the offer
      * @param offerState   the state of the offer
@@ -164,16 +570,33 @@ public class Offer {
      * @param userId       the ID of the user performing the action
      */
     public void addOfferHistory(OfferDetails offerDetails, OfferState offerState, Action offerAction, String userId) {
-        OfferHistory offerHistory = new OfferHistory(offerDetails, offerState, offerAction, userId, this.getLastOfferHistory().getPrivateData());
+        this.lock.lock();
+        try {
+            OfferHistory offerHistory = new OfferHistory(offerDetails, offerState, offerAction, userId, this.getLastOfferHistory().privateData);
+            record(offerHistory);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Reports an entry to the listener, then appends it to the history and publishes the new
+     * version and state to lock-free readers. If the listener throws, the offer is left unchanged.
+     * 
+     * @param offerHistory the entry to append
+     */
+    private void record(OfferHistory offerHistory) {
+        this.listener.beforeAppend(this, offerHistory);
         this.offerHistory.add(offerHistory);
+        this.currentState = offerHistory.getOfferState();
     }
 
     public String getBuyerUserId() {
-        return this.buyerUserId;
+        return SYMBOLS.resolve(this.buyerUserId);
     }
 
     public String getSellerUserId() {
-        return this.sellerUserId;
+        return SYMBOLS.resolve(this.sellerUserId);
     }
 
     /**
@@ -183,16 +606,51 @@ public class Offer {
      * @return true if the user is the buyer, otherwise false
      */
     public boolean isBuyer(final String userId) {
-        return this.buyerUserId.equals(userId);
+        return getBuyerUserId().equals(userId);
     }
 
     /**
-     * Returns a copy of the offer history list.
+     * Returns the actions the specified user may perform in the current state of the offer,
+     * so clients can offer only valid actions instead of relying on rejected attempts.
      * 
-     * @return an ArrayList containing offer history
+     * @param userId the ID of the buyer or seller
+     * @return an immutable set of permitted actions
      */
-    public ArrayList<OfferHistory> getOfferHistory() {
-        return new ArrayList<>(this.offerHistory);
+    public Set<Action> getPermittedActions(final String userId) {
+        return PermittedActionMap.permittedActions(this.currentState, isBuyer(userId));
+    }
+
+    /**
+     * Determines if the specified user is either the buyer or the seller of the offer.
+     * 
+     * @param userId the ID of the user to check
+     * @return true if the user is a party to the offer, otherwise false
+     */
+    public boolean isParticipant(final String userId) {
+        return getBuyerUserId().equals(userId) || getSellerUserId().equals(userId);
+    }
+
+    /**
+     * Returns a read-only view of the offer history. The view is backed by the history columns,
+     * costs no copy, offers constant time indexed access and is fixed to the entries present
+     * when it was taken, so it can be iterated while new actions are applied. Entries are built
+     * from the columns as they are read.
+     * 
+     * @return a read-only List containing offer history
+     */
+    public List<OfferHistory> getOfferHistory() {
+        return this.offerHistory.view();
+    }
+
+    /**
+     * Retrieves a single entry of the offer history without creating a view.
+     * 
+     * @param version the version of the entry, starting at 1
+     * @return the OfferHistory entry of that version
+     * @throws IndexOutOfBoundsException if the version does not exist
+     */
+    public OfferHistory getOfferHistory(int version) {
+        return this.offerHistory.get(version - 1);
     }
 
     /**
@@ -201,6 +659,123 @@ public class Offer {
      * @return the last OfferHistory entry
      */
     public OfferHistory getLastOfferHistory() {
-        return this.offerHistory.get(this.offerHistory.size() - 1);
+        return this.offerHistory.last();
+    }
+
+    /**
+     * Builds the dashboard row of a version directly from the stored history, without creating
+     * an OfferHistory entry.
+     * 
+     * @param version the version of the row, starting at 1
+     * @return the DashboardRow of that version
+     * @throws IndexOutOfBoundsException if the version does not exist
+     */
+    public DashboardRow getDashboardRow(int version) {
+        final DashboardRows rows = this.dashboardRows;
+        final DashboardRow row = rows == null ? null : rows.get(version - 1);
+        return row != null ? row : this.offerHistory.toDashboardRow(version - 1, getBuyerUserId(), getSellerUserId());
+    }
+
+    /**
+     * Iterates over the dashboard rows from a version on, building them from the stored history
+     * in one pass rather than decoding each version on its own.
+     * 
+     * @param fromVersion the version of the first row, starting at 1
+     * @param order       the order of the versions
+     * @return an iterator over the rows of the versions present now
+     * @throws IndexOutOfBoundsException if the version does not exist
+     */
+    public Iterator<DashboardRow> getDashboardRows(final int fromVersion, final HistoryOrder order) {
+        return this.offerHistory.dashboardRows(fromVersion - 1, order, getBuyerUserId(), getSellerUserId());
+    }
+
+    /**
+     * Returns the dashboard rows of every version. Rows are built once and kept, so a read only
+     * builds the rows of the versions added since the previous read, and reading an offer that
+     * has not changed returns the same list without allocating.
+     * 
+     * @return an immutable list of DashboardRow, one per version in version order
+     */
+    public List<DashboardRow> getDashboard() {
+        DashboardRows rows = this.dashboardRows;
+        if (rows == null) {
+            this.lock.lock();
+            try {
+                rows = this.dashboardRows;
+                if (rows == null) {
+                    rows = new DashboardRows();
+                    this.dashboardRows = rows;
+                }
+            } finally {
+                this.lock.unlock();
+            }
+        }
+        return rows.upTo(this.offerHistory, getVersion(), getBuyerUserId(), getSellerUserId());
+    }
+
+    /**
+     * Compares two versions of the offer. Only the two versions are built from the stored
+     * history; the versions in between are scanned for the private data changes of the user,
+     * comparing the snapshots they introduced without copying them. Each key the user changed
+     * is reported with its value before the user's first change and after the user's last one,
+     * unless the user restored the original value.
+     * 
+     * @param userId      the ID of the user whose private data changes are included
+     * @param fromVersion the version to compare from, starting at 1
+     * @param toVersion   the version to compare to, which may precede fromVersion
+     * @return the differences from fromVersion to toVersion
+     * @throws IndexOutOfBoundsException if either version does not exist
+     */
+    public OfferDifference getDifference(final String userId, final int fromVersion, final int toVersion) {
+        final OfferHistory from = this.offerHistory.get(fromVersion - 1);
+        final OfferHistory to = this.offerHistory.get(toVersion - 1);
+        final Map<String, Change<String>> privateData = new LinkedHashMap<>();
+        if (from.getPersistentPrivateData() != to.getPersistentPrivateData()) {
+            this.offerHistory.diffPrivateData(Math.min(fromVersion, toVersion) - 1,
+                    Math.max(fromVersion, toVersion) - 1, userId, (key, oldValue, newValue) -> {
+                        final Change<String> earlier = privateData.get(key);
+                        privateData.put(key, Change.of(earlier == null ? oldValue : earlier.getOldValue(), newValue));
+                    });
+            privateData.values().removeIf(change -> Objects.equals(change.getOldValue(), change.getNewValue()));
+            if (fromVersion > toVersion) {
+                privateData.replaceAll((key, change) -> Change.of(change.getNewValue(), change.getOldValue()));
+            }
+        }
+        return OfferDifference.of(fromVersion, from, toVersion, to, privateData);
+    }
+
+    /**
+     * Compares every version in a range with the version before it, in a single pass over the
+     * range: each version is built from the stored history once, and private data snapshots are
+     * compared only where a version of the user introduced a new one.
+     * 
+     * @param userId      the ID of the user whose private data changes are included
+     * @param fromVersion the first version of the range, starting at 1
+     * @param toVersion   the last version of the range
+     * @return one OfferDifference per version after fromVersion, in version order
+     * @throws IllegalArgumentException if toVersion precedes fromVersion
+     * @throws IndexOutOfBoundsException if either version does not exist
+     */
+    public List<OfferDifference> getDifferences(final String userId, final int fromVersion, final int toVersion) {
+        if (toVersion < fromVersion) {
+            throw new IllegalArgumentException("Invalid version");
+        }
+        final List<OfferDifference> differences = new ArrayList<>(toVersion - fromVersion);
+        final Iterator<OfferHistory> entries = this.offerHistory.iterator(fromVersion - 1);
+        OfferHistory previous = entries.next();
+        for (int version = fromVersion + 1; version <= toVersion; version++) {
+            final OfferHistory current = entries.next();
+            final PersistentHashMap<String, String> data = current.getPersistentPrivateData();
+            Map<String, Change<String>> privateData = Map.of();
+            if (data != previous.getPersistentPrivateData() && userId.equals(current.getOfferUserId())) {
+                final Map<String, Change<String>> changes = new LinkedHashMap<>();
+                data.diff(previous.getPersistentPrivateData(),
+                        (key, oldValue, newValue) -> changes.put(key, Change.of(oldValue, newValue)));
+                privateData = changes;
+            }
+            differences.add(OfferDifference.of(version - 1, previous, version, current, privateData));
+            previous = current;
+        }
+        return differences;
     }
 }
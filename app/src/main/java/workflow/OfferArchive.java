@@ -0,0 +1,486 @@
+package workflow;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import workflow.Offer.OfferHistory;
+import workflow.TimingWheel.Timeout;
+
+/**
+ * Archival tier for offers that reached a terminal state. An InMemoryOfferRepository created
+ * with an archive moves each ACCEPTED or CANCELLED offer out of its table once the offer has seen
+ * no new entry for the archive delay, so the heap and the off-heap history columns only hold
+ * offers that are still negotiated or were recently used.
+ *
+ * <p>An archived offer is kept as a single compressed block off the heap: the offer is written
+ * with an OfferCodec encoder of its own, so the block carries its own string dictionary, and the
+ * result is deflated. The only heap cost is one slot of 24 bytes in the table from offer ID
+ * to block. Reading an archived offer inflates and rebuilds it, and the rebuilt offer stays the
+ * one instance of that offer for as long as it is referenced. Appending an entry to it, which
+ * PermittedActionMap only allows for private data updates, faults it back into the repository.
+ *
+ * <p>As an OfferHistoryListener the archive sets a deadline for every entry that leaves an offer
+ * in a terminal state, in a TimingWheel like the one of OfferExpiry. Deadlines are not persisted.
+ */
+public final class OfferArchive implements OfferHistoryListener {
+
+    /**
+     * Default resolution of archive deadlines.
+     */
+    public static final Duration DEFAULT_TICK = Duration.ofSeconds(1);
+
+    // Blocks up to this size come in steps of 32 bytes, larger blocks in powers of two
+    private static final int SMALL_BLOCK_LIMIT = 2048;
+    private static final int BLOCK_HEADER_SIZE = 2 * Integer.BYTES;
+
+    private final long delayMillis;
+    private final long tickMillis;
+    private final Clock clock;
+    // Time of tick 0 of the wheel
+    private final long origin;
+    private final TimingWheel<UUID> wheel = new TimingWheel<>();
+    // The pending deadline of each terminal offer that is not archived yet
+    private final Map<UUID, Timeout<UUID>> pending = new ConcurrentHashMap<>();
+
+    // Reused across stores, since setting up a deflater costs more than compressing an offer
+    private final Deflater deflater = new Deflater();
+    private ByteBuffer encoded = ByteBuffer.allocate(1024);
+    // Guards deflater and encoded
+    private final ReentrantLock deflaterLock = new ReentrantLock();
+
+    private final HistoryArena arena = new HistoryArena();
+    // Guards blocks and archivedBytes
+    private final ReentrantLock lock = new ReentrantLock();
+    private final BlockTable blocks = new BlockTable();
+    private long archivedBytes;
+
+    // Every instance of an archived offer that may still be referenced
+    private final Map<UUID, OfferReference> liveOffers = new ConcurrentHashMap<>();
+    private final ReferenceQueue<Offer> collectedOffers = new ReferenceQueue<>();
+
+    /**
+     * Creates an archive with DEFAULT_TICK resolution that follows the system clock.
+     *
+     * @param delay the time a terminal offer stays in the repository after its last entry
+     * @throws IllegalArgumentException if the delay is negative
+     */
+    public OfferArchive(final Duration delay) {
+        this(delay, DEFAULT_TICK, Clock.systemUTC());
+    }
+
+    /**
+     * Creates an archive that follows a clock.
+     *
+     * @param delay the time a terminal offer stays in the repository after its last entry
+     * @param tick  the resolution of deadlines, at least one millisecond
+     * @param clock the clock deadlines are measured with
+     * @throws IllegalArgumentException if the delay is negative or the tick is not positive
+     */
+    public OfferArchive(final Duration delay, final Duration tick, final Clock clock) {
+        if (delay.isNegative()) {
+            throw new IllegalArgumentException("Invalid delay: " + delay);
+        }
+        if (tick.toMillis() < 1) {
+            throw new IllegalArgumentException("Invalid tick: " + tick);
+        }
+        this.delayMillis = delay.toMillis();
+        this.tickMillis = tick.toMillis();
+        this.clock = clock;
+        this.origin = clock.millis();
+    }
+
+    /**
+     * Restarts the archive delay of an offer whenever an entry leaves it in a terminal state.
+     */
+    @Override
+    public void beforeAppend(final Offer offer, final OfferHistory offerHistory) {
+        if (offerHistory.getOfferState().isTerminal()) {
+            schedule(offer.getOfferKey());
+        }
+    }
+
+    /**
+     * Sets the archive deadline of an offer added to the repository in a terminal state.
+     *
+     * @param offer the offer added
+     */
+    void track(final Offer offer) {
+        if (offer.getCurrentState().isTerminal()) {
+            schedule(offer.getOfferKey());
+        }
+    }
+
+    private void schedule(final UUID offerId) {
+        final long tick = Math.ceilDiv(this.clock.millis() - this.origin + this.delayMillis, this.tickMillis);
+        final Timeout<UUID> previous = this.pending.put(offerId, this.wheel.schedule(offerId, tick));
+        if (previous != null) {
+            this.wheel.cancel(previous);
+        }
+    }
+
+    /**
+     * Turns the wheel to the current time.
+     *
+     * @return the deadlines that have passed
+     */
+    List<Timeout<UUID>> due() {
+        return this.wheel.advance(Math.floorDiv(this.clock.millis() - this.origin, this.tickMillis));
+    }
+
+    /**
+     * Determines whether a deadline that passed is still the current one of its offer, which it
+     * is unless an entry was appended since. Call it under the offer lock.
+     *
+     * @param timeout the deadline
+     * @return true if the offer is due for archiving
+     */
+    boolean isDue(final Timeout<UUID> timeout) {
+        return this.pending.get(timeout.getValue()) == timeout;
+    }
+
+    /**
+     * Compresses an offer into the archive. Call it under the offer lock, before the offer is
+     * removed from the repository; the offer stays the instance handed out for its ID while it
+     * is referenced.
+     *
+     * @param offer the terminal offer to archive
+     */
+    void store(final Offer offer) {
+        final UUID offerId = offer.getOfferKey();
+        final Deflater deflater = this.deflater;
+        final byte[] compressed;
+        final int encodedLength;
+        int length;
+        this.deflaterLock.lock();
+        try {
+            ByteBuffer encoded = this.encoded;
+            while (true) {
+                try {
+                    // A fresh encoder per offer, so each block carries its own string dictionary
+                    new OfferCodec.Encoder().encode(encoded.clear(), offer);
+                    break;
+                } catch (BufferOverflowException e) {
+                    encoded = ByteBuffer.allocate(2 * encoded.capacity());
+                    this.encoded = encoded;
+                }
+            }
+            encodedLength = encoded.flip().remaining();
+            deflater.reset();
+            deflater.setInput(encoded);
+            deflater.finish();
+            byte[] output = new byte[encodedLength / 2 + 64];
+            length = 0;
+            while (!deflater.finished()) {
+                if (length == output.length) {
+                    output = Arrays.copyOf(output, output.length * 2);
+                }
+                length += deflater.deflate(output, length, output.length - length);
+            }
+            compressed = output;
+        } finally {
+            this.deflaterLock.unlock();
+        }
+
+        expungeCollectedOffers();
+        this.liveOffers.put(offerId, new OfferReference(offer, this.collectedOffers));
+        this.lock.lock();
+        try {
+            final int bytes = BLOCK_HEADER_SIZE + length;
+            final int sizeClass = sizeClass(bytes);
+            final long address = this.arena.allocate(sizeClass, blockBytes(sizeClass));
+            final ByteBuffer chunk = this.arena.chunk(address);
+            final int offset = HistoryArena.offset(address);
+            chunk.putInt(offset, length);
+            chunk.putInt(offset + Integer.BYTES, encodedLength);
+            chunk.put(offset + BLOCK_HEADER_SIZE, compressed, 0, length);
+            final long previous = this.blocks.put(offerId.getMostSignificantBits(), offerId.getLeastSignificantBits(),
+                    address);
+            if (previous != BlockTable.NO_BLOCK) {
+                free(previous);
+            }
+            this.archivedBytes += bytes;
+        } finally {
+            this.lock.unlock();
+        }
+        this.pending.remove(offerId);
+    }
+
+    /**
+     * Retrieves an archived offer, rebuilding it unless an instance of it is still referenced.
+     *
+     * @param offerId  the ID of the offer
+     * @param listener the listener of the rebuilt offer, which faults it back into the repository
+     * @return the offer, or null if it is not archived
+     */
+    Offer load(final UUID offerId, final OfferHistoryListener listener) {
+        expungeCollectedOffers();
+        final OfferReference reference = this.liveOffers.get(offerId);
+        final Offer live = reference == null ? null : reference.get();
+        if (live != null) {
+            return live;
+        }
+        final Offer[] loaded = new Offer[1];
+        this.liveOffers.compute(offerId, (key, current) -> {
+            Offer offer = current == null ? null : current.get();
+            if (offer == null) {
+                final byte[] encoded = read(offerId);
+                if (encoded == null) {
+                    return null;
+                }
+                offer = new OfferCodec.Decoder().decodeOffer(ByteBuffer.wrap(encoded), listener);
+                current = new OfferReference(offer, this.collectedOffers);
+            }
+            loaded[0] = offer;
+            return current;
+        });
+        return loaded[0];
+    }
+
+    /**
+     * Drops an offer that was faulted back into the repository.
+     *
+     * @param offerId the ID of the offer
+     */
+    void remove(final UUID offerId) {
+        this.lock.lock();
+        try {
+            final long address = this.blocks.remove(offerId.getMostSignificantBits(), offerId.getLeastSignificantBits());
+            if (address != BlockTable.NO_BLOCK) {
+                this.archivedBytes -= BLOCK_HEADER_SIZE + this.arena.chunk(address).getInt(HistoryArena.offset(address));
+                free(address);
+            }
+        } finally {
+            this.lock.unlock();
+        }
+        this.liveOffers.remove(offerId);
+    }
+
+    /**
+     * Determines whether an offer is archived.
+     *
+     * @param offerId the ID of the offer
+     * @return true if the offer is in the archive
+     */
+    boolean contains(final UUID offerId) {
+        this.lock.lock();
+        try {
+            return this.blocks.get(offerId.getMostSignificantBits(), offerId.getLeastSignificantBits())
+                    != BlockTable.NO_BLOCK;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of archived offers.
+     *
+     * @return the number of offers in the archive
+     */
+    public int getArchivedCount() {
+        this.lock.lock();
+        try {
+            return this.blocks.size();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the compressed size of the archived offers, excluding the unused end of their blocks.
+     *
+     * @return the archived bytes
+     */
+    public long getArchivedBytes() {
+        this.lock.lock();
+        try {
+            return this.archivedBytes;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of terminal offers waiting for their archive delay to pass.
+     *
+     * @return the number of pending deadlines
+     */
+    public int getPendingCount() {
+        return this.wheel.size();
+    }
+
+    /**
+     * Copies the block of an offer out and inflates it.
+     */
+    private byte[] read(final UUID offerId) {
+        final byte[] compressed;
+        final int encodedLength;
+        this.lock.lock();
+        try {
+            final long address = this.blocks.get(offerId.getMostSignificantBits(), offerId.getLeastSignificantBits());
+            if (address == BlockTable.NO_BLOCK) {
+                return null;
+            }
+            final ByteBuffer chunk = this.arena.chunk(address);
+            final int offset = HistoryArena.offset(address);
+            compressed = new byte[chunk.getInt(offset)];
+            encodedLength = chunk.getInt(offset + Integer.BYTES);
+            chunk.get(offset + BLOCK_HEADER_SIZE, compressed);
+        } finally {
+            this.lock.unlock();
+        }
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            final byte[] encoded = new byte[encodedLength];
+            int length = 0;
+            while (length < encodedLength && !inflater.finished()) {
+                length += inflater.inflate(encoded, length, encodedLength - length);
+            }
+            return encoded;
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt archive block of offer " + offerId, e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private void free(final long address) {
+        final int bytes = BLOCK_HEADER_SIZE + this.arena.chunk(address).getInt(HistoryArena.offset(address));
+        final int sizeClass = sizeClass(bytes);
+        this.arena.free(sizeClass, blockBytes(sizeClass), address);
+    }
+
+    private static int sizeClass(final int bytes) {
+        if (bytes <= SMALL_BLOCK_LIMIT) {
+            return (bytes + 31) >>> 5;
+        }
+        return SMALL_BLOCK_LIMIT / 32 + 32 - Integer.numberOfLeadingZeros(bytes - 1) - 11;
+    }
+
+    private static int blockBytes(final int sizeClass) {
+        if (sizeClass <= SMALL_BLOCK_LIMIT / 32) {
+            return sizeClass << 5;
+        }
+        return SMALL_BLOCK_LIMIT << (sizeClass - SMALL_BLOCK_LIMIT / 32);
+    }
+
+    private void expungeCollectedOffers() {
+        OfferReference reference;
+        while ((reference = (OfferReference) this.collectedOffers.poll()) != null) {
+            this.liveOffers.remove(reference.offerId, reference);
+        }
+    }
+
+    /**
+     * Table from offer ID to the address of its block, three longs per slot, probed linearly.
+     * The ID (0, 0), which is never a version 4 or 7 UUID, marks an empty slot.
+     */
+    private static final class BlockTable {
+        static final long NO_BLOCK = -1;
+
+        private long[] slots = new long[3 * 16];
+        private int size;
+
+        long get(final long high, final long low) {
+            final int slot = find(this.slots, high, low);
+            return slot < 0 ? NO_BLOCK : this.slots[3 * slot + 2];
+        }
+
+        long put(final long high, final long low, final long address) {
+            final int existing = find(this.slots, high, low);
+            if (existing >= 0) {
+                final long previous = this.slots[3 * existing + 2];
+                this.slots[3 * existing + 2] = address;
+                return previous;
+            }
+            if (4 * (this.size + 1) > 3 * (this.slots.length / 3)) {
+                final long[] current = this.slots;
+                this.slots = new long[current.length * 2];
+                for (int i = 0; i < current.length; i += 3) {
+                    if (current[i] != 0 || current[i + 1] != 0) {
+                        insert(this.slots, current[i], current[i + 1], current[i + 2]);
+                    }
+                }
+            }
+            insert(this.slots, high, low, address);
+            this.size++;
+            return NO_BLOCK;
+        }
+
+        long remove(final long high, final long low) {
+            final long[] current = this.slots;
+            int slot = find(current, high, low);
+            if (slot < 0) {
+                return NO_BLOCK;
+            }
+            final long address = current[3 * slot + 2];
+            final int mask = current.length / 3 - 1;
+            // Shifts back every following entry of the probe sequence that may move into the gap
+            for (int next = (slot + 1) & mask; current[3 * next] != 0 || current[3 * next + 1] != 0;
+                    next = (next + 1) & mask) {
+                final int home = OfferTable.hash(current[3 * next], current[3 * next + 1]) & mask;
+                if (((next - home) & mask) >= ((next - slot) & mask)) {
+                    System.arraycopy(current, 3 * next, current, 3 * slot, 3);
+                    slot = next;
+                }
+            }
+            current[3 * slot] = 0;
+            current[3 * slot + 1] = 0;
+            current[3 * slot + 2] = 0;
+            this.size--;
+            return address;
+        }
+
+        int size() {
+            return this.size;
+        }
+
+        private static int find(final long[] slots, final long high, final long low) {
+            final int mask = slots.length / 3 - 1;
+            for (int slot = OfferTable.hash(high, low) & mask; ; slot = (slot + 1) & mask) {
+                if (slots[3 * slot] == high && slots[3 * slot + 1] == low) {
+                    return slot;
+                }
+                if (slots[3 * slot] == 0 && slots[3 * slot + 1] == 0) {
+                    return -1;
+                }
+            }
+        }
+
+        private static void insert(final long[] slots, final long high, final long low, final long address) {
+            final int mask = slots.length / 3 - 1;
+            int slot = OfferTable.hash(high, low) & mask;
+            while (slots[3 * slot] != 0 || slots[3 * slot + 1] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[3 * slot] = high;
+            slots[3 * slot + 1] = low;
+            slots[3 * slot + 2] = address;
+        }
+    }
+
+    /**
+     * Weak reference to an instance of an archived offer that remembers the offer ID.
+     */
+    private static final class OfferReference extends WeakReference<Offer> {
+        private final UUID offerId;
+
+        OfferReference(final Offer offer, final ReferenceQueue<Offer> queue) {
+            super(offer, queue);
+            this.offerId = offer.getOfferKey();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package workflow;
+
+import workflow.Offer.OfferHistory;
+
+/**
+ * A history entry published by an OfferChangeFeed, together with the offer and the version it
+ * belongs to. Versions of one offer are consecutive, so a subscriber that sees a version skipped
+ * knows entries were dropped for it and can read them back from the dashboard.
+ */
+public class OfferChange {
+
+    private final Offer offer;
+    private final int version;
+    private final OfferHistory offerHistory;
+
+    private OfferChange(final Offer offer, final int version, final OfferHistory offerHistory) {
+        this.offer = offer;
+        this.version = version;
+        this.offerHistory = offerHistory;
+    }
+
+    static OfferChange of(final Offer offer, final int version, final OfferHistory offerHistory) {
+        return new OfferChange(offer, version, offerHistory);
+    }
+
+    public String getOfferId() {
+        return this.offer.getOfferId();
+    }
+
+    public String getBuyerUserId() {
+        return this.offer.getBuyerUserId();
+    }
+
+    public String getSellerUserId() {
+        return this.offer.getSellerUserId();
+    }
+
+    /**
+     * Returns the version the entry became, starting at 1 for the SUBMIT entry.
+     *
+     * @return the version of the entry
+     */
+    public int getVersion() {
+        return this.version;
+    }
+
+    public OfferHistory getOfferHistory() {
+        return this.offerHistory;
+    }
+}
@@ -0,0 +1,362 @@
+package workflow;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import workflow.Offer.OfferHistory;
+import workflow.exceptions.InvalidOfferException;
+import workflow.exceptions.InvalidUserException;
+
+/**
+ * Push-based feed of offer history entries, as an alternative to polling the dashboard. Offers
+ * report every entry to the feed as their OfferHistoryListener, and the feed passes it to each
+ * subscription whose filter matches: every offer, the offers of one user, or a single offer.
+ * Subscribers are called on the executor of the feed, never on the thread that changed the offer.
+ *
+ * <p>Each subscription buffers changes in a ring of fixed capacity. Publishing claims a slot with
+ * a compare-and-set and never blocks or waits for a subscriber: while a subscriber is so far
+ * behind that its ring is full, changes for it are dropped and counted instead. Entries of one
+ * offer are published under the offer lock, so they enter every ring, and reach the subscriber,
+ * in version order; a skipped version tells the subscriber to read that part of the history back.
+ * Publishing allocates a single OfferChange per entry, shared by every matching subscription, and
+ * nothing when no subscription matches.
+ *
+ * <p>Place the feed after the listener that persists entries, for example with
+ * {@code DiskOfferRepository.open(path, cacheSize, feed)}, so subscribers only see entries that
+ * were stored. A change may reach a subscriber just before the offer reports the new version.
+ */
+public final class OfferChangeFeed implements OfferHistoryListener, AutoCloseable {
+
+    /**
+     * Default number of changes a subscription buffers for its subscriber.
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private static final Subscription[] NO_SUBSCRIPTIONS = new Subscription[0];
+
+    private final int capacity;
+    private final ExecutorService executor;
+
+    // Guards changes to the subscription arrays, which are replaced rather than modified
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile Subscription[] allOffers = NO_SUBSCRIPTIONS;
+    private final Map<String, Subscription[]> byUser = new ConcurrentHashMap<>();
+    private final Map<UUID, Subscription[]> byOffer = new ConcurrentHashMap<>();
+    private volatile int subscriptions;
+    private boolean closed;
+
+    /**
+     * Creates a feed that buffers DEFAULT_CAPACITY changes per subscription and calls each
+     * subscriber on virtual threads.
+     */
+    public OfferChangeFeed() {
+        this(DEFAULT_CAPACITY, Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    /**
+     * Creates a feed that calls subscribers on the given executor. The feed takes ownership of
+     * the executor and shuts it down when closed.
+     *
+     * @param capacity the number of changes a subscription buffers, rounded up to a power of two
+     * @param executor the executor that delivers changes to subscribers
+     * @throws IllegalArgumentException if capacity is not positive
+     */
+    public OfferChangeFeed(final int capacity, final ExecutorService executor) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        this.capacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.executor = executor;
+    }
+
+    /**
+     * Subscribes to the changes of every offer.
+     *
+     * @param subscriber the subscriber to call
+     * @return the subscription
+     * @throws IllegalStateException if the feed is closed
+     */
+    public Subscription subscribe(final OfferChangeSubscriber subscriber) {
+        return register(new Subscription(this, null, null, subscriber));
+    }
+
+    /**
+     * Subscribes to the changes of every offer a user is the buyer or seller of, including offers
+     * submitted later.
+     *
+     * @param userId     the ID of the user
+     * @param subscriber the subscriber to call
+     * @return the subscription
+     * @throws InvalidUserException if the user ID is null or empty
+     * @throws IllegalStateException if the feed is closed
+     */
+    public Subscription subscribeToUser(final String userId, final OfferChangeSubscriber subscriber) {
+        if (userId == null || userId.isEmpty()) {
+            throw new InvalidUserException("Invalid user ID: " + userId);
+        }
+        return register(new Subscription(this, userId, null, subscriber));
+    }
+
+    /**
+     * Subscribes to the changes of one offer.
+     *
+     * @param offerId    the unique ID of the offer
+     * @param subscriber the subscriber to call
+     * @return the subscription
+     * @throws InvalidOfferException if the offer ID is not a valid ID
+     * @throws IllegalStateException if the feed is closed
+     */
+    public Subscription subscribeToOffer(final String offerId, final OfferChangeSubscriber subscriber) {
+        final UUID offerKey = OfferIds.parse(offerId);
+        if (offerKey == null) {
+            throw new InvalidOfferException("Invalid offer ID: " + offerId);
+        }
+        return register(new Subscription(this, null, offerKey, subscriber));
+    }
+
+    /**
+     * Publishes an entry to the subscriptions that match its offer, without waiting for any of
+     * them.
+     */
+    @Override
+    public void beforeAppend(final Offer offer, final OfferHistory offerHistory) {
+        if (this.subscriptions == 0) {
+            return;
+        }
+        OfferChange change = publish(this.allOffers, null, offer, offerHistory);
+        if (!this.byUser.isEmpty()) {
+            final String buyerUserId = offer.getBuyerUserId();
+            final String sellerUserId = offer.getSellerUserId();
+            change = publish(this.byUser.get(buyerUserId), change, offer, offerHistory);
+            if (!sellerUserId.equals(buyerUserId)) {
+                change = publish(this.byUser.get(sellerUserId), change, offer, offerHistory);
+            }
+        }
+        if (!this.byOffer.isEmpty()) {
+            publish(this.byOffer.get(offer.getOfferKey()), change, offer, offerHistory);
+        }
+    }
+
+    private static OfferChange publish(final Subscription[] subscriptions, final OfferChange change,
+            final Offer offer, final OfferHistory offerHistory) {
+        if (subscriptions == null || subscriptions.length == 0) {
+            return change;
+        }
+        final OfferChange published = change != null ? change
+                : OfferChange.of(offer, offer.getVersion() + 1, offerHistory);
+        for (Subscription subscription : subscriptions) {
+            subscription.publish(published);
+        }
+        return published;
+    }
+
+    /**
+     * Cancels every subscription, stops accepting new ones and waits for running deliveries to
+     * complete.
+     */
+    @Override
+    public void close() {
+        final List<Subscription> open = new ArrayList<>();
+        this.lock.lock();
+        try {
+            this.closed = true;
+            open.addAll(Arrays.asList(this.allOffers));
+            this.byUser.values().forEach(subscriptions -> open.addAll(Arrays.asList(subscriptions)));
+            this.byOffer.values().forEach(subscriptions -> open.addAll(Arrays.asList(subscriptions)));
+        } finally {
+            this.lock.unlock();
+        }
+        open.forEach(Subscription::cancel);
+        this.executor.close();
+    }
+
+    private Subscription register(final Subscription subscription) {
+        this.lock.lock();
+        try {
+            if (this.closed) {
+                throw new IllegalStateException("Offer change feed is closed");
+            }
+            if (subscription.userId != null) {
+                this.byUser.put(subscription.userId, with(this.byUser.get(subscription.userId), subscription));
+            } else if (subscription.offerKey != null) {
+                this.byOffer.put(subscription.offerKey, with(this.byOffer.get(subscription.offerKey), subscription));
+            } else {
+                this.allOffers = with(this.allOffers, subscription);
+            }
+            this.subscriptions++;
+            return subscription;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private void unregister(final Subscription subscription) {
+        this.lock.lock();
+        try {
+            final Subscription[] current = subscription.userId != null ? this.byUser.get(subscription.userId)
+                    : subscription.offerKey != null ? this.byOffer.get(subscription.offerKey) : this.allOffers;
+            final Subscription[] remaining = without(current, subscription);
+            if (remaining.length == current.length) {
+                return;
+            }
+            if (subscription.userId != null) {
+                replace(this.byUser, subscription.userId, remaining);
+            } else if (subscription.offerKey != null) {
+                replace(this.byOffer, subscription.offerKey, remaining);
+            } else {
+                this.allOffers = remaining;
+            }
+            this.subscriptions--;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private static <K> void replace(final Map<K, Subscription[]> index, final K key, final Subscription[] subscriptions) {
+        if (subscriptions.length == 0) {
+            index.remove(key);
+        } else {
+            index.put(key, subscriptions);
+        }
+    }
+
+    private static Subscription[] with(final Subscription[] subscriptions, final Subscription subscription) {
+        if (subscriptions == null) {
+            return new Subscription[] { subscription };
+        }
+        final Subscription[] copy = Arrays.copyOf(subscriptions, subscriptions.length + 1);
+        copy[subscriptions.length] = subscription;
+        return copy;
+    }
+
+    private static Subscription[] without(final Subscription[] subscriptions, final Subscription subscription) {
+        if (subscriptions == null) {
+            return NO_SUBSCRIPTIONS;
+        }
+        return Arrays.stream(subscriptions).filter(existing -> existing != subscription).toArray(Subscription[]::new);
+    }
+
+    /**
+     * A subscriber registered with a feed, with the ring that buffers its changes.
+     *
+     * <p>Any thread may publish to the ring: it claims the next position by advancing the tail,
+     * then fills the slot. Deliveries are serialized by the scheduled flag, so only one task at a
+     * time empties slots, in position order, and advances the head.
+     */
+    public static final class Subscription {
+        private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(OfferChange[].class);
+
+        private final OfferChangeFeed feed;
+        private final String userId;
+        private final UUID offerKey;
+        private final OfferChangeSubscriber subscriber;
+        private final OfferChange[] slots;
+        private final int mask;
+        private final Runnable delivery = this::deliver;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicLong tail = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+        private volatile long head;
+        private volatile boolean cancelled;
+
+        private Subscription(final OfferChangeFeed feed, final String userId, final UUID offerKey,
+                final OfferChangeSubscriber subscriber) {
+            this.feed = feed;
+            this.userId = userId;
+            this.offerKey = offerKey;
+            this.subscriber = subscriber;
+            this.slots = new OfferChange[feed.capacity];
+            this.mask = feed.capacity - 1;
+        }
+
+        /**
+         * Stops delivering changes. Changes buffered but not yet delivered are discarded.
+         */
+        public void cancel() {
+            this.cancelled = true;
+            this.feed.unregister(this);
+        }
+
+        public boolean isCancelled() {
+            return this.cancelled;
+        }
+
+        /**
+         * Returns the number of changes buffered but not yet delivered.
+         *
+         * @return the current backlog of the subscriber
+         */
+        public long getBacklog() {
+            return this.tail.get() - this.head;
+        }
+
+        /**
+         * Returns the number of changes dropped because the buffer of the subscription was full.
+         *
+         * @return the total number of dropped changes
+         */
+        public long getDroppedCount() {
+            return this.dropped.get();
+        }
+
+        private void publish(final OfferChange change) {
+            if (this.cancelled) {
+                return;
+            }
+            long position;
+            do {
+                position = this.tail.get();
+                if (position - this.head >= this.slots.length) {
+                    this.dropped.incrementAndGet();
+                    return;
+                }
+            } while (!this.tail.compareAndSet(position, position + 1));
+            SLOTS.setVolatile(this.slots, (int) position & this.mask, change);
+            schedule();
+        }
+
+        private void schedule() {
+            if (!this.cancelled && this.scheduled.compareAndSet(false, true)) {
+                try {
+                    this.feed.executor.execute(this.delivery);
+                } catch (RejectedExecutionException e) {
+                    // The feed is closing; the next publish, if any, tries again
+                    this.scheduled.set(false);
+                }
+            }
+        }
+
+        private void deliver() {
+            do {
+                long position = this.head;
+                OfferChange change;
+                while (!this.cancelled
+                        && (change = (OfferChange) SLOTS.getVolatile(this.slots, (int) position & this.mask)) != null) {
+                    SLOTS.setVolatile(this.slots, (int) position & this.mask, null);
+                    this.head = ++position;
+                    try {
+                        this.subscriber.onChange(change);
+                    } catch (RuntimeException e) {
+                        cancel();
+                    }
+                }
+                this.scheduled.set(false);
+                // A change published after the check above but before the flag was cleared found
+                // the flag set and left it to this task
+            } while (!this.cancelled && SLOTS.getVolatile(this.slots, (int) this.head & this.mask) != null
+                    && this.scheduled.compareAndSet(false, true));
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package workflow;
+
+/**
+ * Receives the changes published by an OfferChangeFeed.
+ */
+@FunctionalInterface
+public interface OfferChangeSubscriber {
+
+    /**
+     * Called for each change that passes the filter of the subscription, on a thread of the feed.
+     * Calls for one subscription never overlap and follow the order in which the changes were
+     * made, so the changes of one offer arrive in version order. If this method throws, the
+     * subscription is cancelled.
+     *
+     * @param change the change
+     */
+    void onChange(OfferChange change);
+}
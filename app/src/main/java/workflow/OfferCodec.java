@@ -0,0 +1,664 @@
+package workflow;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import workflow.Offer.OfferHistory;
+
+/**
+ * Versioned binary format of offers, history entries, offer details and dashboard rows, written
+ * to and read from ByteBuffers by hand rather than through reflection.
+ *
+ * <p>Each value starts with a byte that holds the format version in its high and the value type in
+ * its low four bits. Integers are unsigned or zigzag varints, enums are ordinals, and prices that
+ * are whole cents are varints of cents rather than eight-byte doubles. Strings are coded against a
+ * dictionary that the encoder and the decoder of one stream build alike: the first occurrence of a
+ * string is written as UTF-8 and added to the dictionary, later ones as its index, so user IDs and
+ * product names repeated across a stream cost a byte or two each. The history of an offer is
+ * written entry by entry as changes: details only when they differ from the previous entry and
+ * private data as the keys that were set, with their values, followed by the keys that were
+ * removed, so a key set to null is told apart from a removed one.
+ *
+ * <p>An Encoder and the Decoder that reads its output must see the same values in the same order.
+ * Neither allocates beyond the strings and objects it returns; both work on heap and direct
+ * buffers. If a value does not fit the buffer, or the buffer ends within a value, the buffer
+ * position and the dictionary are left as they were before the call, so the call can be repeated
+ * with a larger buffer or once more bytes arrived. Neither class is safe for concurrent use.
+ */
+public final class OfferCodec {
+
+    /**
+     * Version of the format written by the encoder, the only one the decoder reads.
+     */
+    public static final int FORMAT_VERSION = 2;
+
+    /**
+     * Number of strings a dictionary holds; later strings are always written as UTF-8.
+     */
+    public static final int DICTIONARY_CAPACITY = 4096;
+
+    private static final int TYPE_OFFER_DETAILS = 1;
+    private static final int TYPE_OFFER_HISTORY = 2;
+    private static final int TYPE_OFFER = 3;
+    private static final int TYPE_DASHBOARD_ROW = 4;
+
+    // Entry flags of an encoded offer history
+    private static final int DETAILS_CHANGED = 1;
+    private static final int PRIVATE_DATA_CHANGED = 2;
+
+    private static final Action[] ACTIONS = Action.values();
+    private static final OfferState[] STATES = OfferState.values();
+
+    private OfferCodec() {
+    }
+
+    /**
+     * Writes values of the format to buffers, coding strings against the dictionary of its stream.
+     */
+    public static final class Encoder {
+        private final Map<String, Integer> dictionary = new HashMap<>();
+        // Strings in the order they were added, to roll the dictionary back after an overflow
+        private String[] strings = new String[16];
+        private int size;
+        // Dictionary size when the value being written began
+        private int rollbackSize;
+        private ByteBuffer buffer;
+        // Visitors of private data changes, created once so writing an offer allocates none
+        private PersistentHashMap<String, String> changedData;
+        private int setCount;
+        private int removalCount;
+        private final PersistentHashMap.DiffVisitor<String, String> changeCounter = (key, oldValue, newValue) -> {
+            if (this.changedData.containsKey(key)) {
+                this.setCount++;
+            } else {
+                this.removalCount++;
+            }
+        };
+        private final PersistentHashMap.DiffVisitor<String, String> setWriter = (key, oldValue, newValue) -> {
+            if (this.changedData.containsKey(key)) {
+                putString(key);
+                putString(newValue);
+            }
+        };
+        private final PersistentHashMap.DiffVisitor<String, String> removalWriter = (key, oldValue, newValue) -> {
+            if (!this.changedData.containsKey(key)) {
+                putString(key);
+            }
+        };
+
+        /**
+         * Creates an encoder that starts a stream with an empty dictionary.
+         */
+        public Encoder() {
+        }
+
+        /**
+         * Writes offer details.
+         *
+         * @param buffer       the buffer to write to
+         * @param offerDetails the details to write
+         * @throws BufferOverflowException if the details do not fit the remaining buffer
+         */
+        public void encode(final ByteBuffer buffer, final OfferDetails offerDetails) {
+            final int mark = begin(buffer, TYPE_OFFER_DETAILS);
+            try {
+                putDetails(offerDetails);
+            } catch (RuntimeException e) {
+                throw rollback(mark, e);
+            }
+            this.buffer = null;
+        }
+
+        /**
+         * Writes a history entry with its full private data.
+         *
+         * @param buffer       the buffer to write to
+         * @param offerHistory the entry to write
+         * @throws BufferOverflowException if the entry does not fit the remaining buffer
+         */
+        public void encode(final ByteBuffer buffer, final OfferHistory offerHistory) {
+            final int mark = begin(buffer, TYPE_OFFER_HISTORY);
+            try {
+                putActionAndState(offerHistory.getOfferAction(), offerHistory.getOfferState());
+                putString(offerHistory.getOfferUserId());
+                putDetails(offerHistory.getOfferDetails());
+                final Map<String, String> privateData = offerHistory.getPrivateData();
+                putVarint(privateData.size());
+                for (Map.Entry<String, String> entry : privateData.entrySet()) {
+                    putString(entry.getKey());
+                    putString(entry.getValue());
+                }
+            } catch (RuntimeException e) {
+                throw rollback(mark, e);
+            }
+            this.buffer = null;
+        }
+
+        /**
+         * Writes an offer with its parties and whole history.
+         *
+         * @param buffer the buffer to write to
+         * @param offer  the offer to write
+         * @throws BufferOverflowException if the offer does not fit the remaining buffer
+         */
+        public void encode(final ByteBuffer buffer, final Offer offer) {
+            final int mark = begin(buffer, TYPE_OFFER);
+            try {
+                final UUID offerId = offer.getOfferKey();
+                buffer.putLong(offerId.getMostSignificantBits());
+                buffer.putLong(offerId.getLeastSignificantBits());
+                putString(offer.getBuyerUserId());
+                putString(offer.getSellerUserId());
+                final List<OfferHistory> history = offer.getOfferHistory();
+                putVarint(history.size());
+                OfferDetails previousDetails = null;
+                PersistentHashMap<String, String> previousData = PersistentHashMap.empty();
+                for (OfferHistory offerHistory : history) {
+                    final OfferDetails offerDetails = offerHistory.getOfferDetails();
+                    final PersistentHashMap<String, String> privateData = offerHistory.getPersistentPrivateData();
+                    final boolean detailsChanged = !sameDetails(previousDetails, offerDetails);
+                    final boolean dataChanged = privateData != previousData;
+                    putActionAndState(offerHistory.getOfferAction(), offerHistory.getOfferState());
+                    putString(offerHistory.getOfferUserId());
+                    buffer.put((byte) ((detailsChanged ? DETAILS_CHANGED : 0) | (dataChanged ? PRIVATE_DATA_CHANGED : 0)));
+                    if (detailsChanged) {
+                        putDetails(offerDetails);
+                    }
+                    if (dataChanged) {
+                        putChanges(previousData, privateData);
+                    }
+                    previousDetails = offerDetails;
+                    previousData = privateData;
+                }
+            } catch (RuntimeException e) {
+                throw rollback(mark, e);
+            }
+            this.buffer = null;
+        }
+
+        /**
+         * Writes a dashboard row.
+         *
+         * @param buffer the buffer to write to
+         * @param row    the row to write
+         * @throws BufferOverflowException if the row does not fit the remaining buffer
+         */
+        public void encode(final ByteBuffer buffer, final DashboardRow row) {
+            final int mark = begin(buffer, TYPE_DASHBOARD_ROW);
+            try {
+                putVarint(row.getVersion());
+                putActionAndState(row.getAction(), row.getState());
+                putString(row.getUserId());
+                putString(row.getBuyerUserId());
+                putString(row.getSellerUserId());
+                putString(row.getProductName());
+                putPrice(row.getTotalPrice());
+            } catch (RuntimeException e) {
+                throw rollback(mark, e);
+            }
+            this.buffer = null;
+        }
+
+        private int begin(final ByteBuffer buffer, final int type) {
+            final int mark = buffer.position();
+            if (!buffer.hasRemaining()) {
+                throw new BufferOverflowException();
+            }
+            this.buffer = buffer;
+            this.buffer.put((byte) (FORMAT_VERSION << 4 | type));
+            this.rollbackSize = this.size;
+            return mark;
+        }
+
+        /**
+         * Drops the strings the failed value added to the dictionary and resets the buffer.
+         */
+        private RuntimeException rollback(final int mark, final RuntimeException e) {
+            while (this.size > this.rollbackSize) {
+                this.dictionary.remove(this.strings[--this.size]);
+                this.strings[this.size] = null;
+            }
+            this.buffer.position(mark);
+            this.buffer = null;
+            return e;
+        }
+
+        private void putDetails(final OfferDetails offerDetails) {
+            putString(offerDetails.getProductName());
+            putVarint(zigzag(offerDetails.getProductQuantity()));
+            putPrice(offerDetails.getProductPrice());
+        }
+
+        /**
+         * Writes the keys whose values differ between two private data snapshots: the keys set,
+         * with their values, which may be null, and then the keys removed.
+         */
+        private void putChanges(final PersistentHashMap<String, String> previous,
+                final PersistentHashMap<String, String> current) {
+            // Counted first, since the counts precede the changes
+            this.changedData = current;
+            this.setCount = 0;
+            this.removalCount = 0;
+            try {
+                current.diff(previous, this.changeCounter);
+                putVarint(this.setCount);
+                current.diff(previous, this.setWriter);
+                putVarint(this.removalCount);
+                current.diff(previous, this.removalWriter);
+            } finally {
+                this.changedData = null;
+            }
+        }
+
+        private void putActionAndState(final Action action, final OfferState state) {
+            this.buffer.put((byte) (action.ordinal() << 4 | state.ordinal()));
+        }
+
+        /**
+         * Writes a price as twice its zigzag cents, or as 1 followed by its bits when it is not a
+         * whole number of cents that survives the round trip exactly.
+         */
+        private void putPrice(final double price) {
+            final double cents = Math.rint(price * 100);
+            if (Math.abs(cents) < 1L << 52
+                    && Double.doubleToLongBits((long) cents / 100.0) == Double.doubleToLongBits(price)) {
+                putVarlong(zigzag((long) cents) << 1);
+            } else {
+                this.buffer.put((byte) 1);
+                this.buffer.putLong(Double.doubleToRawLongBits(price));
+            }
+        }
+
+        /**
+         * Writes 0 for null, twice the index plus one for a string in the dictionary, and twice
+         * the UTF-8 length plus two followed by the bytes for any other string.
+         */
+        private void putString(final String value) {
+            if (value == null) {
+                this.buffer.put((byte) 0);
+                return;
+            }
+            final Integer index = this.dictionary.get(value);
+            if (index != null) {
+                putVarint(2 * index + 1);
+                return;
+            }
+            putVarint(2 * utf8Length(value) + 2);
+            putUtf8(value);
+            if (this.size < DICTIONARY_CAPACITY) {
+                if (this.size == this.strings.length) {
+                    this.strings = Arrays.copyOf(this.strings, 2 * this.size);
+                }
+                this.dictionary.put(value, this.size);
+                this.strings[this.size++] = value;
+            }
+        }
+
+        private void putUtf8(final String value) {
+            final ByteBuffer out = this.buffer;
+            for (int i = 0; i < value.length(); i++) {
+                final char c = value.charAt(i);
+                if (c < 0x80) {
+                    out.put((byte) c);
+                } else if (c < 0x800) {
+                    out.put((byte) (0xC0 | c >>> 6));
+                    out.put((byte) (0x80 | c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                        && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    final int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    out.put((byte) (0xF0 | codePoint >>> 18));
+                    out.put((byte) (0x80 | codePoint >>> 12 & 0x3F));
+                    out.put((byte) (0x80 | codePoint >>> 6 & 0x3F));
+                    out.put((byte) (0x80 | codePoint & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    // Unpaired surrogates become '?', as String.getBytes does
+                    out.put((byte) '?');
+                } else {
+                    out.put((byte) (0xE0 | c >>> 12));
+                    out.put((byte) (0x80 | c >>> 6 & 0x3F));
+                    out.put((byte) (0x80 | c & 0x3F));
+                }
+            }
+        }
+
+        private void putVarint(final int value) {
+            putVarlong(value & 0xFFFFFFFFL);
+        }
+
+        private void putVarlong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                this.buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            this.buffer.put((byte) value);
+        }
+    }
+
+    /**
+     * Reads values of the format from buffers, resolving strings against the dictionary of its stream.
+     */
+    public static final class Decoder {
+        private String[] strings = new String[16];
+        private int size;
+        // Dictionary size when the value being read began
+        private int rollbackSize;
+        // Copy of string bytes read from buffers without an accessible array
+        private byte[] scratch = new byte[64];
+        private ByteBuffer buffer;
+
+        /**
+         * Creates a decoder that starts a stream with an empty dictionary.
+         */
+        public Decoder() {
+        }
+
+        /**
+         * Reads offer details.
+         *
+         * @param buffer the buffer to read from
+         * @return the details
+         * @throws BufferUnderflowException if the buffer ends within the details
+         * @throws IllegalArgumentException if the buffer holds no offer details of this format version
+         */
+        public OfferDetails decodeOfferDetails(final ByteBuffer buffer) {
+            final int mark = begin(buffer, TYPE_OFFER_DETAILS);
+            try {
+                final OfferDetails offerDetails = getDetails();
+                this.buffer = null;
+                return offerDetails;
+            } catch (RuntimeException e) {
+                throw rollback(mark, e);
+            }
+        }
+
+        /**
+         * Reads a history entry.
+         *
+         * @param buffer the buffer to read from
+         * @return the entry
+         * @throws BufferUnderflowException if the buffer ends within the entry
+         * @throws IllegalArgumentException if the buffer holds no history entry of this format version
+         */
+        public OfferHistory decodeOfferHistory(final ByteBuffer buffer) {
+            final int mark = begin(buffer, TYPE_OFFER_HISTORY);
+            try {
+                final int actionAndState = getActionAndState();
+                final String userId = getString();
+                final OfferDetails offerDetails = getDetails();
+                PersistentHashMap<String, String> privateData = PersistentHashMap.empty();
+                for (int i = getCount(); i > 0; i--) {
+                    privateData = privateData.plus(getString(), getString());
+                }
+                this.buffer = null;
+                return new OfferHistory(offerDetails, STATES[actionAndState & 0x0F], ACTIONS[actionAndState >>> 4],
+                        userId, privateData);
+            } catch (RuntimeException e) {
+                throw rollback(mark, e);
+            }
+        }
+
+        /**
+         * Reads an offer whose future history entries are reported to no one.
+         *
+         * @param buffer the buffer to read from
+         * @return the offer
+         * @throws BufferUnderflowException if the buffer ends within the offer
+         * @throws IllegalArgumentException if the buffer holds no offer of this format version
+         */
+        public Offer decodeOffer(final ByteBuffer buffer) {
+            return decodeOffer(buffer, OfferHistoryListener.NONE);
+        }
+
+        /**
+         * Reads an offer.
+         *
+         * @param buffer   the buffer to read from
+         * @param listener the listener notified of future history entries of the offer
+         * @return the offer
+         * @throws BufferUnderflowException if the buffer ends within the offer
+         * @throws IllegalArgumentException if the buffer holds no offer of this format version
+         */
+        public Offer decodeOffer(final ByteBuffer buffer, final OfferHistoryListener listener) {
+            final int mark = begin(buffer, TYPE_OFFER);
+            try {
+                final UUID offerId = new UUID(buffer.getLong(), buffer.getLong());
+                final String buyerUserId = getString();
+                final String sellerUserId = getString();
+                final int entries = getCount();
+                if (entries == 0) {
+                    throw new IllegalArgumentException("Offer " + offerId + " has no history");
+                }
+                Offer offer = null;
+                OfferDetails offerDetails = null;
+                PersistentHashMap<String, String> privateData = PersistentHashMap.empty();
+                for (int i = 0; i < entries; i++) {
+                    final int actionAndState = getActionAndState();
+                    final String userId = getString();
+                    final int flags = buffer.get();
+                    if ((flags & DETAILS_CHANGED) != 0) {
+                        offerDetails = getDetails();
+                    } else if (offerDetails == null) {
+                        throw new IllegalArgumentException("First entry of offer " + offerId + " has no details");
+                    }
+                    if ((flags & PRIVATE_DATA_CHANGED) != 0) {
+                        for (int sets = getCount(); sets > 0; sets--) {
+                            privateData = privateData.plus(getString(), getString());
+                        }
+                        for (int removals = getCount(); removals > 0; removals--) {
+                            privateData = privateData.minus(getString());
+                        }
+                    }
+                    final OfferHistory offerHistory = new OfferHistory(offerDetails, STATES[actionAndState & 0x0F],
+                            ACTIONS[actionAndState >>> 4], userId, privateData);
+                    if (offer == null) {
+                        offer = Offer.restore(offerId, buyerUserId, sellerUserId, offerHistory, listener);
+                    } else {
+                        offer.replay(offerHistory);
+                    }
+                }
+                this.buffer = null;
+                return offer;
+            } catch (RuntimeException e) {
+                throw rollback(mark, e);
+            }
+        }
+
+        /**
+         * Reads a dashboard row.
+         *
+         * @param buffer the buffer to read from
+         * @return the row
+         * @throws BufferUnderflowException if the buffer ends within the row
+         * @throws IllegalArgumentException if the buffer holds no dashboard row of this format version
+         */
+        public DashboardRow decodeDashboardRow(final ByteBuffer buffer) {
+            final int mark = begin(buffer, TYPE_DASHBOARD_ROW);
+            try {
+                final int version = getCount();
+                final int actionAndState = getActionAndState();
+                final String userId = getString();
+                final String buyerUserId = getString();
+                final String sellerUserId = getString();
+                final String productName = getString();
+                final double totalPrice = getPrice();
+                this.buffer = null;
+                // A quantity of one keeps the total exactly as it was encoded
+                return DashboardRow.of(version, ACTIONS[actionAndState >>> 4], userId, STATES[actionAndState & 0x0F],
+                        productName, buyerUserId, sellerUserId, 1, totalPrice);
+            } catch (RuntimeException e) {
+                throw rollback(mark, e);
+            }
+        }
+
+        private int begin(final ByteBuffer buffer, final int type) {
+            final int mark = buffer.position();
+            final int header = buffer.get() & 0xFF;
+            if (header != (FORMAT_VERSION << 4 | type)) {
+                buffer.position(mark);
+                throw new IllegalArgumentException("Expected a value of type " + type + " in format version "
+                        + FORMAT_VERSION + ", found type " + (header & 0x0F) + " in version " + (header >>> 4));
+            }
+            this.buffer = buffer;
+            this.rollbackSize = this.size;
+            return mark;
+        }
+
+        /**
+         * Drops the strings the failed value added to the dictionary and resets the buffer.
+         */
+        private RuntimeException rollback(final int mark, final RuntimeException e) {
+            while (this.size > this.rollbackSize) {
+                this.strings[--this.size] = null;
+            }
+            this.buffer.position(mark);
+            this.buffer = null;
+            return e;
+        }
+
+        private OfferDetails getDetails() {
+            final String productName = getString();
+            final int productQuantity = unzigzag(getUnsignedInt());
+            return OfferDetails.of(productName, productQuantity, getPrice());
+        }
+
+        private int getActionAndState() {
+            final int actionAndState = this.buffer.get() & 0xFF;
+            if ((actionAndState >>> 4) >= ACTIONS.length || (actionAndState & 0x0F) >= STATES.length) {
+                throw new IllegalArgumentException("Invalid action and state: " + actionAndState);
+            }
+            return actionAndState;
+        }
+
+        private double getPrice() {
+            final long value = getVarlong();
+            if (value == 1) {
+                return Double.longBitsToDouble(this.buffer.getLong());
+            }
+            if ((value & 1) != 0) {
+                throw new IllegalArgumentException("Invalid price: " + value);
+            }
+            return unzigzag(value >>> 1) / 100.0;
+        }
+
+        private String getString() {
+            final int value = getCount();
+            if (value == 0) {
+                return null;
+            }
+            if ((value & 1) != 0) {
+                final int index = value >>> 1;
+                if (index >= this.size) {
+                    throw new IllegalArgumentException("Unknown string " + index);
+                }
+                return this.strings[index];
+            }
+            final int length = (value >>> 1) - 1;
+            final ByteBuffer in = this.buffer;
+            if (length > in.remaining()) {
+                throw new BufferUnderflowException();
+            }
+            final String string;
+            if (in.hasArray()) {
+                string = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+                in.position(in.position() + length);
+            } else {
+                if (length > this.scratch.length) {
+                    this.scratch = new byte[Math.max(length, 2 * this.scratch.length)];
+                }
+                in.get(this.scratch, 0, length);
+                string = new String(this.scratch, 0, length, StandardCharsets.UTF_8);
+            }
+            if (this.size < DICTIONARY_CAPACITY) {
+                if (this.size == this.strings.length) {
+                    this.strings = Arrays.copyOf(this.strings, 2 * this.size);
+                }
+                this.strings[this.size++] = string;
+            }
+            return string;
+        }
+
+        /**
+         * Reads a varint that must fit a non-negative int, such as a count or a version.
+         */
+        private int getCount() {
+            final long value = getVarlong();
+            if (value > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Invalid count: " + value);
+            }
+            return (int) value;
+        }
+
+        /**
+         * Reads a varint that must fit 32 bits, such as a zigzag-coded int.
+         */
+        private int getUnsignedInt() {
+            final long value = getVarlong();
+            if ((value >>> 32) != 0) {
+                throw new IllegalArgumentException("Invalid int: " + value);
+            }
+            return (int) value;
+        }
+
+        private long getVarlong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                final byte b = this.buffer.get();
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Varint longer than 64 bits");
+        }
+    }
+
+    private static boolean sameDetails(final OfferDetails previous, final OfferDetails current) {
+        return previous == current || previous != null && previous.getProductName().equals(current.getProductName())
+                && previous.getProductQuantity() == current.getProductQuantity()
+                && Double.doubleToLongBits(previous.getProductPrice()) == Double.doubleToLongBits(current.getProductPrice());
+    }
+
+    private static int utf8Length(final String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static long zigzag(final long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static int zigzag(final int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static long unzigzag(final long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static int unzigzag(final int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,104 @@
+package workflow;
+
+import java.util.Map;
+
+/**
+ * A single offer action in a batch applied through IOfferService.applyBatch.
+ * SUBMIT commands create a new offer; every other command targets an existing offer by its ID.
+ */
+public final class OfferCommand {
+    private final Action action;
+    private final String userId;
+    private final String offerId;
+    private final String sellerUserId;
+    private final OfferDetails offerDetails;
+    private final Map<String, String> privateData;
+    private final int expectedVersion;
+
+    private OfferCommand(final Action action, final String userId, final String offerId, final String sellerUserId,
+            final OfferDetails offerDetails, final Map<String, String> privateData, final int expectedVersion) {
+        this.action = action;
+        this.userId = userId;
+        this.offerId = offerId;
+        this.sellerUserId = sellerUserId;
+        this.offerDetails = offerDetails;
+        this.privateData = privateData;
+        this.expectedVersion = expectedVersion;
+    }
+
+    /**
+     * Creates a command that submits a new offer.
+     *
+     * @param buyerUserId  the ID of the buyer
+     * @param sellerUserId the ID of the seller
+     * @param offerDetails the details of the offer
+     * @return a SUBMIT command
+     */
+    public static OfferCommand submit(final String buyerUserId, final String sellerUserId, final OfferDetails offerDetails) {
+        return new OfferCommand(Action.SUBMIT, buyerUserId, null, sellerUserId, offerDetails, null, Offer.ANY_VERSION);
+    }
+
+    public static OfferCommand accept(final String userId, final String offerId) {
+        return new OfferCommand(Action.ACCEPT, userId, offerId, null, null, null, Offer.ANY_VERSION);
+    }
+
+    public static OfferCommand cancel(final String userId, final String offerId) {
+        return new OfferCommand(Action.CANCEL, userId, offerId, null, null, null, Offer.ANY_VERSION);
+    }
+
+    public static OfferCommand withdraw(final String userId, final String offerId) {
+        return new OfferCommand(Action.WITHDRAW, userId, offerId, null, null, null, Offer.ANY_VERSION);
+    }
+
+    public static OfferCommand proposeUpdate(final String userId, final String offerId, final OfferDetails offerDetails) {
+        return new OfferCommand(Action.PROPOSE_UPDATE, userId, offerId, null, offerDetails, null, Offer.ANY_VERSION);
+    }
+
+    public static OfferCommand updatePrivateData(final String userId, final String offerId, final Map<String, String> privateData) {
+        return new OfferCommand(Action.UPDATE_PRIVATE_DATA, userId, offerId, null, null, privateData, Offer.ANY_VERSION);
+    }
+
+    /**
+     * Returns a copy of this command that only applies if the offer is still at the given version.
+     *
+     * @param expectedVersion the offer version the user last observed
+     * @return a version-checked copy of this command
+     */
+    public OfferCommand atVersion(final int expectedVersion) {
+        return new OfferCommand(this.action, this.userId, this.offerId, this.sellerUserId, this.offerDetails,
+                this.privateData, expectedVersion);
+    }
+
+    public Action getAction() {
+        return this.action;
+    }
+
+    /**
+     * Returns the user performing the action; for SUBMIT commands this is the buyer.
+     *
+     * @return the ID of the acting user
+     */
+    public String getUserId() {
+        return this.userId;
+    }
+
+    public String getOfferId() {
+        return this.offerId;
+    }
+
+    public String getSellerUserId() {
+        return this.sellerUserId;
+    }
+
+    public OfferDetails getOfferDetails() {
+        return this.offerDetails;
+    }
+
+    public Map<String, String> getPrivateData() {
+        return this.privateData;
+    }
+
+    public int getExpectedVersion() {
+        return this.expectedVersion;
+    }
+}
@@ -0,0 +1,184 @@
+package workflow;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Differences between two versions of an offer: the offer details, state and action that
+ * changed, and the private data keys the requesting user changed in between. A field that is
+ * equal in both versions has no Change.
+ */
+public class OfferDifference {
+
+    private final int fromVersion;
+    private final int toVersion;
+    private final Change<String> productName;
+    private final Change<Integer> productQuantity;
+    private final Change<Double> productPrice;
+    private final Change<OfferState> state;
+    private final Change<Action> action;
+    private final Map<String, Change<String>> privateData;
+
+    private OfferDifference(final int fromVersion, final int toVersion, final Change<String> productName,
+            final Change<Integer> productQuantity, final Change<Double> productPrice, final Change<OfferState> state,
+            final Change<Action> action, final Map<String, Change<String>> privateData) {
+        this.fromVersion = fromVersion;
+        this.toVersion = toVersion;
+        this.productName = productName;
+        this.productQuantity = productQuantity;
+        this.productPrice = productPrice;
+        this.state = state;
+        this.action = action;
+        this.privateData = privateData;
+    }
+
+    /**
+     * Compares the entries of two versions.
+     *
+     * @param fromVersion the version compared from
+     * @param from        the history entry of fromVersion
+     * @param toVersion   the version compared to
+     * @param to          the history entry of toVersion
+     * @param privateData the private data keys that changed, with their values in both versions
+     * @return the differences between the two entries
+     */
+    static OfferDifference of(final int fromVersion, final Offer.OfferHistory from, final int toVersion,
+            final Offer.OfferHistory to, final Map<String, Change<String>> privateData) {
+        final OfferDetails oldDetails = from.getOfferDetails();
+        final OfferDetails newDetails = to.getOfferDetails();
+        return new OfferDifference(fromVersion, toVersion,
+                Change.between(oldDetails.getProductName(), newDetails.getProductName()),
+                Change.between(oldDetails.getProductQuantity(), newDetails.getProductQuantity()),
+                Change.between(oldDetails.getProductPrice(), newDetails.getProductPrice()),
+                Change.between(from.getOfferState(), to.getOfferState()),
+                Change.between(from.getOfferAction(), to.getOfferAction()),
+                privateData.isEmpty() ? Collections.emptyMap()
+                        : Collections.unmodifiableMap(new LinkedHashMap<>(privateData)));
+    }
+
+    public int getFromVersion() {
+        return this.fromVersion;
+    }
+
+    public int getToVersion() {
+        return this.toVersion;
+    }
+
+    /**
+     * @return the change of the product name, or null if it is unchanged
+     */
+    public Change<String> getProductName() {
+        return this.productName;
+    }
+
+    /**
+     * @return the change of the product quantity, or null if it is unchanged
+     */
+    public Change<Integer> getProductQuantity() {
+        return this.productQuantity;
+    }
+
+    /**
+     * @return the change of the product price, or null if it is unchanged
+     */
+    public Change<Double> getProductPrice() {
+        return this.productPrice;
+    }
+
+    /**
+     * @return the change of the offer state, or null if it is unchanged
+     */
+    public Change<OfferState> getState() {
+        return this.state;
+    }
+
+    /**
+     * @return the change of the action that produced the version, or null if it is the same action
+     */
+    public Change<Action> getAction() {
+        return this.action;
+    }
+
+    /**
+     * Returns the private data keys the requesting user changed. A key that was added has no old
+     * value and a key that was removed has no new value.
+     *
+     * @return a read-only map from each changed key to its change
+     */
+    public Map<String, Change<String>> getPrivateData() {
+        return this.privateData;
+    }
+
+    /**
+     * @return true if any field differs between the two versions
+     */
+    public boolean hasChanges() {
+        return this.productName != null || this.productQuantity != null || this.productPrice != null
+                || this.state != null || this.action != null || !this.privateData.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "OfferDifference{" + this.fromVersion + "->" + this.toVersion + ", productName=" + this.productName
+                + ", productQuantity=" + this.productQuantity + ", productPrice=" + this.productPrice
+                + ", state=" + this.state + ", action=" + this.action + ", privateData=" + this.privateData + "}";
+    }
+
+    /**
+     * The value of a field in the older and in the newer version.
+     *
+     * @param <T> the type of the field
+     */
+    public static final class Change<T> {
+        private final T oldValue;
+        private final T newValue;
+
+        private Change(final T oldValue, final T newValue) {
+            this.oldValue = oldValue;
+            this.newValue = newValue;
+        }
+
+        public static <T> Change<T> of(final T oldValue, final T newValue) {
+            return new Change<>(oldValue, newValue);
+        }
+
+        /**
+         * Returns the change between two values, or null if they are equal.
+         */
+        static <T> Change<T> between(final T oldValue, final T newValue) {
+            return Objects.equals(oldValue, newValue) ? null : new Change<>(oldValue, newValue);
+        }
+
+        public T getOldValue() {
+            return this.oldValue;
+        }
+
+        public T getNewValue() {
+            return this.newValue;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof Change)) {
+                return false;
+            }
+            final Change<?> change = (Change<?>) other;
+            return Objects.equals(this.oldValue, change.oldValue) && Objects.equals(this.newValue, change.newValue);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.oldValue, this.newValue);
+        }
+
+        @Override
+        public String toString() {
+            return this.oldValue + " -> " + this.newValue;
+        }
+    }
+}
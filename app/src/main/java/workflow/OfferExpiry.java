@@ -0,0 +1,201 @@
+package workflow;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import workflow.Offer.OfferHistory;
+import workflow.TimingWheel.Timeout;
+
+/**
+ * Cancels offers that stay in a state for longer than the time to live configured for that
+ * state. As an OfferHistoryListener it sets a deadline whenever an offer enters a state with a
+ * time to live and drops it when the offer leaves that state; entries that keep the state, such
+ * as private data updates, leave the deadline as it is. Deadlines are kept in a hierarchical
+ * TimingWheel, so setting or dropping one is O(1) no matter how many are pending, and no offer is
+ * ever scanned to find the expired ones.
+ *
+ * <p>{@link #expire(OfferRepository)} turns the wheel to the current time and cancels every offer
+ * whose deadline passed through the system role of PermittedActionMap and StateTransitionMap,
+ * recording {@link Offer#SYSTEM_USER_ID} as the acting user. Call it periodically, for example
+ * every tick from a ScheduledExecutorService. Deadlines hold offer IDs rather than offers, so a
+ * pending deadline does not keep an offer on the heap.
+ *
+ * <p>The expiry must be among the listeners of the repository's offers, so it sees every state
+ * change, including the cancellations it causes. Deadlines are not persisted: after a restart,
+ * {@link #trackAll(OfferRepository)} gives every offer of the repository a full time to live.
+ */
+public final class OfferExpiry implements OfferHistoryListener {
+
+    /**
+     * Default resolution of deadlines.
+     */
+    public static final Duration DEFAULT_TICK = Duration.ofSeconds(1);
+
+    private static final OfferState[] STATES = OfferState.values();
+    private static final long NO_LIMIT = -1;
+
+    // Time to live in milliseconds by state ordinal, NO_LIMIT for states offers may stay in
+    private final long[] timeToLive = new long[STATES.length];
+    private final long tickMillis;
+    private final Clock clock;
+    // Time of tick 0 of the wheel
+    private final long origin;
+    private final TimingWheel<UUID> wheel = new TimingWheel<>();
+    // The pending deadline of each offer, replaced or removed under the offer lock
+    private final Map<UUID, Timeout<UUID>> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Creates an expiry with DEFAULT_TICK resolution that follows the system clock.
+     *
+     * @param timeToLive the time an offer may stay in each state; states that are not keys never expire
+     * @throws IllegalArgumentException if a time to live is not positive or is set for a terminal state
+     */
+    public OfferExpiry(final Map<OfferState, Duration> timeToLive) {
+        this(timeToLive, DEFAULT_TICK, Clock.systemUTC());
+    }
+
+    /**
+     * Creates an expiry that follows a clock. Offers are cancelled on the first tick at or after
+     * their deadline, so they stay in a state for at most one tick longer than its time to live.
+     *
+     * @param timeToLive the time an offer may stay in each state; states that are not keys never expire
+     * @param tick       the resolution of deadlines, at least one millisecond
+     * @param clock      the clock deadlines are measured with
+     * @throws IllegalArgumentException if a time to live or the tick is not positive, or a time to
+     *                                  live is set for a terminal state
+     */
+    public OfferExpiry(final Map<OfferState, Duration> timeToLive, final Duration tick, final Clock clock) {
+        if (tick.toMillis() < 1) {
+            throw new IllegalArgumentException("Invalid tick: " + tick);
+        }
+        Arrays.fill(this.timeToLive, NO_LIMIT);
+        for (Map.Entry<OfferState, Duration> entry : timeToLive.entrySet()) {
+            final OfferState state = entry.getKey();
+            if (state.isTerminal() || entry.getValue().isNegative() || entry.getValue().isZero()) {
+                throw new IllegalArgumentException("Invalid time to live for " + state + ": " + entry.getValue());
+            }
+            this.timeToLive[state.ordinal()] = entry.getValue().toMillis();
+        }
+        this.tickMillis = tick.toMillis();
+        this.clock = clock;
+        this.origin = clock.millis();
+    }
+
+    /**
+     * Sets a deadline when the entry moves the offer to a state with a time to live, replacing
+     * the deadline of the state it leaves.
+     */
+    @Override
+    public void beforeAppend(final Offer offer, final OfferHistory offerHistory) {
+        final OfferState newState = offerHistory.getOfferState();
+        if (offer.getVersion() != 0 && offer.getCurrentState() == newState) {
+            return;
+        }
+        final UUID offerId = offer.getOfferKey();
+        final long limit = this.timeToLive[newState.ordinal()];
+        final Timeout<UUID> previous = limit == NO_LIMIT ? this.pending.remove(offerId)
+                : this.pending.put(offerId, this.wheel.schedule(offerId, deadlineTick(limit)));
+        if (previous != null) {
+            this.wheel.cancel(previous);
+        }
+    }
+
+    /**
+     * Sets a full time to live for every offer of a repository that is in a state with a time to
+     * live and has no deadline yet, such as offers recovered after a restart. Call it before any
+     * action is applied to those offers.
+     *
+     * @param repository the repository to read the offers from
+     * @return the number of deadlines set
+     */
+    public int trackAll(final OfferRepository repository) {
+        int tracked = 0;
+        for (OfferState state : STATES) {
+            final long limit = this.timeToLive[state.ordinal()];
+            if (limit == NO_LIMIT) {
+                continue;
+            }
+            for (String offerId : repository.findOfferIdsByState(state)) {
+                final UUID offerKey = OfferIds.parse(offerId);
+                if (offerKey == null || this.pending.containsKey(offerKey)) {
+                    continue;
+                }
+                final Timeout<UUID> timeout = this.wheel.schedule(offerKey, deadlineTick(limit));
+                if (this.pending.putIfAbsent(offerKey, timeout) == null) {
+                    tracked++;
+                } else {
+                    this.wheel.cancel(timeout);
+                }
+            }
+        }
+        return tracked;
+    }
+
+    /**
+     * Cancels every offer whose deadline has passed. An offer that changed state after its
+     * deadline expired, but before it was cancelled, is left alone. If the repository fails to
+     * load an offer, the offer is retried on the next tick and the first failure is rethrown once
+     * the other offers are handled.
+     *
+     * @param repository the repository the offers are stored in
+     * @return the number of offers cancelled
+     */
+    public int expire(final OfferRepository repository) {
+        final long tick = Math.floorDiv(this.clock.millis() - this.origin, this.tickMillis);
+        final List<Timeout<UUID>> expired = this.wheel.advance(tick);
+        int cancelled = 0;
+        RuntimeException failure = null;
+        for (Timeout<UUID> timeout : expired) {
+            final UUID offerId = timeout.getValue();
+            try {
+                final Offer offer = repository.find(offerId.toString());
+                if (offer == null) {
+                    this.pending.remove(offerId, timeout);
+                    continue;
+                }
+                final ActionResult result = offer.tryExpire(() -> this.pending.get(offerId) == timeout);
+                if (result.isAccepted()) {
+                    cancelled++;
+                } else {
+                    // Superseded by a newer deadline, or the offer may no longer be cancelled
+                    this.pending.remove(offerId, timeout);
+                }
+            } catch (RuntimeException e) {
+                final Timeout<UUID> retry = this.wheel.schedule(offerId, tick + 1);
+                if (!this.pending.replace(offerId, timeout, retry)) {
+                    this.wheel.cancel(retry);
+                }
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return cancelled;
+    }
+
+    /**
+     * Returns the number of offers with a pending deadline.
+     *
+     * @return the number of pending deadlines
+     */
+    public int getPendingCount() {
+        return this.wheel.size();
+    }
+
+    /**
+     * Returns the first tick at which the given time has elapsed from now.
+     */
+    private long deadlineTick(final long limit) {
+        return Math.ceilDiv(this.clock.millis() - this.origin + limit, this.tickMillis);
+    }
+}
@@ -0,0 +1,46 @@
+package workflow;
+
+import workflow.Offer.OfferHistory;
+
+/**
+ * Receives every entry of an offer history before it is appended, for example to persist it.
+ */
+public interface OfferHistoryListener {
+
+    /**
+     * Listener that ignores every entry.
+     */
+    OfferHistoryListener NONE = (offer, offerHistory) -> { };
+
+    /**
+     * Called while holding the offer lock, so entries of one offer arrive in version order.
+     * While this method runs, offer.getLastOfferHistory() is still the previous entry, or absent
+     * for the SUBMIT entry. The entry becomes version offer.getVersion() + 1 once this method
+     * returns; if it throws, the entry is discarded and the action fails.
+     *
+     * @param offer        the offer the entry belongs to
+     * @param offerHistory the entry about to be appended
+     */
+    void beforeAppend(Offer offer, OfferHistory offerHistory);
+
+    /**
+     * Returns a listener that reports every entry to this listener and then to the next one. If
+     * this listener throws, the entry is discarded without reaching the next one, so a listener
+     * placed after the one that persists entries only sees entries that are persisted.
+     *
+     * @param next the listener called after this one
+     * @return the combined listener
+     */
+    default OfferHistoryListener andThen(final OfferHistoryListener next) {
+        if (next == NONE) {
+            return this;
+        }
+        if (this == NONE) {
+            return next;
+        }
+        return (offer, offerHistory) -> {
+            beforeAppend(offer, offerHistory);
+            next.beforeAppend(offer, offerHistory);
+        };
+    }
+}
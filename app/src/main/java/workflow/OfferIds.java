@@ -0,0 +1,68 @@
+package workflow;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Conversions between the text form of offer IDs, used at the API boundary, and the 128-bit
+ * form offers are stored and indexed by.
+ */
+final class OfferIds {
+
+    // Value of each ASCII hex digit, -1 for every other character
+    private static final byte[] NIBBLES = new byte[128];
+
+    static {
+        Arrays.fill(NIBBLES, (byte) -1);
+        for (int c = '0'; c <= '9'; c++) {
+            NIBBLES[c] = (byte) (c - '0');
+        }
+        for (int c = 'a'; c <= 'f'; c++) {
+            NIBBLES[c] = (byte) (c - 'a' + 10);
+            NIBBLES[c - 'a' + 'A'] = (byte) (c - 'a' + 10);
+        }
+    }
+
+    private OfferIds() {
+    }
+
+    /**
+     * Parses the canonical text form of a UUID, as produced by UUID.toString(). Unlike
+     * UUID.fromString, anything else yields null instead of an exception, so looking up an
+     * unknown ID stays cheap.
+     *
+     * @param offerId the text form of the ID, may be null
+     * @return the parsed ID, or null if offerId is not a canonical UUID
+     */
+    static UUID parse(final String offerId) {
+        if (offerId == null || offerId.length() != 36 || offerId.charAt(8) != '-' || offerId.charAt(13) != '-'
+                || offerId.charAt(18) != '-' || offerId.charAt(23) != '-') {
+            return null;
+        }
+        final long timeLow = parseHex(offerId, 0, 8);
+        final long timeMid = parseHex(offerId, 9, 13);
+        final long timeHigh = parseHex(offerId, 14, 18);
+        final long sequence = parseHex(offerId, 19, 23);
+        final long node = parseHex(offerId, 24, 36);
+        if ((timeLow | timeMid | timeHigh | sequence | node) < 0) {
+            return null;
+        }
+        return new UUID(timeLow << 32 | timeMid << 16 | timeHigh, sequence << 48 | node);
+    }
+
+    /**
+     * Parses a run of at most 12 hex digits, or returns -1 if a character is not a hex digit.
+     * Digits are decoded through a table, since branching on random digits mispredicts.
+     */
+    private static long parseHex(final String text, final int from, final int to) {
+        long value = 0;
+        int invalid = 0;
+        for (int i = from; i < to; i++) {
+            final char c = text.charAt(i);
+            final int digit = c < NIBBLES.length ? NIBBLES[c] : -1;
+            invalid |= digit;
+            value = value << 4 | (digit & 0xF);
+        }
+        return invalid < 0 ? -1 : value;
+    }
+}
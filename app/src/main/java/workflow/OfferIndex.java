@@ -0,0 +1,395 @@
+package workflow;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import workflow.Offer.OfferHistory;
+
+/**
+ * Secondary indexes over the offers of a repository, by state, by seller and state, by buyer and
+ * state, by product and state, and by buyer and seller. Each key maps to the set of IDs of the
+ * offers it currently matches, so a query costs time proportional to the offers it returns, not
+ * to the offers stored. IDs are kept as pairs of longs in open-addressing tables rather than as
+ * offers, so the index never keeps an offer on the heap.
+ *
+ * <p>As an OfferHistoryListener the index moves an offer between keys while the offer lock is
+ * held, before the entry that changes its state or product is appended. Each key has a lock of
+ * its own, so offers in different states and of different users are reindexed in parallel.
+ */
+final class OfferIndex implements OfferHistoryListener {
+
+    private static final SymbolTable SYMBOLS = SymbolTable.shared();
+
+    private final Map<Key, OfferKeySet> offers = new ConcurrentHashMap<>();
+
+    /**
+     * Indexes an offer under its current state and product. Adding an offer again has no effect.
+     *
+     * @param offer the offer to index
+     */
+    void add(final Offer offer) {
+        final UUID offerId = offer.getOfferKey();
+        add(offerId, offer.getBuyerUserId(), offer.getSellerUserId(), offer.getCurrentState(),
+                offer.getLastOfferHistory().getOfferDetails().getProductName());
+    }
+
+    /**
+     * Indexes an offer under the given state and product, as when an offer is rebuilt from storage.
+     *
+     * @param offerId      the ID of the offer
+     * @param buyerUserId  the ID of the buyer
+     * @param sellerUserId the ID of the seller
+     * @param state        the current state of the offer
+     * @param productName  the current product name of the offer
+     */
+    void add(final UUID offerId, final String buyerUserId, final String sellerUserId, final OfferState state,
+            final String productName) {
+        final long high = offerId.getMostSignificantBits();
+        final long low = offerId.getLeastSignificantBits();
+        final String buyer = canonical(buyerUserId);
+        final String seller = canonical(sellerUserId);
+        add(Key.parties(buyer, seller), high, low);
+        addState(high, low, buyer, seller, state, canonical(productName));
+    }
+
+    /**
+     * Returns the copy of a string held by the symbol table, so keys share it with the offers.
+     */
+    private static String canonical(final String value) {
+        return SYMBOLS.canonical(value);
+    }
+
+    /**
+     * Moves the offer to the keys of the entry's state and product if either changes.
+     */
+    @Override
+    public void beforeAppend(final Offer offer, final OfferHistory offerHistory) {
+        if (offer.getVersion() == 0) {
+            // Submitted offers are indexed when they are added to the repository
+            return;
+        }
+        final OfferState oldState = offer.getCurrentState();
+        final OfferState newState = offerHistory.getOfferState();
+        final String oldProduct = offer.getLastOfferHistory().getOfferDetails().getProductName();
+        final String newProduct = offerHistory.getOfferDetails().getProductName();
+        if (oldState == newState && Objects.equals(oldProduct, newProduct)) {
+            return;
+        }
+        final UUID offerId = offer.getOfferKey();
+        final long high = offerId.getMostSignificantBits();
+        final long low = offerId.getLeastSignificantBits();
+        final String buyerUserId = offer.getBuyerUserId();
+        final String sellerUserId = offer.getSellerUserId();
+        if (oldState != newState) {
+            remove(Key.state(oldState), high, low);
+            remove(Key.seller(sellerUserId, oldState), high, low);
+            remove(Key.buyer(buyerUserId, oldState), high, low);
+        }
+        remove(Key.product(oldProduct, oldState), high, low);
+        addState(high, low, buyerUserId, sellerUserId, newState, canonical(newProduct));
+    }
+
+    private void addState(final long high, final long low, final String buyerUserId, final String sellerUserId,
+            final OfferState state, final String productName) {
+        add(Key.state(state), high, low);
+        add(Key.seller(sellerUserId, state), high, low);
+        add(Key.buyer(buyerUserId, state), high, low);
+        add(Key.product(productName, state), high, low);
+    }
+
+    private void add(final Key key, final long high, final long low) {
+        OfferKeySet set = this.offers.get(key);
+        // A set that became empty has left the index; the offer goes to the set that replaces it
+        while (set == null || !set.add(high, low)) {
+            set = this.offers.computeIfAbsent(key, OfferKeySet::new);
+        }
+    }
+
+    private void remove(final Key key, final long high, final long low) {
+        final OfferKeySet set = this.offers.get(key);
+        if (set != null) {
+            set.remove(high, low);
+        }
+    }
+
+    /**
+     * Returns the number of keys that match at least one offer.
+     *
+     * @return the number of keys held
+     */
+    int keyCount() {
+        return this.offers.size();
+    }
+
+    /**
+     * Returns the IDs of the offers in a state.
+     *
+     * @param state the state
+     * @return the offer IDs, in no particular order
+     */
+    List<String> findByState(final OfferState state) {
+        return find(Key.state(state));
+    }
+
+    /**
+     * Returns the IDs of the offers in a state that a user is the seller of.
+     *
+     * @param sellerUserId the ID of the seller
+     * @param state        the state
+     * @return the offer IDs, in no particular order
+     */
+    List<String> findBySeller(final String sellerUserId, final OfferState state) {
+        return find(Key.seller(sellerUserId, state));
+    }
+
+    /**
+     * Returns the IDs of the offers in a state that a user is the buyer of.
+     *
+     * @param buyerUserId the ID of the buyer
+     * @param state       the state
+     * @return the offer IDs, in no particular order
+     */
+    List<String> findByBuyer(final String buyerUserId, final OfferState state) {
+        return find(Key.buyer(buyerUserId, state));
+    }
+
+    /**
+     * Returns the IDs of the offers in a state for a product.
+     *
+     * @param productName the product name
+     * @param state       the state
+     * @return the offer IDs, in no particular order
+     */
+    List<String> findByProduct(final String productName, final OfferState state) {
+        return find(Key.product(productName, state));
+    }
+
+    /**
+     * Returns the IDs of the offers between two users, whichever of them is the buyer.
+     *
+     * @param userId      the ID of one user
+     * @param otherUserId the ID of the other user
+     * @return the offer IDs, in no particular order
+     */
+    List<String> findBetween(final String userId, final String otherUserId) {
+        final List<String> offerIds = new ArrayList<>();
+        collect(Key.parties(userId, otherUserId), offerIds);
+        if (!userId.equals(otherUserId)) {
+            collect(Key.parties(otherUserId, userId), offerIds);
+        }
+        return Collections.unmodifiableList(offerIds);
+    }
+
+    private List<String> find(final Key key) {
+        final List<String> offerIds = new ArrayList<>();
+        collect(key, offerIds);
+        return Collections.unmodifiableList(offerIds);
+    }
+
+    private void collect(final Key key, final List<String> offerIds) {
+        final OfferKeySet set = this.offers.get(key);
+        if (set != null) {
+            set.collect(offerIds);
+        }
+    }
+
+    /**
+     * Index key: the kind of index, a state ordinal or -1, and up to two strings.
+     */
+    private static final class Key {
+        private static final int STATE = 0;
+        private static final int SELLER = 1;
+        private static final int BUYER = 2;
+        private static final int PRODUCT = 3;
+        private static final int PARTIES = 4;
+
+        private final int kind;
+        private final int state;
+        private final String first;
+        private final String second;
+        private final int hash;
+
+        private Key(final int kind, final OfferState state, final String first, final String second) {
+            this.kind = kind;
+            this.state = state == null ? -1 : state.ordinal();
+            this.first = first;
+            this.second = second;
+            this.hash = (31 * (31 * (31 * kind + this.state) + Objects.hashCode(first))) + Objects.hashCode(second);
+        }
+
+        static Key state(final OfferState state) {
+            return new Key(STATE, state, null, null);
+        }
+
+        static Key seller(final String sellerUserId, final OfferState state) {
+            return new Key(SELLER, state, sellerUserId, null);
+        }
+
+        static Key buyer(final String buyerUserId, final OfferState state) {
+            return new Key(BUYER, state, buyerUserId, null);
+        }
+
+        static Key product(final String productName, final OfferState state) {
+            return new Key(PRODUCT, state, productName, null);
+        }
+
+        static Key parties(final String buyerUserId, final String sellerUserId) {
+            return new Key(PARTIES, null, buyerUserId, sellerUserId);
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) other;
+            return this.kind == key.kind && this.state == key.state && Objects.equals(this.first, key.first)
+                    && Objects.equals(this.second, key.second);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+    }
+
+    /**
+     * Set of offer IDs in a linear-probing table of long pairs, where the pair (0, 0), which is
+     * never a version 4 or 7 UUID, marks an empty slot. The table doubles when it is three quarters
+     * full and halves when it is less than an eighth full, so reading every ID costs time
+     * proportional to the number of IDs. Removal shifts later entries back instead of leaving
+     * tombstones. A set that becomes empty removes itself and its key from the index under its
+     * lock, and accepts no more IDs, so keys of past states and products do not accumulate.
+     */
+    private final class OfferKeySet {
+        private static final int MIN_CAPACITY = 4;
+
+        private final Key key;
+        private final ReentrantLock lock = new ReentrantLock();
+        private long[] table = new long[2 * MIN_CAPACITY];
+        private int size;
+        private boolean removed;
+
+        OfferKeySet(final Key key) {
+            this.key = key;
+        }
+
+        /**
+         * Adds an ID to the set.
+         *
+         * @return false if the set has left the index and the ID was not added
+         */
+        boolean add(final long high, final long low) {
+            this.lock.lock();
+            try {
+                if (this.removed) {
+                    return false;
+                }
+                if (find(this.table, high, low) >= 0) {
+                    return true;
+                }
+                final int capacity = this.table.length / 2;
+                if (4 * (this.size + 1) > 3 * capacity) {
+                    this.table = resize(this.table, 2 * capacity);
+                }
+                insert(this.table, high, low);
+                this.size++;
+                return true;
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        void remove(final long high, final long low) {
+            this.lock.lock();
+            try {
+                final long[] current = this.table;
+                int slot = find(current, high, low);
+                if (slot < 0) {
+                    return;
+                }
+                final int mask = current.length / 2 - 1;
+                // Shifts back every following entry of the probe sequence that may move into the gap
+                for (int next = (slot + 1) & mask; current[2 * next] != 0 || current[2 * next + 1] != 0;
+                        next = (next + 1) & mask) {
+                    final int home = slot(current[2 * next], current[2 * next + 1], mask);
+                    if (((next - home) & mask) >= ((next - slot) & mask)) {
+                        current[2 * slot] = current[2 * next];
+                        current[2 * slot + 1] = current[2 * next + 1];
+                        slot = next;
+                    }
+                }
+                current[2 * slot] = 0;
+                current[2 * slot + 1] = 0;
+                this.size--;
+                if (this.size == 0) {
+                    this.removed = true;
+                    OfferIndex.this.offers.remove(this.key, this);
+                    return;
+                }
+                final int capacity = current.length / 2;
+                if (capacity > MIN_CAPACITY && 8 * this.size < capacity) {
+                    this.table = resize(current, capacity / 2);
+                }
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        void collect(final List<String> offerIds) {
+            this.lock.lock();
+            try {
+                final long[] current = this.table;
+                for (int i = 0; i < current.length; i += 2) {
+                    if (current[i] != 0 || current[i + 1] != 0) {
+                        offerIds.add(new UUID(current[i], current[i + 1]).toString());
+                    }
+                }
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        private static long[] resize(final long[] table, final int capacity) {
+            final long[] resized = new long[2 * capacity];
+            for (int i = 0; i < table.length; i += 2) {
+                if (table[i] != 0 || table[i + 1] != 0) {
+                    insert(resized, table[i], table[i + 1]);
+                }
+            }
+            return resized;
+        }
+
+        private static int find(final long[] table, final long high, final long low) {
+            final int mask = table.length / 2 - 1;
+            for (int slot = slot(high, low, mask); ; slot = (slot + 1) & mask) {
+                if (table[2 * slot] == high && table[2 * slot + 1] == low) {
+                    return slot;
+                }
+                if (table[2 * slot] == 0 && table[2 * slot + 1] == 0) {
+                    return -1;
+                }
+            }
+        }
+
+        private static void insert(final long[] table, final long high, final long low) {
+            final int mask = table.length / 2 - 1;
+            int slot = slot(high, low, mask);
+            while (table[2 * slot] != 0 || table[2 * slot + 1] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[2 * slot] = high;
+            table[2 * slot + 1] = low;
+        }
+
+        private static int slot(final long high, final long low, final int mask) {
+            return OfferTable.hash(high, low) & mask;
+        }
+    }
+}
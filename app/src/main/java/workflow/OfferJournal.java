@@ -0,0 +1,657 @@
+package workflow;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+import workflow.Offer.OfferHistory;
+
+/**
+ * Append-only write-ahead journal of offer history entries, stored as a sequence of segment files.
+ *
+ * <p>Every entry is encoded as one binary record and made durable before it is appended to the
+ * offer, so an action that returns normally survives a restart. Threads that append at the same
+ * time share one write and one fsync: the first thread to need a flush writes out every record
+ * buffered so far, while the others wait for it and then find their records already durable.
+ *
+ * <p>Opening a journal replays every segment and recovers the offers it describes. A record that
+ * was only partly written when the process stopped is cut off the end of the last segment.
+ *
+ * <p>Record layout, after a segment header of a magic number and a format version:
+ * <pre>
+ *   int     length of the body
+ *   int     CRC32C of the body
+ *   body:
+ *   long    offer ID, most significant bits
+ *   long    offer ID, least significant bits
+ *   varint  version of the entry
+ *   byte    action ordinal
+ *   byte    state ordinal
+ *   string  ID of the acting user
+ *   byte    flags
+ *   string  buyer ID, string seller ID                        if PARTIES is set (SUBMIT only)
+ *   string  product name, int quantity, double price          if DETAILS is set
+ *   varint  count, then string key and string value pairs     private data set by the entry
+ *   varint  count, then string keys                           private data removed by the entry
+ * </pre>
+ * A string is a varint of its UTF-8 length plus one, 0 for null, followed by its bytes.
+ * Details are only written when they differ from the previous entry.
+ */
+public final class OfferJournal implements OfferHistoryListener, Closeable {
+
+    /**
+     * Default size after which a new segment file is started.
+     */
+    public static final long DEFAULT_SEGMENT_SIZE = 64L << 20;
+
+    private static final int MAGIC = 0x4F464A4C;
+    private static final int FORMAT_VERSION = 1;
+    private static final int SEGMENT_HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int INITIAL_BUFFER_SIZE = 1 << 16;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".snapshot";
+
+    private static final int PARTIES = 1;
+    private static final int DETAILS = 1 << 1;
+
+    private static final Action[] ACTIONS = Action.values();
+    private static final OfferState[] STATES = OfferState.values();
+
+    private final Path directory;
+    private final long segmentSize;
+    // This journal, then the attached listeners, then the listener given when it was opened
+    private final OfferHistoryListener historyListener;
+    // Listeners attached after the journal was opened, such as the indexes of a repository
+    private volatile OfferHistoryListener attached = OfferHistoryListener.NONE;
+    private final ReentrantLock attachLock = new ReentrantLock();
+    private final List<Offer> recoveredOffers;
+    // Every offer with an entry in the journal or the snapshot, in submission order
+    private final Queue<Offer> offers = new ConcurrentLinkedQueue<>();
+    // Allows a single checkpoint at a time
+    private final ReentrantLock checkpointLock = new ReentrantLock();
+
+    // Guards the buffer that new records are encoded into
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final CRC32C checksum = new CRC32C();
+    private ByteBuffer pending = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private long appendedRecords;
+    private boolean closed;
+
+    // Guards the segment file and the buffer being written to it
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private ByteBuffer flushing = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private FileChannel segment;
+    private int segmentIndex;
+    private IOException failure;
+
+    private volatile long durableRecords;
+
+    private OfferJournal(final Path directory, final long segmentSize, final OfferHistoryListener next) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        final OfferHistoryListener attachedListeners = (offer, offerHistory) -> this.attached.beforeAppend(offer,
+                offerHistory);
+        this.historyListener = andThen(attachedListeners).andThen(next);
+        this.recoveredOffers = new ArrayList<>();
+    }
+
+    /**
+     * Opens the journal in a directory, creating it if needed, and recovers the offers it holds.
+     *
+     * @param directory the directory holding the segment files
+     * @return the opened journal
+     * @throws IOException if the journal cannot be read or is corrupt
+     */
+    public static OfferJournal open(final Path directory) throws IOException {
+        return open(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Opens the journal in a directory, creating it if needed, and recovers the offers it holds.
+     *
+     * @param directory   the directory holding the segment files
+     * @param segmentSize the size in bytes after which a new segment file is started
+     * @return the opened journal
+     * @throws IOException if the journal cannot be read or is corrupt
+     */
+    public static OfferJournal open(final Path directory, final long segmentSize) throws IOException {
+        return open(directory, segmentSize, OfferHistoryListener.NONE);
+    }
+
+    /**
+     * Opens the journal in a directory, creating it if needed, and recovers the offers it holds.
+     * Every history entry is reported to a listener, such as an OfferChangeFeed, once it is
+     * durable, including entries of recovered offers.
+     *
+     * @param directory   the directory holding the segment files
+     * @param segmentSize the size in bytes after which a new segment file is started
+     * @param next        the listener notified of every durable history entry
+     * @return the opened journal
+     * @throws IOException if the journal cannot be read or is corrupt
+     */
+    public static OfferJournal open(final Path directory, final long segmentSize, final OfferHistoryListener next)
+            throws IOException {
+        Files.createDirectories(directory);
+        OfferJournal journal = new OfferJournal(directory, segmentSize, next);
+        journal.recover();
+        return journal;
+    }
+
+    /**
+     * Returns the listener that offers recorded in this journal report their history entries to:
+     * this journal, followed by the attached listeners and the listener given when it was opened.
+     *
+     * @return the listener for new offers
+     */
+    public OfferHistoryListener getHistoryListener() {
+        return this.historyListener;
+    }
+
+    /**
+     * Attaches a listener that is notified of every durable history entry, including entries of
+     * offers recovered before it was attached, such as the listener that maintains the indexes
+     * of the repository the recovered offers are added to.
+     *
+     * @param listener the listener to attach
+     */
+    public void attach(final OfferHistoryListener listener) {
+        this.attachLock.lock();
+        try {
+            this.attached = this.attached.andThen(listener);
+        } finally {
+            this.attachLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the offers rebuilt from the journal when it was opened, in submission order.
+     * Their future history entries are recorded in this journal.
+     *
+     * @return an unmodifiable list of recovered offers
+     */
+    public List<Offer> getRecoveredOffers() {
+        return Collections.unmodifiableList(this.recoveredOffers);
+    }
+
+    /**
+     * Encodes the entry and returns once it is durable on disk.
+     *
+     * @throws UncheckedIOException if the journal cannot be written
+     * @throws IllegalStateException if the journal is closed
+     */
+    @Override
+    public void beforeAppend(final Offer offer, final OfferHistory offerHistory) {
+        final long record;
+        this.appendLock.lock();
+        try {
+            if (this.closed) {
+                throw new IllegalStateException("Offer journal is closed");
+            }
+            if (offer.getVersion() == 0) {
+                this.offers.add(offer);
+            }
+            encode(offer, offerHistory);
+            record = ++this.appendedRecords;
+        } finally {
+            this.appendLock.unlock();
+        }
+        awaitDurable(record);
+    }
+
+    /**
+     * Flushes buffered records and closes the current segment.
+     *
+     * @throws IOException if the remaining records cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        this.flushLock.lock();
+        try {
+            this.appendLock.lock();
+            try {
+                if (this.closed) {
+                    return;
+                }
+                this.closed = true;
+            } finally {
+                this.appendLock.unlock();
+            }
+            try {
+                flush();
+            } finally {
+                this.segment.close();
+            }
+        } finally {
+            this.flushLock.unlock();
+        }
+    }
+
+    /**
+     * Writes a snapshot of every offer and drops the segments it makes redundant, so the next
+     * startup maps the snapshot and replays only the records written after it. Actions keep
+     * being applied while the snapshot is written. Call this periodically, for example from a
+     * ScheduledExecutorService.
+     *
+     * @throws IOException if the snapshot cannot be written
+     * @throws IllegalStateException if the journal is closed
+     */
+    public void checkpoint() throws IOException {
+        this.checkpointLock.lock();
+        try {
+            // Records after this point go to a new segment, which is where the next startup resumes
+            final int replayFrom;
+            this.flushLock.lock();
+            try {
+                this.appendLock.lock();
+                try {
+                    if (this.closed) {
+                        throw new IllegalStateException("Offer journal is closed");
+                    }
+                } finally {
+                    this.appendLock.unlock();
+                }
+                flush();
+                this.segment.close();
+                this.segment = createSegment(this.segmentIndex + 1);
+                replayFrom = this.segmentIndex;
+            } finally {
+                this.flushLock.unlock();
+            }
+
+            OfferSnapshot.write(this.directory.resolve(snapshotName(replayFrom)), this.offers, replayFrom);
+
+            final List<Path> redundant;
+            try (Stream<Path> files = Files.list(this.directory)) {
+                redundant = files.filter(path -> isSegment(path) && indexOf(path, SEGMENT_PREFIX, SEGMENT_SUFFIX) < replayFrom
+                        || isSnapshot(path) && indexOf(path, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX) < replayFrom)
+                        .collect(Collectors.toList());
+            }
+            for (Path path : redundant) {
+                Files.delete(path);
+            }
+        } finally {
+            this.checkpointLock.unlock();
+        }
+    }
+
+    /**
+     * Waits until the given record is durable, writing out the buffered records if no other
+     * thread is doing so already.
+     */
+    private void awaitDurable(final long record) {
+        if (this.durableRecords >= record) {
+            return;
+        }
+        this.flushLock.lock();
+        try {
+            // Another thread may have flushed this record while we waited for the lock
+            if (this.durableRecords >= record) {
+                return;
+            }
+            flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write the offer journal", e);
+        } finally {
+            this.flushLock.unlock();
+        }
+    }
+
+    /**
+     * Writes and forces every buffered record. Called while holding the flush lock.
+     * A failed write leaves the journal unusable, because records buffered with it are lost.
+     */
+    private void flush() throws IOException {
+        if (this.failure != null) {
+            throw this.failure;
+        }
+        final ByteBuffer batch;
+        final long records;
+        this.appendLock.lock();
+        try {
+            batch = this.pending;
+            this.pending = this.flushing;
+            this.flushing = batch;
+            records = this.appendedRecords;
+        } finally {
+            this.appendLock.unlock();
+        }
+        batch.flip();
+        try {
+            while (batch.hasRemaining()) {
+                this.segment.write(batch);
+            }
+            this.segment.force(false);
+            if (this.segment.position() >= this.segmentSize) {
+                this.segment.close();
+                this.segment = createSegment(this.segmentIndex + 1);
+            }
+        } catch (IOException e) {
+            this.failure = e;
+            throw e;
+        } finally {
+            batch.clear();
+        }
+        this.durableRecords = records;
+    }
+
+    private void encode(final Offer offer, final OfferHistory offerHistory) {
+        final int start = this.pending.position();
+        ensureCapacity(RECORD_HEADER_SIZE);
+        this.pending.position(start + RECORD_HEADER_SIZE);
+
+        final OfferHistory previous = offer.getVersion() == 0 ? null : offer.getLastOfferHistory();
+        final UUID offerId = offer.getOfferKey();
+        ensureCapacity(2 * Long.BYTES);
+        this.pending.putLong(offerId.getMostSignificantBits());
+        this.pending.putLong(offerId.getLeastSignificantBits());
+        putVarint(offer.getVersion() + 1);
+        ensureCapacity(2);
+        this.pending.put((byte) offerHistory.getOfferAction().ordinal());
+        this.pending.put((byte) offerHistory.getOfferState().ordinal());
+        putString(offerHistory.getOfferUserId());
+
+        final OfferDetails offerDetails = offerHistory.getOfferDetails();
+        final boolean detailsChanged = previous == null || previous.getOfferDetails() != offerDetails;
+        final int flags = (previous == null ? PARTIES : 0) | (detailsChanged ? DETAILS : 0);
+        ensureCapacity(1);
+        this.pending.put((byte) flags);
+        if (previous == null) {
+            putString(offer.getBuyerUserId());
+            putString(offer.getSellerUserId());
+        }
+        if (detailsChanged) {
+            putString(offerDetails.getProductName());
+            ensureCapacity(Integer.BYTES + Double.BYTES);
+            this.pending.putInt(offerDetails.getProductQuantity());
+            this.pending.putDouble(offerDetails.getProductPrice());
+        }
+        putPrivateDataDelta(previous == null ? Collections.emptyMap() : previous.getPrivateData(),
+                offerHistory.getPrivateData());
+
+        final int bodyLength = this.pending.position() - start - RECORD_HEADER_SIZE;
+        this.checksum.reset();
+        this.checksum.update(this.pending.array(), start + RECORD_HEADER_SIZE, bodyLength);
+        this.pending.putInt(start, bodyLength);
+        this.pending.putInt(start + Integer.BYTES, (int) this.checksum.getValue());
+    }
+
+    private void putPrivateDataDelta(final Map<String, String> previous, final Map<String, String> current) {
+        final List<Map.Entry<String, String>> set = new ArrayList<>();
+        final List<String> removed = new ArrayList<>();
+        diffPrivateData(previous, current, set::add, removed::add);
+        putVarint(set.size());
+        for (Map.Entry<String, String> entry : set) {
+            putString(entry.getKey());
+            putString(entry.getValue());
+        }
+        putVarint(removed.size());
+        for (String key : removed) {
+            putString(key);
+        }
+    }
+
+    /**
+     * Reports how one private data snapshot differs from the previous one.
+     * 
+     * @param previous the private data of the previous entry
+     * @param current  the private data of the current entry
+     * @param set      receives entries that were added or re-valued
+     * @param removed  receives keys that were removed
+     */
+    static void diffPrivateData(final Map<String, String> previous, final Map<String, String> current,
+            final Consumer<Map.Entry<String, String>> set, final Consumer<String> removed) {
+        if (previous == current) {
+            return;
+        }
+        for (Map.Entry<String, String> entry : current.entrySet()) {
+            if (!previous.containsKey(entry.getKey()) || !Objects.equals(previous.get(entry.getKey()), entry.getValue())) {
+                set.accept(entry);
+            }
+        }
+        for (String key : previous.keySet()) {
+            if (!current.containsKey(key)) {
+                removed.accept(key);
+            }
+        }
+    }
+
+    private void putVarint(int value) {
+        ensureCapacity(5);
+        while ((value & ~0x7F) != 0) {
+            this.pending.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        this.pending.put((byte) value);
+    }
+
+    private void putString(final String value) {
+        if (value == null) {
+            putVarint(0);
+            return;
+        }
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        putVarint(bytes.length + 1);
+        ensureCapacity(bytes.length);
+        this.pending.put(bytes);
+    }
+
+    private void ensureCapacity(final int bytes) {
+        if (this.pending.remaining() < bytes) {
+            final ByteBuffer grown = ByteBuffer.allocate(Math.max(this.pending.capacity() * 2, this.pending.position() + bytes));
+            this.pending.flip();
+            grown.put(this.pending);
+            this.pending = grown;
+        }
+    }
+
+    /**
+     * Replays every segment in order and opens the last one for appending.
+     */
+    private void recover() throws IOException {
+        final List<Path> files;
+        try (Stream<Path> list = Files.list(this.directory)) {
+            files = list.sorted().collect(Collectors.toList());
+        }
+        final Map<UUID, Offer> offers = new LinkedHashMap<>();
+        int replayFrom = 0;
+        final Path snapshot = files.stream().filter(OfferJournal::isSnapshot).reduce((first, second) -> second).orElse(null);
+        if (snapshot != null) {
+            replayFrom = OfferSnapshot.read(snapshot, this.historyListener, offers);
+        }
+        final int firstSegment = replayFrom;
+        final List<Path> segments = files.stream()
+                .filter(path -> isSegment(path) && indexOf(path, SEGMENT_PREFIX, SEGMENT_SUFFIX) >= firstSegment)
+                .collect(Collectors.toList());
+        for (int i = 0; i < segments.size(); i++) {
+            replaySegment(segments.get(i), i == segments.size() - 1, offers);
+        }
+        this.recoveredOffers.addAll(offers.values());
+        this.offers.addAll(offers.values());
+
+        if (segments.isEmpty()) {
+            this.segment = createSegment(replayFrom);
+            return;
+        }
+        final Path last = segments.get(segments.size() - 1);
+        if (Files.exists(last)) {
+            this.segmentIndex = indexOf(last, SEGMENT_PREFIX, SEGMENT_SUFFIX);
+            this.segment = FileChannel.open(last, StandardOpenOption.WRITE);
+            this.segment.position(this.segment.size());
+        } else {
+            this.segment = createSegment(indexOf(last, SEGMENT_PREFIX, SEGMENT_SUFFIX));
+        }
+    }
+
+    /**
+     * Replays the records of one segment. A torn record at the end of the last segment, one that
+     * runs past the end or ends at it with a bad checksum, is the remainder of an interrupted
+     * write and is truncated; a damaged record anywhere else means corruption.
+     */
+    private void replaySegment(final Path path, final boolean last, final Map<UUID, Offer> offers) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        if (buffer.remaining() < SEGMENT_HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+            if (last && buffer.limit() < SEGMENT_HEADER_SIZE) {
+                // The process stopped while the segment was being created
+                Files.delete(path);
+                return;
+            }
+            throw new IOException("Not an offer journal segment: " + path);
+        }
+        final CRC32C crc = new CRC32C();
+        while (buffer.hasRemaining()) {
+            final int start = buffer.position();
+            final boolean header = buffer.remaining() >= RECORD_HEADER_SIZE;
+            final int length = header ? buffer.getInt() : -1;
+            final int expectedChecksum = header ? buffer.getInt() : 0;
+            // Only a record that runs to the end of the segment can be the remainder of a write
+            boolean torn = !header || length > buffer.remaining();
+            boolean intact = !torn && length >= 0;
+            if (intact) {
+                crc.reset();
+                crc.update(buffer.array(), buffer.position(), length);
+                intact = (int) crc.getValue() == expectedChecksum;
+                torn = !intact && length == buffer.remaining();
+            }
+            if (!intact) {
+                if (!last || !torn) {
+                    throw new IOException("Corrupt record in " + path + " at position " + start);
+                }
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                    channel.truncate(start);
+                    channel.force(false);
+                }
+                return;
+            }
+            final ByteBuffer body = buffer.slice(buffer.position(), length);
+            buffer.position(buffer.position() + length);
+            replayRecord(body, offers, path, start);
+        }
+    }
+
+    private void replayRecord(final ByteBuffer body, final Map<UUID, Offer> offers, final Path path, final int position)
+            throws IOException {
+        final UUID offerId = new UUID(body.getLong(), body.getLong());
+        final int version = getVarint(body);
+        final Action action = ACTIONS[body.get()];
+        final OfferState state = STATES[body.get()];
+        final String userId = getString(body);
+        final int flags = body.get();
+        final String buyerUserId = (flags & PARTIES) != 0 ? getString(body) : null;
+        final String sellerUserId = (flags & PARTIES) != 0 ? getString(body) : null;
+        final OfferDetails offerDetails = (flags & DETAILS) != 0
+                ? OfferDetails.of(getString(body), body.getInt(), body.getDouble())
+                : null;
+
+        final Offer offer = offers.get(offerId);
+        if (offer != null && version <= offer.getVersion()) {
+            // The entry was appended before the snapshot captured the offer
+            return;
+        }
+        if ((flags & PARTIES) != 0) {
+            if (version != 1 || offerDetails == null) {
+                throw new IOException("Unexpected SUBMIT record for offer " + offerId + " in " + path + " at position " + position);
+            }
+            final OfferHistory offerHistory = new OfferHistory(offerDetails, state, action, userId,
+                    getPrivateData(body, PersistentHashMap.empty()));
+            offers.put(offerId, Offer.restore(offerId, buyerUserId, sellerUserId, offerHistory, this.historyListener));
+            return;
+        }
+        if (offer == null || version != offer.getVersion() + 1) {
+            throw new IOException("Out of order record for offer " + offerId + " in " + path + " at position " + position);
+        }
+        final OfferHistory previous = offer.getLastOfferHistory();
+        offer.replay(new OfferHistory(offerDetails != null ? offerDetails : previous.getOfferDetails(), state, action,
+                userId, getPrivateData(body, PersistentHashMap.copyOf(previous.getPrivateData()))));
+    }
+
+    private static PersistentHashMap<String, String> getPrivateData(final ByteBuffer body,
+            PersistentHashMap<String, String> privateData) {
+        for (int set = getVarint(body); set > 0; set--) {
+            privateData = privateData.plus(getString(body), getString(body));
+        }
+        for (int removed = getVarint(body); removed > 0; removed--) {
+            privateData = privateData.minus(getString(body));
+        }
+        return privateData;
+    }
+
+    private static int getVarint(final ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            final byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private static String getString(final ByteBuffer buffer) {
+        final int length = getVarint(buffer) - 1;
+        if (length < 0) {
+            return null;
+        }
+        final String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private FileChannel createSegment(final int index) throws IOException {
+        final FileChannel channel = FileChannel.open(this.directory.resolve(segmentName(index)),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        final ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE).putInt(MAGIC).putInt(FORMAT_VERSION);
+        header.flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        channel.force(false);
+        this.segmentIndex = index;
+        return channel;
+    }
+
+    private static String segmentName(final int index) {
+        return String.format("%s%010d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX);
+    }
+
+    private static String snapshotName(final int index) {
+        return String.format("%s%010d%s", SNAPSHOT_PREFIX, index, SNAPSHOT_SUFFIX);
+    }
+
+    private static boolean isSegment(final Path path) {
+        final String name = path.getFileName().toString();
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+    }
+
+    private static boolean isSnapshot(final Path path) {
+        final String name = path.getFileName().toString();
+        return name.startsWith(SNAPSHOT_PREFIX) && name.endsWith(SNAPSHOT_SUFFIX);
+    }
+
+    private static int indexOf(final Path path, final String prefix, final String suffix) {
+        final String name = path.getFileName().toString();
+        return Integer.parseInt(name.substring(prefix.length(), name.length() - suffix.length()));
+    }
+}
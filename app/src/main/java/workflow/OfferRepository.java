@@ -0,0 +1,108 @@
+package workflow;
+
+import java.util.List;
+
+/**
+ * Storage behind the offer and dashboard services: offers by ID, with their history, the index
+ * from each buyer or seller to their offers, and the indexes by state, product and counterparty.
+ *
+ * <p>Implementations must be safe for concurrent use and must return at most one Offer instance
+ * per offer ID at any time, since actions on an offer are serialized by the lock of that instance.
+ */
+public interface OfferRepository {
+
+    /**
+     * Returns the listener that offers stored in this repository report their history entries to.
+     * The service passes it to every offer it creates.
+     *
+     * @return the listener, OfferHistoryListener.NONE if the repository needs no notification
+     */
+    OfferHistoryListener getHistoryListener();
+
+    /**
+     * Stores a newly submitted offer and indexes it for its buyer and seller.
+     *
+     * @param offer the offer to store
+     */
+    void add(Offer offer);
+
+    /**
+     * Retrieves an offer by its ID.
+     *
+     * @param offerId the unique ID of the offer
+     * @return the offer, or null if there is no offer with that ID
+     */
+    Offer find(String offerId);
+
+    /**
+     * Retrieves the IDs of every offer of a user, in submission order.
+     *
+     * @param userId the ID of the buyer or seller
+     * @return the IDs of the offers of the user, empty if there are none
+     */
+    List<String> findOfferIds(String userId);
+
+    /**
+     * Retrieves the ID of the offer a user was most recently a party to.
+     *
+     * @param userId the ID of the buyer or seller
+     * @return the ID of the latest offer of the user, or null if there is none
+     */
+    String findLatestOfferId(String userId);
+
+    /**
+     * Retrieves the offer a user was most recently a party to. Dashboards poll this, so
+     * implementations should avoid going through the text form of the offer ID.
+     *
+     * @param userId the ID of the buyer or seller
+     * @return the latest offer of the user, or null if there is none
+     */
+    default Offer findLatestOffer(String userId) {
+        final String offerId = findLatestOfferId(userId);
+        return offerId == null ? null : find(offerId);
+    }
+
+    /**
+     * Retrieves the IDs of every offer in a state.
+     *
+     * @param state the state of the offers
+     * @return the IDs of the matching offers, in no particular order
+     */
+    List<String> findOfferIdsByState(OfferState state);
+
+    /**
+     * Retrieves the IDs of the offers in a state that a user is the seller of.
+     *
+     * @param sellerUserId the ID of the seller
+     * @param state        the state of the offers
+     * @return the IDs of the matching offers, in no particular order
+     */
+    List<String> findOfferIdsBySeller(String sellerUserId, OfferState state);
+
+    /**
+     * Retrieves the IDs of the offers in a state that a user is the buyer of.
+     *
+     * @param buyerUserId the ID of the buyer
+     * @param state       the state of the offers
+     * @return the IDs of the matching offers, in no particular order
+     */
+    List<String> findOfferIdsByBuyer(String buyerUserId, OfferState state);
+
+    /**
+     * Retrieves the IDs of the offers in a state whose current details name a product.
+     *
+     * @param productName the name of the product
+     * @param state       the state of the offers
+     * @return the IDs of the matching offers, in no particular order
+     */
+    List<String> findOfferIdsByProduct(String productName, OfferState state);
+
+    /**
+     * Retrieves the IDs of the offers between two users, whichever of them is the buyer.
+     *
+     * @param userId      the ID of one party
+     * @param otherUserId the ID of the other party
+     * @return the IDs of the matching offers, in no particular order
+     */
+    List<String> findOfferIdsBetween(String userId, String otherUserId);
+}
@@ -0,0 +1,307 @@
+package workflow;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import workflow.Offer.OfferHistory;
+
+/**
+ * Memory-mapped checkpoint of every offer and its complete history, written by
+ * {@link OfferJournal#checkpoint()} and read back when the journal is opened.
+ *
+ * <p>The file has a fixed layout of tables with fixed-size rows, so it is written and read
+ * through a single mapping with absolute offsets and no per-record framing or parsing:
+ * <pre>
+ *   header     magic, format version, first segment to replay, row counts, string heap size
+ *   offers     32 bytes per offer: offer ID, buyer and seller string, number of history rows
+ *   history    32 bytes per entry: action, state, user string, product name string, quantity,
+ *              price, number of private data rows
+ *   deltas     8 bytes per private data change: key string, value string or REMOVED
+ *   strings    offset of every distinct string, followed by their UTF-8 bytes
+ * </pre>
+ * Offers, and the history of each offer, appear in order; strings are referenced by their index,
+ * so a user ID or product name that appears many times is stored and decoded once.
+ */
+final class OfferSnapshot {
+
+    private static final int MAGIC = 0x4F46534E;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int OFFER_ROW_SIZE = 32;
+    private static final int HISTORY_ROW_SIZE = 32;
+    private static final int DELTA_ROW_SIZE = 8;
+
+    // String references for a null string and for a removed private data entry
+    private static final int NULL = -1;
+    private static final int REMOVED = -2;
+
+    private static final Action[] ACTIONS = Action.values();
+    private static final OfferState[] STATES = OfferState.values();
+
+    private OfferSnapshot() {
+    }
+
+    /**
+     * Writes a snapshot of the given offers. Each offer is captured once every entry already
+     * made durable has been appended to it, so together with the journal segments from
+     * replayFrom on the snapshot describes every durable entry. The file is written under a
+     * temporary name and moved into place once it is complete.
+     *
+     * @param file       the snapshot file to write
+     * @param offers     the offers to capture
+     * @param replayFrom the first journal segment not covered by the snapshot
+     * @throws IOException if the snapshot cannot be written
+     */
+    static void write(final Path file, final Iterable<Offer> offers, final int replayFrom) throws IOException {
+        final List<Offer> captured = new ArrayList<>();
+        final List<List<OfferHistory>> histories = new ArrayList<>();
+        final Map<String, Integer> stringIndex = new HashMap<>();
+        final List<byte[]> strings = new ArrayList<>();
+        long historyRows = 0;
+        long deltaRows = 0;
+        long stringBytes = 0;
+
+        for (Offer offer : offers) {
+            if (offer.settledVersion() == 0) {
+                // The SUBMIT entry of this offer was never made durable
+                continue;
+            }
+            final List<OfferHistory> history = offer.getOfferHistory();
+            captured.add(offer);
+            histories.add(history);
+            stringBytes += intern(offer.getBuyerUserId(), stringIndex, strings);
+            stringBytes += intern(offer.getSellerUserId(), stringIndex, strings);
+            Map<String, String> previous = Map.of();
+            for (OfferHistory offerHistory : history) {
+                stringBytes += intern(offerHistory.getOfferUserId(), stringIndex, strings);
+                stringBytes += intern(offerHistory.getOfferDetails().getProductName(), stringIndex, strings);
+                final long[] changes = new long[1];
+                final long[] bytes = new long[1];
+                OfferJournal.diffPrivateData(previous, offerHistory.getPrivateData(),
+                        entry -> {
+                            changes[0]++;
+                            bytes[0] += intern(entry.getKey(), stringIndex, strings) + intern(entry.getValue(), stringIndex, strings);
+                        },
+                        key -> {
+                            changes[0]++;
+                            bytes[0] += intern(key, stringIndex, strings);
+                        });
+                deltaRows += changes[0];
+                stringBytes += bytes[0];
+                previous = offerHistory.getPrivateData();
+            }
+            historyRows += history.size();
+        }
+
+        final long offersOffset = HEADER_SIZE;
+        final long historyOffset = offersOffset + (long) captured.size() * OFFER_ROW_SIZE;
+        final long deltasOffset = historyOffset + historyRows * HISTORY_ROW_SIZE;
+        final long stringOffsetsOffset = deltasOffset + deltaRows * DELTA_ROW_SIZE;
+        final long stringBytesOffset = stringOffsetsOffset + (long) (strings.size() + 1) * Long.BYTES;
+        final long size = stringBytesOffset + stringBytes;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Snapshot of " + size + " bytes exceeds the 2 GB mapping limit");
+        }
+
+        final Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, FORMAT_VERSION);
+            buffer.putInt(8, replayFrom);
+            buffer.putInt(12, captured.size());
+            buffer.putLong(16, historyRows);
+            buffer.putLong(24, deltaRows);
+            buffer.putInt(32, strings.size());
+            buffer.putLong(40, stringBytes);
+
+            int offerRow = (int) offersOffset;
+            int historyRow = (int) historyOffset;
+            int deltaRow = (int) deltasOffset;
+            for (int i = 0; i < captured.size(); i++) {
+                final Offer offer = captured.get(i);
+                final List<OfferHistory> history = histories.get(i);
+                final UUID offerId = offer.getOfferKey();
+                buffer.putLong(offerRow, offerId.getMostSignificantBits());
+                buffer.putLong(offerRow + 8, offerId.getLeastSignificantBits());
+                buffer.putInt(offerRow + 16, stringIndex.get(offer.getBuyerUserId()));
+                buffer.putInt(offerRow + 20, stringIndex.get(offer.getSellerUserId()));
+                buffer.putInt(offerRow + 24, history.size());
+                offerRow += OFFER_ROW_SIZE;
+
+                Map<String, String> previous = Map.of();
+                for (OfferHistory offerHistory : history) {
+                    final int firstDelta = deltaRow;
+                    final int[] cursor = { deltaRow };
+                    OfferJournal.diffPrivateData(previous, offerHistory.getPrivateData(),
+                            entry -> {
+                                buffer.putInt(cursor[0], ref(entry.getKey(), stringIndex));
+                                buffer.putInt(cursor[0] + 4, ref(entry.getValue(), stringIndex));
+                                cursor[0] += DELTA_ROW_SIZE;
+                            },
+                            key -> {
+                                buffer.putInt(cursor[0], ref(key, stringIndex));
+                                buffer.putInt(cursor[0] + 4, REMOVED);
+                                cursor[0] += DELTA_ROW_SIZE;
+                            });
+                    deltaRow = cursor[0];
+                    previous = offerHistory.getPrivateData();
+
+                    final OfferDetails offerDetails = offerHistory.getOfferDetails();
+                    buffer.put(historyRow, (byte) offerHistory.getOfferAction().ordinal());
+                    buffer.put(historyRow + 1, (byte) offerHistory.getOfferState().ordinal());
+                    buffer.putInt(historyRow + 4, ref(offerHistory.getOfferUserId(), stringIndex));
+                    buffer.putInt(historyRow + 8, ref(offerDetails.getProductName(), stringIndex));
+                    buffer.putInt(historyRow + 12, offerDetails.getProductQuantity());
+                    buffer.putDouble(historyRow + 16, offerDetails.getProductPrice());
+                    buffer.putInt(historyRow + 24, (deltaRow - firstDelta) / DELTA_ROW_SIZE);
+                    historyRow += HISTORY_ROW_SIZE;
+                }
+            }
+
+            long stringOffset = 0;
+            int stringRow = (int) stringOffsetsOffset;
+            int stringPosition = (int) stringBytesOffset;
+            for (byte[] bytes : strings) {
+                buffer.putLong(stringRow, stringOffset);
+                buffer.put(stringPosition, bytes);
+                stringRow += Long.BYTES;
+                stringPosition += bytes.length;
+                stringOffset += bytes.length;
+            }
+            buffer.putLong(stringRow, stringOffset);
+            buffer.force();
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Restores every offer of a snapshot.
+     *
+     * @param file     the snapshot file to read
+     * @param listener the listener the restored offers report future entries to
+     * @param offers   receives the restored offers by offer ID, in snapshot order
+     * @return the first journal segment that must be replayed on top of the snapshot
+     * @throws IOException if the file cannot be read or is not a snapshot
+     */
+    static int read(final Path file, final OfferHistoryListener listener, final Map<UUID, Offer> offers)
+            throws IOException {
+        final MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Not an offer snapshot: " + file);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IOException("Not an offer snapshot: " + file);
+        }
+        final int replayFrom = buffer.getInt(8);
+        final int offerCount = buffer.getInt(12);
+        final long historyRows = buffer.getLong(16);
+        final long deltaRows = buffer.getLong(24);
+        final int stringCount = buffer.getInt(32);
+
+        final int historyOffset = HEADER_SIZE + offerCount * OFFER_ROW_SIZE;
+        final int deltasOffset = (int) (historyOffset + historyRows * HISTORY_ROW_SIZE);
+        final int stringOffsetsOffset = (int) (deltasOffset + deltaRows * DELTA_ROW_SIZE);
+        final int stringBytesOffset = stringOffsetsOffset + (stringCount + 1) * Long.BYTES;
+        final String[] strings = readStrings(buffer, stringCount, stringOffsetsOffset, stringBytesOffset);
+
+        int offerRow = HEADER_SIZE;
+        int historyRow = historyOffset;
+        int deltaRow = deltasOffset;
+        for (int i = 0; i < offerCount; i++) {
+            final UUID offerId = new UUID(buffer.getLong(offerRow), buffer.getLong(offerRow + 8));
+            final String buyerUserId = string(strings, buffer.getInt(offerRow + 16));
+            final String sellerUserId = string(strings, buffer.getInt(offerRow + 20));
+            final int historySize = buffer.getInt(offerRow + 24);
+            offerRow += OFFER_ROW_SIZE;
+
+            Offer offer = null;
+            OfferDetails offerDetails = null;
+            PersistentHashMap<String, String> privateData = PersistentHashMap.empty();
+            for (int version = 1; version <= historySize; version++) {
+                final Action action = ACTIONS[buffer.get(historyRow)];
+                final OfferState state = STATES[buffer.get(historyRow + 1)];
+                final String userId = string(strings, buffer.getInt(historyRow + 4));
+                final String productName = string(strings, buffer.getInt(historyRow + 8));
+                final int productQuantity = buffer.getInt(historyRow + 12);
+                final double productPrice = buffer.getDouble(historyRow + 16);
+                final int deltas = buffer.getInt(historyRow + 24);
+                historyRow += HISTORY_ROW_SIZE;
+
+                // Entries that kept the details share one instance, as they did before the checkpoint
+                if (offerDetails == null || offerDetails.getProductName() != productName
+                        || offerDetails.getProductQuantity() != productQuantity
+                        || Double.compare(offerDetails.getProductPrice(), productPrice) != 0) {
+                    offerDetails = OfferDetails.of(productName, productQuantity, productPrice);
+                }
+                for (int delta = 0; delta < deltas; delta++) {
+                    final String key = string(strings, buffer.getInt(deltaRow));
+                    final int value = buffer.getInt(deltaRow + 4);
+                    privateData = value == REMOVED ? privateData.minus(key) : privateData.plus(key, string(strings, value));
+                    deltaRow += DELTA_ROW_SIZE;
+                }
+
+                final OfferHistory offerHistory = new OfferHistory(offerDetails, state, action, userId, privateData);
+                if (offer == null) {
+                    offer = Offer.restore(offerId, buyerUserId, sellerUserId, offerHistory, listener);
+                } else {
+                    offer.replay(offerHistory);
+                }
+            }
+            offers.put(offerId, offer);
+        }
+        return replayFrom;
+    }
+
+    private static String[] readStrings(final ByteBuffer buffer, final int count, final int offsetsOffset,
+            final int bytesOffset) {
+        final String[] strings = new String[count];
+        final byte[] bytes = new byte[(int) buffer.getLong(offsetsOffset + count * Long.BYTES)];
+        buffer.get(bytesOffset, bytes);
+        for (int i = 0; i < count; i++) {
+            final int start = (int) buffer.getLong(offsetsOffset + i * Long.BYTES);
+            final int end = (int) buffer.getLong(offsetsOffset + (i + 1) * Long.BYTES);
+            strings[i] = new String(bytes, start, end - start, StandardCharsets.UTF_8);
+        }
+        return strings;
+    }
+
+    /**
+     * Adds a string to the string table if it is not there yet.
+     *
+     * @return the number of bytes the string adds to the table
+     */
+    private static long intern(final String value, final Map<String, Integer> stringIndex, final List<byte[]> strings) {
+        if (value == null || stringIndex.containsKey(value)) {
+            return 0;
+        }
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        stringIndex.put(value, strings.size());
+        strings.add(bytes);
+        return bytes.length;
+    }
+
+    private static int ref(final String value, final Map<String, Integer> stringIndex) {
+        return value == null ? NULL : stringIndex.get(value);
+    }
+
+    private static String string(final String[] strings, final int ref) {
+        return ref == NULL ? null : strings[ref];
+    }
+}
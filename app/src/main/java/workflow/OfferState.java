@@ -7,4 +7,13 @@ public enum OfferState {
     CANCELLED,
     WITHDRAWN_BY_BUYER,  
     WITHDRAWN_BY_SELLER;  
+
+    /**
+     * Determines if the state ends the negotiation. Terminal states only permit private data updates.
+     *
+     * @return true for ACCEPTED and CANCELLED, otherwise false
+     */
+    public boolean isTerminal() {
+        return this == ACCEPTED || this == CANCELLED;
+    }
 }
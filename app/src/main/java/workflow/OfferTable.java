@@ -0,0 +1,149 @@
+package workflow;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hash table of offers keyed by the 128-bit offer ID the offers hold themselves. Slots refer to
+ * the offers directly and are probed linearly, so an offer costs a slot of the table instead of a
+ * map entry and a key object.
+ *
+ * <p>Inserts and removals are serialized by a lock and publish each slot with release semantics,
+ * while lookups are lock-free. A removed offer leaves a tombstone rather than shifting the offers
+ * after it, so a lookup probing concurrently never misses an offer that stays in the table.
+ * Tombstones are reused by inserts and dropped whenever the table is rebuilt. Rebuilding copies
+ * the offers into a new array that is published once complete; a lookup still probing the
+ * previous array sees every offer inserted before the copy.
+ */
+final class OfferTable {
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(Object[].class);
+    // Marks the slot of a removed offer, so probes continue past it
+    private static final Object TOMBSTONE = new Object();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // Offers, tombstones and nulls
+    private volatile Object[] slots = new Object[INITIAL_CAPACITY];
+    private int size;
+    private int tombstones;
+
+    /**
+     * Inserts an offer, unless an offer with the same ID is already present.
+     *
+     * @param offer the offer to insert
+     * @return true if the offer was inserted, false if its ID was already present
+     */
+    boolean add(final Offer offer) {
+        final UUID offerId = offer.getOfferKey();
+        this.lock.lock();
+        try {
+            if (find(this.slots, offerId.getMostSignificantBits(), offerId.getLeastSignificantBits()) != null) {
+                return false;
+            }
+            // Keeps offers and tombstones at most half of the table, so probe sequences stay short
+            if (2 * (this.size + this.tombstones + 1) > this.slots.length) {
+                final Object[] current = this.slots;
+                final int capacity = 2 * (this.size + 1) > current.length / 2 ? current.length * 2 : current.length;
+                final Object[] rebuilt = new Object[capacity];
+                for (Object existing : current) {
+                    if (existing != null && existing != TOMBSTONE) {
+                        insert(rebuilt, (Offer) existing);
+                    }
+                }
+                this.slots = rebuilt;
+                this.tombstones = 0;
+            }
+            if (insert(this.slots, offer)) {
+                this.tombstones--;
+            }
+            this.size++;
+            return true;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Removes an offer, unless the table holds another instance with its ID.
+     *
+     * @param offer the offer to remove
+     * @return true if the offer was removed, false if it was not in the table
+     */
+    boolean remove(final Offer offer) {
+        final UUID offerId = offer.getOfferKey();
+        this.lock.lock();
+        try {
+            final Object[] current = this.slots;
+            final int mask = current.length - 1;
+            for (int slot = hash(offerId.getMostSignificantBits(), offerId.getLeastSignificantBits()) & mask; ;
+                    slot = (slot + 1) & mask) {
+                final Object existing = current[slot];
+                if (existing == null) {
+                    return false;
+                }
+                if (existing == offer) {
+                    SLOTS.setRelease(current, slot, TOMBSTONE);
+                    this.size--;
+                    this.tombstones++;
+                    return true;
+                }
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves an offer by its ID.
+     *
+     * @param offerId the ID of the offer
+     * @return the offer, or null if no offer has that ID
+     */
+    Offer get(final UUID offerId) {
+        return find(this.slots, offerId.getMostSignificantBits(), offerId.getLeastSignificantBits());
+    }
+
+    private static Offer find(final Object[] slots, final long mostSigBits, final long leastSigBits) {
+        final int mask = slots.length - 1;
+        for (int slot = hash(mostSigBits, leastSigBits) & mask; ; slot = (slot + 1) & mask) {
+            final Object existing = SLOTS.getAcquire(slots, slot);
+            if (existing == null) {
+                return null;
+            }
+            if (existing != TOMBSTONE && ((Offer) existing).hasOfferKey(mostSigBits, leastSigBits)) {
+                return (Offer) existing;
+            }
+        }
+    }
+
+    /**
+     * Inserts an offer into the first free slot of its probe sequence.
+     *
+     * @return true if the slot held a tombstone
+     */
+    private static boolean insert(final Object[] slots, final Offer offer) {
+        final UUID offerId = offer.getOfferKey();
+        final int mask = slots.length - 1;
+        int slot = hash(offerId.getMostSignificantBits(), offerId.getLeastSignificantBits()) & mask;
+        while (slots[slot] != null && slots[slot] != TOMBSTONE) {
+            slot = (slot + 1) & mask;
+        }
+        final boolean tombstone = slots[slot] == TOMBSTONE;
+        SLOTS.setRelease(slots, slot, offer);
+        return tombstone;
+    }
+
+    /**
+     * Mixes both halves of the ID, since time-ordered IDs share most of their high bits.
+     */
+    static int hash(final long mostSigBits, final long leastSigBits) {
+        long h = mostSigBits * 0x9E3779B97F4A7C15L ^ leastSigBits;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+}
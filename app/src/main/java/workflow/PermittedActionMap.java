@@ -1,20 +1,33 @@
 package workflow;
 
-import java.util.Map;
-import workflow.exceptions.InvalidNextActionException;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.List;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+import workflow.exceptions.InvalidNextActionException;
 
 /**
  * Manages permitted actions based on offer states and user roles (buyer or seller).
- * Provides a method to validate if a specific action is allowed from the current state.
+ * Provides a method to validate if a specific action is allowed from the current state. A third
+ * role, the system, may only cancel offers that have not reached a terminal state.
+ *
+ * <p>Permitted actions are held in a dense table indexed by role and {@link OfferState#ordinal()},
+ * where each cell is a bitmask over {@link Action#ordinal()}. A check is one array load and one
+ * bit test, with no hashing, boxing or list iteration.
  */
 final class PermittedActionMap {
 
-    // Maps storing permitted actions for buyers and sellers based on current offer state
-    private static Map<OfferState, List<Action>> buyerPermittedActions = new HashMap<>();
-    private static Map<OfferState, List<Action>> sellerPermittedActions = new HashMap<>();
+    private static final int BUYER = 0;
+    private static final int SELLER = 1;
+    private static final int SYSTEM = 2;
+    private static final OfferState[] STATES = OfferState.values();
+
+    // Bitmasks of permitted actions for buyers, sellers and the system, indexed by current offer state
+    private static final int[][] permittedActions = new int[3][STATES.length];
+    // The same tables as immutable sets for callers that render the available actions
+    @SuppressWarnings("unchecked")
+    private static final Set<Action>[][] permittedActionSets = new Set[3][STATES.length];
 
     /**
      * Validates whether the specified nextAction is permitted from the currentState
@@ -26,49 +39,97 @@ final class PermittedActionMap {
      * @throws InvalidNextActionException if the next action is not permitted
      */
     static void checkAction(final OfferState currentState, final Action nextAction, boolean isBuyer) {
-        List<Action> permittedActions = isBuyer
-                ? buyerPermittedActions.get(currentState)
-                : sellerPermittedActions.get(currentState);
-
-        if (!permittedActions.contains(nextAction)) {
-            throw new InvalidNextActionException(
-                    "Cannot perform " + nextAction + " from current state: " + currentState);
+        if (!isPermitted(currentState, nextAction, isBuyer)) {
+            throw new InvalidNextActionException(currentState, nextAction);
         }
     }
 
+    /**
+     * Determines whether the specified nextAction is permitted from the currentState
+     * based on the user's role (buyer or seller).
+     * 
+     * @param currentState the current state of the offer
+     * @param nextAction   the action user wants to perform
+     * @param isBuyer      specifies if the user is the buyer
+     * @return true if the action is permitted, otherwise false
+     */
+    static boolean isPermitted(final OfferState currentState, final Action nextAction, boolean isBuyer) {
+        return (permittedActions[isBuyer ? BUYER : SELLER][currentState.ordinal()] & (1 << nextAction.ordinal())) != 0;
+    }
+
+    /**
+     * Determines whether the system, acting on behalf of neither party, may perform the
+     * specified nextAction from the currentState.
+     * 
+     * @param currentState the current state of the offer
+     * @param nextAction   the action the system wants to perform
+     * @return true if the action is permitted, otherwise false
+     */
+    static boolean isPermittedForSystem(final OfferState currentState, final Action nextAction) {
+        return (permittedActions[SYSTEM][currentState.ordinal()] & (1 << nextAction.ordinal())) != 0;
+    }
+
+    /**
+     * Returns every action the user may perform from the currentState based on the user's role.
+     * 
+     * @param currentState the current state of the offer
+     * @param isBuyer      specifies if the user is the buyer
+     * @return an immutable set of permitted actions
+     */
+    static Set<Action> permittedActions(final OfferState currentState, boolean isBuyer) {
+        return permittedActionSets[isBuyer ? BUYER : SELLER][currentState.ordinal()];
+    }
+
     // Static block to initialize permitted actions when the class is loaded
     static {
         initializePermittedActions();
     }
 
     /**
-     * Populates the permitted actions map for each user role based on offer states.
+     * Populates the permitted actions table for each user role based on offer states.
      */
     private static void initializePermittedActions() {
-        buyerPermittedActions.put(OfferState.AWAITING_SELLER_ACCEPTANCE,
-                Arrays.asList(Action.WITHDRAW, Action.CANCEL, Action.UPDATE_PRIVATE_DATA));
-        buyerPermittedActions.put(OfferState.AWAITING_BUYER_ACCEPTANCE,
-                Arrays.asList(Action.ACCEPT, Action.CANCEL, Action.PROPOSE_UPDATE, Action.UPDATE_PRIVATE_DATA));
-        buyerPermittedActions.put(OfferState.WITHDRAWN_BY_SELLER,
-                Arrays.asList(Action.CANCEL, Action.UPDATE_PRIVATE_DATA));
-        buyerPermittedActions.put(OfferState.WITHDRAWN_BY_BUYER,
-                Arrays.asList(Action.CANCEL, Action.PROPOSE_UPDATE, Action.UPDATE_PRIVATE_DATA));
-        buyerPermittedActions.put(OfferState.ACCEPTED,
-                Arrays.asList(Action.UPDATE_PRIVATE_DATA));
-        buyerPermittedActions.put(OfferState.CANCELLED,
-                Arrays.asList(Action.UPDATE_PRIVATE_DATA));
+        permit(BUYER, OfferState.AWAITING_SELLER_ACCEPTANCE,
+                Action.WITHDRAW, Action.CANCEL, Action.UPDATE_PRIVATE_DATA);
+        permit(BUYER, OfferState.AWAITING_BUYER_ACCEPTANCE,
+                Action.ACCEPT, Action.CANCEL, Action.PROPOSE_UPDATE, Action.UPDATE_PRIVATE_DATA);
+        permit(BUYER, OfferState.WITHDRAWN_BY_SELLER,
+                Action.CANCEL, Action.UPDATE_PRIVATE_DATA);
+        permit(BUYER, OfferState.WITHDRAWN_BY_BUYER,
+                Action.CANCEL, Action.PROPOSE_UPDATE, Action.UPDATE_PRIVATE_DATA);
+        permit(BUYER, OfferState.ACCEPTED,
+                Action.UPDATE_PRIVATE_DATA);
+        permit(BUYER, OfferState.CANCELLED,
+                Action.UPDATE_PRIVATE_DATA);
+
+        permit(SELLER, OfferState.AWAITING_BUYER_ACCEPTANCE,
+                Action.WITHDRAW, Action.CANCEL, Action.UPDATE_PRIVATE_DATA);
+        permit(SELLER, OfferState.AWAITING_SELLER_ACCEPTANCE,
+                Action.ACCEPT, Action.CANCEL, Action.PROPOSE_UPDATE, Action.UPDATE_PRIVATE_DATA);
+        permit(SELLER, OfferState.WITHDRAWN_BY_BUYER,
+                Action.CANCEL, Action.UPDATE_PRIVATE_DATA);
+        permit(SELLER, OfferState.WITHDRAWN_BY_SELLER,
+                Action.CANCEL, Action.PROPOSE_UPDATE, Action.UPDATE_PRIVATE_DATA);
+        permit(SELLER, OfferState.ACCEPTED,
+                Action.UPDATE_PRIVATE_DATA);
+        permit(SELLER, OfferState.CANCELLED,
+                Action.UPDATE_PRIVATE_DATA);
+
+        permit(SYSTEM, OfferState.AWAITING_SELLER_ACCEPTANCE, Action.CANCEL);
+        permit(SYSTEM, OfferState.AWAITING_BUYER_ACCEPTANCE, Action.CANCEL);
+        permit(SYSTEM, OfferState.WITHDRAWN_BY_BUYER, Action.CANCEL);
+        permit(SYSTEM, OfferState.WITHDRAWN_BY_SELLER, Action.CANCEL);
+    }
 
-        sellerPermittedActions.put(OfferState.AWAITING_BUYER_ACCEPTANCE,
-                Arrays.asList(Action.WITHDRAW, Action.CANCEL, Action.UPDATE_PRIVATE_DATA));
-        sellerPermittedActions.put(OfferState.AWAITING_SELLER_ACCEPTANCE,
-                Arrays.asList(Action.ACCEPT, Action.CANCEL, Action.PROPOSE_UPDATE, Action.UPDATE_PRIVATE_DATA));
-        sellerPermittedActions.put(OfferState.WITHDRAWN_BY_BUYER,
-                Arrays.asList(Action.CANCEL, Action.UPDATE_PRIVATE_DATA));
-        sellerPermittedActions.put(OfferState.WITHDRAWN_BY_SELLER,
-                Arrays.asList(Action.CANCEL, Action.PROPOSE_UPDATE, Action.UPDATE_PRIVATE_DATA));
-        sellerPermittedActions.put(OfferState.ACCEPTED,
-                Arrays.asList(Action.UPDATE_PRIVATE_DATA));
-        sellerPermittedActions.put(OfferState.CANCELLED,
-                Arrays.asList(Action.UPDATE_PRIVATE_DATA));
+    /**
+     * Records the actions a role may perform from a state in both the bitmask and set tables.
+     */
+    private static void permit(final int role, final OfferState state, final Action... actions) {
+        int mask = 0;
+        for (Action action : actions) {
+            mask |= 1 << action.ordinal();
+        }
+        permittedActions[role][state.ordinal()] = mask;
+        permittedActionSets[role][state.ordinal()] = Collections.unmodifiableSet(EnumSet.copyOf(Arrays.asList(actions)));
     }
 }
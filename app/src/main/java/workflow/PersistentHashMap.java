@@ -0,0 +1,592 @@
+package workflow;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * Immutable hash array mapped trie used for private data snapshots.
+ * Every update returns a new map that shares all untouched nodes with the original, so
+ * consecutive snapshots in an offer history only pay for the entries that actually changed.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ */
+final class PersistentHashMap<K, V> extends AbstractMap<K, V> {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    private static final int MAX_DEPTH = 8;
+    private static final Object NOT_FOUND = new Object();
+    private static final PersistentHashMap<?, ?> EMPTY = new PersistentHashMap<>(BitmapNode.EMPTY, 0);
+
+    private final Node root;
+    private final int size;
+
+    private PersistentHashMap(final Node root, final int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Returns the empty map.
+     *
+     * @return an empty PersistentHashMap
+     */
+    @SuppressWarnings("unchecked")
+    static <K, V> PersistentHashMap<K, V> empty() {
+        return (PersistentHashMap<K, V>) EMPTY;
+    }
+
+    /**
+     * Returns a map with the same entries as the given map.
+     *
+     * @param map the entries to copy
+     * @return a PersistentHashMap equal to map
+     */
+    static <K, V> PersistentHashMap<K, V> copyOf(final Map<? extends K, ? extends V> map) {
+        return PersistentHashMap.<K, V>empty().withContentsOf(map);
+    }
+
+    /**
+     * Returns a map with the given key associated to the given value.
+     *
+     * @param key   the key to add or replace
+     * @param value the value to associate
+     * @return this map if the key already maps to an equal value, otherwise a new map
+     */
+    PersistentHashMap<K, V> plus(final K key, final V value) {
+        final Change change = new Change();
+        final Node newRoot = this.root.put(key, value, hash(key), 0, change);
+        if (newRoot == this.root) {
+            return this;
+        }
+        return new PersistentHashMap<>(newRoot, change.added ? this.size + 1 : this.size);
+    }
+
+    /**
+     * Returns a map without the given key.
+     *
+     * @param key the key to remove
+     * @return this map if the key is absent, otherwise a new map
+     */
+    PersistentHashMap<K, V> minus(final Object key) {
+        final Node newRoot = this.root.remove(key, hash(key), 0);
+        if (newRoot == this.root) {
+            return this;
+        }
+        return new PersistentHashMap<>(newRoot, this.size - 1);
+    }
+
+    /**
+     * Returns a map equal to the target map that shares every unchanged entry with this map.
+     * Only keys that were removed, added or re-valued produce new trie nodes.
+     *
+     * @param target the complete set of entries the result must contain
+     * @return a PersistentHashMap equal to target
+     */
+    @SuppressWarnings("unchecked")
+    PersistentHashMap<K, V> withContentsOf(final Map<? extends K, ? extends V> target) {
+        if (target instanceof PersistentHashMap) {
+            return (PersistentHashMap<K, V>) target;
+        }
+        PersistentHashMap<K, V> result = this;
+        for (K key : keySet()) {
+            if (!target.containsKey(key)) {
+                result = result.minus(key);
+            }
+        }
+        for (Map.Entry<? extends K, ? extends V> entry : target.entrySet()) {
+            result = result.plus(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * Reports every key whose value differs between an earlier map and this one. Subtrees the two
+     * maps share are skipped without being visited, so comparing a snapshot with one derived from
+     * it costs time proportional to the number of changed entries rather than to the map size.
+     *
+     * @param previous the map to compare against
+     * @param visitor  receives each changed key with its value in previous and in this map
+     */
+    void diff(final PersistentHashMap<K, V> previous, final DiffVisitor<? super K, ? super V> visitor) {
+        diff(previous.root, this.root, 0, visitor);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(final Object key) {
+        final Object value = this.root.get(key, hash(key), 0);
+        return value == NOT_FOUND ? null : (V) value;
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        return this.root.get(key, hash(key), 0) != NOT_FOUND;
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator() {
+                return new EntryIterator<>(PersistentHashMap.this.root);
+            }
+
+            @Override
+            public int size() {
+                return PersistentHashMap.this.size;
+            }
+        };
+    }
+
+    private static int hash(final Object key) {
+        final int h = Objects.hashCode(key);
+        return h ^ (h >>> 16);
+    }
+
+    private static int bitpos(final int hash, final int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static void diff(final Node before, final Node after, final int shift, final DiffVisitor visitor) {
+        if (before == after) {
+            return;
+        }
+        if (!(before instanceof BitmapNode) || !(after instanceof BitmapNode)) {
+            diffEntries(before, after, shift, visitor);
+            return;
+        }
+        final BitmapNode left = (BitmapNode) before;
+        final BitmapNode right = (BitmapNode) after;
+        int bits = left.dataMap | left.nodeMap | right.dataMap | right.nodeMap;
+        while (bits != 0) {
+            final int bit = Integer.lowestOneBit(bits);
+            bits ^= bit;
+            if ((left.nodeMap & bit) != 0 && (right.nodeMap & bit) != 0) {
+                diff((Node) left.content[left.nodeIndex(bit)], (Node) right.content[right.nodeIndex(bit)],
+                        shift + BITS, visitor);
+            } else if ((left.dataMap & bit) != 0 && (right.dataMap & bit) != 0
+                    && Objects.equals(left.key(left.dataIndex(bit)), right.key(right.dataIndex(bit)))) {
+                final Object oldValue = left.value(left.dataIndex(bit));
+                final Object newValue = right.value(right.dataIndex(bit));
+                if (!Objects.equals(oldValue, newValue)) {
+                    visitor.changed(right.key(right.dataIndex(bit)), oldValue, newValue);
+                }
+            } else {
+                // The slot changed shape, which only happens when keys collide in this fragment
+                diffEntries(left.slot(bit, shift), right.slot(bit, shift), shift + BITS, visitor);
+            }
+        }
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static void diffEntries(final Node before, final Node after, final int shift, final DiffVisitor visitor) {
+        forEach(after, (key, value) -> {
+            final Object oldValue = before.get(key, hash(key), shift);
+            if (oldValue == NOT_FOUND) {
+                visitor.changed(key, null, value);
+            } else if (!Objects.equals(oldValue, value)) {
+                visitor.changed(key, oldValue, value);
+            }
+        });
+        forEach(before, (key, value) -> {
+            if (after.get(key, hash(key), shift) == NOT_FOUND) {
+                visitor.changed(key, value, null);
+            }
+        });
+    }
+
+    private static void forEach(final Node node, final BiConsumer<Object, Object> action) {
+        for (int i = 0; i < node.dataCount(); i++) {
+            action.accept(node.key(i), node.value(i));
+        }
+        for (int i = 0; i < node.nodeCount(); i++) {
+            forEach(node.node(i), action);
+        }
+    }
+
+    /**
+     * Receives the keys found to differ between two maps.
+     *
+     * @param <K> the type of keys
+     * @param <V> the type of values
+     */
+    @FunctionalInterface
+    interface DiffVisitor<K, V> {
+
+        /**
+         * Called once for each key that was added, removed or re-valued.
+         *
+         * @param key      the key
+         * @param oldValue the value in the earlier map, or null if the key was absent
+         * @param newValue the value in the later map, or null if the key was removed
+         */
+        void changed(K key, V oldValue, V newValue);
+    }
+
+    /**
+     * Records whether a put added a new key rather than replacing a value.
+     */
+    private static final class Change {
+        private boolean added;
+    }
+
+    /**
+     * A trie node. Nodes are never mutated once published.
+     */
+    private abstract static class Node {
+        abstract Object get(Object key, int hash, int shift);
+
+        abstract Node put(Object key, Object value, int hash, int shift, Change change);
+
+        abstract Node remove(Object key, int hash, int shift);
+
+        abstract int dataCount();
+
+        abstract Object key(int index);
+
+        abstract Object value(int index);
+
+        abstract int nodeCount();
+
+        abstract Node node(int index);
+
+        boolean isSingleEntry() {
+            return dataCount() == 1 && nodeCount() == 0;
+        }
+
+        static Node merge(final Object key0, final Object value0, final int hash0,
+                final Object key1, final Object value1, final int hash1, final int shift) {
+            if (shift >= Integer.SIZE) {
+                return new CollisionNode(hash0, new Object[] { key0, value0, key1, value1 });
+            }
+            final int fragment0 = (hash0 >>> shift) & MASK;
+            final int fragment1 = (hash1 >>> shift) & MASK;
+            if (fragment0 != fragment1) {
+                final int dataMap = (1 << fragment0) | (1 << fragment1);
+                return fragment0 < fragment1
+                        ? new BitmapNode(dataMap, 0, new Object[] { key0, value0, key1, value1 })
+                        : new BitmapNode(dataMap, 0, new Object[] { key1, value1, key0, value0 });
+            }
+            final Node child = merge(key0, value0, hash0, key1, value1, hash1, shift + BITS);
+            return new BitmapNode(0, 1 << fragment0, new Object[] { child });
+        }
+    }
+
+    /**
+     * Node holding inline key/value pairs at the front of its array and child nodes,
+     * in reverse order, at the back.
+     */
+    private static final class BitmapNode extends Node {
+        static final BitmapNode EMPTY = new BitmapNode(0, 0, new Object[0]);
+
+        private final int dataMap;
+        private final int nodeMap;
+        private final Object[] content;
+
+        BitmapNode(final int dataMap, final int nodeMap, final Object[] content) {
+            this.dataMap = dataMap;
+            this.nodeMap = nodeMap;
+            this.content = content;
+        }
+
+        private int dataIndex(final int bit) {
+            return Integer.bitCount(this.dataMap & (bit - 1));
+        }
+
+        private int nodeIndex(final int bit) {
+            return this.content.length - 1 - Integer.bitCount(this.nodeMap & (bit - 1));
+        }
+
+        @Override
+        Object get(final Object key, final int hash, final int shift) {
+            final int bit = bitpos(hash, shift);
+            if ((this.dataMap & bit) != 0) {
+                final int index = 2 * dataIndex(bit);
+                return Objects.equals(this.content[index], key) ? this.content[index + 1] : NOT_FOUND;
+            }
+            if ((this.nodeMap & bit) != 0) {
+                return ((Node) this.content[nodeIndex(bit)]).get(key, hash, shift + BITS);
+            }
+            return NOT_FOUND;
+        }
+
+        @Override
+        Node put(final Object key, final Object value, final int hash, final int shift, final Change change) {
+            final int bit = bitpos(hash, shift);
+            if ((this.dataMap & bit) != 0) {
+                final int index = 2 * dataIndex(bit);
+                final Object existingKey = this.content[index];
+                final Object existingValue = this.content[index + 1];
+                if (Objects.equals(existingKey, key)) {
+                    if (Objects.equals(existingValue, value)) {
+                        return this;
+                    }
+                    final Object[] copy = this.content.clone();
+                    copy[index + 1] = value;
+                    return new BitmapNode(this.dataMap, this.nodeMap, copy);
+                }
+                change.added = true;
+                final Node child = merge(existingKey, existingValue, hash(existingKey), key, value, hash,
+                        shift + BITS);
+                return withDataReplacedByNode(bit, index, child);
+            }
+            if ((this.nodeMap & bit) != 0) {
+                final int index = nodeIndex(bit);
+                final Node child = (Node) this.content[index];
+                final Node newChild = child.put(key, value, hash, shift + BITS, change);
+                if (newChild == child) {
+                    return this;
+                }
+                final Object[] copy = this.content.clone();
+                copy[index] = newChild;
+                return new BitmapNode(this.dataMap, this.nodeMap, copy);
+            }
+            change.added = true;
+            final int index = 2 * dataIndex(bit);
+            final Object[] copy = new Object[this.content.length + 2];
+            System.arraycopy(this.content, 0, copy, 0, index);
+            copy[index] = key;
+            copy[index + 1] = value;
+            System.arraycopy(this.content, index, copy, index + 2, this.content.length - index);
+            return new BitmapNode(this.dataMap | bit, this.nodeMap, copy);
+        }
+
+        @Override
+        Node remove(final Object key, final int hash, final int shift) {
+            final int bit = bitpos(hash, shift);
+            if ((this.dataMap & bit) != 0) {
+                final int index = 2 * dataIndex(bit);
+                if (!Objects.equals(this.content[index], key)) {
+                    return this;
+                }
+                final Object[] copy = new Object[this.content.length - 2];
+                System.arraycopy(this.content, 0, copy, 0, index);
+                System.arraycopy(this.content, index + 2, copy, index, this.content.length - index - 2);
+                return new BitmapNode(this.dataMap ^ bit, this.nodeMap, copy);
+            }
+            if ((this.nodeMap & bit) != 0) {
+                final int index = nodeIndex(bit);
+                final Node child = (Node) this.content[index];
+                final Node newChild = child.remove(key, hash, shift + BITS);
+                if (newChild == child) {
+                    return this;
+                }
+                if (newChild.isSingleEntry()) {
+                    // Keep the trie canonical by pulling a lone remaining entry up into this node
+                    return withNodeReplacedByData(bit, index, newChild.key(0), newChild.value(0));
+                }
+                final Object[] copy = this.content.clone();
+                copy[index] = newChild;
+                return new BitmapNode(this.dataMap, this.nodeMap, copy);
+            }
+            return this;
+        }
+
+        private Node withDataReplacedByNode(final int bit, final int dataIndex, final Node child) {
+            final int nodeIndex = this.content.length - 2 - Integer.bitCount(this.nodeMap & (bit - 1));
+            final Object[] copy = new Object[this.content.length - 1];
+            System.arraycopy(this.content, 0, copy, 0, dataIndex);
+            System.arraycopy(this.content, dataIndex + 2, copy, dataIndex, nodeIndex - dataIndex);
+            copy[nodeIndex] = child;
+            System.arraycopy(this.content, nodeIndex + 2, copy, nodeIndex + 1, this.content.length - nodeIndex - 2);
+            return new BitmapNode(this.dataMap ^ bit, this.nodeMap | bit, copy);
+        }
+
+        private Node withNodeReplacedByData(final int bit, final int nodeIndex, final Object key, final Object value) {
+            final int dataIndex = 2 * dataIndex(bit);
+            final Object[] copy = new Object[this.content.length + 1];
+            System.arraycopy(this.content, 0, copy, 0, dataIndex);
+            copy[dataIndex] = key;
+            copy[dataIndex + 1] = value;
+            System.arraycopy(this.content, dataIndex, copy, dataIndex + 2, nodeIndex - dataIndex);
+            System.arraycopy(this.content, nodeIndex + 1, copy, nodeIndex + 2, this.content.length - nodeIndex - 1);
+            return new BitmapNode(this.dataMap | bit, this.nodeMap ^ bit, copy);
+        }
+
+        /**
+         * Returns the contents of one slot as a node one level down: its child node, a node holding
+         * its single entry, or the empty node.
+         */
+        private Node slot(final int bit, final int shift) {
+            if ((this.nodeMap & bit) != 0) {
+                return (Node) this.content[nodeIndex(bit)];
+            }
+            if ((this.dataMap & bit) != 0) {
+                final int index = 2 * dataIndex(bit);
+                final Object key = this.content[index];
+                return new BitmapNode(bitpos(hash(key), shift + BITS), 0,
+                        new Object[] { key, this.content[index + 1] });
+            }
+            return EMPTY;
+        }
+
+        @Override
+        int dataCount() {
+            return Integer.bitCount(this.dataMap);
+        }
+
+        @Override
+        Object key(final int index) {
+            return this.content[2 * index];
+        }
+
+        @Override
+        Object value(final int index) {
+            return this.content[2 * index + 1];
+        }
+
+        @Override
+        int nodeCount() {
+            return Integer.bitCount(this.nodeMap);
+        }
+
+        @Override
+        Node node(final int index) {
+            return (Node) this.content[this.content.length - 1 - index];
+        }
+    }
+
+    /**
+     * Node holding keys whose hashes are identical in all 32 bits.
+     */
+    private static final class CollisionNode extends Node {
+        private final int hash;
+        private final Object[] content;
+
+        CollisionNode(final int hash, final Object[] content) {
+            this.hash = hash;
+            this.content = content;
+        }
+
+        private int find(final Object key) {
+            for (int i = 0; i < this.content.length; i += 2) {
+                if (Objects.equals(this.content[i], key)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        Object get(final Object key, final int hash, final int shift) {
+            final int index = find(key);
+            return index < 0 ? NOT_FOUND : this.content[index + 1];
+        }
+
+        @Override
+        Node put(final Object key, final Object value, final int hash, final int shift, final Change change) {
+            final int index = find(key);
+            if (index >= 0) {
+                if (Objects.equals(this.content[index + 1], value)) {
+                    return this;
+                }
+                final Object[] copy = this.content.clone();
+                copy[index + 1] = value;
+                return new CollisionNode(this.hash, copy);
+            }
+            change.added = true;
+            final Object[] copy = Arrays.copyOf(this.content, this.content.length + 2);
+            copy[this.content.length] = key;
+            copy[this.content.length + 1] = value;
+            return new CollisionNode(this.hash, copy);
+        }
+
+        @Override
+        Node remove(final Object key, final int hash, final int shift) {
+            final int index = find(key);
+            if (index < 0) {
+                return this;
+            }
+            final Object[] copy = new Object[this.content.length - 2];
+            System.arraycopy(this.content, 0, copy, 0, index);
+            System.arraycopy(this.content, index + 2, copy, index, this.content.length - index - 2);
+            return new CollisionNode(this.hash, copy);
+        }
+
+        @Override
+        int dataCount() {
+            return this.content.length / 2;
+        }
+
+        @Override
+        Object key(final int index) {
+            return this.content[2 * index];
+        }
+
+        @Override
+        Object value(final int index) {
+            return this.content[2 * index + 1];
+        }
+
+        @Override
+        int nodeCount() {
+            return 0;
+        }
+
+        @Override
+        Node node(final int index) {
+            throw new IndexOutOfBoundsException(index);
+        }
+    }
+
+    /**
+     * Depth-first iterator over the trie using fixed-size stacks.
+     */
+    private static final class EntryIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+        private final Node[] nodes = new Node[MAX_DEPTH];
+        private final int[] dataPositions = new int[MAX_DEPTH];
+        private final int[] nodePositions = new int[MAX_DEPTH];
+        private int depth;
+
+        EntryIterator(final Node root) {
+            this.nodes[0] = root;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (this.depth >= 0) {
+                final Node node = this.nodes[this.depth];
+                if (this.dataPositions[this.depth] < node.dataCount()) {
+                    return true;
+                }
+                if (this.nodePositions[this.depth] < node.nodeCount()) {
+                    final Node child = node.node(this.nodePositions[this.depth]++);
+                    this.depth++;
+                    this.nodes[this.depth] = child;
+                    this.dataPositions[this.depth] = 0;
+                    this.nodePositions[this.depth] = 0;
+                } else {
+                    this.nodes[this.depth] = null;
+                    this.depth--;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Map.Entry<K, V> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final Node node = this.nodes[this.depth];
+            final int index = this.dataPositions[this.depth]++;
+            return new AbstractMap.SimpleImmutableEntry<>((K) node.key(index), (V) node.value(index));
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package workflow;
+
+/**
+ * Reasons an action can be rejected without being applied to an offer.
+ */
+public enum RejectionReason {
+    // The user ID is null or empty
+    INVALID_USER,
+    // The details of a submitted offer are missing or contain negative values
+    INVALID_OFFER_DETAILS,
+    // No offer exists for the given offer ID or user
+    OFFER_NOT_FOUND,
+    // The user is neither the buyer nor the seller of the offer
+    NOT_A_PARTY,
+    // The action is not permitted for the user's role in the current state
+    ACTION_NOT_PERMITTED,
+    // The action would move the offer to a state that is not reachable from the current state
+    TRANSITION_NOT_PERMITTED,
+    // Another action changed the offer state after the caller observed it
+    STALE_STATE,
+    // Another action changed the offer after the version the caller observed
+    VERSION_CONFLICT
+}
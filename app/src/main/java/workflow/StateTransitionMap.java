@@ -1,21 +1,33 @@
 package workflow;
 
-import java.util.Map;
-import workflow.exceptions.InvalidStateTransitionException;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.List;
+import java.util.EnumSet;
+import java.util.Set;
+
+import workflow.exceptions.InvalidStateTransitionException;
 
 /**
  * Manages allowed state transitions based on the current offer state and the user's role (buyer or seller).
- * Provides a method to validate whether a transition from one state to another is permitted.
+ * Provides a method to validate whether a transition from one state to another is permitted. A third
+ * role, the system, may only cancel offers that have not reached a terminal state, as when they expire.
+ *
+ * <p>Allowed transitions are held in a dense table indexed by role and {@link OfferState#ordinal()},
+ * where each cell is a bitmask over the ordinals of the allowed next states. A check is one array
+ * load and one bit test, with no hashing, boxing or list iteration.
  */
 final class StateTransitionMap {
 
-    // Maps storing allowed state transitions for buyers and sellers based on current offer state
-    private static Map<OfferState, List<OfferState>> buyerAllowedTransitions = new HashMap<>();
-    private static Map<OfferState, List<OfferState>> sellerAllowedTransitions = new HashMap<>();
+    private static final int BUYER = 0;
+    private static final int SELLER = 1;
+    private static final int SYSTEM = 2;
+    private static final OfferState[] STATES = OfferState.values();
+
+    // Bitmasks of allowed next states for buyers, sellers and the system, indexed by current offer state
+    private static final int[][] allowedTransitions = new int[3][STATES.length];
+    // The same tables as immutable sets for callers that need to enumerate the next states
+    @SuppressWarnings("unchecked")
+    private static final Set<OfferState>[][] allowedTransitionSets = new Set[3][STATES.length];
 
     /**
      * Validates whether the specified nextState transition is permitted from the currentState
@@ -27,43 +39,95 @@ final class StateTransitionMap {
      * @throws InvalidStateTransitionException if the transition is not permitted
      */
     static void checkTransition(final OfferState currentState, final OfferState nextState, boolean isBuyer) {
-        List<OfferState> allowedTransitions = isBuyer
-                ? buyerAllowedTransitions.get(currentState)
-                : sellerAllowedTransitions.get(currentState);
-
-        if (!allowedTransitions.contains(nextState)) {
-            throw new InvalidStateTransitionException(
-                    "Cannot transition from current " + currentState + " state to next " + nextState);
+        if (!isAllowed(currentState, nextState, isBuyer)) {
+            throw new InvalidStateTransitionException(currentState, nextState);
         }
     }
 
+    /**
+     * Determines whether the specified nextState transition is permitted from the currentState
+     * based on the user's role (buyer or seller).
+     * 
+     * @param currentState the current state of the offer
+     * @param nextState    the state to transition to
+     * @param isBuyer      specifies if the user is the buyer
+     * @return true if the transition is permitted, otherwise false
+     */
+    static boolean isAllowed(final OfferState currentState, final OfferState nextState, boolean isBuyer) {
+        return (allowedTransitions[isBuyer ? BUYER : SELLER][currentState.ordinal()] & (1 << nextState.ordinal())) != 0;
+    }
+
+    /**
+     * Determines whether the system, acting on behalf of neither party, may move an offer from
+     * the currentState to the nextState.
+     * 
+     * @param currentState the current state of the offer
+     * @param nextState    the state to transition to
+     * @return true if the transition is permitted, otherwise false
+     */
+    static boolean isAllowedForSystem(final OfferState currentState, final OfferState nextState) {
+        return (allowedTransitions[SYSTEM][currentState.ordinal()] & (1 << nextState.ordinal())) != 0;
+    }
+
+    /**
+     * Returns every state the user may move the offer to from the currentState based on the user's role.
+     * 
+     * @param currentState the current state of the offer
+     * @param isBuyer      specifies if the user is the buyer
+     * @return an immutable set of allowed next states
+     */
+    static Set<OfferState> allowedTransitions(final OfferState currentState, boolean isBuyer) {
+        return allowedTransitionSets[isBuyer ? BUYER : SELLER][currentState.ordinal()];
+    }
+
     // Static block to initialize allowed state transitions when the class is loaded
     static {
         initializeTransitions();
     }
 
     /**
-     * Populates the allowed transitions map for each user role based on offer states.
+     * Populates the allowed transitions table for each user role based on offer states.
      */
     private static void initializeTransitions() {
-        buyerAllowedTransitions.put(OfferState.AWAITING_SELLER_ACCEPTANCE,
-                Arrays.asList(OfferState.WITHDRAWN_BY_BUYER, OfferState.CANCELLED));
-        buyerAllowedTransitions.put(OfferState.AWAITING_BUYER_ACCEPTANCE,
-                Arrays.asList(OfferState.ACCEPTED, OfferState.CANCELLED, OfferState.AWAITING_SELLER_ACCEPTANCE));
-        buyerAllowedTransitions.put(OfferState.ACCEPTED, Collections.emptyList());
-        buyerAllowedTransitions.put(OfferState.CANCELLED, Collections.emptyList());
-        buyerAllowedTransitions.put(OfferState.WITHDRAWN_BY_BUYER,
-                Arrays.asList(OfferState.AWAITING_SELLER_ACCEPTANCE, OfferState.CANCELLED));
-        buyerAllowedTransitions.put(OfferState.WITHDRAWN_BY_SELLER, Arrays.asList(OfferState.CANCELLED));
+        allow(BUYER, OfferState.AWAITING_SELLER_ACCEPTANCE,
+                OfferState.WITHDRAWN_BY_BUYER, OfferState.CANCELLED);
+        allow(BUYER, OfferState.AWAITING_BUYER_ACCEPTANCE,
+                OfferState.ACCEPTED, OfferState.CANCELLED, OfferState.AWAITING_SELLER_ACCEPTANCE);
+        allow(BUYER, OfferState.ACCEPTED);
+        allow(BUYER, OfferState.CANCELLED);
+        allow(BUYER, OfferState.WITHDRAWN_BY_BUYER,
+                OfferState.AWAITING_SELLER_ACCEPTANCE, OfferState.CANCELLED);
+        allow(BUYER, OfferState.WITHDRAWN_BY_SELLER, OfferState.CANCELLED);
+
+        allow(SELLER, OfferState.AWAITING_BUYER_ACCEPTANCE,
+                OfferState.WITHDRAWN_BY_SELLER, OfferState.CANCELLED);
+        allow(SELLER, OfferState.AWAITING_SELLER_ACCEPTANCE,
+                OfferState.ACCEPTED, OfferState.CANCELLED, OfferState.AWAITING_BUYER_ACCEPTANCE);
+        allow(SELLER, OfferState.ACCEPTED);
+        allow(SELLER, OfferState.CANCELLED);
+        allow(SELLER, OfferState.WITHDRAWN_BY_SELLER,
+                OfferState.AWAITING_BUYER_ACCEPTANCE, OfferState.CANCELLED);
+        allow(SELLER, OfferState.WITHDRAWN_BY_BUYER, OfferState.CANCELLED);
+
+        allow(SYSTEM, OfferState.AWAITING_SELLER_ACCEPTANCE, OfferState.CANCELLED);
+        allow(SYSTEM, OfferState.AWAITING_BUYER_ACCEPTANCE, OfferState.CANCELLED);
+        allow(SYSTEM, OfferState.ACCEPTED);
+        allow(SYSTEM, OfferState.CANCELLED);
+        allow(SYSTEM, OfferState.WITHDRAWN_BY_BUYER, OfferState.CANCELLED);
+        allow(SYSTEM, OfferState.WITHDRAWN_BY_SELLER, OfferState.CANCELLED);
+    }
 
-        sellerAllowedTransitions.put(OfferState.AWAITING_BUYER_ACCEPTANCE,
-                Arrays.asList(OfferState.WITHDRAWN_BY_SELLER, OfferState.CANCELLED));
-        sellerAllowedTransitions.put(OfferState.AWAITING_SELLER_ACCEPTANCE,
-                Arrays.asList(OfferState.ACCEPTED, OfferState.CANCELLED, OfferState.AWAITING_BUYER_ACCEPTANCE));
-        sellerAllowedTransitions.put(OfferState.ACCEPTED, Collections.emptyList());
-        sellerAllowedTransitions.put(OfferState.CANCELLED, Collections.emptyList());
-        sellerAllowedTransitions.put(OfferState.WITHDRAWN_BY_SELLER,
-                Arrays.asList(OfferState.AWAITING_BUYER_ACCEPTANCE, OfferState.CANCELLED));
-        sellerAllowedTransitions.put(OfferState.WITHDRAWN_BY_BUYER, Arrays.asList(OfferState.CANCELLED));
+    /**
+     * Records the states a role may move to from a state in both the bitmask and set tables.
+     */
+    private static void allow(final int role, final OfferState state, final OfferState... nextStates) {
+        int mask = 0;
+        for (OfferState nextState : nextStates) {
+            mask |= 1 << nextState.ordinal();
+        }
+        final Set<OfferState> set = EnumSet.noneOf(OfferState.class);
+        set.addAll(Arrays.asList(nextStates));
+        allowedTransitions[role][state.ordinal()] = mask;
+        allowedTransitionSets[role][state.ordinal()] = Collections.unmodifiableSet(set);
     }
 }
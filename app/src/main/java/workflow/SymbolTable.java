@@ -0,0 +1,164 @@
+package workflow;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Maps strings that repeat across many records, such as user IDs and product names, to dense
+ * int handles and back. Symbols are reference counted: every intern is matched by a release once
+ * its holder, such as the history of an offer, is gone, and a symbol that nobody holds leaves the
+ * table and its handle is reused. A handle therefore stays valid only while it is held. Resolving
+ * handles and looking up canonical strings are lock-free.
+ */
+final class SymbolTable {
+
+    /**
+     * Handle of the null string.
+     */
+    static final int NULL = -1;
+
+    private static final SymbolTable SHARED = new SymbolTable();
+
+    private final Map<String, Symbol> handles = new ConcurrentHashMap<>();
+    // Guards the symbols array and the free handles; taken only inside a map operation on the string
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile String[] symbols = new String[64];
+    private int[] freeHandles = new int[16];
+    private int freeCount;
+    private int nextHandle;
+
+    /**
+     * Returns the table shared by every offer.
+     *
+     * @return the shared symbol table
+     */
+    static SymbolTable shared() {
+        return SHARED;
+    }
+
+    /**
+     * Returns the handle of a string, adding the string to the table if it is new, and holds the
+     * symbol until release is called with the handle.
+     *
+     * @param value the string, may be null
+     * @return the handle of the string, NULL for null
+     */
+    int intern(final String value) {
+        if (value == null) {
+            return NULL;
+        }
+        return this.handles.compute(value, (key, symbol) -> {
+            if (symbol == null) {
+                symbol = new Symbol(allocate(key));
+            }
+            symbol.references++;
+            return symbol;
+        }).handle;
+    }
+
+    /**
+     * Drops one hold of a symbol, removing it from the table once nobody holds it.
+     *
+     * @param handle a handle returned by intern and not released since
+     */
+    void release(final int handle) {
+        if (handle == NULL) {
+            return;
+        }
+        this.handles.computeIfPresent(this.symbols[handle], (key, symbol) -> {
+            if (--symbol.references > 0) {
+                return symbol;
+            }
+            free(symbol.handle);
+            return null;
+        });
+    }
+
+    /**
+     * Returns the handle of a string without holding the symbol. The handle is only of use to a
+     * caller that already holds the symbol, and then it is the handle intern returned.
+     *
+     * @param value the string
+     * @return the handle of the string, or NULL if it is not in the table
+     */
+    int find(final String value) {
+        final Symbol symbol = this.handles.get(value);
+        return symbol == null ? NULL : symbol.handle;
+    }
+
+    /**
+     * Returns the copy of a string held by the table, or the string itself if no symbol holds it,
+     * without holding the symbol.
+     *
+     * @param value the string, may be null
+     * @return the canonical copy of the string
+     */
+    String canonical(final String value) {
+        final Symbol symbol = value == null ? null : this.handles.get(value);
+        final String canonical = symbol == null ? null : this.symbols[symbol.handle];
+        return value != null && value.equals(canonical) ? canonical : value;
+    }
+
+    /**
+     * Returns the string a handle stands for.
+     *
+     * @param handle a handle that is held
+     * @return the string, or null for NULL
+     */
+    String resolve(final int handle) {
+        return handle == NULL ? null : this.symbols[handle];
+    }
+
+    /**
+     * Returns the number of distinct strings in the table.
+     *
+     * @return the number of symbols
+     */
+    int size() {
+        return this.handles.size();
+    }
+
+    private int allocate(final String value) {
+        this.lock.lock();
+        try {
+            final int handle = this.freeCount > 0 ? this.freeHandles[--this.freeCount] : this.nextHandle++;
+            String[] current = this.symbols;
+            if (handle == current.length) {
+                current = Arrays.copyOf(current, 2 * handle);
+            }
+            current[handle] = value;
+            this.symbols = current;
+            return handle;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private void free(final int handle) {
+        this.lock.lock();
+        try {
+            this.symbols[handle] = null;
+            if (this.freeCount == this.freeHandles.length) {
+                this.freeHandles = Arrays.copyOf(this.freeHandles, 2 * this.freeCount);
+            }
+            this.freeHandles[this.freeCount++] = handle;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Handle of a symbol and the number of holds on it, changed only inside a map operation on
+     * its string.
+     */
+    private static final class Symbol {
+        private final int handle;
+        private int references;
+
+        Symbol(final int handle) {
+            this.handle = handle;
+        }
+    }
+}
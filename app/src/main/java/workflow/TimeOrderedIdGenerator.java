@@ -0,0 +1,73 @@
+package workflow;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongSupplier;
+
+/**
+ * Generates version 7 UUIDs as laid out by RFC 9562:
+ * <pre>
+ *   48 bits  Unix time in milliseconds
+ *    4 bits  version, 7
+ *   12 bits  high bits of the counter
+ *    2 bits  variant, 10
+ *   18 bits  low bits of the counter
+ *   44 bits  random
+ * </pre>
+ * Each thread keeps the time of its last ID and a 30-bit counter. The counter starts at a random
+ * value below half its range whenever the clock has advanced and is incremented otherwise, so IDs
+ * from one thread strictly increase even within a millisecond or when the clock moves back. IDs
+ * from different threads are told apart by the random counter start and the random low bits.
+ * Randomness comes from ThreadLocalRandom, so no call blocks or contends.
+ */
+final class TimeOrderedIdGenerator implements IdGenerator {
+
+    private static final int COUNTER_BITS = 30;
+    private static final int COUNTER_LOW_BITS = 18;
+    private static final long COUNTER_LOW_MASK = (1L << COUNTER_LOW_BITS) - 1;
+    private static final int RANDOM_BITS = 44;
+    private static final long RANDOM_MASK = (1L << RANDOM_BITS) - 1;
+    private static final long VERSION = 0x7000L;
+    private static final long VARIANT = 0x8000000000000000L;
+
+    private final LongSupplier clock;
+    private final ThreadLocal<State> states = ThreadLocal.withInitial(State::new);
+
+    /**
+     * Creates a generator reading the system clock.
+     */
+    TimeOrderedIdGenerator() {
+        this(System::currentTimeMillis);
+    }
+
+    TimeOrderedIdGenerator(final LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    @Override
+    public UUID nextId() {
+        final State state = this.states.get();
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final long now = this.clock.getAsLong();
+        if (now > state.millis) {
+            state.millis = now;
+            state.counter = random.nextLong() >>> (Long.SIZE - COUNTER_BITS + 1);
+        } else if (++state.counter >>> COUNTER_BITS != 0) {
+            // The counter ran out within one millisecond; continue in the next one
+            state.millis++;
+            state.counter = 0;
+        }
+        final long mostSigBits = state.millis << 16 | VERSION | state.counter >>> COUNTER_LOW_BITS;
+        final long leastSigBits = VARIANT | (state.counter & COUNTER_LOW_MASK) << RANDOM_BITS
+                | random.nextLong() & RANDOM_MASK;
+        return new UUID(mostSigBits, leastSigBits);
+    }
+
+    /**
+     * Time and counter of the last ID created by one thread.
+     */
+    private static final class State {
+        private long millis = Long.MIN_VALUE;
+        private long counter;
+    }
+}
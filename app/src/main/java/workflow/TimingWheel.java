@@ -0,0 +1,246 @@
+package workflow;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hierarchical timing wheel of deadlines measured in ticks. Each of its levels has 64 slots, and
+ * a slot of level i spans 64^i ticks, so seven levels cover 2^42 ticks. A deadline is linked into
+ * the slot of the lowest level whose range reaches it; when the wheel turns over a slot of a
+ * higher level, its deadlines are moved down to the levels below, until they reach level 0 and
+ * expire on their exact tick.
+ *
+ * <p>Scheduling and cancelling are O(1): a deadline is a node of a doubly linked list that is
+ * linked into or unlinked from its slot. A bitmap per level marks the slots that hold deadlines,
+ * so advancing the wheel jumps straight to the next tick on which a deadline expires or a slot
+ * is moved down, however many ticks have elapsed; it costs the deadlines it moves or expires,
+ * and each deadline moves at most once per level. All operations are serialized by a single
+ * lock that is held only for the list operations, never while expired deadlines are handled.
+ *
+ * @param <T> the type of the values of the deadlines
+ */
+final class TimingWheel<T> {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 7;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // First deadline of each slot, level by level
+    private final Timeout<T>[] slots;
+    // Bit s of a level is set while slot s of that level holds a deadline
+    private final long[] occupied = new long[LEVELS];
+    // The last tick the wheel has turned to
+    private long tick;
+    private int size;
+
+    /**
+     * Creates an empty wheel at tick 0.
+     */
+    @SuppressWarnings("unchecked")
+    TimingWheel() {
+        this.slots = new Timeout[LEVELS * SLOTS];
+    }
+
+    /**
+     * Schedules a value to expire on a tick. A deadline that is not after the current tick
+     * expires on the next one.
+     *
+     * @param value        the value to return when the deadline expires
+     * @param deadlineTick the tick the deadline expires on
+     * @return the handle that cancels the deadline
+     */
+    Timeout<T> schedule(final T value, final long deadlineTick) {
+        this.lock.lock();
+        try {
+            final Timeout<T> timeout = new Timeout<>(value, Math.max(deadlineTick, this.tick + 1));
+            link(timeout);
+            this.size++;
+            return timeout;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Removes a deadline from the wheel.
+     *
+     * @param timeout the handle returned when the deadline was scheduled
+     * @return true if the deadline was pending, false if it had already expired or been cancelled
+     */
+    boolean cancel(final Timeout<T> timeout) {
+        this.lock.lock();
+        try {
+            if (timeout.slot < 0) {
+                return false;
+            }
+            unlink(timeout);
+            timeout.slot = Timeout.DONE;
+            this.size--;
+            return true;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Turns the wheel to a tick and removes every deadline that expires on or before it.
+     *
+     * @param toTick the tick to turn the wheel to; earlier ticks leave the wheel unchanged
+     * @return the expired deadlines, in tick order
+     */
+    List<Timeout<T>> advance(final long toTick) {
+        final List<Timeout<T>> expired = new ArrayList<>();
+        this.lock.lock();
+        try {
+            while (this.tick < toTick) {
+                final long nextTick = this.size == 0 ? Long.MAX_VALUE : nextTick();
+                if (nextTick > toTick) {
+                    // Nothing to move or expire on the way
+                    this.tick = toTick;
+                    break;
+                }
+                final long now = nextTick;
+                this.tick = now;
+                int level = 0;
+                while (level < LEVELS - 1 && (now & ((1L << (SLOT_BITS * (level + 1))) - 1)) == 0) {
+                    level++;
+                }
+                // Higher levels first, so deadlines they move into a lower slot of this tick move on too
+                for (; level > 0; level--) {
+                    cascade(level, now);
+                }
+                final int slot = (int) (now & SLOT_MASK);
+                Timeout<T> timeout = this.slots[slot];
+                this.slots[slot] = null;
+                this.occupied[0] &= ~(1L << slot);
+                while (timeout != null) {
+                    final Timeout<T> next = timeout.next;
+                    timeout.slot = Timeout.DONE;
+                    timeout.previous = null;
+                    timeout.next = null;
+                    expired.add(timeout);
+                    this.size--;
+                    timeout = next;
+                }
+            }
+        } finally {
+            this.lock.unlock();
+        }
+        return expired;
+    }
+
+    /**
+     * Returns the number of pending deadlines.
+     *
+     * @return the number of deadlines that have neither expired nor been cancelled
+     */
+    int size() {
+        this.lock.lock();
+        try {
+            return this.size;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the first tick after the current one on which a deadline expires or a slot of a
+     * higher level is moved down: for each level, the next tick that starts an occupied slot.
+     */
+    private long nextTick() {
+        long next = Long.MAX_VALUE;
+        for (int level = 0; level < LEVELS; level++) {
+            final long occupied = this.occupied[level];
+            if (occupied != 0) {
+                // The slot of the next tick of this level's granularity, then the first occupied one from there
+                final long unit = (this.tick >>> (SLOT_BITS * level)) + 1;
+                final int skipped = Long.numberOfTrailingZeros(Long.rotateRight(occupied, (int) (unit & SLOT_MASK)));
+                next = Math.min(next, (unit + skipped) << (SLOT_BITS * level));
+            }
+        }
+        return next;
+    }
+
+    private void cascade(final int level, final long now) {
+        final int slot = (int) ((now >>> (SLOT_BITS * level)) & SLOT_MASK);
+        final int index = level * SLOTS + slot;
+        Timeout<T> timeout = this.slots[index];
+        this.slots[index] = null;
+        this.occupied[level] &= ~(1L << slot);
+        while (timeout != null) {
+            final Timeout<T> next = timeout.next;
+            link(timeout);
+            timeout = next;
+        }
+    }
+
+    /**
+     * Links a deadline into the slot of the lowest level whose range reaches it from the current tick.
+     */
+    private void link(final Timeout<T> timeout) {
+        final long delta = timeout.deadlineTick - this.tick;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        final int slot = (int) ((timeout.deadlineTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+        final int index = level * SLOTS + slot;
+        final Timeout<T> head = this.slots[index];
+        this.occupied[level] |= 1L << slot;
+        timeout.slot = index;
+        timeout.previous = null;
+        timeout.next = head;
+        if (head != null) {
+            head.previous = timeout;
+        }
+        this.slots[index] = timeout;
+    }
+
+    private void unlink(final Timeout<T> timeout) {
+        if (timeout.previous == null) {
+            this.slots[timeout.slot] = timeout.next;
+            if (timeout.next == null) {
+                this.occupied[timeout.slot / SLOTS] &= ~(1L << (timeout.slot & SLOT_MASK));
+            }
+        } else {
+            timeout.previous.next = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.previous = timeout.previous;
+        }
+        timeout.previous = null;
+        timeout.next = null;
+    }
+
+    /**
+     * A scheduled deadline and the node that links it into its slot.
+     *
+     * @param <T> the type of the value
+     */
+    static final class Timeout<T> {
+        private static final int DONE = -1;
+
+        private final T value;
+        private final long deadlineTick;
+        // Index of the slot the deadline is linked into, or DONE once it expired or was cancelled
+        private int slot;
+        private Timeout<T> previous;
+        private Timeout<T> next;
+
+        private Timeout(final T value, final long deadlineTick) {
+            this.value = value;
+            this.deadlineTick = deadlineTick;
+        }
+
+        T getValue() {
+            return this.value;
+        }
+
+        long getDeadlineTick() {
+            return this.deadlineTick;
+        }
+    }
+}
@@ -1,16 +1,29 @@
 package workflow;
 
-import java.util.UUID;
-
 public class User {
     private final String userId;
 
-    private User() {
-        this.userId = UUID.randomUUID().toString();
+    private User(final IdGenerator idGenerator) {
+        this.userId = idGenerator.nextId().toString();
     }
 
+    /**
+     * Creates a user with a time-ordered ID.
+     *
+     * @return a new User
+     */
     public static User of() {
-        return new User();
+        return of(IdGenerator.TIME_ORDERED);
+    }
+
+    /**
+     * Creates a user whose ID is taken from the given generator.
+     *
+     * @param idGenerator the generator of the user ID
+     * @return a new User
+     */
+    public static User of(final IdGenerator idGenerator) {
+        return new User(idGenerator);
     }
 
     public String getUserId() {
@@ -0,0 +1,163 @@
+package workflow;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Secondary index from a buyer or seller to the IDs of all their offers, in submission order.
+ * Each user's IDs are kept as pairs of longs in a single array rather than as strings or list
+ * nodes, so an indexed offer costs 16 bytes per party; the text form is only built when IDs are
+ * read. Users are keyed by the canonical string of the shared SymbolTable, so the index holds no
+ * copy of a user ID of its own.
+ *
+ * <p>Appends for one user are serialized by a lock of that user's entry, while readers are
+ * lock-free and see a prefix of the IDs in submission order.
+ */
+final class UserOfferIndex {
+
+    private final SymbolTable symbols;
+    private final Map<String, OfferIdList> offerIds = new ConcurrentHashMap<>();
+
+    /**
+     * Creates an empty index keyed by the strings of the shared symbol table.
+     */
+    UserOfferIndex() {
+        this(SymbolTable.shared());
+    }
+
+    UserOfferIndex(final SymbolTable symbols) {
+        this.symbols = symbols;
+    }
+
+    /**
+     * Indexes an offer for its buyer and, if it is a different user, its seller.
+     *
+     * @param offerId      the ID of the offer
+     * @param buyerUserId  the ID of the buyer
+     * @param sellerUserId the ID of the seller
+     */
+    void add(final UUID offerId, final String buyerUserId, final String sellerUserId) {
+        add(buyerUserId, offerId);
+        if (!sellerUserId.equals(buyerUserId)) {
+            add(sellerUserId, offerId);
+        }
+    }
+
+    private void add(final String userId, final UUID offerId) {
+        OfferIdList list = this.offerIds.get(userId);
+        if (list == null) {
+            final String canonical = this.symbols.canonical(userId);
+            list = this.offerIds.computeIfAbsent(canonical, key -> new OfferIdList());
+        }
+        list.add(offerId);
+    }
+
+    /**
+     * Returns the IDs of a user's offers in submission order.
+     *
+     * @param userId the ID of the user
+     * @return a read-only list of offer IDs, empty if the user has no offers
+     */
+    List<String> offerIds(final String userId) {
+        final OfferIdList list = userId == null ? null : this.offerIds.get(userId);
+        return list == null ? Collections.emptyList() : list.view();
+    }
+
+    /**
+     * Returns the ID of the offer a user was most recently indexed for.
+     *
+     * @param userId the ID of the user
+     * @return the latest offer ID, or null if the user has no offers
+     */
+    String latestOfferId(final String userId) {
+        final UUID offerId = latestOfferKey(userId);
+        return offerId == null ? null : offerId.toString();
+    }
+
+    /**
+     * Returns the 128-bit ID of the offer a user was most recently indexed for.
+     *
+     * @param userId the ID of the user
+     * @return the latest offer ID, or null if the user has no offers
+     */
+    UUID latestOfferKey(final String userId) {
+        final OfferIdList list = userId == null ? null : this.offerIds.get(userId);
+        return list == null ? null : list.last();
+    }
+
+    /**
+     * Offer IDs of one user, two longs per ID.
+     */
+    private static final class OfferIdList {
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile long[] bits = new long[4];
+        private volatile int size;
+
+        void add(final UUID offerId) {
+            this.lock.lock();
+            try {
+                final int index = this.size;
+                long[] current = this.bits;
+                if (2 * index == current.length) {
+                    current = Arrays.copyOf(current, current.length * 2);
+                }
+                current[2 * index] = offerId.getMostSignificantBits();
+                current[2 * index + 1] = offerId.getLeastSignificantBits();
+                this.bits = current;
+                // Publishing the size last makes the ID visible to readers that observe it
+                this.size = index + 1;
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        UUID last() {
+            final int bound = this.size;
+            final long[] current = this.bits;
+            return bound == 0 ? null : new UUID(current[2 * bound - 2], current[2 * bound - 1]);
+        }
+
+        List<String> view() {
+            final int bound = this.size;
+            final long[] current = this.bits;
+            return new View(current, bound);
+        }
+
+        static String get(final long[] bits, final int index) {
+            return new UUID(bits[2 * index], bits[2 * index + 1]).toString();
+        }
+    }
+
+    /**
+     * Read-only list over the IDs present when it was taken, converted to text as they are read.
+     */
+    private static final class View extends AbstractList<String> implements RandomAccess {
+        private final long[] bits;
+        private final int size;
+
+        View(final long[] bits, final int size) {
+            this.bits = bits;
+            this.size = size;
+        }
+
+        @Override
+        public String get(final int index) {
+            if (index < 0 || index >= this.size) {
+                throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + this.size);
+            }
+            return OfferIdList.get(this.bits, index);
+        }
+
+        @Override
+        public int size() {
+            return this.size;
+        }
+    }
+}
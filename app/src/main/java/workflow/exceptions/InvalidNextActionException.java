@@ -1,18 +1,49 @@
 package workflow.exceptions;
 
+import workflow.Action;
+import workflow.OfferState;
+
 /**
  * Exception thrown when an invalid action is attempted in the workflow.
  * This exception is typically used to signal that a user has attempted 
  * an action that is not allowed based on the current state of the workflow.
+ *
+ * <p>Rejected actions are routine, so the exception does not capture a stack trace
+ * and only formats its message when the message is requested.
  */
 public class InvalidNextActionException extends RuntimeException {
-    
+
+    private final OfferState currentState;
+    private final Action nextAction;
+
     /**
      * Constructs a new InvalidNextActionException with the specified detail message.
      *
      * @param message the detail message explaining the reason for the exception.
      */
     public InvalidNextActionException(String message) {
-        super(message);
+        super(message, null, false, false);
+        this.currentState = null;
+        this.nextAction = null;
+    }
+
+    /**
+     * Constructs a new InvalidNextActionException for an action that is not permitted from a state.
+     *
+     * @param currentState the state of the offer when the action was attempted
+     * @param nextAction   the action that was attempted
+     */
+    public InvalidNextActionException(OfferState currentState, Action nextAction) {
+        super(null, null, false, false);
+        this.currentState = currentState;
+        this.nextAction = nextAction;
+    }
+
+    @Override
+    public String getMessage() {
+        if (this.nextAction == null) {
+            return super.getMessage();
+        }
+        return "Cannot perform " + this.nextAction + " from current state: " + this.currentState;
     }
 }
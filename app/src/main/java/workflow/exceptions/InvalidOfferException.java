@@ -4,6 +4,8 @@ package workflow.exceptions;
  * Exception thrown when an offer is invalid in the workflow.
  * This exception is typically used to indicate that the provided offer 
  * details or offer status does not comply with the expected conditions.
+ *
+ * <p>The exception is part of normal request validation, so it does not capture a stack trace.
  */
 public class InvalidOfferException extends RuntimeException {
 
@@ -13,6 +15,6 @@ public class InvalidOfferException extends RuntimeException {
      * @param message the detail message explaining the reason for the exception.
      */
     public InvalidOfferException(String message) {
-        super(message);
+        super(message, null, false, false);
     }
 }
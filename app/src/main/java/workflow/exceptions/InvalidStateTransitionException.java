@@ -1,18 +1,48 @@
 package workflow.exceptions;
 
+import workflow.OfferState;
+
 /**
  * Exception thrown when an invalid state transition is attempted in the workflow.
  * This exception is typically used to indicate that a user has tried to transition 
  * an offer to a state that is not permitted based on the current workflow logic.
+ *
+ * <p>Rejected transitions are routine, so the exception does not capture a stack trace
+ * and only formats its message when the message is requested.
  */
 public class InvalidStateTransitionException extends RuntimeException {
 
+    private final OfferState currentState;
+    private final OfferState nextState;
+
     /**
      * Constructs a new InvalidStateTransitionException with the specified detail message.
      *
      * @param message the detail message explaining the reason for the exception.
      */
     public InvalidStateTransitionException(String message) {
-        super(message);
+        super(message, null, false, false);
+        this.currentState = null;
+        this.nextState = null;
+    }
+
+    /**
+     * Constructs a new InvalidStateTransitionException for a transition that is not permitted.
+     *
+     * @param currentState the state of the offer when the transition was attempted
+     * @param nextState    the state the offer would have moved to
+     */
+    public InvalidStateTransitionException(OfferState currentState, OfferState nextState) {
+        super(null, null, false, false);
+        this.currentState = currentState;
+        this.nextState = nextState;
+    }
+
+    @Override
+    public String getMessage() {
+        if (this.nextState == null) {
+            return super.getMessage();
+        }
+        return "Cannot transition from current " + this.currentState + " state to next " + this.nextState;
     }
 }
@@ -4,6 +4,8 @@ package workflow.exceptions;
  * Exception thrown when an invalid user is involved in the workflow.
  * This exception is typically used to indicate that a user does not have the necessary
  * permissions or is not recognized as a valid participant in the workflow.
+ *
+ * <p>The exception is part of normal request validation, so it does not capture a stack trace.
  */
 public class InvalidUserException extends RuntimeException {
 
@@ -13,6 +15,6 @@ public class InvalidUserException extends RuntimeException {
      * @param message the detail message explaining the reason for the exception.
      */
     public InvalidUserException(String message) {
-        super(message);
+        super(message, null, false, false);
     }
 }
@@ -0,0 +1,47 @@
+package workflow.exceptions;
+
+/**
+ * Exception thrown when an action is based on a stale version of an offer.
+ * This exception is typically used to signal that another party changed the offer
+ * after the caller last read it, so applying the action would overwrite a change
+ * the caller never saw.
+ *
+ * <p>Conflicts are routine under retries, so the exception does not capture a stack trace
+ * and only formats its message when the message is requested.
+ */
+public class OfferVersionConflictException extends RuntimeException {
+
+    private final int currentVersion;
+    private final int expectedVersion;
+
+    /**
+     * Constructs a new OfferVersionConflictException with the specified detail message.
+     *
+     * @param message the detail message explaining the reason for the exception.
+     */
+    public OfferVersionConflictException(String message) {
+        super(message, null, false, false);
+        this.currentVersion = -1;
+        this.expectedVersion = -1;
+    }
+
+    /**
+     * Constructs a new OfferVersionConflictException for an offer that moved past the expected version.
+     *
+     * @param currentVersion  the version the offer is at
+     * @param expectedVersion the version the caller last observed
+     */
+    public OfferVersionConflictException(int currentVersion, int expectedVersion) {
+        super(null, null, false, false);
+        this.currentVersion = currentVersion;
+        this.expectedVersion = expectedVersion;
+    }
+
+    @Override
+    public String getMessage() {
+        if (this.currentVersion < 0) {
+            return super.getMessage();
+        }
+        return "Offer is at version " + this.currentVersion + " but version " + this.expectedVersion + " was expected";
+    }
+}
@@ -1,10 +1,14 @@
 package workflow.servicesapi;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 import workflow.exceptions.InvalidOfferException;
 import workflow.exceptions.InvalidUserException;
+import workflow.DashboardPage;
 import workflow.DashboardRow;
+import workflow.HistoryOrder;
+import workflow.OfferDifference;
 
 /**
  * Interface representing operations related to managing and retrieving offer history and differences.
@@ -34,14 +38,78 @@ public interface IDashboardService {
     List<DashboardRow> getHistory(String userId) throws InvalidOfferException, InvalidUserException;
 
     /**
-     * Calculates and displays the differences between two versions of an offer.
+     * Retrieves the first page of the offer history for a specified user. With NEWEST_FIRST the
+     * page holds the latest versions, so reading the last few versions costs only those rows.
+     *
+     * @param userId the ID of the user whose offer history is being retrieved
+     * @param order the order of the versions
+     * @param limit the maximum number of rows of the page
+     * @return a {@link DashboardPage} with at most limit rows and the cursor of the next page
+     * @throws InvalidOfferException if the offer is not found or is invalid
+     * @throws InvalidUserException if the provided user ID is not valid or not associated to any offer
+     * @throws IllegalArgumentException if limit is not positive
+     */
+    DashboardPage getHistoryPage(String userId, HistoryOrder order, int limit)
+            throws InvalidOfferException, InvalidUserException, IllegalArgumentException;
+
+    /**
+     * Retrieves a page of the offer history for a specified user, starting at the cursor returned
+     * with the previous page.
+     *
+     * @param userId the ID of the user whose offer history is being retrieved
+     * @param order the order of the versions
+     * @param fromVersion the version the page starts at
+     * @param limit the maximum number of rows of the page
+     * @return a {@link DashboardPage} with at most limit rows and the cursor of the next page
+     * @throws InvalidOfferException if the offer is not found or is invalid
+     * @throws InvalidUserException if the provided user ID is not valid or not associated to any offer
+     * @throws IllegalArgumentException if fromVersion is not a version of the offer or limit is not positive
+     */
+    DashboardPage getHistoryPage(String userId, HistoryOrder order, int fromVersion, int limit)
+            throws InvalidOfferException, InvalidUserException, IllegalArgumentException;
+
+    /**
+     * Streams the offer history for a specified user. Rows are produced one at a time as the
+     * stream is consumed, so memory does not grow with the length of the history. The stream
+     * covers the versions present when it is created.
+     *
+     * @param userId the ID of the user whose offer history is being retrieved
+     * @param order the order of the versions
+     * @return a lazy, sequential stream of {@link DashboardRow} objects
+     * @throws InvalidOfferException if the offer is not found or is invalid
+     * @throws InvalidUserException if the provided user ID is not valid or not associated to any offer
+     */
+    Stream<DashboardRow> streamHistory(String userId, HistoryOrder order) throws InvalidOfferException, InvalidUserException;
+
+    /**
+     * Calculates the differences between two versions of an offer: the offer details, state and
+     * action that differ, and the private data keys the user changed in between. The two versions
+     * are compared directly, without copying the history between them.
      *
      * @param userId the ID of the user whose offer differences are being calculated
-     * @param version1 the first version number to compare
-     * @param version2 the second version number to compare
+     * @param version1 the version to compare from
+     * @param version2 the version to compare to, which may precede version1
+     * @return an {@link OfferDifference} from version1 to version2
      * @throws InvalidOfferException if the offer is not found or is invalid
      * @throws InvalidUserException if the provided user ID is not valid or not associated to any offer
      * @throws IllegalArgumentException if the provided version number is not valid
      */
-    void getDifference(String userId, int version1, int version2) throws InvalidOfferException, InvalidUserException, IllegalArgumentException;
+    OfferDifference getDifference(String userId, int version1, int version2)
+            throws InvalidOfferException, InvalidUserException, IllegalArgumentException;
+
+    /**
+     * Calculates the differences between each version of a range and the version before it, so
+     * a whole negotiation can be replayed step by step. The cost grows linearly with the number
+     * of versions in the range.
+     *
+     * @param userId the ID of the user whose offer differences are being calculated
+     * @param fromVersion the first version of the range
+     * @param toVersion the last version of the range, not before fromVersion
+     * @return a list of {@link OfferDifference} objects, one per version after fromVersion
+     * @throws InvalidOfferException if the offer is not found or is invalid
+     * @throws InvalidUserException if the provided user ID is not valid or not associated to any offer
+     * @throws IllegalArgumentException if the provided versions are not a valid range
+     */
+    List<OfferDifference> getDifferences(String userId, int fromVersion, int toVersion)
+            throws InvalidOfferException, InvalidUserException, IllegalArgumentException;
 }
@@ -1,11 +1,19 @@
 package workflow.servicesapi;
 
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import workflow.Action;
+import workflow.ActionResult;
+import workflow.OfferCommand;
 import workflow.OfferDetails;
+import workflow.OfferState;
 import workflow.exceptions.InvalidNextActionException;
+import workflow.exceptions.InvalidOfferException;
 import workflow.exceptions.InvalidStateTransitionException;
 import workflow.exceptions.InvalidUserException;
+import workflow.exceptions.OfferVersionConflictException;
 
 /**
  * Interface representing the operations related to managing an Offer.
@@ -74,5 +82,283 @@ public interface IOfferService {
      * @param privateData a map containing key-value pairs representing the private data
      */
     void updatePrivateData(String userId, Map<String, String> privateData);
-}
 
+    /**
+     * Retrieves the IDs of all offers of the specified user that have not reached a terminal state.
+     *
+     * @param userId the ID of the buyer or seller
+     * @return the IDs of the user's active offers, in submission order
+     * @throws InvalidUserException if the user ID is invalid
+     */
+    List<String> getActiveOfferIds(String userId) throws InvalidUserException;
+
+    /**
+     * Retrieves the IDs of all offers in the specified state.
+     *
+     * @param state the state of the offers
+     * @return the IDs of the matching offers, in no particular order
+     * @throws IllegalArgumentException if the state is null
+     */
+    List<String> findOfferIdsByState(OfferState state);
+
+    /**
+     * Retrieves the IDs of the offers in the specified state that a user is the seller of.
+     *
+     * @param sellerUserId the ID of the seller
+     * @param state the state of the offers
+     * @return the IDs of the matching offers, in no particular order
+     * @throws InvalidUserException if the user ID is invalid
+     * @throws IllegalArgumentException if the state is null
+     */
+    List<String> findOfferIdsBySeller(String sellerUserId, OfferState state) throws InvalidUserException;
+
+    /**
+     * Retrieves the IDs of the offers in the specified state that a user is the buyer of.
+     *
+     * @param buyerUserId the ID of the buyer
+     * @param state the state of the offers
+     * @return the IDs of the matching offers, in no particular order
+     * @throws InvalidUserException if the user ID is invalid
+     * @throws IllegalArgumentException if the state is null
+     */
+    List<String> findOfferIdsByBuyer(String buyerUserId, OfferState state) throws InvalidUserException;
+
+    /**
+     * Retrieves the IDs of the offers in the specified state whose current details name a product.
+     *
+     * @param productName the name of the product
+     * @param state the state of the offers
+     * @return the IDs of the matching offers, in no particular order
+     * @throws IllegalArgumentException if the product name is null or empty, or the state is null
+     */
+    List<String> findOfferIdsByProduct(String productName, OfferState state);
+
+    /**
+     * Retrieves the IDs of all offers between two users, whichever of them is the buyer.
+     *
+     * @param userId the ID of one party
+     * @param otherUserId the ID of the other party
+     * @return the IDs of the matching offers, in no particular order
+     * @throws InvalidUserException if either user ID is invalid
+     */
+    List<String> findOfferIdsBetween(String userId, String otherUserId) throws InvalidUserException;
+
+    /**
+     * Accepts a specific offer for the specified user.
+     *
+     * @param userId the ID of the user accepting the offer
+     * @param offerId the unique ID of the offer
+     * @throws InvalidOfferException if no offer exists with the given ID
+     * @throws InvalidStateTransitionException if the state transition is not allowed
+     * @throws InvalidUserException if the user ID is invalid or not a party to the offer
+     * @throws InvalidNextActionException if the next action is not allowed from the current state
+     */
+    void accept(String userId, String offerId)
+            throws InvalidOfferException, InvalidStateTransitionException, InvalidUserException, InvalidNextActionException;
+
+    /**
+     * Cancels a specific offer for the specified user.
+     *
+     * @param userId the ID of the user canceling the offer
+     * @param offerId the unique ID of the offer
+     * @throws InvalidOfferException if no offer exists with the given ID
+     * @throws InvalidStateTransitionException if the state transition is not allowed
+     * @throws InvalidUserException if the user ID is invalid or not a party to the offer
+     * @throws InvalidNextActionException if the next action is not allowed from the current state
+     */
+    void cancel(String userId, String offerId)
+            throws InvalidOfferException, InvalidStateTransitionException, InvalidUserException, InvalidNextActionException;
+
+    /**
+     * Proposes an update to a specific offer for the specified user.
+     *
+     * @param userId the ID of the user proposing the update
+     * @param offerId the unique ID of the offer
+     * @param offerDetails the updated details of the offer being proposed
+     * @throws InvalidOfferException if no offer exists with the given ID
+     * @throws InvalidStateTransitionException if the state transition is not allowed
+     * @throws InvalidUserException if the user ID is invalid or not a party to the offer
+     * @throws InvalidNextActionException if the next action is not allowed from the current state
+     */
+    void proposeUpdate(String userId, String offerId, OfferDetails offerDetails)
+            throws InvalidOfferException, InvalidStateTransitionException, InvalidUserException, InvalidNextActionException;
+
+    /**
+     * Withdraws a specific offer for the specified user.
+     *
+     * @param userId the ID of the user withdrawing the offer
+     * @param offerId the unique ID of the offer
+     * @throws InvalidOfferException if no offer exists with the given ID
+     * @throws InvalidStateTransitionException if the state transition is not allowed
+     * @throws InvalidUserException if the user ID is invalid or not a party to the offer
+     * @throws InvalidNextActionException if the next action is not allowed from the current state
+     */
+    void withdraw(String userId, String offerId)
+            throws InvalidOfferException, InvalidStateTransitionException, InvalidUserException, InvalidNextActionException;
+
+    /**
+     * Updates private data for the specified user in a specific offer.
+     *
+     * @param userId the ID of the user updating the private data
+     * @param offerId the unique ID of the offer
+     * @param privateData a map containing key-value pairs representing the private data
+     * @throws InvalidOfferException if no offer exists with the given ID
+     * @throws InvalidUserException if the user ID is invalid or not a party to the offer
+     */
+    void updatePrivateData(String userId, String offerId, Map<String, String> privateData)
+            throws InvalidOfferException, InvalidUserException;
+
+    /**
+     * Returns the actions the specified user may perform on their most recent offer in its current state.
+     *
+     * @param userId the ID of the buyer or seller
+     * @return the set of permitted actions
+     * @throws InvalidUserException if the user ID is invalid
+     */
+    Set<Action> getPermittedActions(String userId) throws InvalidUserException;
+
+    /**
+     * Returns the actions the specified user may perform on a specific offer in its current state.
+     *
+     * @param userId the ID of the buyer or seller
+     * @param offerId the unique ID of the offer
+     * @return the set of permitted actions
+     * @throws InvalidOfferException if no offer exists with the given ID
+     * @throws InvalidUserException if the user ID is invalid or not a party to the offer
+     */
+    Set<Action> getPermittedActions(String userId, String offerId) throws InvalidOfferException, InvalidUserException;
+
+    /**
+     * Returns the current version of the offer associated with the specified user.
+     * Callers pass this version back to the version-checked actions below.
+     *
+     * @param userId the ID of the user whose offer version is requested
+     * @return the number of history entries of the offer
+     * @throws InvalidUserException if the user ID is invalid
+     */
+    int getOfferVersion(String userId) throws InvalidUserException;
+
+    /**
+     * Accepts an offer for the specified user if it is still at the expected version.
+     *
+     * @param userId the ID of the user accepting the offer
+     * @param expectedVersion the offer version the user last observed
+     * @throws OfferVersionConflictException if the offer changed after expectedVersion
+     * @throws InvalidStateTransitionException if the state transition is not allowed
+     * @throws InvalidUserException if the user ID is invalid
+     * @throws InvalidNextActionException if the next action is not allowed from the current state
+     */
+    void accept(String userId, int expectedVersion)
+            throws OfferVersionConflictException, InvalidStateTransitionException, InvalidUserException, InvalidNextActionException;
+
+    /**
+     * Cancels an offer for the specified user if it is still at the expected version.
+     *
+     * @param userId the ID of the user canceling the offer
+     * @param expectedVersion the offer version the user last observed
+     * @throws OfferVersionConflictException if the offer changed after expectedVersion
+     * @throws InvalidStateTransitionException if the state transition is not allowed
+     * @throws InvalidUserException if the user ID is invalid
+     * @throws InvalidNextActionException if the next action is not allowed from the current state
+     */
+    void cancel(String userId, int expectedVersion)
+            throws OfferVersionConflictException, InvalidStateTransitionException, InvalidUserException, InvalidNextActionException;
+
+    /**
+     * Proposes an update to the offer for the specified user if it is still at the expected version.
+     *
+     * @param userId the ID of the user proposing the update
+     * @param offerDetails the updated details of the offer being proposed
+     * @param expectedVersion the offer version the user last observed
+     * @throws OfferVersionConflictException if the offer changed after expectedVersion
+     * @throws InvalidStateTransitionException if the state transition is not allowed
+     * @throws InvalidUserException if the user ID is invalid
+     * @throws InvalidNextActionException if the next action is not allowed from the current state
+     */
+    void proposeUpdate(String userId, OfferDetails offerDetails, int expectedVersion)
+            throws OfferVersionConflictException, InvalidStateTransitionException, InvalidUserException, InvalidNextActionException;
+
+    /**
+     * Withdraws an offer for the specified user if it is still at the expected version.
+     *
+     * @param userId the ID of the user withdrawing the offer
+     * @param expectedVersion the offer version the user last observed
+     * @throws OfferVersionConflictException if the offer changed after expectedVersion
+     * @throws InvalidStateTransitionException if the state transition is not allowed
+     * @throws InvalidUserException if the user ID is invalid
+     * @throws InvalidNextActionException if the next action is not allowed from the current state
+     */
+    void withdraw(String userId, int expectedVersion)
+            throws OfferVersionConflictException, InvalidStateTransitionException, InvalidUserException, InvalidNextActionException;
+
+    /**
+     * Updates private data for the specified user if the offer is still at the expected version.
+     *
+     * @param userId the ID of the user updating the private data
+     * @param privateData a map containing key-value pairs representing the private data
+     * @param expectedVersion the offer version the user last observed
+     * @throws OfferVersionConflictException if the offer changed after expectedVersion
+     */
+    void updatePrivateData(String userId, Map<String, String> privateData, int expectedVersion)
+            throws OfferVersionConflictException;
+
+    /**
+     * Accepts a specific offer without throwing when the action is not allowed.
+     *
+     * @param userId the ID of the user accepting the offer
+     * @param offerId the unique ID of the offer
+     * @param expectedVersion the offer version the user last observed, or Offer.ANY_VERSION
+     * @return the outcome of the action, with a rejection reason if it was not applied
+     */
+    ActionResult tryAccept(String userId, String offerId, int expectedVersion);
+
+    /**
+     * Cancels a specific offer without throwing when the action is not allowed.
+     *
+     * @param userId the ID of the user canceling the offer
+     * @param offerId the unique ID of the offer
+     * @param expectedVersion the offer version the user last observed, or Offer.ANY_VERSION
+     * @return the outcome of the action, with a rejection reason if it was not applied
+     */
+    ActionResult tryCancel(String userId, String offerId, int expectedVersion);
+
+    /**
+     * Proposes an update to a specific offer without throwing when the action is not allowed.
+     *
+     * @param userId the ID of the user proposing the update
+     * @param offerId the unique ID of the offer
+     * @param offerDetails the updated details of the offer being proposed
+     * @param expectedVersion the offer version the user last observed, or Offer.ANY_VERSION
+     * @return the outcome of the action, with a rejection reason if it was not applied
+     */
+    ActionResult tryProposeUpdate(String userId, String offerId, OfferDetails offerDetails, int expectedVersion);
+
+    /**
+     * Withdraws a specific offer without throwing when the action is not allowed.
+     *
+     * @param userId the ID of the user withdrawing the offer
+     * @param offerId the unique ID of the offer
+     * @param expectedVersion the offer version the user last observed, or Offer.ANY_VERSION
+     * @return the outcome of the action, with a rejection reason if it was not applied
+     */
+    ActionResult tryWithdraw(String userId, String offerId, int expectedVersion);
+
+    /**
+     * Updates private data of a specific offer without throwing when the action is not allowed.
+     *
+     * @param userId the ID of the user updating the private data
+     * @param offerId the unique ID of the offer
+     * @param privateData a map containing key-value pairs representing the private data
+     * @param expectedVersion the offer version the user last observed, or Offer.ANY_VERSION
+     * @return the outcome of the action, with a rejection reason if it was not applied
+     */
+    ActionResult tryUpdatePrivateData(String userId, String offerId, Map<String, String> privateData, int expectedVersion);
+
+    /**
+     * Applies a batch of commands, keeping their order within each offer.
+     *
+     * @param commands the commands to apply, such as SUBMIT, ACCEPT or PROPOSE_UPDATE
+     * @return the outcome of each command, in the same order as commands; a SUBMIT result carries the new offer ID
+     */
+    List<ActionResult> applyBatch(List<OfferCommand> commands);
+}
@@ -0,0 +1,280 @@
+package workflow.servicesapiimpl;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+import workflow.ActionResult;
+import workflow.DashboardPage;
+import workflow.DashboardRow;
+import workflow.HistoryOrder;
+import workflow.OfferCommand;
+import workflow.OfferDetails;
+import workflow.OfferDifference;
+import workflow.servicesapi.IDashboardService;
+import workflow.servicesapi.IOfferService;
+
+/**
+ * Asynchronous facade over IOfferService and IDashboardService. Every request runs as a task on
+ * an executor, by default one virtual thread per request, and is reported through a CompletableFuture.
+ *
+ * <p>Requests for the same offer are chained so that at most one of them runs at a time, in the
+ * order they were made. A request therefore never parks on the offer lock behind another request,
+ * and a blocking call made inside {@link #executeOnOffer} unmounts its virtual thread instead of
+ * holding a carrier thread. Requests for different offers and dashboard reads run concurrently.
+ */
+public class AsyncOfferService implements AutoCloseable {
+    private final IOfferService offerService;
+    private final IDashboardService dashboardService;
+    private final ExecutorService executor;
+    // Most recent pending request per offer ID; a new request starts once its predecessor completes
+    private final Map<String, CompletableFuture<?>> pendingRequests = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs an AsyncOfferService that runs every request on its own virtual thread.
+     *
+     * @param offerService     the service that applies offer actions
+     * @param dashboardService the service that serves offer history
+     */
+    public AsyncOfferService(IOfferService offerService, IDashboardService dashboardService) {
+        this(offerService, dashboardService, Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    /**
+     * Constructs an AsyncOfferService that runs requests on the given executor.
+     * The facade takes ownership of the executor and shuts it down when closed.
+     *
+     * @param offerService     the service that applies offer actions
+     * @param dashboardService the service that serves offer history
+     * @param executor         the executor that runs requests
+     */
+    public AsyncOfferService(IOfferService offerService, IDashboardService dashboardService, ExecutorService executor) {
+        this.offerService = offerService;
+        this.dashboardService = dashboardService;
+        this.executor = executor;
+    }
+
+    /**
+     * Submits a new offer.
+     *
+     * @param buyerUserId  the ID of the buyer
+     * @param sellerUserId the ID of the seller
+     * @param offerDetails the details of the offer
+     * @return a future completed with the unique ID of the submitted offer
+     */
+    public CompletableFuture<String> submit(String buyerUserId, String sellerUserId, OfferDetails offerDetails) {
+        return CompletableFuture.supplyAsync(() -> offerService.submit(buyerUserId, sellerUserId, offerDetails), executor);
+    }
+
+    /**
+     * Accepts a specific offer on behalf of a user.
+     *
+     * @param userId  the ID of the user accepting the offer
+     * @param offerId the unique ID of the offer
+     * @return a future completed when the offer was accepted, or exceptionally with the service exception
+     */
+    public CompletableFuture<Void> accept(String userId, String offerId) {
+        return executeOnOffer(offerId, () -> {
+            offerService.accept(userId, offerId);
+            return null;
+        });
+    }
+
+    /**
+     * Cancels a specific offer on behalf of a user.
+     *
+     * @param userId  the ID of the user cancelling the offer
+     * @param offerId the unique ID of the offer
+     * @return a future completed when the offer was cancelled, or exceptionally with the service exception
+     */
+    public CompletableFuture<Void> cancel(String userId, String offerId) {
+        return executeOnOffer(offerId, () -> {
+            offerService.cancel(userId, offerId);
+            return null;
+        });
+    }
+
+    /**
+     * Withdraws a specific offer on behalf of a user.
+     *
+     * @param userId  the ID of the user withdrawing the offer
+     * @param offerId the unique ID of the offer
+     * @return a future completed when the offer was withdrawn, or exceptionally with the service exception
+     */
+    public CompletableFuture<Void> withdraw(String userId, String offerId) {
+        return executeOnOffer(offerId, () -> {
+            offerService.withdraw(userId, offerId);
+            return null;
+        });
+    }
+
+    /**
+     * Proposes an update to a specific offer on behalf of a user.
+     *
+     * @param userId       the ID of the user proposing the update
+     * @param offerId      the unique ID of the offer
+     * @param offerDetails the new offer details proposed
+     * @return a future completed when the update was proposed, or exceptionally with the service exception
+     */
+    public CompletableFuture<Void> proposeUpdate(String userId, String offerId, OfferDetails offerDetails) {
+        return executeOnOffer(offerId, () -> {
+            offerService.proposeUpdate(userId, offerId, offerDetails);
+            return null;
+        });
+    }
+
+    /**
+     * Updates private data associated with a specific offer.
+     *
+     * @param userId      the ID of the user requesting the update
+     * @param offerId     the unique ID of the offer
+     * @param privateData the private data to be updated
+     * @return a future completed when the data was updated, or exceptionally with the service exception
+     */
+    public CompletableFuture<Void> updatePrivateData(String userId, String offerId, Map<String, String> privateData) {
+        return executeOnOffer(offerId, () -> {
+            offerService.updatePrivateData(userId, offerId, privateData);
+            return null;
+        });
+    }
+
+    /**
+     * Applies a batch of commands. The batch already serializes work per offer, so it is not
+     * chained behind other requests.
+     *
+     * @param commands the commands to apply
+     * @return a future completed with the outcome of each command
+     */
+    public CompletableFuture<List<ActionResult>> applyBatch(List<OfferCommand> commands) {
+        return CompletableFuture.supplyAsync(() -> offerService.applyBatch(commands), executor);
+    }
+
+    /**
+     * Retrieves a specific version of the offer history of a user.
+     *
+     * @param userId  the ID of the user requesting offer history
+     * @param version the version number of the offer history to retrieve
+     * @return a future completed with the DashboardRow of that version
+     */
+    public CompletableFuture<DashboardRow> getHistory(String userId, int version) {
+        return CompletableFuture.supplyAsync(() -> dashboardService.getHistory(userId, version), executor);
+    }
+
+    /**
+     * Retrieves the complete offer history of a user.
+     *
+     * @param userId the ID of the user requesting offer history
+     * @return a future completed with one DashboardRow per version
+     */
+    public CompletableFuture<List<DashboardRow>> getHistory(String userId) {
+        return CompletableFuture.supplyAsync(() -> dashboardService.getHistory(userId), executor);
+    }
+
+    /**
+     * Retrieves the first page of the offer history of a user.
+     *
+     * @param userId the ID of the user requesting offer history
+     * @param order  the order of the versions
+     * @param limit  the maximum number of rows of the page
+     * @return a future completed with the page and the cursor of the next page
+     */
+    public CompletableFuture<DashboardPage> getHistoryPage(String userId, HistoryOrder order, int limit) {
+        return CompletableFuture.supplyAsync(() -> dashboardService.getHistoryPage(userId, order, limit), executor);
+    }
+
+    /**
+     * Retrieves a page of the offer history of a user, starting at the cursor of the previous page.
+     *
+     * @param userId      the ID of the user requesting offer history
+     * @param order       the order of the versions
+     * @param fromVersion the version the page starts at
+     * @param limit       the maximum number of rows of the page
+     * @return a future completed with the page and the cursor of the next page
+     */
+    public CompletableFuture<DashboardPage> getHistoryPage(String userId, HistoryOrder order, int fromVersion,
+            int limit) {
+        return CompletableFuture.supplyAsync(() -> dashboardService.getHistoryPage(userId, order, fromVersion, limit),
+                executor);
+    }
+
+    /**
+     * Retrieves the differences between two versions of the latest offer of a user.
+     *
+     * @param userId   the ID of the user requesting version comparison
+     * @param version1 the version to compare from
+     * @param version2 the version to compare to
+     * @return a future completed with the differences from version1 to version2
+     */
+    public CompletableFuture<OfferDifference> getDifference(String userId, int version1, int version2) {
+        return CompletableFuture.supplyAsync(() -> dashboardService.getDifference(userId, version1, version2),
+                executor);
+    }
+
+    /**
+     * Retrieves the differences between each version of a range and the version before it.
+     *
+     * @param userId      the ID of the user requesting version comparison
+     * @param fromVersion the first version of the range
+     * @param toVersion   the last version of the range
+     * @return a future completed with one difference per version after fromVersion
+     */
+    public CompletableFuture<List<OfferDifference>> getDifferences(String userId, int fromVersion, int toVersion) {
+        return CompletableFuture.supplyAsync(() -> dashboardService.getDifferences(userId, fromVersion, toVersion),
+                executor);
+    }
+
+    /**
+     * Runs work that concerns a single offer after every earlier request for that offer completed.
+     * This is the place for calls that block, such as writing the outcome of an action to storage.
+     *
+     * @param offerId the unique ID of the offer the work concerns
+     * @param work    the work to run
+     * @param <T>     the type of the result
+     * @return a future completed with the result of the work, or exceptionally with what it threw
+     */
+    public <T> CompletableFuture<T> executeOnOffer(String offerId, Supplier<T> work) {
+        if (offerId == null) {
+            // Nothing to serialize on; the service reports the missing offer
+            return CompletableFuture.supplyAsync(work, executor);
+        }
+        final CompletableFuture<T> request = new CompletableFuture<>();
+        final CompletableFuture<?> previous = pendingRequests.put(offerId, request);
+        final Runnable task = () -> {
+            try {
+                request.complete(work.get());
+            } catch (Throwable e) {
+                request.completeExceptionally(e);
+            } finally {
+                pendingRequests.remove(offerId, request);
+            }
+        };
+        if (previous == null) {
+            execute(offerId, task, request);
+        } else {
+            previous.whenComplete((result, error) -> execute(offerId, task, request));
+        }
+        return request;
+    }
+
+    private void execute(final String offerId, final Runnable task, final CompletableFuture<?> request) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            request.completeExceptionally(e);
+            pendingRequests.remove(offerId, request);
+        }
+    }
+
+    /**
+     * Stops accepting requests and waits for the running ones to complete.
+     */
+    @Override
+    public void close() {
+        executor.close();
+    }
+}
@@ -1,20 +1,28 @@
 package workflow.servicesapiimpl;
 
-import java.util.List;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import workflow.servicesapi.IDashboardService;
 import workflow.exceptions.InvalidOfferException;
 import workflow.exceptions.InvalidUserException;
 import workflow.Offer;
+import workflow.OfferRepository;
+import workflow.DashboardPage;
 import workflow.DashboardRow;
-import workflow.Offer.OfferHistory;
+import workflow.HistoryOrder;
+import workflow.OfferDifference;
 
 /**
  * Implementation of the IDashBoardService interface to access offer history and version comparisons for users.
  */
 public class DashboardService implements IDashboardService {
-    final OfferService offerService;
+    final OfferRepository repository;
 
     /**
      * Constructs a DashboardService with the specified OfferService.
@@ -22,7 +30,31 @@ public class DashboardService implements IDashboardService {
      * @param offerService an instance of OfferService for retrieving offer data
      */
     public DashboardService(OfferService offerService){
-        this.offerService = offerService;
+        this(offerService.getRepository());
+    }
+
+    /**
+     * Constructs a DashboardService that reads offers from the specified repository.
+     *
+     * @param repository the repository the offers are stored in
+     */
+    public DashboardService(OfferRepository repository){
+        this.repository = repository;
+    }
+
+    /**
+     * Retrieves the most recently submitted offer associated with a user.
+     *
+     * @param userId the ID of the buyer or seller
+     * @return the latest Offer of the user
+     * @throws InvalidOfferException if no offer is found for the user ID
+     */
+    private Offer getLatestOffer(final String userId) {
+        Offer offer = repository.findLatestOffer(userId);
+        if (offer == null) {
+            throw new InvalidOfferException("Offer not found");
+        }
+        return offer;
     }
 
     /**
@@ -38,57 +70,147 @@ public class DashboardService implements IDashboardService {
     @Override
     public DashboardRow getHistory(String userId, int version)
             throws InvalidOfferException, InvalidUserException, IllegalArgumentException {
-        Offer offer = offerService.getOfferFromUserId(userId);
-        ArrayList<OfferHistory> offerHistory = offer.getOfferHistory();
-        if (version > offerHistory.size()) {
+        List<DashboardRow> dashboard = getLatestOffer(userId).getDashboard();
+        if (version < 1 || version > dashboard.size()) {
             throw new IllegalArgumentException("Invalid version");
         }
-        OfferHistory history = offerHistory.get(version - 1);
-        DashboardRow data = DashboardRow.of(version, history.getOfferAction(), history.getOfferUserId(),
-                history.getOfferState(), history.getOfferDetails().getProductName(), offer.getBuyerUserId(),
-                offer.getSellerUserId(), history.getOfferDetails().getProductQuantity(),
-                history.getOfferDetails().getProductPrice());
-        return data;
+        return dashboard.get(version - 1);
     }
 
     /**
-     * Retrieves the full offer history for a given user.
+     * Retrieves the full offer history for a given user. The rows are maintained incrementally by
+     * the offer, so polling an offer that has not changed returns the same list.
      *
      * @param userId the ID of the user requesting offer history
-     * @return a list of DashboardRow objects, each representing a version of offer history
+     * @return an immutable list of DashboardRow objects, each representing a version of offer history
      * @throws InvalidOfferException if the offer is not found
      * @throws InvalidUserException if the user ID is invalid
      */
     @Override
     public List<DashboardRow> getHistory(String userId)
             throws InvalidOfferException, InvalidUserException {
-        Offer offer = offerService.getOfferFromUserId(userId);
-        List<OfferHistory> offerHistory = offer.getOfferHistory();
-        List<DashboardRow> dashboard = new ArrayList<>();
-        for (int i = 0; i < offerHistory.size(); i++) {
-            OfferHistory history = offerHistory.get(i);
-            DashboardRow data = DashboardRow.of(i + 1, history.getOfferAction(), history.getOfferUserId(),
-                    history.getOfferState(), history.getOfferDetails().getProductName(), offer.getBuyerUserId(),
-                    offer.getSellerUserId(), history.getOfferDetails().getProductQuantity(),
-                    history.getOfferDetails().getProductPrice());
-            dashboard.add(data);
+        return getLatestOffer(userId).getDashboard();
+    }
+
+    /**
+     * Retrieves the first page of the offer history for a given user.
+     *
+     * @param userId the ID of the user requesting offer history
+     * @param order  the order of the versions
+     * @param limit  the maximum number of rows of the page
+     * @return the page and the cursor of the next page
+     * @throws InvalidOfferException if the offer is not found
+     * @throws InvalidUserException if the user ID is invalid
+     * @throws IllegalArgumentException if limit is not positive
+     */
+    @Override
+    public DashboardPage getHistoryPage(String userId, HistoryOrder order, int limit)
+            throws InvalidOfferException, InvalidUserException, IllegalArgumentException {
+        Offer offer = getLatestOffer(userId);
+        return getPage(offer, order, order.firstVersion(offer.getVersion()), limit);
+    }
+
+    /**
+     * Retrieves a page of the offer history for a given user, starting at a cursor.
+     *
+     * @param userId      the ID of the user requesting offer history
+     * @param order       the order of the versions
+     * @param fromVersion the version the page starts at
+     * @param limit       the maximum number of rows of the page
+     * @return the page and the cursor of the next page
+     * @throws InvalidOfferException if the offer is not found
+     * @throws InvalidUserException if the user ID is invalid
+     * @throws IllegalArgumentException if fromVersion is out of range or limit is not positive
+     */
+    @Override
+    public DashboardPage getHistoryPage(String userId, HistoryOrder order, int fromVersion, int limit)
+            throws InvalidOfferException, InvalidUserException, IllegalArgumentException {
+        return getPage(getLatestOffer(userId), order, fromVersion, limit);
+    }
+
+    /**
+     * Builds a page from the rows of the requested versions only, so its cost depends on limit
+     * and not on the length of the history.
+     */
+    private DashboardPage getPage(final Offer offer, final HistoryOrder order, final int fromVersion, final int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Invalid limit");
+        }
+        int versions = offer.getVersion();
+        if (fromVersion < 1 || fromVersion > versions) {
+            throw new IllegalArgumentException("Invalid version");
+        }
+        List<DashboardRow> rows = new ArrayList<>(Math.min(limit, versions));
+        Iterator<DashboardRow> history = offer.getDashboardRows(fromVersion, order);
+        int version = fromVersion;
+        while (rows.size() < limit && history.hasNext()) {
+            rows.add(history.next());
+            version = order.nextVersion(version);
         }
-        return dashboard;
+        boolean hasMore = version >= 1 && version <= versions;
+        return DashboardPage.of(rows, hasMore ? version : DashboardPage.NO_MORE_VERSIONS);
+    }
+
+    /**
+     * Streams the offer history for a given user, building each row from the stored history as
+     * it is consumed, in one pass over the records.
+     *
+     * @param userId the ID of the user requesting offer history
+     * @param order  the order of the versions
+     * @return a lazy stream of DashboardRow objects over the versions present now
+     * @throws InvalidOfferException if the offer is not found
+     * @throws InvalidUserException if the user ID is invalid
+     */
+    @Override
+    public Stream<DashboardRow> streamHistory(String userId, HistoryOrder order)
+            throws InvalidOfferException, InvalidUserException {
+        Offer offer = getLatestOffer(userId);
+        int versions = offer.getVersion();
+        Iterator<DashboardRow> history = offer.getDashboardRows(order.firstVersion(versions), order);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(history,
+                Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE), false);
     }
 
     /**
      * Retrieves the differences between two versions of offer history for a given user.
      *
      * @param userId   the ID of the user requesting version comparison
-     * @param version1 the first version number for comparison
-     * @param version2 the second version number for comparison
+     * @param version1 the version to compare from
+     * @param version2 the version to compare to
+     * @return the differences from version1 to version2
      * @throws InvalidOfferException if the offer is not found
      * @throws InvalidUserException if the user ID is invalid
      * @throws IllegalArgumentException if either version is out of range
      */
     @Override
-    public void getDifference(String userId, int version1, int version2)
+    public OfferDifference getDifference(String userId, int version1, int version2)
             throws InvalidOfferException, InvalidUserException, IllegalArgumentException {
-        // Method to be implemented: compares two versions and returns differences
+        Offer offer = getLatestOffer(userId);
+        int versions = offer.getVersion();
+        if (version1 < 1 || version1 > versions || version2 < 1 || version2 > versions) {
+            throw new IllegalArgumentException("Invalid version");
+        }
+        return offer.getDifference(userId, version1, version2);
+    }
+
+    /**
+     * Retrieves the differences between each version of a range and the version before it.
+     *
+     * @param userId      the ID of the user requesting version comparison
+     * @param fromVersion the first version of the range
+     * @param toVersion   the last version of the range
+     * @return one difference per version after fromVersion, in version order
+     * @throws InvalidOfferException if the offer is not found
+     * @throws InvalidUserException if the user ID is invalid
+     * @throws IllegalArgumentException if the range is empty or out of range
+     */
+    @Override
+    public List<OfferDifference> getDifferences(String userId, int fromVersion, int toVersion)
+            throws InvalidOfferException, InvalidUserException, IllegalArgumentException {
+        Offer offer = getLatestOffer(userId);
+        if (fromVersion < 1 || toVersion < fromVersion || toVersion > offer.getVersion()) {
+            throw new IllegalArgumentException("Invalid version");
+        }
+        return offer.getDifferences(userId, fromVersion, toVersion);
     }
 }
@@ -1,29 +1,124 @@
 package workflow.servicesapiimpl;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import workflow.exceptions.InvalidNextActionException;
 import workflow.exceptions.InvalidOfferException;
 import workflow.exceptions.InvalidStateTransitionException;
 import workflow.exceptions.InvalidUserException;
+import workflow.exceptions.OfferVersionConflictException;
 
 import workflow.servicesapi.IOfferService;
+import workflow.ActionResult;
+import workflow.IdGenerator;
+import workflow.InMemoryOfferRepository;
 import workflow.Offer;
+import workflow.OfferCommand;
 import workflow.OfferDetails;
+import workflow.OfferHistoryListener;
+import workflow.OfferJournal;
+import workflow.OfferRepository;
 import workflow.OfferState;
 import workflow.Action;
+import workflow.RejectionReason;
 
 /**
  * Implementation of the IOfferService interface to handle offer operations 
  * such as submission, acceptance, cancellation, proposal for update, 
  * withdrawal, and private data update.
+ *
+ * <p>The service is safe for concurrent use. Offers are stored in an OfferRepository and every
+ * action is serialized by the lock of the offer it targets, so unrelated offers proceed in parallel.
  */
 public class OfferService implements IOfferService {
 
-    // Maps to associate buyers and sellers with their offers
-    private Map<String, String> buyerToOfferMap = new HashMap<>();
-    private Map<String, String> sellerToOfferMap = new HashMap<>();
-    private Map<String, Offer> offerMap = new HashMap<>();
+    // Groups of a batch take offer locks and may wait for I/O, so they stay off the common pool
+    private static final ExecutorService BATCH_EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final OfferRepository repository;
+    private final OfferHistoryListener historyListener;
+    private final IdGenerator idGenerator;
+    private final Executor batchExecutor;
+
+    /**
+     * Constructs an OfferService that keeps offers in memory only.
+     */
+    public OfferService() {
+        this(new InMemoryOfferRepository());
+    }
+
+    /**
+     * Constructs an OfferService that stores offers in the given repository.
+     *
+     * @param repository the storage for offers, their history and the user index
+     */
+    public OfferService(OfferRepository repository) {
+        this(repository, IdGenerator.TIME_ORDERED);
+    }
+
+    /**
+     * Constructs an OfferService that stores offers in the given repository and takes the IDs of
+     * new offers from the given generator.
+     *
+     * @param repository  the storage for offers, their history and the user index
+     * @param idGenerator the generator of offer IDs
+     */
+    public OfferService(OfferRepository repository, IdGenerator idGenerator) {
+        this(repository, idGenerator, BATCH_EXECUTOR);
+    }
+
+    /**
+     * Constructs an OfferService that stores offers in the given repository, takes the IDs of
+     * new offers from the given generator and applies the commands of a batch that targets
+     * several offers on the given executor, one task per offer.
+     *
+     * @param repository    the storage for offers, their history and the user index
+     * @param idGenerator   the generator of offer IDs
+     * @param batchExecutor the executor the offer groups of a batch run on
+     */
+    public OfferService(OfferRepository repository, IdGenerator idGenerator, Executor batchExecutor) {
+        this.repository = repository;
+        this.historyListener = repository.getHistoryListener();
+        this.idGenerator = idGenerator;
+        this.batchExecutor = batchExecutor;
+    }
+
+    /**
+     * Constructs an OfferService that starts from the offers recovered from a journal and
+     * records every new history entry in it before the entry is applied.
+     *
+     * @param journal the opened journal
+     */
+    public OfferService(OfferJournal journal) {
+        final InMemoryOfferRepository repository = new InMemoryOfferRepository();
+        journal.attach(repository.getHistoryListener());
+        this.repository = repository;
+        this.historyListener = journal.getHistoryListener();
+        this.idGenerator = IdGenerator.TIME_ORDERED;
+        this.batchExecutor = BATCH_EXECUTOR;
+        for (Offer offer : journal.getRecoveredOffers()) {
+            this.repository.add(offer);
+        }
+    }
+
+    /**
+     * Returns the repository the offers of this service are stored in.
+     *
+     * @return the offer repository
+     */
+    public OfferRepository getRepository() {
+        return repository;
+    }
 
     /**
      * Validates the given userId to ensure it's neither null nor empty.
@@ -44,7 +139,7 @@ public class OfferService implements IOfferService {
      * @return the Offer object if found; otherwise null
      */
     public Offer getOffer(String offerId) {
-        return offerMap.get(offerId);
+        return repository.find(offerId);
     }
 
     /**
@@ -55,35 +150,206 @@ public class OfferService implements IOfferService {
      * @throws IllegalArgumentException if any offer detail is invalid
      */
     private void validateOfferDetails(final OfferDetails offerDetails) {
+        String problem = findOfferDetailsProblem(offerDetails);
+        if (problem != null) {
+            throw new IllegalArgumentException(problem);
+        }
+    }
+
+    /**
+     * Describes what is wrong with the given offer details.
+     * 
+     * @param offerDetails the OfferDetails object to check
+     * @return a description of the first invalid detail, or null if the details are valid
+     */
+    private static String findOfferDetailsProblem(final OfferDetails offerDetails) {
         if (offerDetails.getProductName() == null) {
-            throw new IllegalArgumentException("Product name cannot be null");
+            return "Product name cannot be null";
         }
         if (offerDetails.getProductQuantity() < 0) {
-            throw new IllegalArgumentException("Product quantity cannot be a negative value");
+            return "Product quantity cannot be a negative value";
         }
         if (offerDetails.getProductPrice() < 0) {
-            throw new IllegalArgumentException("Product price cannot be a negative value");
+            return "Product price cannot be a negative value";
         }
+        return null;
     }
 
     /**
-     * Retrieves an offer associated with a specific userId.
+     * Retrieves the most recently submitted offer associated with a specific userId.
      * 
      * @param userId the user ID for retrieving the offer
-     * @return the Offer associated with the user ID
+     * @return the latest Offer associated with the user ID
      * @throws InvalidOfferException if no offer is found for the user ID
      */
-    Offer getOfferFromUserId(final String userId) {
-        String offerId = buyerToOfferMap.get(userId);
+    private Offer getOfferFromUserId(final String userId) {
+        String offerId = repository.findLatestOfferId(userId);
         if (offerId == null) {
-            offerId = sellerToOfferMap.get(userId);
-            if (offerId == null) {
-                throw new InvalidOfferException("Offer not found");
-            }
+            throw new InvalidOfferException("Offer not found");
         }
         return getOffer(offerId);
     }
 
+    /**
+     * Retrieves a specific offer on behalf of one of its parties.
+     * 
+     * @param userId  the user ID of the buyer or seller
+     * @param offerId the unique ID of the offer
+     * @return the Offer with the given ID
+     * @throws InvalidOfferException if no offer is found for the offer ID
+     * @throws InvalidUserException if the user is neither the buyer nor the seller of the offer
+     */
+    private Offer getOfferFromUserId(final String userId, final String offerId) {
+        Offer offer = offerId == null ? null : getOffer(offerId);
+        if (offer == null) {
+            throw new InvalidOfferException("Offer not found");
+        }
+        if (!offer.isParticipant(userId)) {
+            throw new InvalidUserException("User " + userId + " is not a party to offer " + offerId);
+        }
+        return offer;
+    }
+
+    /**
+     * Retrieves the IDs of a user's offers that are still being negotiated, in submission order.
+     * The active offers are taken from the state index, so offers in a terminal state, which may
+     * have been archived or evicted, are never loaded.
+     * 
+     * @param userId the ID of the buyer or seller
+     * @return the IDs of all offers of the user that are not in a terminal state
+     * @throws InvalidUserException if the user ID is invalid
+     */
+    @Override
+    public List<String> getActiveOfferIds(String userId) throws InvalidUserException {
+        validateUser(userId);
+        Set<String> active = new HashSet<>();
+        for (OfferState state : OfferState.values()) {
+            if (!state.isTerminal()) {
+                active.addAll(repository.findOfferIdsByBuyer(userId, state));
+                active.addAll(repository.findOfferIdsBySeller(userId, state));
+            }
+        }
+        List<String> activeOfferIds = new ArrayList<>(active.size());
+        if (!active.isEmpty()) {
+            for (String offerId : repository.findOfferIds(userId)) {
+                if (active.contains(offerId)) {
+                    activeOfferIds.add(offerId);
+                }
+            }
+        }
+        return activeOfferIds;
+    }
+
+    /**
+     * Retrieves the IDs of all offers in a state from the repository's state index.
+     *
+     * @param state the state of the offers
+     * @return the IDs of the matching offers, in no particular order
+     * @throws IllegalArgumentException if the state is null
+     */
+    @Override
+    public List<String> findOfferIdsByState(OfferState state) {
+        validateState(state);
+        return repository.findOfferIdsByState(state);
+    }
+
+    /**
+     * Retrieves the IDs of a seller's offers in a state from the repository's seller index.
+     *
+     * @param sellerUserId the ID of the seller
+     * @param state the state of the offers
+     * @return the IDs of the matching offers, in no particular order
+     * @throws InvalidUserException if the user ID is invalid
+     * @throws IllegalArgumentException if the state is null
+     */
+    @Override
+    public List<String> findOfferIdsBySeller(String sellerUserId, OfferState state) throws InvalidUserException {
+        validateUser(sellerUserId);
+        validateState(state);
+        return repository.findOfferIdsBySeller(sellerUserId, state);
+    }
+
+    /**
+     * Retrieves the IDs of a buyer's offers in a state from the repository's buyer index.
+     *
+     * @param buyerUserId the ID of the buyer
+     * @param state the state of the offers
+     * @return the IDs of the matching offers, in no particular order
+     * @throws InvalidUserException if the user ID is invalid
+     * @throws IllegalArgumentException if the state is null
+     */
+    @Override
+    public List<String> findOfferIdsByBuyer(String buyerUserId, OfferState state) throws InvalidUserException {
+        validateUser(buyerUserId);
+        validateState(state);
+        return repository.findOfferIdsByBuyer(buyerUserId, state);
+    }
+
+    /**
+     * Retrieves the IDs of the offers in a state for a product from the repository's product index.
+     *
+     * @param productName the name of the product
+     * @param state the state of the offers
+     * @return the IDs of the matching offers, in no particular order
+     * @throws IllegalArgumentException if the product name is null or empty, or the state is null
+     */
+    @Override
+    public List<String> findOfferIdsByProduct(String productName, OfferState state) {
+        if (productName == null || productName.isEmpty()) {
+            throw new IllegalArgumentException("Invalid product name: " + productName);
+        }
+        validateState(state);
+        return repository.findOfferIdsByProduct(productName, state);
+    }
+
+    /**
+     * Retrieves the IDs of the offers between two users from the repository's counterparty index.
+     *
+     * @param userId the ID of one party
+     * @param otherUserId the ID of the other party
+     * @return the IDs of the matching offers, in no particular order
+     * @throws InvalidUserException if either user ID is invalid
+     */
+    @Override
+    public List<String> findOfferIdsBetween(String userId, String otherUserId) throws InvalidUserException {
+        validateUser(userId);
+        validateUser(otherUserId);
+        return repository.findOfferIdsBetween(userId, otherUserId);
+    }
+
+    private static void validateState(OfferState state) {
+        if (state == null) {
+            throw new IllegalArgumentException("Invalid state: null");
+        }
+    }
+
+    /**
+     * Returns the actions a user may perform on their most recent offer.
+     * 
+     * @param userId the ID of the buyer or seller
+     * @return the set of permitted actions
+     * @throws InvalidUserException if the user ID is invalid
+     */
+    @Override
+    public Set<Action> getPermittedActions(String userId) throws InvalidUserException {
+        validateUser(userId);
+        return getOfferFromUserId(userId).getPermittedActions(userId);
+    }
+
+    /**
+     * Returns the actions a user may perform on a specific offer.
+     * 
+     * @param userId the ID of the buyer or seller
+     * @param offerId the unique ID of the offer
+     * @return the set of permitted actions
+     * @throws InvalidUserException if the user ID is invalid or not a party to the offer
+     */
+    @Override
+    public Set<Action> getPermittedActions(String userId, String offerId) throws InvalidUserException {
+        validateUser(userId);
+        return getOfferFromUserId(userId, offerId).getPermittedActions(userId);
+    }
+
     /**
      * Submits a new offer with buyer, seller, and offer details.
      * 
@@ -98,10 +364,20 @@ public class OfferService implements IOfferService {
         validateUser(buyerUserId);
         validateUser(sellerUserId);
 
-        Offer offer = Offer.of(buyerUserId, sellerUserId, offerDetails);
-        offerMap.put(offer.getOfferId(), offer);
-        buyerToOfferMap.put(buyerUserId, offer.getOfferId());
-        sellerToOfferMap.put(sellerUserId, offer.getOfferId());
+        return register(buyerUserId, sellerUserId, offerDetails);
+    }
+
+    /**
+     * Creates an offer from validated input and indexes it for both parties.
+     * 
+     * @param buyerUserId  the ID of the buyer
+     * @param sellerUserId the ID of the seller
+     * @param offerDetails the details of the offer
+     * @return the unique ID of the new offer
+     */
+    private String register(final String buyerUserId, final String sellerUserId, final OfferDetails offerDetails) {
+        Offer offer = Offer.of(buyerUserId, sellerUserId, offerDetails, historyListener, idGenerator);
+        repository.add(offer);
 
         return offer.getOfferId();
     }
@@ -116,9 +392,26 @@ public class OfferService implements IOfferService {
     public void accept(String userId)
             throws InvalidStateTransitionException, InvalidUserException, InvalidNextActionException {
         validateUser(userId);
-        Offer offer = getOfferFromUserId(userId);
+        accept(getOfferFromUserId(userId), userId);
+    }
+
+    /**
+     * Accepts a specific offer on behalf of a user and updates the offer state.
+     * 
+     * @param userId the ID of the user accepting the offer
+     * @param offerId the unique ID of the offer
+     * @throws InvalidStateTransitionException, InvalidUserException, InvalidNextActionException if any state transitions or user validations fail
+     */
+    @Override
+    public void accept(String userId, String offerId)
+            throws InvalidStateTransitionException, InvalidUserException, InvalidNextActionException {
+        validateUser(userId);
+        accept(getOfferFromUserId(userId, offerId), userId);
+    }
+
+    private void accept(final Offer offer, final String userId) {
         boolean isBuyer = offer.isBuyer(userId);
-        
+
         offer.transition(OfferState.ACCEPTED, offer.getCurrentState(), Action.ACCEPT, userId, isBuyer);
     }
 
@@ -132,9 +425,26 @@ public class OfferService implements IOfferService {
     public void cancel(String userId)
             throws InvalidStateTransitionException, InvalidUserException, InvalidNextActionException {
         validateUser(userId);
-        Offer offer = getOfferFromUserId(userId);
+        cancel(getOfferFromUserId(userId), userId);
+    }
+
+    /**
+     * Cancels a specific offer on behalf of a user and updates the offer state.
+     * 
+     * @param userId the ID of the user cancelling the offer
+     * @param offerId the unique ID of the offer
+     * @throws InvalidStateTransitionException, InvalidUserException, InvalidNextActionException if any state transitions or user validations fail
+     */
+    @Override
+    public void cancel(String userId, String offerId)
+            throws InvalidStateTransitionException, InvalidUserException, InvalidNextActionException {
+        validateUser(userId);
+        cancel(getOfferFromUserId(userId, offerId), userId);
+    }
+
+    private void cancel(final Offer offer, final String userId) {
         boolean isBuyer = offer.isBuyer(userId);
-        
+
         offer.transition(OfferState.CANCELLED, offer.getCurrentState(), Action.CANCEL, userId, isBuyer);
     }
 
@@ -149,7 +459,25 @@ public class OfferService implements IOfferService {
     public void proposeUpdate(String userId, OfferDetails offerDetails)
             throws InvalidStateTransitionException, InvalidUserException, InvalidNextActionException {
         validateUser(userId);
-        Offer offer = getOfferFromUserId(userId);
+        proposeUpdate(getOfferFromUserId(userId), userId, offerDetails);
+    }
+
+    /**
+     * Proposes an update to a specific offer on behalf of a user.
+     * 
+     * @param userId the ID of the user proposing the update
+     * @param offerId the unique ID of the offer
+     * @param offerDetails the new offer details proposed
+     * @throws InvalidStateTransitionException, InvalidUserException, InvalidNextActionException if any state transitions or user validations fail
+     */
+    @Override
+    public void proposeUpdate(String userId, String offerId, OfferDetails offerDetails)
+            throws InvalidStateTransitionException, InvalidUserException, InvalidNextActionException {
+        validateUser(userId);
+        proposeUpdate(getOfferFromUserId(userId, offerId), userId, offerDetails);
+    }
+
+    private void proposeUpdate(final Offer offer, final String userId, final OfferDetails offerDetails) {
         boolean isBuyer = offer.isBuyer(userId);
         OfferState newState = isBuyer ? OfferState.AWAITING_SELLER_ACCEPTANCE : OfferState.AWAITING_BUYER_ACCEPTANCE;
 
@@ -166,10 +494,27 @@ public class OfferService implements IOfferService {
     public void withdraw(String userId)
             throws InvalidStateTransitionException, InvalidUserException, InvalidNextActionException {
         validateUser(userId);
-        Offer offer = getOfferFromUserId(userId);
+        withdraw(getOfferFromUserId(userId), userId);
+    }
+
+    /**
+     * Withdraws a specific offer on behalf of a user.
+     * 
+     * @param userId the ID of the user withdrawing the offer
+     * @param offerId the unique ID of the offer
+     * @throws InvalidStateTransitionException, InvalidUserException, InvalidNextActionException if any state transitions or user validations fail
+     */
+    @Override
+    public void withdraw(String userId, String offerId)
+            throws InvalidStateTransitionException, InvalidUserException, InvalidNextActionException {
+        validateUser(userId);
+        withdraw(getOfferFromUserId(userId, offerId), userId);
+    }
+
+    private void withdraw(final Offer offer, final String userId) {
         boolean isBuyer = offer.isBuyer(userId);
         OfferState newState = isBuyer ? OfferState.WITHDRAWN_BY_BUYER : OfferState.WITHDRAWN_BY_SELLER;
-        
+
         offer.transition(newState, offer.getCurrentState(), Action.WITHDRAW, userId, isBuyer);
     }
 
@@ -179,9 +524,308 @@ public class OfferService implements IOfferService {
      * @param userId the ID of the user requesting the update
      * @param privateData the private data to be updated
      */
-    @Override 
+    @Override
     public void updatePrivateData(String userId, Map<String, String> privateData){
         Offer offer = getOfferFromUserId(userId);
         offer.updatePrivateData(userId, privateData);
     }
+
+    /**
+     * Updates private data associated with a specific offer.
+     * 
+     * @param userId the ID of the user requesting the update
+     * @param offerId the unique ID of the offer
+     * @param privateData the private data to be updated
+     * @throws InvalidUserException if the user is not a party to the offer
+     */
+    @Override
+    public void updatePrivateData(String userId, String offerId, Map<String, String> privateData)
+            throws InvalidUserException {
+        validateUser(userId);
+        Offer offer = getOfferFromUserId(userId, offerId);
+        offer.updatePrivateData(userId, privateData);
+    }
+
+    /**
+     * Returns the current version of the offer associated with a user.
+     * 
+     * @param userId the ID of the user
+     * @return the current version of the offer
+     * @throws InvalidUserException if the user ID is invalid
+     */
+    @Override
+    public int getOfferVersion(String userId) throws InvalidUserException {
+        validateUser(userId);
+        return getOfferFromUserId(userId).getVersion();
+    }
+
+    /**
+     * Accepts an offer on behalf of a user if the offer is still at the expected version.
+     * 
+     * @param userId the ID of the user accepting the offer
+     * @param expectedVersion the offer version the user last observed
+     * @throws OfferVersionConflictException, InvalidStateTransitionException, InvalidUserException, InvalidNextActionException if the version is stale or any state transitions or user validations fail
+     */
+    @Override
+    public void accept(String userId, int expectedVersion)
+            throws OfferVersionConflictException, InvalidStateTransitionException, InvalidUserException, InvalidNextActionException {
+        validateUser(userId);
+        Offer offer = getOfferFromUserId(userId);
+        boolean isBuyer = offer.isBuyer(userId);
+
+        offer.transition(OfferState.ACCEPTED, expectedVersion, Action.ACCEPT, userId, isBuyer);
+    }
+
+    /**
+     * Cancels an offer on behalf of a user if the offer is still at the expected version.
+     * 
+     * @param userId the ID of the user cancelling the offer
+     * @param expectedVersion the offer version the user last observed
+     * @throws OfferVersionConflictException, InvalidStateTransitionException, InvalidUserException, InvalidNextActionException if the version is stale or any state transitions or user validations fail
+     */
+    @Override
+    public void cancel(String userId, int expectedVersion)
+            throws OfferVersionConflictException, InvalidStateTransitionException, InvalidUserException, InvalidNextActionException {
+        validateUser(userId);
+        Offer offer = getOfferFromUserId(userId);
+        boolean isBuyer = offer.isBuyer(userId);
+
+        offer.transition(OfferState.CANCELLED, expectedVersion, Action.CANCEL, userId, isBuyer);
+    }
+
+    /**
+     * Proposes an update to an offer on behalf of a user if the offer is still at the expected version.
+     * 
+     * @param userId the ID of the user proposing the update
+     * @param offerDetails the new offer details proposed
+     * @param expectedVersion the offer version the user last observed
+     * @throws OfferVersionConflictException, InvalidStateTransitionException, InvalidUserException, InvalidNextActionException if the version is stale or any state transitions or user validations fail
+     */
+    @Override
+    public void proposeUpdate(String userId, OfferDetails offerDetails, int expectedVersion)
+            throws OfferVersionConflictException, InvalidStateTransitionException, InvalidUserException, InvalidNextActionException {
+        validateUser(userId);
+        Offer offer = getOfferFromUserId(userId);
+        boolean isBuyer = offer.isBuyer(userId);
+        OfferState newState = isBuyer ? OfferState.AWAITING_SELLER_ACCEPTANCE : OfferState.AWAITING_BUYER_ACCEPTANCE;
+
+        offer.transition(newState, expectedVersion, Action.PROPOSE_UPDATE, userId, offerDetails, isBuyer);
+    }
+
+    /**
+     * Withdraws an offer on behalf of a user if the offer is still at the expected version.
+     * 
+     * @param userId the ID of the user withdrawing the offer
+     * @param expectedVersion the offer version the user last observed
+     * @throws OfferVersionConflictException, InvalidStateTransitionException, InvalidUserException, InvalidNextActionException if the version is stale or any state transitions or user validations fail
+     */
+    @Override
+    public void withdraw(String userId, int expectedVersion)
+            throws OfferVersionConflictException, InvalidStateTransitionException, InvalidUserException, InvalidNextActionException {
+        validateUser(userId);
+        Offer offer = getOfferFromUserId(userId);
+        boolean isBuyer = offer.isBuyer(userId);
+        OfferState newState = isBuyer ? OfferState.WITHDRAWN_BY_BUYER : OfferState.WITHDRAWN_BY_SELLER;
+
+        offer.transition(newState, expectedVersion, Action.WITHDRAW, userId, isBuyer);
+    }
+
+    /**
+     * Updates private data associated with an offer if the offer is still at the expected version.
+     * 
+     * @param userId the ID of the user requesting the update
+     * @param privateData the private data to be updated
+     * @param expectedVersion the offer version the user last observed
+     * @throws OfferVersionConflictException if the version is stale
+     */
+    @Override
+    public void updatePrivateData(String userId, Map<String, String> privateData, int expectedVersion)
+            throws OfferVersionConflictException {
+        Offer offer = getOfferFromUserId(userId);
+        offer.updatePrivateData(userId, privateData, expectedVersion);
+    }
+
+    /**
+     * Resolves the offer a non-throwing action targets.
+     * 
+     * @param userId  the ID of the buyer or seller
+     * @param offerId the unique ID of the offer
+     * @return the reason the action cannot proceed, or null if the user may act on the offer
+     */
+    private RejectionReason checkParty(final String userId, final String offerId) {
+        if (userId == null || userId.isEmpty()) {
+            return RejectionReason.INVALID_USER;
+        }
+        Offer offer = offerId == null ? null : getOffer(offerId);
+        if (offer == null) {
+            return RejectionReason.OFFER_NOT_FOUND;
+        }
+        return offer.isParticipant(userId) ? null : RejectionReason.NOT_A_PARTY;
+    }
+
+    /**
+     * Applies a transition through the non-throwing path of the offer.
+     */
+    private ActionResult tryTransition(final String userId, final String offerId, final Action action,
+            final OfferDetails offerDetails, final int expectedVersion) {
+        RejectionReason rejection = checkParty(userId, offerId);
+        if (rejection != null) {
+            return ActionResult.rejected(rejection);
+        }
+        Offer offer = getOffer(offerId);
+        boolean isBuyer = offer.isBuyer(userId);
+        return offer.tryTransition(action.nextState(isBuyer), expectedVersion, action, userId, offerDetails, isBuyer);
+    }
+
+    /**
+     * Accepts a specific offer, reporting a rejection instead of throwing.
+     * 
+     * @param userId the ID of the user accepting the offer
+     * @param offerId the unique ID of the offer
+     * @param expectedVersion the offer version the user last observed, or Offer.ANY_VERSION
+     * @return the outcome of the action
+     */
+    @Override
+    public ActionResult tryAccept(String userId, String offerId, int expectedVersion) {
+        return tryTransition(userId, offerId, Action.ACCEPT, null, expectedVersion);
+    }
+
+    /**
+     * Cancels a specific offer, reporting a rejection instead of throwing.
+     * 
+     * @param userId the ID of the user cancelling the offer
+     * @param offerId the unique ID of the offer
+     * @param expectedVersion the offer version the user last observed, or Offer.ANY_VERSION
+     * @return the outcome of the action
+     */
+    @Override
+    public ActionResult tryCancel(String userId, String offerId, int expectedVersion) {
+        return tryTransition(userId, offerId, Action.CANCEL, null, expectedVersion);
+    }
+
+    /**
+     * Proposes an update to a specific offer, reporting a rejection instead of throwing.
+     * 
+     * @param userId the ID of the user proposing the update
+     * @param offerId the unique ID of the offer
+     * @param offerDetails the new offer details proposed
+     * @param expectedVersion the offer version the user last observed, or Offer.ANY_VERSION
+     * @return the outcome of the action
+     */
+    @Override
+    public ActionResult tryProposeUpdate(String userId, String offerId, OfferDetails offerDetails, int expectedVersion) {
+        return tryTransition(userId, offerId, Action.PROPOSE_UPDATE, offerDetails, expectedVersion);
+    }
+
+    /**
+     * Withdraws a specific offer, reporting a rejection instead of throwing.
+     * 
+     * @param userId the ID of the user withdrawing the offer
+     * @param offerId the unique ID of the offer
+     * @param expectedVersion the offer version the user last observed, or Offer.ANY_VERSION
+     * @return the outcome of the action
+     */
+    @Override
+    public ActionResult tryWithdraw(String userId, String offerId, int expectedVersion) {
+        return tryTransition(userId, offerId, Action.WITHDRAW, null, expectedVersion);
+    }
+
+    /**
+     * Updates private data of a specific offer, reporting a rejection instead of throwing.
+     * 
+     * @param userId the ID of the user requesting the update
+     * @param offerId the unique ID of the offer
+     * @param privateData the private data to be updated
+     * @param expectedVersion the offer version the user last observed, or Offer.ANY_VERSION
+     * @return the outcome of the action
+     */
+    @Override
+    public ActionResult tryUpdatePrivateData(String userId, String offerId, Map<String, String> privateData,
+            int expectedVersion) {
+        RejectionReason rejection = checkParty(userId, offerId);
+        if (rejection != null) {
+            return ActionResult.rejected(rejection);
+        }
+        return getOffer(offerId).tryUpdatePrivateData(userId, privateData, expectedVersion);
+    }
+
+    /**
+     * Applies a batch of commands and reports the outcome of each one.
+     * Commands are grouped by the offer they target: each group is applied in batch order with a
+     * single offer lookup and a single lock acquisition, while groups for different offers run in
+     * parallel on the batch executor, virtual threads unless another was given. SUBMIT commands
+     * create independent offers and are applied first.
+     * 
+     * @param commands the commands to apply
+     * @return the outcome of each command, in the same order as commands
+     */
+    @Override
+    public List<ActionResult> applyBatch(List<OfferCommand> commands) {
+        final ActionResult[] results = new ActionResult[commands.size()];
+        final Map<String, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < results.length; i++) {
+            OfferCommand command = commands.get(i);
+            if (command.getAction() == Action.SUBMIT) {
+                results[i] = trySubmit(command);
+            } else if (command.getOfferId() == null) {
+                results[i] = ActionResult.rejected(RejectionReason.OFFER_NOT_FOUND);
+            } else {
+                groups.computeIfAbsent(command.getOfferId(), key -> new ArrayList<>()).add(i);
+            }
+        }
+
+        if (groups.size() == 1) {
+            groups.forEach((offerId, indexes) -> applyGroup(offerId, indexes, commands, results));
+        } else {
+            final List<CompletableFuture<Void>> tasks = new ArrayList<>(groups.size());
+            groups.forEach((offerId, indexes) -> tasks.add(CompletableFuture.runAsync(
+                    () -> applyGroup(offerId, indexes, commands, results), this.batchExecutor)));
+            try {
+                CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])).join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                if (e.getCause() instanceof Error cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    private ActionResult trySubmit(final OfferCommand command) {
+        final String buyerUserId = command.getUserId();
+        final String sellerUserId = command.getSellerUserId();
+        if (buyerUserId == null || buyerUserId.isEmpty() || sellerUserId == null || sellerUserId.isEmpty()) {
+            return ActionResult.rejected(RejectionReason.INVALID_USER);
+        }
+        if (command.getOfferDetails() == null || findOfferDetailsProblem(command.getOfferDetails()) != null) {
+            return ActionResult.rejected(RejectionReason.INVALID_OFFER_DETAILS);
+        }
+        return ActionResult.accepted(register(buyerUserId, sellerUserId, command.getOfferDetails()), 1);
+    }
+
+    /**
+     * Applies the commands of one offer and stores their outcomes at their batch positions.
+     */
+    private void applyGroup(final String offerId, final List<Integer> indexes, final List<OfferCommand> commands,
+            final ActionResult[] results) {
+        Offer offer = getOffer(offerId);
+        if (offer == null) {
+            for (int index : indexes) {
+                results[index] = ActionResult.rejected(RejectionReason.OFFER_NOT_FOUND);
+            }
+            return;
+        }
+        List<OfferCommand> group = new ArrayList<>(indexes.size());
+        for (int index : indexes) {
+            group.add(commands.get(index));
+        }
+        List<ActionResult> groupResults = offer.tryApply(group);
+        for (int i = 0; i < indexes.size(); i++) {
+            results[indexes.get(i)] = groupResults.get(i);
+        }
+    }
 }
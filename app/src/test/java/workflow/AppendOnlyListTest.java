@@ -0,0 +1,69 @@
+package workflow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+public class AppendOnlyListTest {
+
+    @Test
+    void indexesAcrossSegments() {
+        final AppendOnlyList<Integer> list = new AppendOnlyList<>();
+        for (int i = 0; i < 10_000; i++) {
+            list.add(i);
+        }
+
+        assertEquals(10_000, list.size());
+        assertEquals(9_999, list.last());
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals(i, list.get(i));
+        }
+        assertThrows(IndexOutOfBoundsException.class, () -> list.get(10_000));
+        assertThrows(IndexOutOfBoundsException.class, () -> list.get(-1));
+    }
+
+    @Test
+    void viewIsFixedToSizeWhenTaken() {
+        final AppendOnlyList<String> list = new AppendOnlyList<>();
+        list.add("a");
+        list.add("b");
+        final List<String> view = list.view();
+        list.add("c");
+
+        assertEquals(List.of("a", "b"), view);
+        assertEquals(List.of("a", "b", "c"), list.view());
+        assertThrows(UnsupportedOperationException.class, () -> view.add("d"));
+        assertThrows(IndexOutOfBoundsException.class, () -> view.get(2));
+    }
+
+    @Test
+    void readersSeeConsistentPrefixWhileWriterAppends() throws Exception {
+        final AppendOnlyList<Integer> list = new AppendOnlyList<>();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final Thread reader = new Thread(() -> {
+            try {
+                while (list.size() < 100_000) {
+                    final List<Integer> view = list.view();
+                    int expected = 0;
+                    for (Integer value : view) {
+                        assertEquals(expected++, value);
+                    }
+                    assertEquals(view.size(), expected);
+                }
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        });
+        reader.start();
+        for (int i = 0; i < 100_000; i++) {
+            list.add(i);
+        }
+        reader.join();
+
+        assertEquals(null, failure.get());
+    }
+}
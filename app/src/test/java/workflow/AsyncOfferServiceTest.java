@@ -0,0 +1,60 @@
+package workflow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+import workflow.exceptions.InvalidNextActionException;
+import workflow.servicesapiimpl.AsyncOfferService;
+import workflow.servicesapiimpl.DashboardService;
+import workflow.servicesapiimpl.OfferService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+public class AsyncOfferServiceTest {
+
+    @Test
+    void requestsForOneOfferRunInOrder() {
+        final OfferService offerService = new OfferService();
+        try (AsyncOfferService asyncService = new AsyncOfferService(offerService, new DashboardService(offerService))) {
+            final String offerId = asyncService.submit("123", "456", OfferDetails.of("Test", 5, 50)).join();
+
+            final List<CompletableFuture<Void>> requests = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                // The parties alternate, so any reordering would be rejected by the permitted action check
+                final String userId = i % 2 == 0 ? "456" : "123";
+                requests.add(asyncService.proposeUpdate(userId, offerId, OfferDetails.of("Test", 5, 50 + i)));
+            }
+            requests.add(asyncService.accept("456", offerId));
+            CompletableFuture.allOf(requests.toArray(new CompletableFuture[0])).join();
+
+            final Offer offer = offerService.getOffer(offerId);
+            assertEquals(OfferState.ACCEPTED, offer.getCurrentState());
+            assertEquals(102, offer.getVersion());
+            assertEquals(149.0, offer.getLastOfferHistory().getOfferDetails().getProductPrice());
+            assertEquals(102, asyncService.getHistory("123").join().size());
+        }
+    }
+
+    @Test
+    void rejectedRequestCompletesExceptionally() {
+        final OfferService offerService = new OfferService();
+        try (AsyncOfferService asyncService = new AsyncOfferService(offerService, new DashboardService(offerService))) {
+            final String offerId = asyncService.submit("123", "456", OfferDetails.of("Test", 5, 50)).join();
+
+            final CompletionException exception = assertThrows(CompletionException.class, () -> {
+                asyncService.accept("123", offerId).join();
+            });
+            assertInstanceOf(InvalidNextActionException.class, exception.getCause());
+
+            // A failed request does not block the ones queued behind it
+            asyncService.accept("456", offerId).join();
+            assertEquals(OfferState.ACCEPTED, offerService.getOffer(offerId).getCurrentState());
+        }
+    }
+}
@@ -2,11 +2,21 @@ package workflow;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import workflow.OfferDifference.Change;
+import workflow.exceptions.InvalidOfferException;
 import workflow.servicesapiimpl.DashboardService;
 import workflow.servicesapiimpl.OfferService;
 
@@ -98,6 +108,154 @@ public class DashboardServiceTest {
         }
     }
 
+    @Test
+    void repeatedPollsReuseTheMaterializedRows() {
+        final OfferService offerService = new OfferService();
+        final DashboardService dashboardService = new DashboardService(offerService);
+        final String offerId = offerService.submit("123", "456", OfferDetails.of("Test", 5, 50));
+        offerService.proposeUpdate("456", offerId, OfferDetails.of("Test", 5, 55));
+
+        final List<DashboardRow> firstPoll = dashboardService.getHistory("123");
+        assertSame(firstPoll, dashboardService.getHistory("456"));
+        assertSame(firstPoll.get(1), dashboardService.getHistory("123", 2));
+        assertThrows(UnsupportedOperationException.class, () -> firstPoll.add(firstPoll.get(0)));
+
+        offerService.accept("123", offerId);
+        final List<DashboardRow> secondPoll = dashboardService.getHistory("123");
+        assertEquals(2, firstPoll.size());
+        assertEquals(3, secondPoll.size());
+        assertSame(firstPoll.get(0), secondPoll.get(0));
+        assertSame(firstPoll.get(1), secondPoll.get(1));
+        check(DashboardRow.of(3, Action.ACCEPT, "123", OfferState.ACCEPTED, "Test", "123", "456", 5, 55),
+                secondPoll.get(2));
+    }
+
+    @Test
+    void historyIsReadInPagesInEitherOrder() {
+        final OfferService offerService = new OfferService();
+        final DashboardService dashboardService = new DashboardService(offerService);
+        final String offerId = offerService.submit("123", "456", OfferDetails.of("Test", 5, 50));
+        for (int i = 1; i < 7; i++) {
+            offerService.proposeUpdate(i % 2 == 1 ? "456" : "123", offerId, OfferDetails.of("Test", 5, 50 + i));
+        }
+
+        final DashboardPage first = dashboardService.getHistoryPage("123", HistoryOrder.OLDEST_FIRST, 3);
+        assertEquals(List.of(1, 2, 3), versions(first.getRows()));
+        assertEquals(4, first.getNextVersion());
+        // Versions added between pages are picked up by the cursor
+        offerService.accept("456", offerId);
+        final DashboardPage second = dashboardService.getHistoryPage("123", HistoryOrder.OLDEST_FIRST,
+                first.getNextVersion(), 3);
+        assertEquals(List.of(4, 5, 6), versions(second.getRows()));
+        final DashboardPage third = dashboardService.getHistoryPage("123", HistoryOrder.OLDEST_FIRST,
+                second.getNextVersion(), 3);
+        assertEquals(List.of(7, 8), versions(third.getRows()));
+        assertFalse(third.hasNextPage());
+        assertEquals(DashboardPage.NO_MORE_VERSIONS, third.getNextVersion());
+
+        final DashboardPage latest = dashboardService.getHistoryPage("456", HistoryOrder.NEWEST_FIRST, 2);
+        assertEquals(List.of(8, 7), versions(latest.getRows()));
+        assertEquals(Action.ACCEPT, latest.getRows().get(0).getAction());
+        final DashboardPage oldest = dashboardService.getHistoryPage("456", HistoryOrder.NEWEST_FIRST, 2, 5);
+        assertEquals(List.of(2, 1), versions(oldest.getRows()));
+        assertFalse(oldest.hasNextPage());
+
+        assertThrows(IllegalArgumentException.class,
+                () -> dashboardService.getHistoryPage("123", HistoryOrder.OLDEST_FIRST, 0));
+        assertThrows(IllegalArgumentException.class,
+                () -> dashboardService.getHistoryPage("123", HistoryOrder.OLDEST_FIRST, 9, 3));
+        assertThrows(IllegalArgumentException.class,
+                () -> dashboardService.getHistoryPage("123", HistoryOrder.NEWEST_FIRST, 0, 3));
+    }
+
+    @Test
+    void historyIsStreamedLazily() {
+        final OfferService offerService = new OfferService();
+        final DashboardService dashboardService = new DashboardService(offerService);
+        final String offerId = offerService.submit("123", "456", OfferDetails.of("Test", 5, 50));
+        for (int i = 1; i < 1_000; i++) {
+            offerService.proposeUpdate(i % 2 == 1 ? "456" : "123", offerId, OfferDetails.of("Test", 5, 50 + i));
+        }
+
+        assertEquals(List.of(1_000, 999, 998), versions(dashboardService.streamHistory("123", HistoryOrder.NEWEST_FIRST)
+                .limit(3).collect(Collectors.toList())));
+        assertEquals(dashboardService.getHistory("456").stream().map(DashboardRow::getTotalPrice).collect(Collectors.toList()),
+                dashboardService.streamHistory("456", HistoryOrder.OLDEST_FIRST).map(DashboardRow::getTotalPrice)
+                        .collect(Collectors.toList()));
+        assertThrows(InvalidOfferException.class, () -> dashboardService.streamHistory("unknown", HistoryOrder.OLDEST_FIRST));
+    }
+
+    @Test
+    void differencesBetweenVersionsAreStructured() {
+        final OfferService offerService = new OfferService();
+        final DashboardService dashboardService = new DashboardService(offerService);
+        final String offerId = offerService.submit("123", "456", OfferDetails.of("Test", 5, 50));
+        offerService.updatePrivateData("123", offerId, Map.of("limit", "60", "note", "a"));
+        offerService.proposeUpdate("456", offerId, OfferDetails.of("Test", 6, 55));
+        offerService.updatePrivateData("123", offerId, Map.of("limit", "58", "note", "a", "team", "x"));
+        offerService.accept("123", offerId);
+
+        final OfferDifference difference = dashboardService.getDifference("123", 1, 5);
+        assertEquals(1, difference.getFromVersion());
+        assertEquals(5, difference.getToVersion());
+        assertNull(difference.getProductName());
+        assertEquals(Change.of(5, 6), difference.getProductQuantity());
+        assertEquals(Change.of(50.0, 55.0), difference.getProductPrice());
+        assertEquals(Change.of(OfferState.AWAITING_SELLER_ACCEPTANCE, OfferState.ACCEPTED), difference.getState());
+        assertEquals(Change.of(Action.SUBMIT, Action.ACCEPT), difference.getAction());
+        final Map<String, Change<String>> expected = new HashMap<>();
+        expected.put("limit", Change.of(null, "58"));
+        expected.put("note", Change.of(null, "a"));
+        expected.put("team", Change.of(null, "x"));
+        assertEquals(expected, difference.getPrivateData());
+
+        // Comparing backwards swaps every change, and another user sees none of the private data
+        final OfferDifference backwards = dashboardService.getDifference("123", 4, 2);
+        assertEquals(Change.of(55.0, 50.0), backwards.getProductPrice());
+        assertEquals(Map.of("limit", Change.of("58", "60"), "team", Change.of("x", null)), backwards.getPrivateData());
+        assertEquals(Map.of(), dashboardService.getDifference("456", 1, 5).getPrivateData());
+        assertFalse(dashboardService.getDifference("456", 3, 3).hasChanges());
+
+        assertThrows(IllegalArgumentException.class, () -> dashboardService.getDifference("123", 0, 2));
+        assertThrows(IllegalArgumentException.class, () -> dashboardService.getDifference("123", 1, 6));
+        assertThrows(InvalidOfferException.class, () -> dashboardService.getDifference("unknown", 1, 1));
+    }
+
+    @Test
+    void differenceChainCoversEveryStep() {
+        final OfferService offerService = new OfferService();
+        final DashboardService dashboardService = new DashboardService(offerService);
+        final String offerId = offerService.submit("123", "456", OfferDetails.of("Test", 5, 50));
+        for (int i = 1; i < 100; i++) {
+            final String userId = i % 2 == 1 ? "456" : "123";
+            offerService.updatePrivateData(userId, offerId, Map.of("round", String.valueOf(i)));
+            offerService.proposeUpdate(userId, offerId, OfferDetails.of("Test", 5, 50 + i));
+        }
+
+        final List<OfferDifference> chain = dashboardService.getDifferences("123", 1, 199);
+        assertEquals(198, chain.size());
+        for (int i = 0; i < chain.size(); i++) {
+            final OfferDifference step = chain.get(i);
+            assertEquals(i + 1, step.getFromVersion());
+            assertEquals(i + 2, step.getToVersion());
+            assertEquals(dashboardService.getDifference("123", i + 1, i + 2).getPrivateData(), step.getPrivateData());
+            assertTrue(step.hasChanges());
+        }
+        // Version 2 is the seller's update, version 4 the buyer's own
+        assertEquals(Map.of(), chain.get(0).getPrivateData());
+        assertEquals(Map.of("round", Change.of("1", "2")), chain.get(2).getPrivateData());
+        assertEquals(Change.of(Action.UPDATE_PRIVATE_DATA, Action.PROPOSE_UPDATE), chain.get(1).getAction());
+        assertEquals(Change.of(50.0 + 98, 50.0 + 99), chain.get(197).getProductPrice());
+
+        assertEquals(List.of(), dashboardService.getDifferences("123", 5, 5));
+        assertThrows(IllegalArgumentException.class, () -> dashboardService.getDifferences("123", 5, 4));
+        assertThrows(IllegalArgumentException.class, () -> dashboardService.getDifferences("123", 1, 200));
+    }
+
+    private static List<Integer> versions(final List<DashboardRow> rows) {
+        return rows.stream().map(DashboardRow::getVersion).collect(Collectors.toList());
+    }
+
     private void check(final DashboardRow expectedVersionHistory, final DashboardRow actualVersionHistory) {
         assertEquals(expectedVersionHistory.getVersion(), actualVersionHistory.getVersion());
         assertEquals(expectedVersionHistory.getAction(), actualVersionHistory.getAction());
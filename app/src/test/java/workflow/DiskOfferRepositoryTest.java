@@ -0,0 +1,134 @@
+package workflow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import workflow.servicesapiimpl.OfferService;
+
+public class DiskOfferRepositoryTest extends OfferRepositoryConformanceTest {
+
+    @TempDir
+    Path directory;
+
+    private DiskOfferRepository repository;
+
+    @Override
+    protected OfferRepository createRepository() throws IOException {
+        // A tiny cache, so the conformance tests exercise eviction and reloading
+        this.repository = DiskOfferRepository.open(directory.resolve("offers.data"), 2);
+        return this.repository;
+    }
+
+    @AfterEach
+    void close() throws IOException {
+        if (this.repository != null) {
+            this.repository.close();
+        }
+    }
+
+    @Test
+    void reopeningRestoresOffersAndIndexes() throws IOException {
+        final Path file = directory.resolve("reopened.data");
+        final String firstOfferId;
+        final String secondOfferId;
+        try (DiskOfferRepository repository = DiskOfferRepository.open(file, 0)) {
+            final OfferService offerService = new OfferService(repository);
+            firstOfferId = offerService.submit("123", "456", OfferDetails.of("Test", 5, 50));
+            secondOfferId = offerService.submit("789", "456", OfferDetails.of("Other", 1, 10));
+            offerService.updatePrivateData("123", firstOfferId, Map.of("reference", "a"));
+            offerService.accept("456", firstOfferId);
+        }
+
+        try (DiskOfferRepository repository = DiskOfferRepository.open(file)) {
+            final OfferService offerService = new OfferService(repository);
+            assertEquals(List.of(firstOfferId, secondOfferId), repository.findOfferIds("456"));
+            assertEquals(List.of(secondOfferId), offerService.getActiveOfferIds("456"));
+            final Offer offer = repository.find(firstOfferId);
+            assertEquals(3, offer.getVersion());
+            assertEquals(OfferState.ACCEPTED, offer.getCurrentState());
+            assertEquals(Map.of("reference", "a"), offer.getLastOfferHistory().getPrivateData());
+
+            assertEquals(List.of(firstOfferId), repository.findOfferIdsByProduct("Test", OfferState.ACCEPTED));
+            assertEquals(List.of(secondOfferId),
+                    repository.findOfferIdsBySeller("456", OfferState.AWAITING_SELLER_ACCEPTANCE));
+            // Reloaded offers keep writing their new entries
+            offerService.withdraw("789", secondOfferId);
+            assertEquals(List.of(secondOfferId), repository.findOfferIdsByState(OfferState.WITHDRAWN_BY_BUYER));
+        }
+
+        try (DiskOfferRepository repository = DiskOfferRepository.open(file)) {
+            assertEquals(OfferState.WITHDRAWN_BY_BUYER, repository.find(secondOfferId).getCurrentState());
+            assertEquals(List.of(secondOfferId), repository.findOfferIdsByState(OfferState.WITHDRAWN_BY_BUYER));
+            assertEquals(List.of(), repository.findOfferIdsByState(OfferState.AWAITING_SELLER_ACCEPTANCE));
+        }
+    }
+
+    @Test
+    void offerWithNullProductIsReloaded() throws IOException {
+        final Path file = directory.resolve("null-product.data");
+        final String offerId;
+        try (DiskOfferRepository repository = DiskOfferRepository.open(file, 0)) {
+            final OfferService offerService = new OfferService(repository);
+            offerId = offerService.submit("123", "456", OfferDetails.of("Test", 5, 50));
+            offerService.proposeUpdate("456", offerId, OfferDetails.of(null, 5, 60));
+            offerService.proposeUpdate("123", offerId, OfferDetails.of(null, 4, 60));
+        }
+
+        // A reopened repository reads the offer back from its records
+        try (DiskOfferRepository repository = DiskOfferRepository.open(file, 0)) {
+            final Offer offer = repository.find(offerId);
+            assertEquals(3, offer.getVersion());
+            assertEquals(null, offer.getOfferHistory(2).getOfferDetails().getProductName());
+            assertEquals(null, offer.getLastOfferHistory().getOfferDetails().getProductName());
+            assertEquals(4, offer.getLastOfferHistory().getOfferDetails().getProductQuantity());
+        }
+    }
+
+    @Test
+    void tornRecordAtTheEndIsTruncated() throws IOException {
+        final Path file = directory.resolve("torn.data");
+        final String offerId;
+        try (DiskOfferRepository repository = DiskOfferRepository.open(file)) {
+            offerId = new OfferService(repository).submit("123", "456", OfferDetails.of("Test", 5, 50));
+        }
+        final long intactSize = Files.size(file);
+        Files.write(file, new byte[] { 0, 0, 0, 100, 1, 2, 3, 4, 5 }, StandardOpenOption.APPEND);
+
+        try (DiskOfferRepository repository = DiskOfferRepository.open(file)) {
+            assertEquals(intactSize, Files.size(file));
+            new OfferService(repository).accept("456", offerId);
+        }
+
+        try (DiskOfferRepository repository = DiskOfferRepository.open(file)) {
+            assertEquals(2, repository.find(offerId).getVersion());
+        }
+    }
+
+    @Test
+    void corruptRecordBeforeTheEndFailsOpeningWithoutTruncating() throws IOException {
+        final Path file = directory.resolve("corrupt.data");
+        try (DiskOfferRepository repository = DiskOfferRepository.open(file)) {
+            final OfferService offerService = new OfferService(repository);
+            final String offerId = offerService.submit("123", "456", OfferDetails.of("Test", 5, 50));
+            offerService.accept("456", offerId);
+        }
+        final byte[] bytes = Files.readAllBytes(file);
+        // A byte of the body of the first record
+        bytes[20] ^= 1;
+        Files.write(file, bytes);
+
+        assertThrows(IOException.class, () -> DiskOfferRepository.open(file));
+        assertEquals(bytes.length, Files.size(file));
+    }
+}
@@ -0,0 +1,222 @@
+package workflow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import workflow.Offer.OfferHistory;
+
+public class HistoryColumnsTest {
+
+    @Test
+    void columnsRoundTripAcrossBlocks() {
+        final HistoryColumns columns = new HistoryColumns(new HistoryArena(), new SymbolTable());
+        PersistentHashMap<String, String> privateData = PersistentHashMap.empty();
+        for (int i = 0; i < 1_000; i++) {
+            if (i % 10 == 0) {
+                privateData = privateData.plus("round", Integer.toString(i));
+            }
+            columns.add(new OfferHistory(OfferDetails.of("Product " + i % 3, i, i * 1.5),
+                    i % 2 == 0 ? OfferState.AWAITING_SELLER_ACCEPTANCE : OfferState.AWAITING_BUYER_ACCEPTANCE,
+                    i == 0 ? Action.SUBMIT : Action.PROPOSE_UPDATE, i % 2 == 0 ? "buyer" : "seller", privateData));
+        }
+
+        assertEquals(1_000, columns.size());
+        for (int i = 0; i < 1_000; i++) {
+            final OfferHistory offerHistory = columns.get(i);
+            assertEquals("Product " + i % 3, offerHistory.getOfferDetails().getProductName());
+            assertEquals(i, offerHistory.getOfferDetails().getProductQuantity());
+            assertEquals(i * 1.5, offerHistory.getOfferDetails().getProductPrice());
+            assertEquals(i % 2 == 0 ? "buyer" : "seller", offerHistory.getOfferUserId());
+            assertEquals(i == 0 ? Action.SUBMIT : Action.PROPOSE_UPDATE, offerHistory.getOfferAction());
+            assertEquals(Integer.toString(i / 10 * 10), offerHistory.getPrivateData().get("round"));
+        }
+        // Versions that kept their private data share the snapshot
+        assertSame(columns.get(11).getPrivateData(), columns.get(12).getPrivateData());
+        assertSame(privateData, columns.last().getPrivateData());
+        assertThrows(IndexOutOfBoundsException.class, () -> columns.get(1_000));
+        assertThrows(IndexOutOfBoundsException.class, () -> columns.get(-1));
+    }
+
+    @Test
+    void versionsAreStoredAsDeltasBetweenKeyframes() {
+        final Offer offer = Offer.of("buyer", "seller", OfferDetails.of("Laptop", 5, 1000));
+        for (int round = 0; round < 50; round++) {
+            offer.transition(OfferState.AWAITING_BUYER_ACCEPTANCE, OfferState.AWAITING_SELLER_ACCEPTANCE,
+                    Action.PROPOSE_UPDATE, "seller", OfferDetails.of("Laptop", 5, 1100 - round * 1.25), false);
+            offer.transition(OfferState.AWAITING_SELLER_ACCEPTANCE, OfferState.AWAITING_BUYER_ACCEPTANCE,
+                    Action.PROPOSE_UPDATE, "buyer", OfferDetails.of("Laptop", round % 10 == 9 ? 4 : 5, 1000 + round), true);
+        }
+        offer.transition(OfferState.ACCEPTED, OfferState.AWAITING_SELLER_ACCEPTANCE, Action.ACCEPT, "seller", false);
+
+        final HistoryColumns columns = new HistoryColumns(new HistoryArena(), new SymbolTable());
+        for (OfferHistory offerHistory : offer.getOfferHistory()) {
+            columns.add(offerHistory);
+        }
+        assertEquals(102, columns.size());
+        // Four or five bytes per counter-proposal, against 26 for fixed-width columns
+        assertTrue(columns.encodedBytes() < 5 * 102, () -> columns.encodedBytes() + " bytes");
+
+        // Random reads and a sequential pass decode the same versions as the offer stored
+        final List<OfferHistory> view = columns.view();
+        int version = 1;
+        for (OfferHistory offerHistory : view) {
+            for (OfferHistory read : List.of(offerHistory, columns.get(version - 1), view.get(version - 1))) {
+                final OfferHistory expected = offer.getOfferHistory(version);
+                assertEquals(expected.getOfferUserId(), read.getOfferUserId());
+                assertEquals(expected.getOfferState(), read.getOfferState());
+                assertEquals(expected.getOfferAction(), read.getOfferAction());
+                assertEquals(expected.getOfferDetails().getProductQuantity(), read.getOfferDetails().getProductQuantity());
+                assertEquals(expected.getOfferDetails().getProductPrice(), read.getOfferDetails().getProductPrice());
+            }
+            version++;
+        }
+        assertEquals(103, version);
+
+        // Rows come out the same in either order and from any starting version
+        for (int from : new int[] { 0, 15, 16, 57, 101 }) {
+            for (HistoryOrder order : HistoryOrder.values()) {
+                final Iterator<DashboardRow> rows = columns.dashboardRows(from, order, "buyer", "seller");
+                for (int index = from; index >= 0 && index < 102; index = order.nextVersion(index)) {
+                    final DashboardRow expected = offer.getDashboardRow(index + 1);
+                    final DashboardRow row = rows.next();
+                    assertEquals(expected.getVersion(), row.getVersion());
+                    assertEquals(expected.getUserId(), row.getUserId());
+                    assertEquals(expected.getTotalPrice(), row.getTotalPrice());
+                }
+                assertFalse(rows.hasNext());
+            }
+        }
+    }
+
+    @Test
+    void pricesInAndOutOfWholeCentsAlternate() {
+        final HistoryColumns columns = new HistoryColumns(new HistoryArena(), new SymbolTable());
+        final double[] prices = { 10.00, 0.1 + 0.2, 5.00, 6.00, 1e20, 7.25, 7.26, Double.NaN, 3.00, 1.0 / 3, 2.50, -1.50 };
+        for (int i = 0; i < 40; i++) {
+            columns.add(new OfferHistory(OfferDetails.of("Test", 5, prices[i % prices.length]),
+                    OfferState.AWAITING_SELLER_ACCEPTANCE, Action.PROPOSE_UPDATE, "buyer", PersistentHashMap.empty()));
+        }
+
+        final Iterator<OfferHistory> entries = columns.view().iterator();
+        for (int i = 0; i < 40; i++) {
+            final double expected = prices[i % prices.length];
+            assertEquals(expected, columns.get(i).getOfferDetails().getProductPrice(), "version " + (i + 1));
+            assertEquals(expected, entries.next().getOfferDetails().getProductPrice(), "version " + (i + 1));
+        }
+    }
+
+    @Test
+    void nullProductStaysWithinItsBlock() {
+        final HistoryArena arena = new HistoryArena();
+        final SymbolTable symbols = new SymbolTable();
+        final HistoryColumns columns = new HistoryColumns(arena, symbols);
+        final HistoryColumns neighbour = new HistoryColumns(arena, symbols);
+        columns.add(new OfferHistory(OfferDetails.of("Laptop", 5, 1000), OfferState.AWAITING_SELLER_ACCEPTANCE,
+                Action.SUBMIT, "buyer", PersistentHashMap.empty()));
+        // The first block of the neighbour follows the first block of the columns in the arena
+        neighbour.add(new OfferHistory(OfferDetails.of("Phone", 2, 300), OfferState.AWAITING_SELLER_ACCEPTANCE,
+                Action.SUBMIT, "other buyer", PersistentHashMap.empty()));
+        for (int i = 1; i <= 14; i++) {
+            columns.add(new OfferHistory(OfferDetails.of("Laptop", 5, i % 2 == 0 ? 1000 : 999.5),
+                    i % 2 == 0 ? OfferState.AWAITING_SELLER_ACCEPTANCE : OfferState.AWAITING_BUYER_ACCEPTANCE,
+                    Action.PROPOSE_UPDATE, i % 2 == 0 ? "buyer" : "seller", PersistentHashMap.empty()));
+        }
+        // Only the product changes, near the end of the first block
+        columns.add(new OfferHistory(OfferDetails.of(null, 5, 1000), OfferState.AWAITING_SELLER_ACCEPTANCE,
+                Action.PROPOSE_UPDATE, "buyer", PersistentHashMap.empty()));
+        columns.add(new OfferHistory(OfferDetails.of("Laptop", 5, 1000), OfferState.AWAITING_SELLER_ACCEPTANCE,
+                Action.PROPOSE_UPDATE, "buyer", PersistentHashMap.empty()));
+
+        assertEquals(null, columns.get(15).getOfferDetails().getProductName());
+        assertEquals("Laptop", columns.get(16).getOfferDetails().getProductName());
+        assertEquals(null, columns.view().get(15).getOfferDetails().getProductName());
+        final OfferHistory neighbourHistory = neighbour.get(0);
+        assertEquals("Phone", neighbourHistory.getOfferDetails().getProductName());
+        assertEquals(2, neighbourHistory.getOfferDetails().getProductQuantity());
+        assertEquals(300.0, neighbourHistory.getOfferDetails().getProductPrice());
+        assertEquals("other buyer", neighbourHistory.getOfferUserId());
+    }
+
+    @Test
+    void dashboardRowsAreBuiltFromColumns() {
+        final Offer offer = Offer.of("123", "456", OfferDetails.of("Test", 5, 50));
+        offer.transition(OfferState.AWAITING_BUYER_ACCEPTANCE, OfferState.AWAITING_SELLER_ACCEPTANCE,
+                Action.PROPOSE_UPDATE, "456", OfferDetails.of("Test", 4, 60), false);
+
+        final DashboardRow row = offer.getDashboardRow(2);
+        assertEquals(2, row.getVersion());
+        assertEquals(Action.PROPOSE_UPDATE, row.getAction());
+        assertEquals("456", row.getUserId());
+        assertEquals(OfferState.AWAITING_BUYER_ACCEPTANCE, row.getState());
+        assertEquals("Test", row.getProductName());
+        assertEquals("123", row.getBuyerUserId());
+        assertEquals("456", row.getSellerUserId());
+        assertEquals(240.0, row.getTotalPrice());
+        assertThrows(IndexOutOfBoundsException.class, () -> offer.getDashboardRow(3));
+    }
+
+    @Test
+    void viewIsFixedToSizeWhenTaken() {
+        final Offer offer = Offer.of("123", "456", OfferDetails.of("Test", 5, 50));
+        final List<OfferHistory> view = offer.getOfferHistory();
+        offer.transition(OfferState.ACCEPTED, OfferState.AWAITING_SELLER_ACCEPTANCE, Action.ACCEPT, "456", false);
+
+        assertEquals(1, view.size());
+        assertEquals(2, offer.getOfferHistory().size());
+        assertEquals(OfferState.ACCEPTED, offer.getOfferHistory().get(1).getOfferState());
+    }
+
+    @Test
+    void blocksAreReturnedToTheArenaWhenColumnsAreCollected() throws InterruptedException {
+        final HistoryArena arena = new HistoryArena();
+        HistoryColumns columns = new HistoryColumns(arena, new SymbolTable());
+        for (int i = 0; i < 100; i++) {
+            columns.add(new OfferHistory(OfferDetails.of("Test", 5, 50), OfferState.AWAITING_SELLER_ACCEPTANCE,
+                    Action.SUBMIT, "buyer", PersistentHashMap.empty()));
+        }
+        // Blocks of 64, 128 and 256 bytes
+        assertEquals(448, arena.usedBytes());
+
+        columns = null;
+        for (int attempt = 0; attempt < 100 && arena.usedBytes() > 0; attempt++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertEquals(0, arena.usedBytes());
+    }
+
+    @Test
+    void symbolsAreReleasedWhenNoColumnsHoldThemAnyMore() throws InterruptedException {
+        final SymbolTable symbols = new SymbolTable();
+        final HistoryColumns kept = new HistoryColumns(new HistoryArena(), symbols);
+        kept.add(new OfferHistory(OfferDetails.of("Shared", 5, 50), OfferState.AWAITING_SELLER_ACCEPTANCE,
+                Action.SUBMIT, "buyer", PersistentHashMap.empty()));
+        HistoryColumns columns = new HistoryColumns(new HistoryArena(), symbols);
+        for (int i = 0; i < 100; i++) {
+            columns.add(new OfferHistory(OfferDetails.of(i % 2 == 0 ? "Shared" : "Product " + i, 5, 50),
+                    OfferState.AWAITING_SELLER_ACCEPTANCE, Action.PROPOSE_UPDATE, "user " + i % 10,
+                    PersistentHashMap.empty()));
+        }
+        // Shared, buyer, 50 products and 10 users
+        assertEquals(62, symbols.size());
+
+        columns = null;
+        for (int attempt = 0; attempt < 100 && symbols.size() > 2; attempt++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        // Only the symbols the remaining columns hold are left, and freed handles are reused
+        assertEquals(2, symbols.size());
+        assertEquals("Shared", kept.get(0).getOfferDetails().getProductName());
+        assertEquals("buyer", kept.get(0).getOfferUserId());
+        assertTrue(symbols.intern("another") < 62);
+    }
+}
@@ -0,0 +1,83 @@
+package workflow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import workflow.servicesapiimpl.OfferService;
+
+public class IdGeneratorTest {
+
+    @Test
+    void timeOrderedIdsCarryTheirCreationTime() {
+        final IdGenerator generator = new TimeOrderedIdGenerator(() -> 0x0123_4567_89ABL);
+        final UUID id = generator.nextId();
+
+        assertEquals(7, id.version());
+        assertEquals(2, id.variant());
+        assertEquals(0x0123_4567_89ABL, id.getMostSignificantBits() >>> 16);
+        assertTrue(id.toString().startsWith("01234567-89ab-7"));
+    }
+
+    @Test
+    void idsOfOneThreadIncreaseEvenWhenTheClockStallsOrMovesBack() {
+        final AtomicLong clock = new AtomicLong(1_000);
+        final IdGenerator generator = new TimeOrderedIdGenerator(clock::get);
+        UUID previous = generator.nextId();
+        for (int i = 0; i < 100_000; i++) {
+            if (i % 10_000 == 0) {
+                clock.addAndGet(i % 20_000 == 0 ? 5 : -3);
+            }
+            final UUID id = generator.nextId();
+            assertTrue(id.compareTo(previous) > 0, id + " does not follow " + previous);
+            assertTrue(id.toString().compareTo(previous.toString()) > 0);
+            previous = id;
+        }
+    }
+
+    @Test
+    void idsOfConcurrentThreadsAreUnique() throws Exception {
+        final Set<UUID> ids = ConcurrentHashMap.newKeySet();
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 50_000; i++) {
+                        ids.add(IdGenerator.TIME_ORDERED.nextId());
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(8 * 50_000, ids.size());
+    }
+
+    @Test
+    void offersTakeTheirIdFromTheServiceGenerator() {
+        final UUID fixed = new UUID(0x0123_4567_89AB_7000L, 0x8000_0000_0000_0001L);
+        final OfferService offerService = new OfferService(new InMemoryOfferRepository(), () -> fixed);
+        final String offerId = offerService.submit("123", "456", OfferDetails.of("Test", 5, 50));
+
+        assertEquals(fixed.toString(), offerId);
+        assertEquals("123", offerService.getOffer(offerId).getBuyerUserId());
+        assertEquals(4, UUID.fromString(new OfferService(new InMemoryOfferRepository(), IdGenerator.RANDOM)
+                .submit("123", "456", OfferDetails.of("Test", 5, 50))).version());
+    }
+}
@@ -0,0 +1,34 @@
+package workflow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class InMemoryOfferRepositoryTest extends OfferRepositoryConformanceTest {
+
+    @Override
+    protected OfferRepository createRepository() {
+        return new InMemoryOfferRepository();
+    }
+
+    @Test
+    void indexDropsKeysThatNoOfferMatchesAnyMore() {
+        final OfferIndex index = new OfferIndex();
+        final Offer offer = Offer.of("123", "456", OfferDetails.of("Test", 5, 50), index);
+        index.add(offer);
+        // State, seller and state, buyer and state, product and state, and the parties
+        assertEquals(5, index.keyCount());
+
+        for (int round = 0; round < 10; round++) {
+            offer.transition(OfferState.AWAITING_BUYER_ACCEPTANCE, OfferState.AWAITING_SELLER_ACCEPTANCE,
+                    Action.PROPOSE_UPDATE, "456", OfferDetails.of("Product " + round, 5, 50), false);
+            offer.transition(OfferState.AWAITING_SELLER_ACCEPTANCE, OfferState.AWAITING_BUYER_ACCEPTANCE,
+                    Action.PROPOSE_UPDATE, "123", OfferDetails.of("Test " + round, 5, 50), true);
+        }
+        assertEquals(5, index.keyCount());
+        assertEquals(List.of(offer.getOfferId()), index.findByProduct("Test 9", OfferState.AWAITING_SELLER_ACCEPTANCE));
+        assertEquals(List.of(), index.findByState(OfferState.AWAITING_BUYER_ACCEPTANCE));
+    }
+}
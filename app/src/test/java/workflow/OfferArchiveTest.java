@@ -0,0 +1,117 @@
+package workflow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import workflow.Offer.OfferHistory;
+import workflow.servicesapiimpl.DashboardService;
+import workflow.servicesapiimpl.OfferService;
+
+public class OfferArchiveTest {
+
+    private final ManualClock clock = new ManualClock();
+    private final OfferArchive archive = new OfferArchive(Duration.ofHours(1), Duration.ofSeconds(1), this.clock);
+    private final InMemoryOfferRepository repository = new InMemoryOfferRepository(OfferHistoryListener.NONE,
+            this.archive);
+    private final OfferService offerService = new OfferService(this.repository);
+
+    @Test
+    void terminalOffersAreArchivedAfterTheDelayAndStillRead() {
+        final String accepted = this.offerService.submit("123", "456", OfferDetails.of("Test", 5, 50));
+        for (int round = 0; round < 10; round++) {
+            this.offerService.proposeUpdate("456", accepted, OfferDetails.of("Test", 5, 60 + round));
+            this.offerService.proposeUpdate("123", accepted, OfferDetails.of("Test", 5, 50 + round));
+        }
+        this.offerService.updatePrivateData("123", accepted, Map.of("note", "a", "limit", "70"));
+        this.offerService.accept("456", accepted);
+        final String open = this.offerService.submit("789", "456", OfferDetails.of("Other", 1, 10));
+        final List<OfferHistory> history = this.offerService.getOffer(accepted).getOfferHistory();
+        final List<DashboardRow> rows = new DashboardService(this.offerService).getHistory("123");
+        assertEquals(1, this.archive.getPendingCount());
+
+        this.clock.advance(Duration.ofMinutes(59));
+        assertEquals(0, this.repository.archive());
+        this.clock.advance(Duration.ofMinutes(1));
+        assertEquals(1, this.repository.archive());
+        assertEquals(1, this.archive.getArchivedCount());
+        assertTrue(this.archive.getArchivedBytes() > 0);
+        assertTrue(this.archive.contains(OfferIds.parse(accepted)));
+        assertEquals(0, this.archive.getPendingCount());
+
+        // Rebuilt once the archived instance is gone, with the same history and indexes
+        System.gc();
+        final Offer restored = this.offerService.getOffer(accepted);
+        assertEquals(history.size(), restored.getOfferHistory().size());
+        for (int version = 1; version <= history.size(); version++) {
+            final OfferHistory before = history.get(version - 1);
+            final OfferHistory after = restored.getOfferHistory(version);
+            assertEquals(before.getOfferAction(), after.getOfferAction());
+            assertEquals(before.getOfferState(), after.getOfferState());
+            assertEquals(before.getOfferUserId(), after.getOfferUserId());
+            assertEquals(before.getOfferDetails().getProductPrice(), after.getOfferDetails().getProductPrice());
+            assertEquals(before.getPrivateData(), after.getPrivateData());
+        }
+        assertSame(restored, this.offerService.getOffer(accepted));
+        assertEquals(rows.size(), new DashboardService(this.offerService).getHistory("123").size());
+        assertEquals(List.of(accepted), this.offerService.findOfferIdsByState(OfferState.ACCEPTED));
+        assertEquals(List.of(accepted, open), this.repository.findOfferIds("456"));
+        assertEquals(OfferState.AWAITING_SELLER_ACCEPTANCE, this.offerService.getOffer(open).getCurrentState());
+    }
+
+    @Test
+    void privateDataUpdatesFaultArchivedOffersBackIn() {
+        final String offerId = this.offerService.submit("123", "456", OfferDetails.of("Test", 5, 50));
+        this.offerService.cancel("123", offerId);
+        this.clock.advance(Duration.ofHours(1));
+        assertEquals(1, this.repository.archive());
+
+        this.offerService.updatePrivateData("456", offerId, Map.of("reason", "price"));
+        assertEquals(0, this.archive.getArchivedCount());
+        assertEquals(0, this.archive.getArchivedBytes());
+        assertEquals(1, this.archive.getPendingCount());
+        final Offer offer = this.offerService.getOffer(offerId);
+        assertEquals(3, offer.getVersion());
+        assertEquals(Map.of("reason", "price"), offer.getLastOfferHistory().getPrivateData());
+
+        // The update restarted the delay
+        this.clock.advance(Duration.ofMinutes(30));
+        assertEquals(0, this.repository.archive());
+        this.clock.advance(Duration.ofMinutes(30));
+        assertEquals(1, this.repository.archive());
+        this.offerService.updatePrivateData("456", offerId, Map.of("reason", "quantity"));
+        assertSame(offer, this.offerService.getOffer(offerId));
+        assertEquals(4, offer.getVersion());
+    }
+
+    @Test
+    void activeOfferIdsAreFoundWithoutLoadingArchivedOffers() {
+        final AtomicInteger finds = new AtomicInteger();
+        final InMemoryOfferRepository repository = new InMemoryOfferRepository(OfferHistoryListener.NONE,
+                this.archive) {
+            @Override
+            public Offer find(final String offerId) {
+                finds.incrementAndGet();
+                return super.find(offerId);
+            }
+        };
+        final OfferService offerService = new OfferService(repository);
+        final String cancelled = offerService.submit("123", "456", OfferDetails.of("Test", 5, 50));
+        offerService.cancel("123", cancelled);
+        final String open = offerService.submit("789", "456", OfferDetails.of("Other", 1, 10));
+        this.clock.advance(Duration.ofHours(1));
+        assertEquals(1, repository.archive());
+
+        finds.set(0);
+        assertEquals(List.of(open), offerService.getActiveOfferIds("456"));
+        assertEquals(List.of(), offerService.getActiveOfferIds("123"));
+        assertEquals(0, finds.get());
+    }
+}
@@ -0,0 +1,170 @@
+package workflow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import workflow.exceptions.InvalidOfferException;
+import workflow.servicesapiimpl.OfferService;
+
+public class OfferChangeFeedTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void changesOfEachOfferArriveInVersionOrder() throws Exception {
+        try (OfferChangeFeed feed = new OfferChangeFeed()) {
+            final OfferService offerService = new OfferService(new InMemoryOfferRepository(feed));
+            final Queue<OfferChange> received = new ConcurrentLinkedQueue<>();
+            final CountDownLatch delivered = new CountDownLatch(16 * 41);
+            feed.subscribe(change -> {
+                received.add(change);
+                delivered.countDown();
+            });
+
+            final ExecutorService executor = Executors.newFixedThreadPool(4);
+            try {
+                final List<Future<?>> futures = new ArrayList<>();
+                for (int i = 0; i < 16; i++) {
+                    final String buyer = "buyer-" + i;
+                    final String seller = "seller-" + i;
+                    futures.add(executor.submit(() -> {
+                        final String offerId = offerService.submit(buyer, seller, OfferDetails.of("Test", 5, 50));
+                        for (int round = 0; round < 20; round++) {
+                            offerService.proposeUpdate(seller, offerId, OfferDetails.of("Test", 5, 60 + round));
+                            offerService.proposeUpdate(buyer, offerId, OfferDetails.of("Test", 5, 50 + round));
+                        }
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } finally {
+                executor.shutdown();
+            }
+            assertTrue(delivered.await(10, TimeUnit.SECONDS));
+
+            final Map<String, Integer> lastVersions = new HashMap<>();
+            for (OfferChange change : received) {
+                assertEquals(lastVersions.getOrDefault(change.getOfferId(), 0) + 1, change.getVersion());
+                lastVersions.put(change.getOfferId(), change.getVersion());
+                final Offer offer = offerService.getOffer(change.getOfferId());
+                assertEquals(offer.getOfferHistory(change.getVersion()).getOfferDetails().getProductPrice(),
+                        change.getOfferHistory().getOfferDetails().getProductPrice());
+            }
+            assertEquals(16, lastVersions.size());
+        }
+    }
+
+    @Test
+    void subscriptionsAreFilteredByUserAndOffer() throws Exception {
+        try (OfferChangeFeed feed = new OfferChangeFeed()) {
+            final OfferService offerService = new OfferService(new InMemoryOfferRepository(feed));
+            final String first = offerService.submit("123", "456", OfferDetails.of("Test", 5, 50));
+            final String second = offerService.submit("789", "456", OfferDetails.of("Other", 1, 10));
+            final Queue<OfferChange> ofBuyer = new ConcurrentLinkedQueue<>();
+            final Queue<OfferChange> ofSecond = new ConcurrentLinkedQueue<>();
+            final CountDownLatch delivered = new CountDownLatch(4);
+            feed.subscribeToUser("123", change -> {
+                ofBuyer.add(change);
+                delivered.countDown();
+            });
+            final OfferChangeFeed.Subscription subscription = feed.subscribeToOffer(second, change -> {
+                ofSecond.add(change);
+                delivered.countDown();
+            });
+
+            offerService.proposeUpdate("456", first, OfferDetails.of("Test", 5, 55));
+            offerService.proposeUpdate("456", second, OfferDetails.of("Other", 1, 12));
+            offerService.updatePrivateData("123", first, Map.of("note", "a"));
+            offerService.accept("789", second);
+            assertTrue(delivered.await(10, TimeUnit.SECONDS));
+
+            assertEquals(List.of(Action.PROPOSE_UPDATE, Action.UPDATE_PRIVATE_DATA),
+                    ofBuyer.stream().map(change -> change.getOfferHistory().getOfferAction()).toList());
+            assertEquals(List.of(2, 3), ofBuyer.stream().map(OfferChange::getVersion).toList());
+            assertEquals(List.of(Action.PROPOSE_UPDATE, Action.ACCEPT),
+                    ofSecond.stream().map(change -> change.getOfferHistory().getOfferAction()).toList());
+            assertEquals("789", ofSecond.peek().getBuyerUserId());
+
+            subscription.cancel();
+            offerService.cancel("123", first);
+            assertTrue(subscription.isCancelled());
+            assertThrows(InvalidOfferException.class, () -> feed.subscribeToOffer("unknown", change -> { }));
+        }
+    }
+
+    @Test
+    void aSlowSubscriberDoesNotStallTransitions() throws Exception {
+        try (OfferChangeFeed feed = new OfferChangeFeed(4, Executors.newVirtualThreadPerTaskExecutor())) {
+            final OfferService offerService = new OfferService(new InMemoryOfferRepository(feed));
+            final CountDownLatch release = new CountDownLatch(1);
+            final Queue<Integer> versions = new ConcurrentLinkedQueue<>();
+            final OfferChangeFeed.Subscription subscription = feed.subscribe(change -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                versions.add(change.getVersion());
+            });
+
+            final String offerId = offerService.submit("123", "456", OfferDetails.of("Test", 5, 50));
+            for (int i = 1; i < 100; i++) {
+                offerService.proposeUpdate(i % 2 == 1 ? "456" : "123", offerId, OfferDetails.of("Test", 5, 50 + i));
+            }
+            assertEquals(100, offerService.getOffer(offerId).getVersion());
+            assertTrue(subscription.getDroppedCount() >= 95);
+            release.countDown();
+
+            final long expected = 100 - subscription.getDroppedCount();
+            for (int wait = 0; wait < 1_000 && versions.size() < expected; wait++) {
+                Thread.sleep(10);
+            }
+            assertEquals(expected, versions.size());
+            assertEquals(0, subscription.getBacklog());
+            // Whatever was kept still arrives in version order
+            assertEquals(versions.stream().sorted().toList(), new ArrayList<>(versions));
+        }
+    }
+
+    @Test
+    void recoveredOffersPublishTheirChanges() throws Exception {
+        final Path file = this.directory.resolve("offers.data");
+        final String offerId;
+        try (DiskOfferRepository repository = DiskOfferRepository.open(file)) {
+            offerId = new OfferService(repository).submit("123", "456", OfferDetails.of("Test", 5, 50));
+        }
+        try (OfferChangeFeed feed = new OfferChangeFeed();
+                DiskOfferRepository repository = DiskOfferRepository.open(file, 0, feed)) {
+            final Queue<OfferChange> received = new ConcurrentLinkedQueue<>();
+            final CountDownLatch delivered = new CountDownLatch(1);
+            feed.subscribeToOffer(offerId, change -> {
+                received.add(change);
+                delivered.countDown();
+            });
+
+            new OfferService(repository).accept("456", offerId);
+            assertTrue(delivered.await(10, TimeUnit.SECONDS));
+            assertEquals(2, received.peek().getVersion());
+            assertEquals(Action.ACCEPT, received.peek().getOfferHistory().getOfferAction());
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package workflow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import workflow.Offer.OfferHistory;
+import workflow.servicesapiimpl.OfferService;
+
+public class OfferCodecTest {
+
+    private static final String[] WORDS = { "Test", "Other", "Gr\u00fc\u00dfe", "\u4fa1\u683c", "emoji \ud83d\ude00", "", "note" };
+
+    private final Random random = new Random(42);
+
+    @Test
+    void randomValuesSurviveARoundTripInOneStream() {
+        for (boolean direct : new boolean[] { false, true }) {
+            final ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(1 << 20) : ByteBuffer.allocate(1 << 20);
+            final OfferCodec.Encoder encoder = new OfferCodec.Encoder();
+            final List<Object> values = new ArrayList<>();
+            for (int i = 0; i < 500; i++) {
+                final Object value = switch (this.random.nextInt(4)) {
+                    case 0 -> randomDetails();
+                    case 1 -> randomHistory();
+                    case 2 -> randomOffer();
+                    default -> randomRow();
+                };
+                values.add(value);
+                switch (value) {
+                    case OfferDetails offerDetails -> encoder.encode(buffer, offerDetails);
+                    case OfferHistory offerHistory -> encoder.encode(buffer, offerHistory);
+                    case Offer offer -> encoder.encode(buffer, offer);
+                    default -> encoder.encode(buffer, (DashboardRow) value);
+                }
+            }
+            buffer.flip();
+
+            final OfferCodec.Decoder decoder = new OfferCodec.Decoder();
+            for (Object value : values) {
+                switch (value) {
+                    case OfferDetails offerDetails -> assertDetails(offerDetails, decoder.decodeOfferDetails(buffer));
+                    case OfferHistory offerHistory -> assertHistory(offerHistory, decoder.decodeOfferHistory(buffer));
+                    case Offer offer -> assertOffer(offer, decoder.decodeOffer(buffer));
+                    default -> assertRow((DashboardRow) value, decoder.decodeDashboardRow(buffer));
+                }
+            }
+            assertEquals(0, buffer.remaining());
+        }
+    }
+
+    @Test
+    void repeatedStringsAreWrittenOnceAndDecodedAsOneInstance() {
+        final ByteBuffer buffer = ByteBuffer.allocate(1024);
+        final OfferCodec.Encoder encoder = new OfferCodec.Encoder();
+        final DashboardRow row = DashboardRow.of(7, Action.PROPOSE_UPDATE, "buyer-123", OfferState.AWAITING_SELLER_ACCEPTANCE,
+                "Product", "buyer-123", "seller-456", 5, 12.5);
+        encoder.encode(buffer, row);
+        final int first = buffer.position();
+        encoder.encode(buffer, row);
+        // Header, version, action and state, four string indexes and the price in cents
+        assertEquals(1 + 1 + 1 + 4 + 3, buffer.position() - first);
+        assertTrue(first > 2 * (buffer.position() - first));
+
+        buffer.flip();
+        final OfferCodec.Decoder decoder = new OfferCodec.Decoder();
+        final DashboardRow decoded = decoder.decodeDashboardRow(buffer);
+        assertRow(row, decoded);
+        assertSame(decoded.getProductName(), decoder.decodeDashboardRow(buffer).getProductName());
+    }
+
+    @Test
+    void privateDataSetToNullIsToldApartFromRemoved() {
+        final OfferService offerService = new OfferService();
+        final String offerId = offerService.submit("123", "456", OfferDetails.of("Test", 5, 50));
+        final Map<String, String> privateData = new HashMap<>();
+        privateData.put("reference", "a");
+        privateData.put("note", null);
+        offerService.updatePrivateData("123", offerId, privateData);
+        privateData.remove("note");
+        privateData.put("reference", null);
+        offerService.updatePrivateData("123", offerId, privateData);
+        offerService.updatePrivateData("123", offerId, Map.of());
+        final Offer offer = offerService.getOffer(offerId);
+
+        final ByteBuffer buffer = ByteBuffer.allocate(1024);
+        new OfferCodec.Encoder().encode(buffer, offer);
+        final Offer decoded = new OfferCodec.Decoder().decodeOffer(buffer.flip());
+        assertOffer(offer, decoded);
+        assertTrue(decoded.getOfferHistory(2).getPrivateData().containsKey("note"));
+        assertTrue(decoded.getOfferHistory(3).getPrivateData().containsKey("reference"));
+        assertEquals(Map.of(), decoded.getOfferHistory(4).getPrivateData());
+    }
+
+    @Test
+    void failedCallsLeaveTheBufferAndDictionaryUnchanged() {
+        final Offer offer = randomOffer();
+        final OfferCodec.Encoder encoder = new OfferCodec.Encoder();
+        final ByteBuffer small = ByteBuffer.allocate(24);
+        assertThrows(BufferOverflowException.class, () -> encoder.encode(small, offer));
+        assertEquals(0, small.position());
+        final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        encoder.encode(buffer, offer);
+        final int length = buffer.position();
+
+        // Decoding half of the bytes fails without consuming any, then succeeds with all of them
+        final OfferCodec.Decoder decoder = new OfferCodec.Decoder();
+        buffer.flip().limit(length / 2);
+        assertThrows(BufferUnderflowException.class, () -> decoder.decodeOffer(buffer));
+        assertEquals(0, buffer.position());
+        buffer.limit(length);
+        assertOffer(offer, decoder.decodeOffer(buffer));
+
+        buffer.flip();
+        assertThrows(IllegalArgumentException.class, () -> new OfferCodec.Decoder().decodeDashboardRow(buffer));
+        assertEquals(0, buffer.position());
+        buffer.put(0, (byte) ((OfferCodec.FORMAT_VERSION + 1) << 4 | buffer.get(0) & 0x0F));
+        assertThrows(IllegalArgumentException.class, () -> new OfferCodec.Decoder().decodeOffer(buffer));
+    }
+
+    private OfferDetails randomDetails() {
+        final double price = switch (this.random.nextInt(4)) {
+            case 0 -> this.random.nextInt(100_000) / 100.0;
+            case 1 -> this.random.nextDouble() * 1e6;
+            case 2 -> -this.random.nextInt(1000);
+            default -> new double[] { 0.0, -0.0, Double.NaN, Double.MAX_VALUE, Double.MIN_VALUE, 1e20 }[this.random.nextInt(6)];
+        };
+        return OfferDetails.of(randomWord(), this.random.nextInt() >> this.random.nextInt(32), price);
+    }
+
+    private OfferHistory randomHistory() {
+        final Map<String, String> privateData = new HashMap<>();
+        for (int i = this.random.nextInt(4); i > 0; i--) {
+            privateData.put(randomWord() + i, randomWord());
+        }
+        return new OfferHistory(randomDetails(), OfferState.values()[this.random.nextInt(OfferState.values().length)],
+                Action.values()[this.random.nextInt(Action.values().length)], randomWord(),
+                PersistentHashMap.<String, String>empty().withContentsOf(privateData));
+    }
+
+    private Offer randomOffer() {
+        final OfferService offerService = new OfferService();
+        final String buyer = "buyer-" + this.random.nextInt(10);
+        final String seller = "seller-" + this.random.nextInt(10);
+        final String offerId = offerService.submit(buyer, seller, OfferDetails.of(randomWord() + "!", 5, 50));
+        final int rounds = this.random.nextInt(20);
+        for (int round = 0; round < rounds; round++) {
+            final String user = round % 2 == 0 ? seller : buyer;
+            if (this.random.nextInt(3) == 0) {
+                offerService.updatePrivateData(user, offerId, switch (this.random.nextInt(3)) {
+                    case 0 -> Map.of(randomWord(), randomWord());
+                    // Values may be null, which is not the same as the key being absent
+                    case 1 -> Collections.singletonMap(randomWord(), null);
+                    default -> Map.of();
+                });
+            }
+            offerService.proposeUpdate(user, offerId, this.random.nextBoolean()
+                    ? OfferDetails.of(randomWord() + "!", 1 + this.random.nextInt(100), this.random.nextInt(100_000) / 100.0)
+                    : offerService.getOffer(offerId).getLastOfferHistory().getOfferDetails());
+        }
+        if (this.random.nextBoolean()) {
+            offerService.cancel(buyer, offerId);
+        }
+        return offerService.getOffer(offerId);
+    }
+
+    private DashboardRow randomRow() {
+        final OfferDetails offerDetails = randomDetails();
+        return DashboardRow.of(this.random.nextInt(1000), Action.values()[this.random.nextInt(Action.values().length)],
+                randomWord(), OfferState.values()[this.random.nextInt(OfferState.values().length)],
+                offerDetails.getProductName(), "buyer-" + this.random.nextInt(10), "seller-" + this.random.nextInt(10),
+                offerDetails.getProductQuantity(), offerDetails.getProductPrice());
+    }
+
+    private String randomWord() {
+        return this.random.nextInt(4) == 0 ? "word-" + this.random.nextInt(1000) : WORDS[this.random.nextInt(WORDS.length)];
+    }
+
+    private static void assertDetails(final OfferDetails expected, final OfferDetails actual) {
+        assertEquals(expected.getProductName(), actual.getProductName());
+        assertEquals(expected.getProductQuantity(), actual.getProductQuantity());
+        assertEquals(Double.doubleToRawLongBits(expected.getProductPrice()),
+                Double.doubleToRawLongBits(actual.getProductPrice()));
+    }
+
+    private static void assertHistory(final OfferHistory expected, final OfferHistory actual) {
+        assertDetails(expected.getOfferDetails(), actual.getOfferDetails());
+        assertEquals(expected.getOfferState(), actual.getOfferState());
+        assertEquals(expected.getOfferAction(), actual.getOfferAction());
+        assertEquals(expected.getOfferUserId(), actual.getOfferUserId());
+        assertEquals(expected.getPrivateData(), actual.getPrivateData());
+    }
+
+    private static void assertOffer(final Offer expected, final Offer actual) {
+        assertEquals(expected.getOfferId(), actual.getOfferId());
+        assertEquals(expected.getBuyerUserId(), actual.getBuyerUserId());
+        assertEquals(expected.getSellerUserId(), actual.getSellerUserId());
+        assertEquals(expected.getCurrentState(), actual.getCurrentState());
+        assertEquals(expected.getVersion(), actual.getVersion());
+        for (int version = 1; version <= expected.getVersion(); version++) {
+            assertHistory(expected.getOfferHistory(version), actual.getOfferHistory(version));
+        }
+    }
+
+    private static void assertRow(final DashboardRow expected, final DashboardRow actual) {
+        assertEquals(expected.getVersion(), actual.getVersion());
+        assertEquals(expected.getAction(), actual.getAction());
+        assertEquals(expected.getUserId(), actual.getUserId());
+        assertEquals(expected.getState(), actual.getState());
+        assertEquals(expected.getProductName(), actual.getProductName());
+        assertEquals(expected.getBuyerUserId(), actual.getBuyerUserId());
+        assertEquals(expected.getSellerUserId(), actual.getSellerUserId());
+        assertEquals(Double.doubleToRawLongBits(expected.getTotalPrice()),
+                Double.doubleToRawLongBits(actual.getTotalPrice()));
+    }
+}
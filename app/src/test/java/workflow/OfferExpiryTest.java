@@ -0,0 +1,97 @@
+package workflow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import workflow.Offer.OfferHistory;
+import workflow.servicesapiimpl.OfferService;
+
+public class OfferExpiryTest {
+
+    @TempDir
+    Path directory;
+
+    private final ManualClock clock = new ManualClock();
+
+    @Test
+    void offersAreCancelledBySystemAfterTheirStateTimeToLive() {
+        final OfferExpiry expiry = new OfferExpiry(Map.of(
+                OfferState.AWAITING_SELLER_ACCEPTANCE, Duration.ofMinutes(10),
+                OfferState.AWAITING_BUYER_ACCEPTANCE, Duration.ofHours(1)), Duration.ofSeconds(1), this.clock);
+        final InMemoryOfferRepository repository = new InMemoryOfferRepository(expiry);
+        final OfferService offerService = new OfferService(repository);
+        final String idle = offerService.submit("123", "456", OfferDetails.of("Test", 5, 50));
+        final String countered = offerService.submit("789", "456", OfferDetails.of("Test", 5, 50));
+        final String accepted = offerService.submit("789", "456", OfferDetails.of("Other", 1, 10));
+        assertEquals(3, expiry.getPendingCount());
+
+        this.clock.advance(Duration.ofMinutes(5));
+        offerService.proposeUpdate("456", countered, OfferDetails.of("Test", 5, 60));
+        offerService.accept("456", accepted);
+        // Private data updates keep the deadline of the state
+        offerService.updatePrivateData("123", idle, Map.of("note", "a"));
+        assertEquals(2, expiry.getPendingCount());
+
+        this.clock.advance(Duration.ofMinutes(5).minusSeconds(1));
+        assertEquals(0, expiry.expire(repository));
+        this.clock.advance(Duration.ofSeconds(1));
+        assertEquals(1, expiry.expire(repository));
+
+        final OfferHistory cancellation = offerService.getOffer(idle).getLastOfferHistory();
+        assertEquals(OfferState.CANCELLED, cancellation.getOfferState());
+        assertEquals(Action.CANCEL, cancellation.getOfferAction());
+        assertEquals(Offer.SYSTEM_USER_ID, cancellation.getOfferUserId());
+        assertEquals(Map.of("note", "a"), cancellation.getPrivateData());
+        assertEquals(OfferState.AWAITING_BUYER_ACCEPTANCE, offerService.getOffer(countered).getCurrentState());
+        assertEquals(OfferState.ACCEPTED, offerService.getOffer(accepted).getCurrentState());
+        assertEquals(List.of(idle), offerService.findOfferIdsByState(OfferState.CANCELLED));
+
+        this.clock.advance(Duration.ofHours(1));
+        assertEquals(1, expiry.expire(repository));
+        assertEquals(OfferState.CANCELLED, offerService.getOffer(countered).getCurrentState());
+        assertEquals(0, expiry.getPendingCount());
+        assertEquals(0, expiry.expire(repository));
+    }
+
+    @Test
+    void recoveredOffersAreTrackedFromRestart() throws Exception {
+        final Path file = this.directory.resolve("offers.data");
+        final String pending;
+        final String withdrawn;
+        try (DiskOfferRepository repository = DiskOfferRepository.open(file)) {
+            final OfferService offerService = new OfferService(repository);
+            pending = offerService.submit("123", "456", OfferDetails.of("Test", 5, 50));
+            withdrawn = offerService.submit("789", "456", OfferDetails.of("Other", 1, 10));
+            offerService.withdraw("789", withdrawn);
+        }
+
+        final OfferExpiry expiry = new OfferExpiry(Map.of(OfferState.WITHDRAWN_BY_BUYER, Duration.ofDays(1)),
+                Duration.ofMinutes(1), this.clock);
+        try (DiskOfferRepository repository = DiskOfferRepository.open(file, 0, expiry)) {
+            assertEquals(1, expiry.trackAll(repository));
+            this.clock.advance(Duration.ofDays(1));
+            assertEquals(1, expiry.expire(repository));
+            assertEquals(OfferState.CANCELLED, repository.find(withdrawn).getCurrentState());
+            assertEquals(OfferState.AWAITING_SELLER_ACCEPTANCE, repository.find(pending).getCurrentState());
+        }
+        try (DiskOfferRepository repository = DiskOfferRepository.open(file)) {
+            assertEquals(Offer.SYSTEM_USER_ID, repository.find(withdrawn).getLastOfferHistory().getOfferUserId());
+        }
+    }
+
+    @Test
+    void terminalStatesCannotExpire() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new OfferExpiry(Map.of(OfferState.ACCEPTED, Duration.ofDays(1))));
+        assertThrows(IllegalArgumentException.class,
+                () -> new OfferExpiry(Map.of(OfferState.AWAITING_BUYER_ACCEPTANCE, Duration.ZERO)));
+    }
+}
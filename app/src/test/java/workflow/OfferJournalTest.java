@@ -0,0 +1,279 @@
+package workflow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import workflow.Offer.OfferHistory;
+import workflow.servicesapiimpl.OfferService;
+
+public class OfferJournalTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void restartRecoversOffersHistoryAndIndexes() throws IOException {
+        final String firstOfferId;
+        final String secondOfferId;
+        try (OfferJournal journal = OfferJournal.open(directory)) {
+            final OfferService offerService = new OfferService(journal);
+            firstOfferId = offerService.submit("123", "456", OfferDetails.of("Test", 5, 50));
+            secondOfferId = offerService.submit("789", "456", OfferDetails.of("Other", 1, 10));
+            offerService.updatePrivateData("123", firstOfferId, Map.of("reference", "a", "note", "b"));
+            offerService.proposeUpdate("456", firstOfferId, OfferDetails.of("Test", 5, 60));
+            offerService.updatePrivateData("456", firstOfferId, Map.of("reference", "c"));
+            offerService.accept("123", firstOfferId);
+            offerService.withdraw("789", secondOfferId);
+        }
+
+        final OfferService expected = new OfferService();
+        final String expectedFirst = expected.submit("123", "456", OfferDetails.of("Test", 5, 50));
+        expected.updatePrivateData("123", expectedFirst, Map.of("reference", "a", "note", "b"));
+        expected.proposeUpdate("456", expectedFirst, OfferDetails.of("Test", 5, 60));
+        expected.updatePrivateData("456", expectedFirst, Map.of("reference", "c"));
+        expected.accept("123", expectedFirst);
+
+        try (OfferJournal journal = OfferJournal.open(directory)) {
+            final OfferService offerService = new OfferService(journal);
+            assertSameHistory(expected.getOffer(expectedFirst), offerService.getOffer(firstOfferId));
+            assertEquals(OfferState.WITHDRAWN_BY_BUYER, offerService.getOffer(secondOfferId).getCurrentState());
+            assertEquals(List.of(secondOfferId), offerService.getActiveOfferIds("456"));
+            assertEquals(List.of(), offerService.getActiveOfferIds("123"));
+
+            assertEquals(List.of(firstOfferId), offerService.findOfferIdsByState(OfferState.ACCEPTED));
+            assertEquals(List.of(secondOfferId), offerService.findOfferIdsByBuyer("789", OfferState.WITHDRAWN_BY_BUYER));
+
+            // Recovered offers keep journaling their new entries and stay indexed
+            offerService.proposeUpdate("789", secondOfferId, OfferDetails.of("Other", 2, 10));
+            assertEquals(List.of(secondOfferId),
+                    offerService.findOfferIdsBySeller("456", OfferState.AWAITING_SELLER_ACCEPTANCE));
+            assertEquals(List.of(), offerService.findOfferIdsByState(OfferState.WITHDRAWN_BY_BUYER));
+        }
+
+        try (OfferJournal journal = OfferJournal.open(directory)) {
+            final Offer offer = new OfferService(journal).getOffer(secondOfferId);
+            assertEquals(3, offer.getVersion());
+            assertEquals(OfferState.AWAITING_SELLER_ACCEPTANCE, offer.getCurrentState());
+            assertEquals(2, offer.getLastOfferHistory().getOfferDetails().getProductQuantity());
+        }
+    }
+
+    @Test
+    void tornRecordAtTheEndIsTruncated() throws IOException {
+        final String offerId;
+        try (OfferJournal journal = OfferJournal.open(directory)) {
+            final OfferService offerService = new OfferService(journal);
+            offerId = offerService.submit("123", "456", OfferDetails.of("Test", 5, 50));
+            offerService.proposeUpdate("456", offerId, OfferDetails.of("Test", 5, 60));
+        }
+        final Path segment = segments().get(0);
+        final long intactSize = Files.size(segment);
+        // A record header that promises more bytes than were written
+        Files.write(segment, new byte[] { 0, 0, 0, 100, 1, 2, 3, 4, 5 }, StandardOpenOption.APPEND);
+
+        try (OfferJournal journal = OfferJournal.open(directory)) {
+            assertEquals(intactSize, Files.size(segment));
+            final OfferService offerService = new OfferService(journal);
+            assertEquals(2, offerService.getOffer(offerId).getVersion());
+            offerService.accept("123", offerId);
+        }
+
+        try (OfferJournal journal = OfferJournal.open(directory)) {
+            assertEquals(OfferState.ACCEPTED, new OfferService(journal).getOffer(offerId).getCurrentState());
+        }
+    }
+
+    @Test
+    void corruptRecordBeforeTheEndFailsRecoveryWithoutTruncating() throws IOException {
+        try (OfferJournal journal = OfferJournal.open(directory)) {
+            final OfferService offerService = new OfferService(journal);
+            final String offerId = offerService.submit("123", "456", OfferDetails.of("Test", 5, 50));
+            offerService.proposeUpdate("456", offerId, OfferDetails.of("Test", 5, 60));
+        }
+        final Path segment = segments().get(0);
+        final byte[] bytes = Files.readAllBytes(segment);
+        // A byte of the body of the first record, which the second record follows
+        bytes[20] ^= 1;
+        Files.write(segment, bytes);
+
+        assertThrows(IOException.class, () -> OfferJournal.open(directory));
+        assertEquals(bytes.length, Files.size(segment));
+    }
+
+    @Test
+    void concurrentWritersAcrossSegmentsAreRecovered() throws Exception {
+        final List<String> offerIds = new ArrayList<>();
+        try (OfferJournal journal = OfferJournal.open(directory, 1024)) {
+            final OfferService offerService = new OfferService(journal);
+            for (int i = 0; i < 16; i++) {
+                offerIds.add(offerService.submit("buyer-" + i, "seller-" + i, OfferDetails.of("Test", 5, 50)));
+            }
+            final ExecutorService executor = Executors.newFixedThreadPool(8);
+            try {
+                final List<Future<?>> futures = new ArrayList<>();
+                for (int i = 0; i < offerIds.size(); i++) {
+                    final int offer = i;
+                    futures.add(executor.submit(() -> {
+                        for (int round = 0; round < 10; round++) {
+                            offerService.proposeUpdate("seller-" + offer, offerIds.get(offer), OfferDetails.of("Test", 5, 60 + round));
+                            offerService.proposeUpdate("buyer-" + offer, offerIds.get(offer), OfferDetails.of("Test", 5, 50 + round));
+                        }
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } finally {
+                executor.shutdown();
+            }
+        }
+
+        assertTrue(segments().size() > 1);
+        try (OfferJournal journal = OfferJournal.open(directory, 1024)) {
+            final OfferService offerService = new OfferService(journal);
+            for (String offerId : offerIds) {
+                final Offer offer = offerService.getOffer(offerId);
+                assertEquals(21, offer.getVersion());
+                assertEquals(59.0, offer.getLastOfferHistory().getOfferDetails().getProductPrice());
+            }
+        }
+    }
+
+    @Test
+    void checkpointRestoresOffersAndReplaysOnlyTheTail() throws IOException {
+        final String firstOfferId;
+        final String secondOfferId;
+        try (OfferJournal journal = OfferJournal.open(directory)) {
+            final OfferService offerService = new OfferService(journal);
+            firstOfferId = offerService.submit("123", "456", OfferDetails.of("Test", 5, 50));
+            secondOfferId = offerService.submit("789", "456", OfferDetails.of("Other", 1, 10));
+            offerService.updatePrivateData("123", firstOfferId, Map.of("reference", "a", "note", "b"));
+            offerService.proposeUpdate("456", firstOfferId, OfferDetails.of("Test", 5, 60));
+            journal.checkpoint();
+
+            offerService.updatePrivateData("456", firstOfferId, Map.of("reference", "c"));
+            offerService.accept("123", firstOfferId);
+            offerService.withdraw("789", secondOfferId);
+        }
+
+        // Only the segment written after the checkpoint is kept next to the snapshot
+        assertEquals(List.of("segment-0000000001.journal", "snapshot-0000000001.snapshot"),
+                segments().stream().map(path -> path.getFileName().toString()).toList());
+
+        final OfferService expected = new OfferService();
+        final String expectedFirst = expected.submit("123", "456", OfferDetails.of("Test", 5, 50));
+        expected.updatePrivateData("123", expectedFirst, Map.of("reference", "a", "note", "b"));
+        expected.proposeUpdate("456", expectedFirst, OfferDetails.of("Test", 5, 60));
+        expected.updatePrivateData("456", expectedFirst, Map.of("reference", "c"));
+        expected.accept("123", expectedFirst);
+
+        try (OfferJournal journal = OfferJournal.open(directory)) {
+            final OfferService offerService = new OfferService(journal);
+            assertSameHistory(expected.getOffer(expectedFirst), offerService.getOffer(firstOfferId));
+            assertEquals(OfferState.WITHDRAWN_BY_BUYER, offerService.getOffer(secondOfferId).getCurrentState());
+            assertEquals(List.of(secondOfferId), offerService.getActiveOfferIds("456"));
+            assertEquals(List.of(), offerService.getActiveOfferIds("123"));
+
+            // A second checkpoint covers the offers restored from the first one
+            journal.checkpoint();
+            offerService.proposeUpdate("789", secondOfferId, OfferDetails.of("Other", 2, 10));
+        }
+
+        try (OfferJournal journal = OfferJournal.open(directory)) {
+            final OfferService offerService = new OfferService(journal);
+            assertSameHistory(expected.getOffer(expectedFirst), offerService.getOffer(firstOfferId));
+            final Offer offer = offerService.getOffer(secondOfferId);
+            assertEquals(3, offer.getVersion());
+            assertEquals(OfferState.AWAITING_SELLER_ACCEPTANCE, offer.getCurrentState());
+            assertEquals(2, offer.getLastOfferHistory().getOfferDetails().getProductQuantity());
+        }
+    }
+
+    @Test
+    void checkpointWhileWritersRunLosesNoEntry() throws Exception {
+        final List<String> offerIds = new ArrayList<>();
+        try (OfferJournal journal = OfferJournal.open(directory, 1024)) {
+            final OfferService offerService = new OfferService(journal);
+            for (int i = 0; i < 16; i++) {
+                offerIds.add(offerService.submit("buyer-" + i, "seller-" + i, OfferDetails.of("Test", 5, 50)));
+            }
+            final ExecutorService executor = Executors.newFixedThreadPool(8);
+            try {
+                final List<Future<?>> futures = new ArrayList<>();
+                for (int i = 0; i < offerIds.size(); i++) {
+                    final int offer = i;
+                    futures.add(executor.submit(() -> {
+                        for (int round = 0; round < 50; round++) {
+                            offerService.proposeUpdate("seller-" + offer, offerIds.get(offer), OfferDetails.of("Test", 5, 60 + round));
+                            offerService.updatePrivateData("buyer-" + offer, offerIds.get(offer), Map.of("round", Integer.toString(round)));
+                            offerService.proposeUpdate("buyer-" + offer, offerIds.get(offer), OfferDetails.of("Test", 5, 50 + round));
+                        }
+                    }));
+                }
+                for (int i = 0; i < 5; i++) {
+                    journal.checkpoint();
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } finally {
+                executor.shutdown();
+            }
+        }
+
+        try (OfferJournal journal = OfferJournal.open(directory, 1024)) {
+            final OfferService offerService = new OfferService(journal);
+            for (String offerId : offerIds) {
+                final Offer offer = offerService.getOffer(offerId);
+                assertEquals(151, offer.getVersion());
+                assertEquals(99.0, offer.getLastOfferHistory().getOfferDetails().getProductPrice());
+                assertEquals(Map.of("round", "49"), offer.getLastOfferHistory().getPrivateData());
+                // Each round proposes, updates private data and proposes again, with no entry missing
+                for (int version = 2; version <= offer.getVersion(); version++) {
+                    assertEquals(version % 3 == 0 ? Action.UPDATE_PRIVATE_DATA : Action.PROPOSE_UPDATE,
+                            offer.getOfferHistory(version).getOfferAction());
+                }
+            }
+        }
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().toList();
+        }
+    }
+
+    private static void assertSameHistory(final Offer expected, final Offer actual) {
+        assertEquals(expected.getCurrentState(), actual.getCurrentState());
+        assertEquals(expected.getBuyerUserId(), actual.getBuyerUserId());
+        assertEquals(expected.getSellerUserId(), actual.getSellerUserId());
+        assertEquals(expected.getVersion(), actual.getVersion());
+        for (int version = 1; version <= expected.getVersion(); version++) {
+            final OfferHistory expectedEntry = expected.getOfferHistory(version);
+            final OfferHistory actualEntry = actual.getOfferHistory(version);
+            assertEquals(expectedEntry.getOfferAction(), actualEntry.getOfferAction());
+            assertEquals(expectedEntry.getOfferState(), actualEntry.getOfferState());
+            assertEquals(expectedEntry.getOfferUserId(), actualEntry.getOfferUserId());
+            assertEquals(expectedEntry.getPrivateData(), actualEntry.getPrivateData());
+            assertEquals(expectedEntry.getOfferDetails().getProductName(), actualEntry.getOfferDetails().getProductName());
+            assertEquals(expectedEntry.getOfferDetails().getProductQuantity(), actualEntry.getOfferDetails().getProductQuantity());
+            assertEquals(expectedEntry.getOfferDetails().getProductPrice(), actualEntry.getOfferDetails().getProductPrice());
+        }
+    }
+}
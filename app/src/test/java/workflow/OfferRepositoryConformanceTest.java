@@ -0,0 +1,204 @@
+package workflow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+import workflow.Offer.OfferHistory;
+import workflow.exceptions.InvalidOfferException;
+import workflow.servicesapiimpl.DashboardService;
+import workflow.servicesapiimpl.OfferService;
+
+/**
+ * Behaviour every OfferRepository must provide, run against each implementation by a subclass.
+ */
+public abstract class OfferRepositoryConformanceTest {
+
+    /**
+     * Creates an empty repository for a single test.
+     */
+    protected abstract OfferRepository createRepository() throws IOException;
+
+    @Test
+    void offersAreFoundByIdAndByParty() throws IOException {
+        final OfferRepository repository = createRepository();
+        final OfferService offerService = new OfferService(repository);
+        final String firstOfferId = offerService.submit("123", "456", OfferDetails.of("Test", 5, 50));
+        final String secondOfferId = offerService.submit("789", "456", OfferDetails.of("Other", 1, 10));
+        final String thirdOfferId = offerService.submit("123", "123", OfferDetails.of("Self", 1, 1));
+
+        assertEquals(firstOfferId, repository.find(firstOfferId).getOfferId());
+        assertEquals("789", repository.find(secondOfferId).getBuyerUserId());
+        assertNull(repository.find("unknown"));
+        assertNull(repository.find(null));
+
+        assertEquals(List.of(firstOfferId, thirdOfferId), repository.findOfferIds("123"));
+        assertEquals(List.of(firstOfferId, secondOfferId), repository.findOfferIds("456"));
+        assertEquals(List.of(), repository.findOfferIds("unknown"));
+        assertEquals(thirdOfferId, repository.findLatestOfferId("123"));
+        assertEquals(secondOfferId, repository.findLatestOfferId("456"));
+        assertNull(repository.findLatestOfferId("unknown"));
+    }
+
+    @Test
+    void offersAreFoundByStateProductAndCounterparty() throws IOException {
+        final OfferRepository repository = createRepository();
+        final OfferService offerService = new OfferService(repository);
+        final String first = offerService.submit("123", "456", OfferDetails.of("Test", 5, 50));
+        final String second = offerService.submit("789", "456", OfferDetails.of("Test", 1, 10));
+        final String third = offerService.submit("456", "123", OfferDetails.of("Other", 1, 1));
+
+        assertEquals(Set.of(first, second, third),
+                Set.copyOf(repository.findOfferIdsByState(OfferState.AWAITING_SELLER_ACCEPTANCE)));
+        assertEquals(Set.of(first, second),
+                Set.copyOf(repository.findOfferIdsBySeller("456", OfferState.AWAITING_SELLER_ACCEPTANCE)));
+        assertEquals(Set.of(first, third), Set.copyOf(repository.findOfferIdsBetween("123", "456")));
+        assertEquals(Set.of(first, third), Set.copyOf(repository.findOfferIdsBetween("456", "123")));
+
+        // A counter-proposal moves the offer to another state and product
+        offerService.proposeUpdate("456", first, OfferDetails.of("Renamed", 5, 55));
+        assertEquals(Set.of(second, third),
+                Set.copyOf(repository.findOfferIdsByState(OfferState.AWAITING_SELLER_ACCEPTANCE)));
+        assertEquals(List.of(first), repository.findOfferIdsByState(OfferState.AWAITING_BUYER_ACCEPTANCE));
+        assertEquals(List.of(first), repository.findOfferIdsByBuyer("123", OfferState.AWAITING_BUYER_ACCEPTANCE));
+        assertEquals(List.of(second),
+                repository.findOfferIdsByProduct("Test", OfferState.AWAITING_SELLER_ACCEPTANCE));
+        assertEquals(List.of(first),
+                repository.findOfferIdsByProduct("Renamed", OfferState.AWAITING_BUYER_ACCEPTANCE));
+
+        // Private data changes neither, and terminal offers stay queryable
+        offerService.updatePrivateData("789", second, Map.of("note", "a"));
+        offerService.accept("456", second);
+        offerService.cancel("456", third);
+        assertEquals(List.of(second), repository.findOfferIdsByState(OfferState.ACCEPTED));
+        assertEquals(List.of(second), repository.findOfferIdsByProduct("Test", OfferState.ACCEPTED));
+        assertEquals(List.of(), repository.findOfferIdsByProduct("Test", OfferState.AWAITING_SELLER_ACCEPTANCE));
+        assertEquals(List.of(third), repository.findOfferIdsByBuyer("456", OfferState.CANCELLED));
+        assertEquals(List.of(), repository.findOfferIdsBySeller("unknown", OfferState.ACCEPTED));
+        assertEquals(Set.of(first, third), Set.copyOf(repository.findOfferIdsBetween("123", "456")));
+    }
+
+    @Test
+    void offerIdsAreParsedWithoutThrowing() throws IOException {
+        final OfferRepository repository = createRepository();
+        final OfferService offerService = new OfferService(repository);
+        final String offerId = offerService.submit("123", "456", OfferDetails.of("Test", 5, 50));
+
+        assertEquals(offerId, repository.find(offerId.toUpperCase()).getOfferId());
+        assertNull(repository.find(offerId.substring(1)));
+        assertNull(repository.find(offerId.substring(0, 35) + "g"));
+        assertNull(repository.find(offerId.replace('-', '_')));
+        assertNull(repository.find("00000000-0000-0000-0000-000000000000"));
+    }
+
+    @Test
+    void partiesShareOneCopyOfTheirUserId() throws IOException {
+        final OfferRepository repository = createRepository();
+        final OfferService offerService = new OfferService(repository);
+        final String firstOfferId = offerService.submit(new String("buyer"), new String("seller"),
+                OfferDetails.of(new String("Test"), 5, 50));
+        final String secondOfferId = offerService.submit(new String("buyer"), new String("seller"),
+                OfferDetails.of(new String("Test"), 5, 50));
+
+        final Offer first = repository.find(firstOfferId);
+        final Offer second = repository.find(secondOfferId);
+        assertSame(first.getBuyerUserId(), second.getBuyerUserId());
+        assertSame(first.getSellerUserId(), second.getSellerUserId());
+        assertSame(first.getBuyerUserId(), second.getLastOfferHistory().getOfferUserId());
+        assertSame(first.getLastOfferHistory().getOfferDetails().getProductName(),
+                second.getLastOfferHistory().getOfferDetails().getProductName());
+        assertEquals(List.of(firstOfferId, secondOfferId), repository.findOfferIds(new String("seller")));
+    }
+
+    @Test
+    void historyAndPrivateDataArePreserved() throws IOException {
+        final OfferRepository repository = createRepository();
+        final OfferService offerService = new OfferService(repository);
+        final String offerId = offerService.submit("123", "456", OfferDetails.of("Test", 5, 50));
+        offerService.updatePrivateData("123", offerId, Map.of("reference", "a", "note", "b"));
+        offerService.proposeUpdate("456", offerId, OfferDetails.of("Test", 5, 60));
+        offerService.updatePrivateData("456", offerId, Map.of("reference", "c"));
+        // Other offers push this one out of a bounded cache
+        for (int i = 0; i < 10; i++) {
+            offerService.submit("buyer-" + i, "seller-" + i, OfferDetails.of("Filler", 1, 1));
+        }
+        offerService.accept("123", offerId);
+
+        final Offer offer = repository.find(offerId);
+        assertEquals(OfferState.ACCEPTED, offer.getCurrentState());
+        assertEquals(5, offer.getVersion());
+        final List<OfferHistory> history = offer.getOfferHistory();
+        assertEquals(Map.of(), history.get(0).getPrivateData());
+        assertEquals(Map.of("reference", "a", "note", "b"), history.get(1).getPrivateData());
+        assertEquals(Map.of("reference", "a", "note", "b"), history.get(2).getPrivateData());
+        assertEquals(Map.of("reference", "c"), history.get(3).getPrivateData());
+        assertEquals(Action.PROPOSE_UPDATE, history.get(2).getOfferAction());
+        assertEquals(60.0, history.get(4).getOfferDetails().getProductPrice());
+
+        final List<DashboardRow> rows = new DashboardService(repository).getHistory("456");
+        assertEquals(5, rows.size());
+        assertEquals(Action.ACCEPT, rows.get(4).getAction());
+        assertEquals("123", rows.get(4).getUserId());
+        assertEquals(300.0, rows.get(4).getTotalPrice());
+        assertThrows(InvalidOfferException.class, () -> new DashboardService(repository).getHistory("unknown"));
+    }
+
+    @Test
+    void anOfferInUseIsTheSameInstance() throws IOException {
+        final OfferRepository repository = createRepository();
+        final OfferService offerService = new OfferService(repository);
+        final String offerId = offerService.submit("123", "456", OfferDetails.of("Test", 5, 50));
+        final Offer offer = repository.find(offerId);
+        for (int i = 0; i < 10; i++) {
+            offerService.submit("buyer-" + i, "seller-" + i, OfferDetails.of("Filler", 1, 1));
+        }
+
+        assertSame(offer, repository.find(offerId));
+    }
+
+    @Test
+    void concurrentActionsAreAllStored() throws Exception {
+        final OfferRepository repository = createRepository();
+        final OfferService offerService = new OfferService(repository);
+        final List<String> offerIds = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            offerIds.add(offerService.submit("buyer-" + i, "seller-" + i, OfferDetails.of("Test", 5, 50)));
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < offerIds.size(); i++) {
+                final int offer = i;
+                futures.add(executor.submit(() -> {
+                    for (int round = 0; round < 20; round++) {
+                        offerService.proposeUpdate("seller-" + offer, offerIds.get(offer), OfferDetails.of("Test", 5, 60 + round));
+                        offerService.proposeUpdate("buyer-" + offer, offerIds.get(offer), OfferDetails.of("Test", 5, 50 + round));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        for (String offerId : offerIds) {
+            final Offer offer = repository.find(offerId);
+            assertEquals(41, offer.getVersion());
+            assertEquals(69.0, offer.getLastOfferHistory().getOfferDetails().getProductPrice());
+        }
+    }
+}
@@ -1,17 +1,31 @@
 package workflow;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import org.junit.jupiter.api.Test;
 
 import workflow.Offer.OfferHistory;
 import workflow.exceptions.InvalidNextActionException;
+import workflow.exceptions.InvalidOfferException;
+import workflow.exceptions.InvalidUserException;
+import workflow.exceptions.OfferVersionConflictException;
 import workflow.servicesapiimpl.OfferService;
 
+import java.util.EnumSet;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.List;
+import java.util.ArrayList;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 public class OfferServiceTest {
@@ -359,4 +373,327 @@ public class OfferServiceTest {
 
         assertEquals(sellerPrivateData, expectedPrivateData);
     }
+
+    @Test
+    void privateDataIsSnapshottedPerVersion() {
+        final OfferService offerService = new OfferService();
+        final String buyerUserId = "123";
+        final String sellerUserId = "456";
+        final OfferDetails offerDetails = OfferDetails.of("Test", 5, 50);
+
+        final String offerId = offerService.submit(buyerUserId, sellerUserId, offerDetails);
+        offerService.updatePrivateData(buyerUserId, Map.of("reference", "123", "note", "first"));
+        offerService.proposeUpdate(sellerUserId, OfferDetails.of("Test", 5, 60));
+        offerService.updatePrivateData(buyerUserId, Map.of("reference", "123", "note", "second"));
+
+        final List<OfferHistory> history = offerService.getOffer(offerId).getOfferHistory();
+        assertEquals(Map.of(), history.get(0).getPrivateData());
+        assertEquals(Map.of("reference", "123", "note", "first"), history.get(1).getPrivateData());
+        assertSame(history.get(1).getPrivateData(), history.get(2).getPrivateData());
+        assertEquals(Map.of("reference", "123", "note", "second"), history.get(3).getPrivateData());
+    }
+
+    @Test
+    void sellerNegotiatesMultipleOffers(){
+        final OfferService offerService = new OfferService();
+        final String sellerUserId = "456";
+        final OfferDetails offerDetails = OfferDetails.of("Test", 5, 50);
+
+        final String firstOfferId = offerService.submit("123", sellerUserId, offerDetails);
+        final String secondOfferId = offerService.submit("789", sellerUserId, offerDetails);
+        final String thirdOfferId = offerService.submit("321", sellerUserId, offerDetails);
+        offerService.accept(sellerUserId, firstOfferId);
+        offerService.proposeUpdate(sellerUserId, secondOfferId, OfferDetails.of("Test", 5, 60));
+        offerService.updatePrivateData(sellerUserId, thirdOfferId, Map.of("reference", "456"));
+
+        assertEquals(offerService.getOffer(firstOfferId).getCurrentState(), OfferState.ACCEPTED);
+        assertEquals(offerService.getOffer(secondOfferId).getCurrentState(), OfferState.AWAITING_BUYER_ACCEPTANCE);
+        assertEquals(offerService.getOffer(thirdOfferId).getCurrentState(), OfferState.AWAITING_SELLER_ACCEPTANCE);
+        assertEquals(List.of(secondOfferId, thirdOfferId), offerService.getActiveOfferIds(sellerUserId));
+        assertEquals(List.of(secondOfferId), offerService.getActiveOfferIds("789"));
+    }
+
+    @Test
+    void actionOnOfferOfOtherUsersThrowsException(){
+        final OfferService offerService = new OfferService();
+        final OfferDetails offerDetails = OfferDetails.of("Test", 5, 50);
+
+        final String offerId = offerService.submit("123", "456", offerDetails);
+
+        assertThrows(InvalidUserException.class, () -> {
+            offerService.accept("789", offerId);
+        });
+        assertThrows(InvalidOfferException.class, () -> {
+            offerService.withdraw("123", "unknown");
+        });
+    }
+
+    @Test
+    void permittedActionsFollowTheNegotiation(){
+        final OfferService offerService = new OfferService();
+        final String buyerUserId = "123";
+        final String sellerUserId = "456";
+        final OfferDetails offerDetails = OfferDetails.of("Test", 5, 50);
+
+        final String offerId = offerService.submit(buyerUserId, sellerUserId, offerDetails);
+        assertEquals(EnumSet.of(Action.WITHDRAW, Action.CANCEL, Action.UPDATE_PRIVATE_DATA),
+                offerService.getPermittedActions(buyerUserId));
+        assertEquals(EnumSet.of(Action.ACCEPT, Action.CANCEL, Action.PROPOSE_UPDATE, Action.UPDATE_PRIVATE_DATA),
+                offerService.getPermittedActions(sellerUserId, offerId));
+
+        offerService.accept(sellerUserId);
+        assertEquals(EnumSet.of(Action.UPDATE_PRIVATE_DATA), offerService.getPermittedActions(buyerUserId, offerId));
+    }
+
+    @Test
+    void acceptAtCurrentVersion(){
+        final OfferService offerService = new OfferService();
+        final String buyerUserId = "123";
+        final String sellerUserId = "456";
+        final OfferDetails offerDetails = OfferDetails.of("Test", 5, 50);
+
+        final String offerId = offerService.submit(buyerUserId, sellerUserId, offerDetails);
+        final int version = offerService.getOfferVersion(sellerUserId);
+        offerService.accept(sellerUserId, version);
+
+        assertEquals(offerService.getOffer(offerId).getCurrentState(), OfferState.ACCEPTED);
+        assertEquals(version + 1, offerService.getOfferVersion(buyerUserId));
+    }
+
+    @Test
+    void staleVersionThrowsConflict(){
+        final OfferService offerService = new OfferService();
+        final String buyerUserId = "123";
+        final String sellerUserId = "456";
+        final OfferDetails offerDetails = OfferDetails.of("Test", 5, 50);
+        final OfferDetails sellerUpdatedOffer = OfferDetails.of("Test", 5, 150);
+        final OfferDetails buyerUpdatedOffer = OfferDetails.of("Test", 5, 100);
+
+        final String offerId = offerService.submit(buyerUserId, sellerUserId, offerDetails);
+        final int buyerObservedVersion = offerService.getOfferVersion(buyerUserId);
+        offerService.proposeUpdate(sellerUserId, sellerUpdatedOffer, offerService.getOfferVersion(sellerUserId));
+
+        assertThrows(OfferVersionConflictException.class, () -> {
+            offerService.proposeUpdate(buyerUserId, buyerUpdatedOffer, buyerObservedVersion);
+        });
+        assertThrows(OfferVersionConflictException.class, () -> {
+            offerService.updatePrivateData(buyerUserId, Map.of("reference", "123"), buyerObservedVersion);
+        });
+        assertEquals(offerService.getOffer(offerId).getCurrentState(), OfferState.AWAITING_BUYER_ACCEPTANCE);
+        assertEquals(2, offerService.getOffer(offerId).getOfferHistory().size());
+    }
+
+    @Test
+    void invalidActionsAreRejectedWithoutExceptions(){
+        final OfferService offerService = new OfferService();
+        final String buyerUserId = "123";
+        final String sellerUserId = "456";
+        final OfferDetails offerDetails = OfferDetails.of("Test", 5, 50);
+
+        final String offerId = offerService.submit(buyerUserId, sellerUserId, offerDetails);
+
+        assertEquals(RejectionReason.INVALID_USER, offerService.tryAccept("", offerId, Offer.ANY_VERSION).getRejection());
+        assertEquals(RejectionReason.OFFER_NOT_FOUND, offerService.tryAccept(sellerUserId, "missing", Offer.ANY_VERSION).getRejection());
+        assertEquals(RejectionReason.NOT_A_PARTY, offerService.tryCancel("789", offerId, Offer.ANY_VERSION).getRejection());
+        assertEquals(RejectionReason.ACTION_NOT_PERMITTED, offerService.tryAccept(buyerUserId, offerId, Offer.ANY_VERSION).getRejection());
+        assertEquals(RejectionReason.VERSION_CONFLICT, offerService.tryAccept(sellerUserId, offerId, 5).getRejection());
+        assertEquals(RejectionReason.VERSION_CONFLICT,
+                offerService.tryUpdatePrivateData(buyerUserId, offerId, Map.of("reference", "123"), 5).getRejection());
+        assertEquals(1, offerService.getOffer(offerId).getVersion());
+
+        final ActionResult result = offerService.tryProposeUpdate(sellerUserId, offerId, OfferDetails.of("Test", 5, 60), 1);
+        assertTrue(result.isAccepted());
+        assertEquals(2, result.getVersion());
+        assertEquals(OfferState.AWAITING_BUYER_ACCEPTANCE, offerService.getOffer(offerId).getCurrentState());
+        assertTrue(offerService.tryAccept(buyerUserId, offerId, Offer.ANY_VERSION).isAccepted());
+        assertEquals(RejectionReason.ACTION_NOT_PERMITTED, offerService.tryWithdraw(sellerUserId, offerId, Offer.ANY_VERSION).getRejection());
+    }
+
+    @Test
+    void rejectionExceptionsSkipStackTraces(){
+        final OfferService offerService = new OfferService();
+        final String buyerUserId = "123";
+        final String sellerUserId = "456";
+        final OfferDetails offerDetails = OfferDetails.of("Test", 5, 50);
+
+        offerService.submit(buyerUserId, sellerUserId, offerDetails);
+
+        final InvalidNextActionException actionException = assertThrows(InvalidNextActionException.class, () -> {
+            offerService.accept(buyerUserId);
+        });
+        assertEquals(0, actionException.getStackTrace().length);
+        assertEquals("Cannot perform ACCEPT from current state: AWAITING_SELLER_ACCEPTANCE", actionException.getMessage());
+
+        final OfferVersionConflictException versionException = assertThrows(OfferVersionConflictException.class, () -> {
+            offerService.accept(sellerUserId, 3);
+        });
+        assertEquals(0, versionException.getStackTrace().length);
+    }
+
+    @Test
+    void applyBatchKeepsOrderWithinEachOffer(){
+        final OfferService offerService = new OfferService();
+        final String firstOfferId = offerService.submit("123", "456", OfferDetails.of("Test", 5, 50));
+        final String secondOfferId = offerService.submit("789", "456", OfferDetails.of("Other", 1, 10));
+
+        final List<ActionResult> results = offerService.applyBatch(List.of(
+                OfferCommand.proposeUpdate("456", firstOfferId, OfferDetails.of("Test", 5, 60)),
+                OfferCommand.accept("456", secondOfferId),
+                OfferCommand.accept("123", firstOfferId),
+                OfferCommand.submit("123", "789", OfferDetails.of("New", 2, 20)),
+                OfferCommand.cancel("789", secondOfferId),
+                OfferCommand.updatePrivateData("123", firstOfferId, Map.of("reference", "123"))));
+
+        assertEquals(6, results.size());
+        assertEquals(2, results.get(0).getVersion());
+        assertEquals(3, results.get(2).getVersion());
+        assertEquals(firstOfferId, results.get(5).getOfferId());
+        assertTrue(results.get(1).isAccepted());
+        assertEquals(RejectionReason.ACTION_NOT_PERMITTED, results.get(4).getRejection());
+        assertEquals(OfferState.ACCEPTED, offerService.getOffer(firstOfferId).getCurrentState());
+        assertEquals(OfferState.ACCEPTED, offerService.getOffer(secondOfferId).getCurrentState());
+        assertEquals(Map.of("reference", "123"), offerService.getOffer(firstOfferId).getLastOfferHistory().getPrivateData());
+
+        final String submittedOfferId = results.get(3).getOfferId();
+        assertEquals(OfferState.AWAITING_SELLER_ACCEPTANCE, offerService.getOffer(submittedOfferId).getCurrentState());
+        assertEquals(List.of(submittedOfferId), offerService.getActiveOfferIds("789"));
+    }
+
+    @Test
+    void applyBatchRunsOfferGroupsOnTheGivenExecutor(){
+        final AtomicInteger tasks = new AtomicInteger();
+        final OfferService offerService = new OfferService(new InMemoryOfferRepository(), IdGenerator.TIME_ORDERED,
+                task -> {
+                    tasks.incrementAndGet();
+                    task.run();
+                });
+        final String firstOfferId = offerService.submit("123", "456", OfferDetails.of("Test", 5, 50));
+        final String secondOfferId = offerService.submit("789", "456", OfferDetails.of("Other", 1, 10));
+
+        final List<ActionResult> results = offerService.applyBatch(List.of(
+                OfferCommand.accept("456", firstOfferId),
+                OfferCommand.accept("456", secondOfferId),
+                OfferCommand.cancel("123", firstOfferId)));
+
+        assertEquals(2, tasks.get());
+        assertTrue(results.get(0).isAccepted());
+        assertTrue(results.get(1).isAccepted());
+        assertEquals(RejectionReason.ACTION_NOT_PERMITTED, results.get(2).getRejection());
+    }
+
+    @Test
+    void applyBatchRejectsInvalidCommands(){
+        final OfferService offerService = new OfferService();
+        final String offerId = offerService.submit("123", "456", OfferDetails.of("Test", 5, 50));
+
+        final List<ActionResult> results = offerService.applyBatch(List.of(
+                OfferCommand.submit("", "456", OfferDetails.of("Test", 5, 50)),
+                OfferCommand.submit("123", "456", OfferDetails.of("Test", -5, 50)),
+                OfferCommand.accept("456", "missing"),
+                OfferCommand.accept("789", offerId),
+                OfferCommand.accept("456", offerId).atVersion(3),
+                OfferCommand.accept("456", offerId).atVersion(1)));
+
+        assertEquals(RejectionReason.INVALID_USER, results.get(0).getRejection());
+        assertEquals(RejectionReason.INVALID_OFFER_DETAILS, results.get(1).getRejection());
+        assertEquals(RejectionReason.OFFER_NOT_FOUND, results.get(2).getRejection());
+        assertEquals(RejectionReason.NOT_A_PARTY, results.get(3).getRejection());
+        assertEquals(RejectionReason.VERSION_CONFLICT, results.get(4).getRejection());
+        assertTrue(results.get(5).isAccepted());
+        assertEquals(List.of(), offerService.getActiveOfferIds("123"));
+    }
+
+    @Test
+    void racingPartiesGetExactlyOneTransition() throws Exception {
+        final OfferService offerService = new OfferService();
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (int i = 0; i < 500; i++) {
+                final String buyerUserId = "buyer-" + i;
+                final String sellerUserId = "seller-" + i;
+                final String offerId = offerService.submit(buyerUserId, sellerUserId, OfferDetails.of("Test", 5, 50));
+                final CyclicBarrier barrier = new CyclicBarrier(2);
+                final AtomicInteger successes = new AtomicInteger();
+
+                Future<?> seller = executor.submit(() -> race(barrier, successes, () -> offerService.accept(sellerUserId)));
+                Future<?> buyer = executor.submit(() -> race(barrier, successes, () -> offerService.withdraw(buyerUserId)));
+                seller.get();
+                buyer.get();
+
+                final Offer offer = offerService.getOffer(offerId);
+                assertEquals(1, successes.get());
+                assertEquals(2, offer.getOfferHistory().size());
+                assertEquals(offer.getLastOfferHistory().getOfferState(), offer.getCurrentState());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void concurrentNegotiationsKeepHistoryConsistent() throws Exception {
+        final OfferService offerService = new OfferService();
+        final int offers = 64;
+        final int threads = 8;
+        final List<String> offerIds = new ArrayList<>();
+        for (int i = 0; i < offers; i++) {
+            offerIds.add(offerService.submit("buyer-" + i, "seller-" + i, OfferDetails.of("Test", 5, 50)));
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            executor.submit(() -> {
+                final ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int n = 0; n < 5_000; n++) {
+                    final int i = random.nextInt(offers);
+                    final String userId = random.nextBoolean() ? "buyer-" + i : "seller-" + i;
+                    try {
+                        switch (random.nextInt(5)) {
+                            case 0 -> offerService.accept(userId);
+                            case 1 -> offerService.withdraw(userId);
+                            case 2 -> offerService.proposeUpdate(userId, OfferDetails.of("Test", 5, random.nextInt(100)));
+                            case 3 -> offerService.updatePrivateData(userId, Map.of("n", String.valueOf(n)));
+                            default -> {
+                                if (random.nextInt(20) == 0) {
+                                    offerService.cancel(userId);
+                                }
+                            }
+                        }
+                    } catch (RuntimeException rejected) {
+                        // Invalid actions are expected while parties race on the same offer
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+        for (String offerId : offerIds) {
+            final Offer offer = offerService.getOffer(offerId);
+            final List<OfferHistory> history = offer.getOfferHistory();
+            OfferState state = history.get(0).getOfferState();
+            for (int v = 1; v < history.size(); v++) {
+                final OfferHistory entry = history.get(v);
+                final boolean isBuyer = offer.isBuyer(entry.getOfferUserId());
+                PermittedActionMap.checkAction(state, entry.getOfferAction(), isBuyer);
+                if (entry.getOfferAction() != Action.UPDATE_PRIVATE_DATA) {
+                    StateTransitionMap.checkTransition(state, entry.getOfferState(), isBuyer);
+                }
+                state = entry.getOfferState();
+            }
+            assertEquals(state, offer.getCurrentState());
+        }
+    }
+
+    private static void race(final CyclicBarrier barrier, final AtomicInteger successes, final Runnable action) {
+        try {
+            barrier.await();
+            action.run();
+            successes.incrementAndGet();
+        } catch (RuntimeException rejected) {
+            // The losing party observes the state left by the winner
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
 }
@@ -1,8 +1,11 @@
 package workflow;
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import java.util.EnumSet;
+
 import org.junit.jupiter.api.Test;
 
 import workflow.exceptions.InvalidNextActionException;
@@ -64,4 +67,27 @@ public class PermittedActionMapTest {
             PermittedActionMap.checkAction(OfferState.WITHDRAWN_BY_SELLER, Action.UPDATE_PRIVATE_DATA, false)
         );
     }
+
+    @Test
+    void permittedActionsForState() {
+        assertEquals(EnumSet.of(Action.ACCEPT, Action.CANCEL, Action.PROPOSE_UPDATE, Action.UPDATE_PRIVATE_DATA),
+                PermittedActionMap.permittedActions(OfferState.AWAITING_SELLER_ACCEPTANCE, false));
+        assertEquals(EnumSet.of(Action.UPDATE_PRIVATE_DATA),
+                PermittedActionMap.permittedActions(OfferState.ACCEPTED, true));
+        assertThrows(UnsupportedOperationException.class, () ->
+            PermittedActionMap.permittedActions(OfferState.CANCELLED, true).add(Action.ACCEPT)
+        );
+    }
+
+    @Test
+    void permittedActionsAgreeWithCheckAction() {
+        for (OfferState state : OfferState.values()) {
+            for (Action action : Action.values()) {
+                for (boolean isBuyer : new boolean[] { true, false }) {
+                    assertEquals(PermittedActionMap.permittedActions(state, isBuyer).contains(action),
+                            PermittedActionMap.isPermitted(state, action, isBuyer));
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,121 @@
+package workflow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class PersistentHashMapTest {
+
+    @Test
+    void matchesHashMapUnderRandomUpdates() {
+        final Random random = new Random(42);
+        final Map<String, String> expected = new HashMap<>();
+        PersistentHashMap<String, String> actual = PersistentHashMap.empty();
+
+        for (int i = 0; i < 20_000; i++) {
+            final String key = "key-" + random.nextInt(500);
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                actual = actual.minus(key);
+            } else {
+                final String value = "value-" + random.nextInt(10);
+                expected.put(key, value);
+                actual = actual.plus(key, value);
+            }
+        }
+
+        assertEquals(expected, actual);
+        assertEquals(actual, expected);
+        assertEquals(expected.hashCode(), actual.hashCode());
+    }
+
+    @Test
+    void handlesKeysWithIdenticalHashCodes() {
+        // "Aa" and "BB" share a hash code, as does every concatenation of them
+        PersistentHashMap<String, String> map = PersistentHashMap.<String, String>empty()
+                .plus("AaAa", "1").plus("AaBB", "2").plus("BBAa", "3").plus("BBBB", "4");
+
+        assertEquals(4, map.size());
+        assertEquals("3", map.get("BBAa"));
+
+        map = map.minus("AaBB").minus("BBBB").minus("AaAa");
+        assertEquals(Map.of("BBAa", "3"), map);
+    }
+
+    @Test
+    void updatesLeaveEarlierSnapshotsUntouched() {
+        final PersistentHashMap<String, String> first = PersistentHashMap.copyOf(Map.of("a", "1", "b", "2"));
+        final PersistentHashMap<String, String> second = first.withContentsOf(Map.of("a", "1", "c", "3"));
+
+        assertEquals(Map.of("a", "1", "b", "2"), first);
+        assertEquals(Map.of("a", "1", "c", "3"), second);
+        assertSame(second, second.withContentsOf(Map.of("a", "1", "c", "3")));
+        assertSame(first, first.plus("a", "1"));
+        assertSame(first, first.minus("z"));
+    }
+
+    @Test
+    void diffReportsEveryChangedKey() {
+        final Random random = new Random(7);
+        PersistentHashMap<String, String> previous = PersistentHashMap.empty();
+        for (int round = 0; round < 200; round++) {
+            PersistentHashMap<String, String> current = previous;
+            for (int i = 0; i < 1 + random.nextInt(20); i++) {
+                final String key = random.nextBoolean() ? "key-" + random.nextInt(300) : "AaBB".repeat(1 + random.nextInt(2));
+                current = random.nextInt(3) == 0 ? current.minus(key) : current.plus(key, "value-" + random.nextInt(4));
+            }
+            final Map<String, String> expected = new HashMap<>();
+            for (String key : current.keySet()) {
+                if (!current.get(key).equals(previous.get(key))) {
+                    expected.put(key, previous.get(key) + "->" + current.get(key));
+                }
+            }
+            for (String key : previous.keySet()) {
+                if (!current.containsKey(key)) {
+                    expected.put(key, previous.get(key) + "->null");
+                }
+            }
+            final Map<String, String> actual = new HashMap<>();
+            current.diff(previous, (key, oldValue, newValue) -> assertNull(actual.put(key, oldValue + "->" + newValue)));
+
+            assertEquals(expected, actual);
+            previous = current;
+        }
+    }
+
+    @Test
+    void diffSkipsSharedSubtrees() {
+        PersistentHashMap<String, String> base = PersistentHashMap.empty();
+        for (int i = 0; i < 10_000; i++) {
+            base = base.plus("key-" + i, "value");
+        }
+        final PersistentHashMap<String, String> updated = base.plus("key-42", "other").minus("key-7");
+        final Map<String, String> visited = new HashMap<>();
+
+        updated.diff(base, (key, oldValue, newValue) -> visited.put(key, newValue));
+        base.diff(base, (key, oldValue, newValue) -> visited.put("unexpected", key));
+
+        final Map<String, String> expected = new HashMap<>();
+        expected.put("key-42", "other");
+        expected.put("key-7", null);
+        assertEquals(expected, visited);
+    }
+
+    @Test
+    void snapshotsAreReadOnly() {
+        final PersistentHashMap<String, String> map = PersistentHashMap.copyOf(Map.of("a", "1"));
+
+        assertThrows(UnsupportedOperationException.class, () -> map.put("b", "2"));
+        assertTrue(map.containsKey("a"));
+        assertFalse(map.containsKey("b"));
+    }
+}
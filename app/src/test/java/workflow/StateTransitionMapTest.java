@@ -1,7 +1,11 @@
 package workflow;
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.EnumSet;
 
 import org.junit.jupiter.api.Test;
 
@@ -31,4 +35,12 @@ public class StateTransitionMapTest {
             StateTransitionMap.checkTransition(OfferState.CANCELLED, OfferState.AWAITING_BUYER_ACCEPTANCE, false)
         );
     }
+
+    @Test
+    void allowedTransitionsForState(){
+        assertEquals(EnumSet.of(OfferState.ACCEPTED, OfferState.CANCELLED, OfferState.AWAITING_SELLER_ACCEPTANCE),
+                StateTransitionMap.allowedTransitions(OfferState.AWAITING_BUYER_ACCEPTANCE, true));
+        assertTrue(StateTransitionMap.allowedTransitions(OfferState.ACCEPTED, false).isEmpty());
+        assertTrue(StateTransitionMap.isAllowed(OfferState.WITHDRAWN_BY_SELLER, OfferState.AWAITING_BUYER_ACCEPTANCE, false));
+    }
 }
@@ -0,0 +1,88 @@
+package workflow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import workflow.TimingWheel.Timeout;
+
+public class TimingWheelTest {
+
+    @Test
+    void deadlinesExpireOnTheirExactTickAcrossLevels() {
+        final TimingWheel<Integer> wheel = new TimingWheel<>();
+        final Random random = new Random(42);
+        final List<Timeout<Integer>> cancelled = new ArrayList<>();
+        final long[] deadlines = new long[5_000];
+        for (int i = 0; i < deadlines.length; i++) {
+            // Spread over the first three levels, with some on level boundaries
+            deadlines[i] = i % 10 == 0 ? 64L * (1 + random.nextInt(100)) : 1 + random.nextInt(300_000);
+            final Timeout<Integer> timeout = wheel.schedule(i, deadlines[i]);
+            if (i % 7 == 0) {
+                cancelled.add(timeout);
+            }
+        }
+        for (Timeout<Integer> timeout : cancelled) {
+            assertTrue(wheel.cancel(timeout));
+            assertFalse(wheel.cancel(timeout));
+        }
+        assertEquals(deadlines.length - cancelled.size(), wheel.size());
+
+        int expired = 0;
+        long previous = 0;
+        for (long tick = 1; tick <= 300_000; previous = tick, tick += 1 + random.nextInt(50)) {
+            for (Timeout<Integer> timeout : wheel.advance(tick)) {
+                final long deadline = deadlines[timeout.getValue()];
+                assertTrue(timeout.getValue() % 7 != 0);
+                // Never early, and no later than the tick the wheel was turned to
+                assertTrue(deadline > previous && deadline <= tick);
+                assertEquals(deadline, timeout.getDeadlineTick());
+                expired++;
+            }
+        }
+        expired += wheel.advance(300_000).size();
+        assertEquals(deadlines.length - cancelled.size(), expired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void deadlinesAreRelativeToTheCurrentTick() {
+        final TimingWheel<String> wheel = new TimingWheel<>();
+        wheel.advance(1_000_000);
+        final Timeout<String> overdue = wheel.schedule("overdue", 5);
+        final Timeout<String> later = wheel.schedule("later", 1_000_000 + 4_097);
+
+        assertEquals(List.of(overdue), wheel.advance(1_000_001));
+        assertEquals(List.of(), wheel.advance(1_000_000 + 4_096));
+        assertEquals(List.of(later), wheel.advance(1_000_000 + 4_097));
+        assertFalse(wheel.cancel(later));
+    }
+
+    @Test
+    void longPausesJumpToTheNextDeadline() {
+        final TimingWheel<String> wheel = new TimingWheel<>();
+        final long[] deadlines = { 10, 1L << 20, (1L << 34) + 5, (1L << 40) + 123 };
+        final List<Timeout<String>> timeouts = new ArrayList<>();
+        for (long deadline : deadlines) {
+            timeouts.add(wheel.schedule(Long.toString(deadline), deadline));
+        }
+        wheel.cancel(wheel.schedule("cancelled", (1L << 30) + 1));
+
+        // Turning the wheel one tick at a time would take hours for these distances
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            assertEquals(timeouts.subList(0, 2), wheel.advance(1L << 34));
+            assertEquals(List.of(), wheel.advance((1L << 34) + 4));
+            assertEquals(timeouts.subList(2, 4), wheel.advance(1L << 41));
+        });
+        assertEquals(0, wheel.size());
+        assertEquals(List.of(wheel.schedule("next", 0)), wheel.advance((1L << 41) + 1));
+    }
+}